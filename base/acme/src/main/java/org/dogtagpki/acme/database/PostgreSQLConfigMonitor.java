@@ -5,6 +5,8 @@
 //
 package org.dogtagpki.acme.database;
 
+import java.sql.Connection;
+
 /**
  * @author Endi S. Dewata
  */
@@ -45,18 +47,23 @@ public class PostgreSQLConfigMonitor implements Runnable {
         running = true;
 
         while (running) {
+            Connection conn = null;
+
             try {
-                database.connect();
+                conn = database.connect();
 
                 logger.info("Updating ACME configuration");
                 // update the config in memory only
 
-                String value = database.getConfig("enabled");
+                String value = database.getConfig(conn, "enabled");
                 database.enabled = value == null ? null : Boolean.valueOf(value);
                 logger.info("- enabled: " + database.enabled);
 
             } catch (Exception e) {
                 logger.error("Unable to monitor ACME configuration: " + e.getMessage(), e);
+
+            } finally {
+                database.connFactory.returnConn(conn);
             }
 
             try {
@@ -9,11 +9,9 @@ import java.io.FileReader;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -33,6 +31,8 @@ import org.dogtagpki.acme.ACMENonce;
 import org.dogtagpki.acme.ACMEOrder;
 import org.dogtagpki.acme.JWK;
 
+import com.netscape.cmscore.dbs.JDBCConnFactory;
+
 /**
  * @author Endi S. Dewata
  */
@@ -41,11 +41,14 @@ public class PostgreSQLDatabase extends ACMEDatabase {
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(PostgreSQLDatabase.class);
     public static Calendar UTC = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
 
+    public static final int BATCH_SIZE = 100;
+
     protected Properties info;
     protected String url;
 
     protected Properties statements;
-    protected Connection connection;
+    protected JDBCConnFactory connFactory;
+    protected volatile boolean initialized;
 
     Boolean enabled;
     PostgreSQLConfigMonitor monitor;
@@ -84,6 +87,9 @@ public class PostgreSQLDatabase extends ACMEDatabase {
             logger.info("- " + name + ": " + value);
         }
 
+        connFactory = new JDBCConnFactory(url, info);
+        connFactory.init();
+
         String monitorEnabled = config.getParameter("monitor.enabled");
         logger.info("- monitor enabled: " + monitorEnabled);
 
@@ -107,49 +113,42 @@ public class PostgreSQLDatabase extends ACMEDatabase {
     }
 
     /**
-     * This method will create the initial connection, validate
-     * the current connection, or reestablish the connection if
-     * it's closed.
+     * This method will get a connection from the connection pool.
+     * The tables will be created with the first connection if they
+     * do not exist.
      *
      * This method should only be called by methods implementing
-     * ACMEDatabase.
-     *
-     * TODO: Use connection pool.
+     * ACMEDatabase. The connection must be released with
+     * connFactory.returnConn().
      */
-    public void connect() throws Exception {
-
-        if (connection == null) { // create the initial connection
-            logger.info("Connecting to " + url);
-            connection = DriverManager.getConnection(url, info);
-            setup();
-            return;
-        }
+    public Connection connect() throws Exception {
 
-        // validate the current connection
-        try (Statement st = connection.createStatement();
-            ResultSet rs = st.executeQuery("SELECT 1")) {
+        Connection conn = connFactory.getConn();
 
-        } catch (SQLException e) {
+        if (initialized) {
+            return conn;
+        }
 
-            if (connection.isClosed()) { // reestablish the connection
-                logger.info("Reconnecting to " + url);
-                connection = DriverManager.getConnection(url, info);
-                return;
+        try {
+            synchronized (this) {
+                if (!initialized) {
+                    setup(conn);
+                    initialized = true;
+                }
             }
 
-            logger.error("Unable to access database: " + e.getMessage());
-
-            // https://www.postgresql.org/docs/current/errcodes-appendix.html
-            logger.error("SQL state: " + e.getSQLState());
-
+        } catch (Exception e) {
+            connFactory.returnConn(conn);
             throw e;
         }
+
+        return conn;
     }
 
     /**
      * This method will create the tables if they do not exist.
      */
-    public void setup() throws Exception {
+    public void setup(Connection conn) throws Exception {
 
         logger.info("Setting up database");
 
@@ -162,7 +161,7 @@ public class PostgreSQLDatabase extends ACMEDatabase {
             if (StringUtils.isEmpty(sql)) continue;
             logger.info("SQL: " + sql);
 
-            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
                 ps.executeUpdate();
 
             } catch (SQLException e) {
@@ -181,14 +180,14 @@ public class PostgreSQLDatabase extends ACMEDatabase {
         }
     }
 
-    String getConfig(String id) throws Exception {
+    String getConfig(Connection conn, String id) throws Exception {
 
         logger.info("Getting config " + id);
 
         String sql = statements.getProperty("getConfig");
         logger.info("SQL: " + sql);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, id);
 
             try (ResultSet rs = ps.executeQuery()) {
@@ -202,58 +201,58 @@ public class PostgreSQLDatabase extends ACMEDatabase {
         }
     }
 
-    void addConfig(String id, String value) throws Exception {
+    void addConfig(Connection conn, String id, String value) throws Exception {
 
         logger.info("Setting config " + id + ": " + value);
 
         String sql = statements.getProperty("addConfig");
         logger.info("SQL: " + sql);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, id);
             ps.setString(2, value);
             ps.executeUpdate();
         }
     }
 
-    int updateConfig(String id, String value) throws Exception {
+    int updateConfig(Connection conn, String id, String value) throws Exception {
 
         logger.info("Updating config " + id + ": " + value);
 
         String sql = statements.getProperty("updateConfig");
         logger.info("SQL: " + sql);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, value);
             ps.setString(2, id);
             return ps.executeUpdate();
         }
     }
 
-    void removeConfig(String id) throws Exception {
+    void removeConfig(Connection conn, String id) throws Exception {
 
         logger.info("Removing config " + id);
 
         String sql = statements.getProperty("removeConfig");
         logger.info("SQL: " + sql);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, id);
             ps.executeUpdate();
         }
     }
 
-    void setConfig(String id, String value) throws Exception {
+    void setConfig(Connection conn, String id, String value) throws Exception {
 
         if (value == null) {
-            removeConfig(id);
+            removeConfig(conn, id);
             return;
         }
 
-        int updatedRows = updateConfig(id, value);
+        int updatedRows = updateConfig(conn, id, value);
         if (updatedRows > 0) return;
 
-        addConfig(id, value);
+        addConfig(conn, id, value);
     }
 
     @Override
@@ -265,10 +264,15 @@ public class PostgreSQLDatabase extends ACMEDatabase {
 
         if (monitor == null) {
 
-            connect();
+            Connection conn = connect();
+
+            try {
+                String value = getConfig(conn, "enabled");
+                enabled = value == null ? null : Boolean.valueOf(value);
 
-            String value = getConfig("enabled");
-            enabled = value == null ? null : Boolean.valueOf(value);
+            } finally {
+                connFactory.returnConn(conn);
+            }
         }
 
         return enabled;
@@ -277,22 +281,27 @@ public class PostgreSQLDatabase extends ACMEDatabase {
     @Override
     public void setEnabled(Boolean enabled) throws Exception {
 
-        connect();
+        Connection conn = connect();
 
-        String value = enabled == null ? null : enabled.toString();
-        setConfig("enabled", value);
+        try {
+            String value = enabled == null ? null : enabled.toString();
+            setConfig(conn, "enabled", value);
 
-        this.enabled = enabled;
+            this.enabled = enabled;
+
+        } finally {
+            connFactory.returnConn(conn);
+        }
     }
 
-    private ACMENonce getNonce(String nonceID) throws Exception {
+    private ACMENonce getNonce(Connection conn, String nonceID) throws Exception {
 
         logger.info("Getting nonce " + nonceID);
 
         String sql = statements.getProperty("getNonce");
         logger.info("SQL: " + sql);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, nonceID);
 
             try (ResultSet rs = ps.executeQuery()) {
@@ -318,48 +327,58 @@ public class PostgreSQLDatabase extends ACMEDatabase {
     @Override
     public void addNonce(ACMENonce nonce) throws Exception {
 
-        connect();
+        Connection conn = connect();
 
-        String nonceID = nonce.getID();
-        logger.info("Adding nonce " + nonceID);
+        try {
+            String nonceID = nonce.getID();
+            logger.info("Adding nonce " + nonceID);
 
-        String sql = statements.getProperty("addNonce");
-        logger.info("SQL: " + sql);
+            String sql = statements.getProperty("addNonce");
+            logger.info("SQL: " + sql);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
 
-            ps.setString(1, nonceID);
+                ps.setString(1, nonceID);
 
-            Date creationTime = nonce.getCreationTime();
-            ps.setTimestamp(2, new Timestamp(creationTime.getTime()), UTC);
+                Date creationTime = nonce.getCreationTime();
+                ps.setTimestamp(2, new Timestamp(creationTime.getTime()), UTC);
 
-            Date expirationTime = nonce.getExpirationTime();
-            ps.setTimestamp(3, new Timestamp(expirationTime.getTime()), UTC);
+                Date expirationTime = nonce.getExpirationTime();
+                ps.setTimestamp(3, new Timestamp(expirationTime.getTime()), UTC);
 
-            ps.executeUpdate();
+                ps.executeUpdate();
+            }
+
+        } finally {
+            connFactory.returnConn(conn);
         }
     }
 
     @Override
     public ACMENonce removeNonce(String nonceID) throws Exception {
 
-        connect();
+        Connection conn = connect();
+
+        try {
+            ACMENonce nonce = getNonce(conn, nonceID);
+            if (nonce == null) return null;
 
-        ACMENonce nonce = getNonce(nonceID);
-        if (nonce == null) return null;
+            deleteNonce(conn, nonceID);
+            return nonce;
 
-        deleteNonce(nonceID);
-        return nonce;
+        } finally {
+            connFactory.returnConn(conn);
+        }
     }
 
-    private void deleteNonce(String nonceID) throws Exception {
+    private void deleteNonce(Connection conn, String nonceID) throws Exception {
 
         logger.info("Removing nonce " + nonceID);
 
         String sql = statements.getProperty("removeNonce");
         logger.info("SQL: " + sql);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, nonceID);
             ps.executeUpdate();
         }
@@ -368,27 +387,34 @@ public class PostgreSQLDatabase extends ACMEDatabase {
     @Override
     public void removeExpiredNonces(Date currentTime) throws Exception {
 
-        connect();
+        Connection conn = connect();
+
+        try {
+            logger.info("Removing expired nonces");
+
+            if (removeExpired(conn, currentTime, "removeExpiredNonces")) {
+                return;
+            }
 
-        logger.info("Getting expired nonces");
+            logger.info("Getting expired nonces");
 
-        Collection<String> nonceIDs = getExpiredNonceIDs(currentTime);
+            Collection<String> nonceIDs = getExpiredNonceIDs(conn, currentTime);
 
-        logger.info("Removing expired nonces");
+            removeRecords(conn, nonceIDs, "removeNonce");
 
-        for (String nonceID : nonceIDs) {
-            deleteNonce(nonceID);
+        } finally {
+            connFactory.returnConn(conn);
         }
     }
 
-    private Collection<String> getExpiredNonceIDs(Date currentTime) throws Exception {
+    private Collection<String> getExpiredNonceIDs(Connection conn, Date currentTime) throws Exception {
 
         String sql = statements.getProperty("getExpiredNonceIDs");
         logger.info("SQL: " + sql);
 
         Collection<String> nonces = new ArrayList<>();
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setTimestamp(1, new Timestamp(currentTime.getTime()), UTC);
 
             try (ResultSet rs = ps.executeQuery()) {
@@ -406,42 +432,47 @@ public class PostgreSQLDatabase extends ACMEDatabase {
     @Override
     public ACMEAccount getAccount(String accountID) throws Exception {
 
-        connect();
+        Connection conn = connect();
 
-        logger.info("Getting account " + accountID);
+        try {
+            logger.info("Getting account " + accountID);
 
-        String sql = statements.getProperty("getAccount");
-        logger.info("SQL: " + sql);
+            String sql = statements.getProperty("getAccount");
+            logger.info("SQL: " + sql);
 
-        ACMEAccount account = new ACMEAccount();
+            ACMEAccount account = new ACMEAccount();
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, accountID);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, accountID);
 
-            try (ResultSet rs = ps.executeQuery()) {
+                try (ResultSet rs = ps.executeQuery()) {
 
-                if (!rs.next()) {
-                    return null;
-                }
+                    if (!rs.next()) {
+                        return null;
+                    }
 
-                account.setID(accountID);
+                    account.setID(accountID);
 
-                Timestamp created = rs.getTimestamp("created");
-                account.setCreationTime(new Date(created.getTime()));
+                    Timestamp created = rs.getTimestamp("created");
+                    account.setCreationTime(new Date(created.getTime()));
 
-                account.setStatus(rs.getString("status"));
+                    account.setStatus(rs.getString("status"));
 
-                String jwk = rs.getString("jwk");
-                account.setJWK(JWK.fromJSON(jwk));
+                    String jwk = rs.getString("jwk");
+                    account.setJWK(JWK.fromJSON(jwk));
+                }
             }
-        }
 
-        getAccountContacts(account);
+            getAccountContacts(conn, account);
+
+            return account;
 
-        return account;
+        } finally {
+            connFactory.returnConn(conn);
+        }
     }
 
-    private void getAccountContacts(ACMEAccount account) throws Exception {
+    private void getAccountContacts(Connection conn, ACMEAccount account) throws Exception {
 
         String accountID = account.getID();
         logger.info("Getting contacts for " + accountID);
@@ -449,7 +480,7 @@ public class PostgreSQLDatabase extends ACMEDatabase {
         String sql = statements.getProperty("getAccountContacts");
         logger.info("SQL: " + sql);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, accountID);
 
             try (ResultSet rs = ps.executeQuery()) {
@@ -471,54 +502,64 @@ public class PostgreSQLDatabase extends ACMEDatabase {
     @Override
     public void addAccount(ACMEAccount account) throws Exception {
 
-        connect();
+        Connection conn = connect();
 
-        String accountID = account.getID();
-        logger.info("Adding account " + accountID);
+        try {
+            String accountID = account.getID();
+            logger.info("Adding account " + accountID);
 
-        String sql = statements.getProperty("addAccount");
-        logger.info("SQL: " + sql);
+            String sql = statements.getProperty("addAccount");
+            logger.info("SQL: " + sql);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
 
-            ps.setString(1, accountID);
+                ps.setString(1, accountID);
 
-            Date creationTime = account.getCreationTime();
-            ps.setTimestamp(2, creationTime == null ? null : new Timestamp(creationTime.getTime()), UTC);
+                Date creationTime = account.getCreationTime();
+                ps.setTimestamp(2, creationTime == null ? null : new Timestamp(creationTime.getTime()), UTC);
 
-            ps.setString(3, account.getStatus());
-            ps.setString(4, account.getJWK().toJSON());
+                ps.setString(3, account.getStatus());
+                ps.setString(4, account.getJWK().toJSON());
 
-            ps.executeUpdate();
-        }
+                ps.executeUpdate();
+            }
+
+            addAccountContacts(conn, account);
 
-        addAccountContacts(account);
+        } finally {
+            connFactory.returnConn(conn);
+        }
     }
 
     @Override
     public void updateAccount(ACMEAccount account) throws Exception {
 
-        connect();
+        Connection conn = connect();
 
-        String accountID = account.getID();
-        logger.info("Updating account " + accountID);
+        try {
+            String accountID = account.getID();
+            logger.info("Updating account " + accountID);
 
-        String sql = statements.getProperty("updateAccount");
-        logger.info("SQL: " + sql);
+            String sql = statements.getProperty("updateAccount");
+            logger.info("SQL: " + sql);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
 
-            ps.setString(1, account.getStatus());
-            ps.setString(2, accountID);
+                ps.setString(1, account.getStatus());
+                ps.setString(2, accountID);
 
-            ps.executeUpdate();
-        }
+                ps.executeUpdate();
+            }
+
+            removeAccountContacts(conn, accountID);
+            addAccountContacts(conn, account);
 
-        removeAccountContacts(accountID);
-        addAccountContacts(account);
+        } finally {
+            connFactory.returnConn(conn);
+        }
     }
 
-    private void addAccountContacts(ACMEAccount account) throws Exception {
+    private void addAccountContacts(Connection conn, ACMEAccount account) throws Exception {
 
         String[] contacts = account.getContact();
         if (contacts == null) return;
@@ -529,26 +570,28 @@ public class PostgreSQLDatabase extends ACMEDatabase {
         String sql = statements.getProperty("addAccountContacts");
         logger.info("SQL: " + sql);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
 
             for (String contact : contacts) {
 
                 ps.setString(1, accountID);
                 ps.setString(2, contact);
 
-                ps.executeUpdate();
+                ps.addBatch();
             }
+
+            ps.executeBatch();
         }
     }
 
-    private void removeAccountContacts(String accountID) throws Exception {
+    private void removeAccountContacts(Connection conn, String accountID) throws Exception {
 
         logger.info("Removing contacts for account " + accountID);
 
         String sql = statements.getProperty("removeAccountContacts");
         logger.info("SQL: " + sql);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
 
             ps.setString(1, accountID);
 
@@ -559,210 +602,230 @@ public class PostgreSQLDatabase extends ACMEDatabase {
     @Override
     public ACMEOrder getOrder(String orderID) throws Exception {
 
-        connect();
+        Connection conn = connect();
 
-        logger.info("Getting order " + orderID);
+        try {
+            logger.info("Getting order " + orderID);
 
-        String sql = statements.getProperty("getOrder");
-        logger.info("SQL: " + sql);
+            String sql = statements.getProperty("getOrder");
+            logger.info("SQL: " + sql);
 
-        ACMEOrder order = new ACMEOrder();
+            ACMEOrder order = new ACMEOrder();
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, orderID);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, orderID);
 
-            try (ResultSet rs = ps.executeQuery()) {
+                try (ResultSet rs = ps.executeQuery()) {
 
-                if (!rs.next()) {
-                    return null;
-                }
+                    if (!rs.next()) {
+                        return null;
+                    }
 
-                order.setID(orderID);
-                order.setAccountID(rs.getString("account_id"));
+                    order.setID(orderID);
+                    order.setAccountID(rs.getString("account_id"));
 
-                Timestamp created = rs.getTimestamp("created");
-                order.setCreationTime(created == null ? null : new Date(created.getTime()));
+                    Timestamp created = rs.getTimestamp("created");
+                    order.setCreationTime(created == null ? null : new Date(created.getTime()));
 
-                order.setStatus(rs.getString("status"));
+                    order.setStatus(rs.getString("status"));
 
-                Timestamp expires = rs.getTimestamp("expires");
-                order.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
+                    Timestamp expires = rs.getTimestamp("expires");
+                    order.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
 
-                Timestamp notBefore = rs.getTimestamp("not_before");
-                order.setNotBeforeTime(notBefore == null ? null : new Date(notBefore.getTime()));
+                    Timestamp notBefore = rs.getTimestamp("not_before");
+                    order.setNotBeforeTime(notBefore == null ? null : new Date(notBefore.getTime()));
 
-                Timestamp notAfter = rs.getTimestamp("not_after");
-                order.setNotAfterTime(notAfter == null ? null : new Date(notAfter.getTime()));
+                    Timestamp notAfter = rs.getTimestamp("not_after");
+                    order.setNotAfterTime(notAfter == null ? null : new Date(notAfter.getTime()));
 
-                order.setCertID(rs.getString("cert_id"));
+                    order.setCertID(rs.getString("cert_id"));
+                }
             }
-        }
 
-        getOrderIdentifiers(order);
-        getOrderAuthorizations(order);
+            getOrderIdentifiers(conn, order);
+            getOrderAuthorizations(conn, order);
 
-        return order;
+            return order;
+
+        } finally {
+            connFactory.returnConn(conn);
+        }
     }
 
     @Override
     public Collection<ACMEOrder> getOrdersByAccount(String accountID) throws Exception {
 
-        connect();
+        Connection conn = connect();
 
-        logger.info("Getting orders for account " + accountID);
+        try {
+            logger.info("Getting orders for account " + accountID);
 
-        String sql = statements.getProperty("getOrdersByAccount");
-        logger.info("SQL: " + sql);
+            String sql = statements.getProperty("getOrdersByAccount");
+            logger.info("SQL: " + sql);
 
-        Collection<ACMEOrder> orders = new ArrayList<>();
+            Collection<ACMEOrder> orders = new ArrayList<>();
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, accountID);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, accountID);
 
-            try (ResultSet rs = ps.executeQuery()) {
+                try (ResultSet rs = ps.executeQuery()) {
 
-                while (rs.next()) {
-                    ACMEOrder order = new ACMEOrder();
-                    order.setID(rs.getString("id"));
-                    order.setAccountID(accountID);
+                    while (rs.next()) {
+                        ACMEOrder order = new ACMEOrder();
+                        order.setID(rs.getString("id"));
+                        order.setAccountID(accountID);
 
-                    Timestamp created = rs.getTimestamp("created");
-                    order.setCreationTime(created == null ? null : new Date(created.getTime()));
+                        Timestamp created = rs.getTimestamp("created");
+                        order.setCreationTime(created == null ? null : new Date(created.getTime()));
 
-                    order.setStatus(rs.getString("status"));
+                        order.setStatus(rs.getString("status"));
 
-                    Timestamp expires = rs.getTimestamp("expires");
-                    order.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
+                        Timestamp expires = rs.getTimestamp("expires");
+                        order.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
 
-                    Timestamp notBefore = rs.getTimestamp("not_before");
-                    order.setNotBeforeTime(notBefore == null ? null : new Date(notBefore.getTime()));
+                        Timestamp notBefore = rs.getTimestamp("not_before");
+                        order.setNotBeforeTime(notBefore == null ? null : new Date(notBefore.getTime()));
 
-                    Timestamp notAfter = rs.getTimestamp("not_after");
-                    order.setNotAfterTime(notAfter == null ? null : new Date(notAfter.getTime()));
+                        Timestamp notAfter = rs.getTimestamp("not_after");
+                        order.setNotAfterTime(notAfter == null ? null : new Date(notAfter.getTime()));
 
-                    order.setCertID(rs.getString("cert_id"));
+                        order.setCertID(rs.getString("cert_id"));
 
-                    getOrderIdentifiers(order);
-                    getOrderAuthorizations(order);
+                        getOrderIdentifiers(conn, order);
+                        getOrderAuthorizations(conn, order);
 
-                    orders.add(order);
+                        orders.add(order);
+                    }
                 }
             }
-        }
 
-        return orders;
+            return orders;
+
+        } finally {
+            connFactory.returnConn(conn);
+        }
     }
 
     @Override
     public Collection<ACMEOrder> getOrdersByAuthorizationAndStatus(String authzID, String status)
             throws Exception {
 
-        connect();
+        Connection conn = connect();
 
-        logger.info("Getting " + status + " orders for authorization " + authzID);
+        try {
+            logger.info("Getting " + status + " orders for authorization " + authzID);
 
-        String sql = statements.getProperty("getOrdersByAuthorizationAndStatus");
-        logger.info("SQL: " + sql);
+            String sql = statements.getProperty("getOrdersByAuthorizationAndStatus");
+            logger.info("SQL: " + sql);
 
-        Collection<ACMEOrder> orders = new ArrayList<>();
+            Collection<ACMEOrder> orders = new ArrayList<>();
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, authzID);
-            ps.setString(2, status);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, authzID);
+                ps.setString(2, status);
 
-            try (ResultSet rs = ps.executeQuery()) {
+                try (ResultSet rs = ps.executeQuery()) {
 
-                while (rs.next()) {
-                    ACMEOrder order = new ACMEOrder();
-                    order.setID(rs.getString("id"));
-                    order.setAccountID(rs.getString("account_id"));
+                    while (rs.next()) {
+                        ACMEOrder order = new ACMEOrder();
+                        order.setID(rs.getString("id"));
+                        order.setAccountID(rs.getString("account_id"));
 
-                    Timestamp created = rs.getTimestamp("created");
-                    order.setCreationTime(created == null ? null : new Date(created.getTime()));
+                        Timestamp created = rs.getTimestamp("created");
+                        order.setCreationTime(created == null ? null : new Date(created.getTime()));
 
-                    order.setStatus(rs.getString("status"));
+                        order.setStatus(rs.getString("status"));
 
-                    Timestamp expires = rs.getTimestamp("expires");
-                    order.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
+                        Timestamp expires = rs.getTimestamp("expires");
+                        order.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
 
-                    Timestamp notBefore = rs.getTimestamp("not_before");
-                    order.setNotBeforeTime(notBefore == null ? null : new Date(notBefore.getTime()));
+                        Timestamp notBefore = rs.getTimestamp("not_before");
+                        order.setNotBeforeTime(notBefore == null ? null : new Date(notBefore.getTime()));
 
-                    Timestamp notAfter = rs.getTimestamp("not_after");
-                    order.setNotAfterTime(notAfter == null ? null : new Date(notAfter.getTime()));
+                        Timestamp notAfter = rs.getTimestamp("not_after");
+                        order.setNotAfterTime(notAfter == null ? null : new Date(notAfter.getTime()));
 
-                    order.setCertID(rs.getString("cert_id"));
+                        order.setCertID(rs.getString("cert_id"));
 
-                    getOrderIdentifiers(order);
-                    getOrderAuthorizations(order);
+                        getOrderIdentifiers(conn, order);
+                        getOrderAuthorizations(conn, order);
 
-                    orders.add(order);
+                        orders.add(order);
+                    }
                 }
             }
-        }
 
-        return orders;
+            return orders;
+
+        } finally {
+            connFactory.returnConn(conn);
+        }
     }
 
     @Override
     public ACMEOrder getOrderByCertificate(String certID) throws Exception {
 
-        connect();
+        Connection conn = connect();
 
-        logger.info("Getting order for certificate " + certID);
+        try {
+            logger.info("Getting order for certificate " + certID);
 
-        String sql = statements.getProperty("getOrderByCertificate");
-        logger.info("SQL: " + sql);
+            String sql = statements.getProperty("getOrderByCertificate");
+            logger.info("SQL: " + sql);
 
-        ACMEOrder order = new ACMEOrder();
+            ACMEOrder order = new ACMEOrder();
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, certID);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, certID);
 
-            try (ResultSet rs = ps.executeQuery()) {
+                try (ResultSet rs = ps.executeQuery()) {
 
-                if (!rs.next()) {
-                    // no order found
-                    return null;
-                }
+                    if (!rs.next()) {
+                        // no order found
+                        return null;
+                    }
 
-                // order found
+                    // order found
 
-                order.setID(rs.getString("id"));
-                order.setAccountID(rs.getString("account_id"));
+                    order.setID(rs.getString("id"));
+                    order.setAccountID(rs.getString("account_id"));
 
-                Timestamp created = rs.getTimestamp("created");
-                order.setCreationTime(created == null ? null : new Date(created.getTime()));
+                    Timestamp created = rs.getTimestamp("created");
+                    order.setCreationTime(created == null ? null : new Date(created.getTime()));
 
-                order.setStatus(rs.getString("status"));
+                    order.setStatus(rs.getString("status"));
 
-                Timestamp expires = rs.getTimestamp("expires");
-                order.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
+                    Timestamp expires = rs.getTimestamp("expires");
+                    order.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
 
-                Timestamp notBefore = rs.getTimestamp("not_before");
-                order.setNotBeforeTime(notBefore == null ? null : new Date(notBefore.getTime()));
+                    Timestamp notBefore = rs.getTimestamp("not_before");
+                    order.setNotBeforeTime(notBefore == null ? null : new Date(notBefore.getTime()));
 
-                Timestamp notAfter = rs.getTimestamp("not_after");
-                order.setNotAfterTime(notAfter == null ? null : new Date(notAfter.getTime()));
+                    Timestamp notAfter = rs.getTimestamp("not_after");
+                    order.setNotAfterTime(notAfter == null ? null : new Date(notAfter.getTime()));
 
-                order.setCertID(certID);
+                    order.setCertID(certID);
+                }
             }
-        }
 
-        getOrderIdentifiers(order);
-        getOrderAuthorizations(order);
+            getOrderIdentifiers(conn, order);
+            getOrderAuthorizations(conn, order);
 
-        return order;
+            return order;
+
+        } finally {
+            connFactory.returnConn(conn);
+        }
     }
 
-    private Collection<String> getExpiredOrderIDs(Date currentTime) throws Exception {
+    private Collection<String> getExpiredOrderIDs(Connection conn, Date currentTime) throws Exception {
 
         String sql = statements.getProperty("getExpiredOrderIDs");
         logger.info("SQL: " + sql);
 
         Collection<String> orderIDs = new ArrayList<>();
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setTimestamp(1, new Timestamp(currentTime.getTime()), UTC);
 
             try (ResultSet rs = ps.executeQuery()) {
@@ -777,7 +840,7 @@ public class PostgreSQLDatabase extends ACMEDatabase {
         return orderIDs;
     }
 
-    private void getOrderIdentifiers(ACMEOrder order) throws Exception {
+    private void getOrderIdentifiers(Connection conn, ACMEOrder order) throws Exception {
 
         String orderID = order.getID();
         logger.info("Getting identifiers for order " + orderID);
@@ -785,7 +848,7 @@ public class PostgreSQLDatabase extends ACMEDatabase {
         String sql = statements.getProperty("getOrderIdentifiers");
         logger.info("SQL: " + sql);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, orderID);
 
             try (ResultSet rs = ps.executeQuery()) {
@@ -806,7 +869,7 @@ public class PostgreSQLDatabase extends ACMEDatabase {
         }
     }
 
-    private void getOrderAuthorizations(ACMEOrder order) throws Exception {
+    private void getOrderAuthorizations(Connection conn, ACMEOrder order) throws Exception {
 
         String orderID = order.getID();
         logger.info("Getting authorizations for order " + orderID);
@@ -814,7 +877,7 @@ public class PostgreSQLDatabase extends ACMEDatabase {
         String sql = statements.getProperty("getOrderAuthorizations");
         logger.info("SQL: " + sql);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, orderID);
 
             try (ResultSet rs = ps.executeQuery()) {
@@ -836,43 +899,48 @@ public class PostgreSQLDatabase extends ACMEDatabase {
     @Override
     public void addOrder(ACMEOrder order) throws Exception {
 
-        connect();
+        Connection conn = connect();
 
-        String orderID = order.getID();
-        logger.info("Adding order " + orderID);
+        try {
+            String orderID = order.getID();
+            logger.info("Adding order " + orderID);
 
-        String sql = statements.getProperty("addOrder");
-        logger.info("SQL: " + sql);
+            String sql = statements.getProperty("addOrder");
+            logger.info("SQL: " + sql);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
 
-            ps.setString(1, orderID);
-            ps.setString(2, order.getAccountID());
+                ps.setString(1, orderID);
+                ps.setString(2, order.getAccountID());
 
-            Date creationTime = order.getCreationTime();
-            ps.setTimestamp(3, creationTime == null ? null : new Timestamp(creationTime.getTime()), UTC);
+                Date creationTime = order.getCreationTime();
+                ps.setTimestamp(3, creationTime == null ? null : new Timestamp(creationTime.getTime()), UTC);
 
-            ps.setString(4, order.getStatus());
+                ps.setString(4, order.getStatus());
 
-            Date expirationTime = order.getExpirationTime();
-            ps.setTimestamp(5, expirationTime == null ? null : new Timestamp(expirationTime.getTime()), UTC);
+                Date expirationTime = order.getExpirationTime();
+                ps.setTimestamp(5, expirationTime == null ? null : new Timestamp(expirationTime.getTime()), UTC);
 
-            Date notBefore = order.getNotBeforeTime();
-            ps.setTimestamp(6, notBefore == null ? null : new Timestamp(notBefore.getTime()), UTC);
+                Date notBefore = order.getNotBeforeTime();
+                ps.setTimestamp(6, notBefore == null ? null : new Timestamp(notBefore.getTime()), UTC);
 
-            Date notAfter = order.getNotAfterTime();
-            ps.setTimestamp(7, notAfter == null ? null : new Timestamp(notAfter.getTime()), UTC);
+                Date notAfter = order.getNotAfterTime();
+                ps.setTimestamp(7, notAfter == null ? null : new Timestamp(notAfter.getTime()), UTC);
 
-            ps.setString(8, order.getCertID());
+                ps.setString(8, order.getCertID());
 
-            ps.executeUpdate();
-        }
+                ps.executeUpdate();
+            }
 
-        addOrderIdentifiers(order);
-        addOrderAuthorizations(order);
+            addOrderIdentifiers(conn, order);
+            addOrderAuthorizations(conn, order);
+
+        } finally {
+            connFactory.returnConn(conn);
+        }
     }
 
-    private void addOrderIdentifiers(ACMEOrder order) throws Exception {
+    private void addOrderIdentifiers(Connection conn, ACMEOrder order) throws Exception {
 
         ACMEIdentifier[] identifiers = order.getIdentifiers();
         if (identifiers == null) return;
@@ -883,33 +951,22 @@ public class PostgreSQLDatabase extends ACMEDatabase {
         String sql = statements.getProperty("addOrderIdentifiers");
         logger.info("SQL: " + sql);
 
-        for (ACMEIdentifier identifier : identifiers) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
 
-            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            for (ACMEIdentifier identifier : identifiers) {
 
                 ps.setString(1, orderID);
                 ps.setString(2, identifier.getType());
                 ps.setString(3, identifier.getValue());
 
-                ps.executeUpdate();
+                ps.addBatch();
             }
-        }
-    }
-
-    private void removeOrderIdentifiers(String orderID) throws Exception {
-
-        logger.info("Removing identifiers for order " + orderID);
-
-        String sql = statements.getProperty("removeOrderIdentifiers");
-        logger.info("SQL: " + sql);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, orderID);
-            ps.executeUpdate();
+            ps.executeBatch();
         }
     }
 
-    private void addOrderAuthorizations(ACMEOrder order) throws Exception {
+    private void addOrderAuthorizations(Connection conn, ACMEOrder order) throws Exception {
 
         String[] authzIDs = order.getAuthzIDs();
         if (authzIDs == null) return;
@@ -920,190 +977,191 @@ public class PostgreSQLDatabase extends ACMEDatabase {
         String sql = statements.getProperty("addOrderAuthorizations");
         logger.info("SQL: " + sql);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
 
             for (String authzID : authzIDs) {
 
                 ps.setString(1, orderID);
                 ps.setString(2, authzID);
 
-                ps.executeUpdate();
+                ps.addBatch();
             }
-        }
-    }
 
-    private void removeOrderAuthorizations(String orderID) throws Exception {
-
-        logger.info("Removing authorizations for order " + orderID);
-
-        String sql = statements.getProperty("removeOrderAuthorizations");
-        logger.info("SQL: " + sql);
-
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, orderID);
-            ps.executeUpdate();
+            ps.executeBatch();
         }
     }
 
     @Override
     public void updateOrder(ACMEOrder order) throws Exception {
 
-        connect();
-
-        String orderID = order.getID();
-        logger.info("Updating order " + orderID);
-
-        String sql = statements.getProperty("updateOrder");
-        logger.info("SQL: " + sql);
-
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        Connection conn = connect();
 
-            ps.setString(1, order.getStatus());
-            ps.setString(2, order.getCertID());
+        try {
+            String orderID = order.getID();
+            logger.info("Updating order " + orderID);
 
-            Date expirationTime = order.getExpirationTime();
-            ps.setTimestamp(3, expirationTime == null ? null : new Timestamp(expirationTime.getTime()), UTC);
-
-            ps.setString(4, orderID);
+            String sql = statements.getProperty("updateOrder");
+            logger.info("SQL: " + sql);
 
-            ps.executeUpdate();
-        }
-    }
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
 
-    private void removeOrder(String orderID) throws Exception {
+                ps.setString(1, order.getStatus());
+                ps.setString(2, order.getCertID());
 
-        removeOrderIdentifiers(orderID);
-        removeOrderAuthorizations(orderID);
+                Date expirationTime = order.getExpirationTime();
+                ps.setTimestamp(3, expirationTime == null ? null : new Timestamp(expirationTime.getTime()), UTC);
 
-        logger.info("Removing order " + orderID);
+                ps.setString(4, orderID);
 
-        String sql = statements.getProperty("removeOrder");
-        logger.info("SQL: " + sql);
+                ps.executeUpdate();
+            }
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, orderID);
-            ps.executeUpdate();
+        } finally {
+            connFactory.returnConn(conn);
         }
     }
 
     @Override
     public void removeExpiredOrders(Date currentTime) throws Exception {
 
-        connect();
+        Connection conn = connect();
 
-        logger.info("Getting expired order IDs");
+        try {
+            logger.info("Removing expired orders");
 
-        Collection<String> orderIDs = getExpiredOrderIDs(currentTime);
+            if (removeExpired(conn, currentTime,
+                    "removeExpiredOrderIdentifiers",
+                    "removeExpiredOrderAuthorizations",
+                    "removeExpiredOrders")) {
+                return;
+            }
 
-        logger.info("Removing expired orders");
+            logger.info("Getting expired order IDs");
 
-        for (String orderID : orderIDs) {
-            removeOrder(orderID);
+            Collection<String> orderIDs = getExpiredOrderIDs(conn, currentTime);
+
+            removeRecords(conn, orderIDs,
+                    "removeOrderIdentifiers",
+                    "removeOrderAuthorizations",
+                    "removeOrder");
+
+        } finally {
+            connFactory.returnConn(conn);
         }
     }
 
     @Override
     public ACMEAuthorization getAuthorization(String authzID) throws Exception {
 
-        connect();
+        Connection conn = connect();
 
-        logger.info("Getting authorization " + authzID);
+        try {
+            logger.info("Getting authorization " + authzID);
 
-        String sql = statements.getProperty("getAuthorization");
-        logger.info("SQL: " + sql);
+            String sql = statements.getProperty("getAuthorization");
+            logger.info("SQL: " + sql);
 
-        ACMEAuthorization authorization = new ACMEAuthorization();
+            ACMEAuthorization authorization = new ACMEAuthorization();
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, authzID);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, authzID);
 
-            try (ResultSet rs = ps.executeQuery()) {
+                try (ResultSet rs = ps.executeQuery()) {
 
-                if (!rs.next()) {
-                    return null;
-                }
+                    if (!rs.next()) {
+                        return null;
+                    }
 
-                authorization.setID(authzID);
-                authorization.setAccountID(rs.getString("account_id"));
+                    authorization.setID(authzID);
+                    authorization.setAccountID(rs.getString("account_id"));
 
-                Timestamp created = rs.getTimestamp("created");
-                authorization.setCreationTime(created == null ? null : new Date(created.getTime()));
+                    Timestamp created = rs.getTimestamp("created");
+                    authorization.setCreationTime(created == null ? null : new Date(created.getTime()));
 
-                authorization.setStatus(rs.getString("status"));
+                    authorization.setStatus(rs.getString("status"));
 
-                Timestamp expires = rs.getTimestamp("expires");
-                authorization.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
+                    Timestamp expires = rs.getTimestamp("expires");
+                    authorization.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
 
-                ACMEIdentifier identifier = new ACMEIdentifier();
-                identifier.setType(rs.getString("identifier_type"));
-                identifier.setValue(rs.getString("identifier_value"));
-                authorization.setIdentifier(identifier);
+                    ACMEIdentifier identifier = new ACMEIdentifier();
+                    identifier.setType(rs.getString("identifier_type"));
+                    identifier.setValue(rs.getString("identifier_value"));
+                    authorization.setIdentifier(identifier);
 
-                boolean wildcard = rs.getBoolean("wildcard");
-                authorization.setWildcard(wildcard ? true : null);
+                    boolean wildcard = rs.getBoolean("wildcard");
+                    authorization.setWildcard(wildcard ? true : null);
+                }
             }
-        }
 
-        getAuthorizationChallenges(authorization);
+            getAuthorizationChallenges(conn, authorization);
+
+            return authorization;
 
-        return authorization;
+        } finally {
+            connFactory.returnConn(conn);
+        }
     }
 
     @Override
     public ACMEAuthorization getAuthorizationByChallenge(String challengeID) throws Exception {
 
-        connect();
+        Connection conn = connect();
 
-        logger.info("Getting authorization for challenge " + challengeID);
+        try {
+            logger.info("Getting authorization for challenge " + challengeID);
 
-        String sql = statements.getProperty("getAuthorizationByChallenge");
-        logger.info("SQL: " + sql);
+            String sql = statements.getProperty("getAuthorizationByChallenge");
+            logger.info("SQL: " + sql);
 
-        ACMEAuthorization authorization = new ACMEAuthorization();
+            ACMEAuthorization authorization = new ACMEAuthorization();
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, challengeID);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, challengeID);
 
-            try (ResultSet rs = ps.executeQuery()) {
+                try (ResultSet rs = ps.executeQuery()) {
 
-                if (!rs.next()) {
-                    return null;
-                }
+                    if (!rs.next()) {
+                        return null;
+                    }
 
-                authorization.setID(rs.getString("id"));
-                authorization.setAccountID(rs.getString("account_id"));
+                    authorization.setID(rs.getString("id"));
+                    authorization.setAccountID(rs.getString("account_id"));
 
-                Timestamp created = rs.getTimestamp("created");
-                authorization.setCreationTime(created == null ? null : new Date(created.getTime()));
+                    Timestamp created = rs.getTimestamp("created");
+                    authorization.setCreationTime(created == null ? null : new Date(created.getTime()));
 
-                authorization.setStatus(rs.getString("status"));
+                    authorization.setStatus(rs.getString("status"));
 
-                Timestamp expires = rs.getTimestamp("expires");
-                authorization.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
+                    Timestamp expires = rs.getTimestamp("expires");
+                    authorization.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
 
-                ACMEIdentifier identifier = new ACMEIdentifier();
-                identifier.setType(rs.getString("identifier_type"));
-                identifier.setValue(rs.getString("identifier_value"));
-                authorization.setIdentifier(identifier);
+                    ACMEIdentifier identifier = new ACMEIdentifier();
+                    identifier.setType(rs.getString("identifier_type"));
+                    identifier.setValue(rs.getString("identifier_value"));
+                    authorization.setIdentifier(identifier);
 
-                boolean wildcard = rs.getBoolean("wildcard");
-                authorization.setWildcard(wildcard ? true : null);
+                    boolean wildcard = rs.getBoolean("wildcard");
+                    authorization.setWildcard(wildcard ? true : null);
+                }
             }
-        }
 
-        getAuthorizationChallenges(authorization);
+            getAuthorizationChallenges(conn, authorization);
+
+            return authorization;
 
-        return authorization;
+        } finally {
+            connFactory.returnConn(conn);
+        }
     }
 
-    private Collection<String> getExpiredAuthorizationIDs(Date currentTime) throws Exception {
+    private Collection<String> getExpiredAuthorizationIDs(Connection conn, Date currentTime) throws Exception {
 
         String sql = statements.getProperty("getExpiredAuthorizationIDs");
         logger.info("SQL: " + sql);
 
         Collection<String> authzIDs = new ArrayList<>();
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setTimestamp(1, new Timestamp(currentTime.getTime()), UTC);
 
             try (ResultSet rs = ps.executeQuery()) {
@@ -1121,55 +1179,60 @@ public class PostgreSQLDatabase extends ACMEDatabase {
     @Override
     public Collection<ACMEAuthorization> getRevocationAuthorizations(String accountID, Date time) throws Exception {
 
-        connect();
+        Connection conn = connect();
 
-        logger.info("Getting authorizations for account " + accountID);
+        try {
+            logger.info("Getting authorizations for account " + accountID);
 
-        String sql = statements.getProperty("getRevocationAuthorizations");
-        logger.info("SQL: " + sql);
+            String sql = statements.getProperty("getRevocationAuthorizations");
+            logger.info("SQL: " + sql);
 
-        Collection<ACMEAuthorization> authorizations = new ArrayList<>();
+            Collection<ACMEAuthorization> authorizations = new ArrayList<>();
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, accountID);
-            ps.setTimestamp(2, new Timestamp(time.getTime()), UTC);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, accountID);
+                ps.setTimestamp(2, new Timestamp(time.getTime()), UTC);
 
-            try (ResultSet rs = ps.executeQuery()) {
+                try (ResultSet rs = ps.executeQuery()) {
 
-                while (rs.next()) {
+                    while (rs.next()) {
 
-                    ACMEAuthorization authorization = new ACMEAuthorization();
+                        ACMEAuthorization authorization = new ACMEAuthorization();
 
-                    authorization.setID(rs.getString("id"));
-                    authorization.setAccountID(accountID);
+                        authorization.setID(rs.getString("id"));
+                        authorization.setAccountID(accountID);
 
-                    Timestamp created = rs.getTimestamp("created");
-                    authorization.setCreationTime(created == null ? null : new Date(created.getTime()));
+                        Timestamp created = rs.getTimestamp("created");
+                        authorization.setCreationTime(created == null ? null : new Date(created.getTime()));
 
-                    authorization.setStatus(rs.getString("status"));
+                        authorization.setStatus(rs.getString("status"));
 
-                    Timestamp expires = rs.getTimestamp("expires");
-                    authorization.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
+                        Timestamp expires = rs.getTimestamp("expires");
+                        authorization.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
 
-                    ACMEIdentifier identifier = new ACMEIdentifier();
-                    identifier.setType(rs.getString("identifier_type"));
-                    identifier.setValue(rs.getString("identifier_value"));
-                    authorization.setIdentifier(identifier);
+                        ACMEIdentifier identifier = new ACMEIdentifier();
+                        identifier.setType(rs.getString("identifier_type"));
+                        identifier.setValue(rs.getString("identifier_value"));
+                        authorization.setIdentifier(identifier);
 
-                    boolean wildcard = rs.getBoolean("wildcard");
-                    authorization.setWildcard(wildcard ? true : null);
+                        boolean wildcard = rs.getBoolean("wildcard");
+                        authorization.setWildcard(wildcard ? true : null);
 
-                    getAuthorizationChallenges(authorization);
+                        getAuthorizationChallenges(conn, authorization);
 
-                    authorizations.add(authorization);
+                        authorizations.add(authorization);
+                    }
                 }
             }
-        }
 
-        return authorizations;
+            return authorizations;
+
+        } finally {
+            connFactory.returnConn(conn);
+        }
     }
 
-    private void getAuthorizationChallenges(ACMEAuthorization authorization) throws Exception {
+    private void getAuthorizationChallenges(Connection conn, ACMEAuthorization authorization) throws Exception {
 
         String authzID = authorization.getID();
         logger.info("Getting challenges for authorization " + authzID);
@@ -1177,7 +1240,7 @@ public class PostgreSQLDatabase extends ACMEDatabase {
         String sql = statements.getProperty("getAuthorizationChallenges");
         logger.info("SQL: " + sql);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, authzID);
 
             try (ResultSet rs = ps.executeQuery()) {
@@ -1209,81 +1272,91 @@ public class PostgreSQLDatabase extends ACMEDatabase {
     @Override
     public void addAuthorization(ACMEAuthorization authorization) throws Exception {
 
-        connect();
+        Connection conn = connect();
 
-        String authzID = authorization.getID();
-        logger.info("Adding authorization " + authzID);
+        try {
+            String authzID = authorization.getID();
+            logger.info("Adding authorization " + authzID);
 
-        String sql = statements.getProperty("addAuthorization");
-        logger.info("SQL: " + sql);
+            String sql = statements.getProperty("addAuthorization");
+            logger.info("SQL: " + sql);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
 
-            ps.setString(1, authzID);
-            ps.setString(2, authorization.getAccountID());
+                ps.setString(1, authzID);
+                ps.setString(2, authorization.getAccountID());
 
-            Date creationTime = authorization.getCreationTime();
-            ps.setTimestamp(3, creationTime == null ? null : new Timestamp(creationTime.getTime()), UTC);
+                Date creationTime = authorization.getCreationTime();
+                ps.setTimestamp(3, creationTime == null ? null : new Timestamp(creationTime.getTime()), UTC);
 
-            ps.setString(4, authorization.getStatus());
+                ps.setString(4, authorization.getStatus());
 
-            Date expirationTime = authorization.getExpirationTime();
-            ps.setTimestamp(5, expirationTime == null ? null : new Timestamp(expirationTime.getTime()), UTC);
+                Date expirationTime = authorization.getExpirationTime();
+                ps.setTimestamp(5, expirationTime == null ? null : new Timestamp(expirationTime.getTime()), UTC);
 
-            ACMEIdentifier identifier = authorization.getIdentifier();
-            ps.setString(6, identifier.getType());
-            ps.setString(7, identifier.getValue());
+                ACMEIdentifier identifier = authorization.getIdentifier();
+                ps.setString(6, identifier.getType());
+                ps.setString(7, identifier.getValue());
 
-            Boolean wildcard = authorization.getWildcard();
-            ps.setBoolean(8, wildcard == null ? false : wildcard);
+                Boolean wildcard = authorization.getWildcard();
+                ps.setBoolean(8, wildcard == null ? false : wildcard);
 
-            ps.executeUpdate();
-        }
+                ps.executeUpdate();
+            }
 
-        addAuthorizationChallenges(authorization);
+            addAuthorizationChallenges(conn, authorization);
+
+        } finally {
+            connFactory.returnConn(conn);
+        }
     }
 
     @Override
     public void updateAuthorization(ACMEAuthorization authorization) throws Exception {
 
-        connect();
+        Connection conn = connect();
 
-        String authzID = authorization.getID();
-        logger.info("Updating authorization " + authzID);
+        try {
+            String authzID = authorization.getID();
+            logger.info("Updating authorization " + authzID);
 
-        String sql = statements.getProperty("updateAuthorization");
-        logger.info("SQL: " + sql);
+            String sql = statements.getProperty("updateAuthorization");
+            logger.info("SQL: " + sql);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
 
-            ps.setString(1, authorization.getStatus());
+                ps.setString(1, authorization.getStatus());
 
-            Date expirationTime = authorization.getExpirationTime();
-            ps.setTimestamp(2, expirationTime == null ? null : new Timestamp(expirationTime.getTime()), UTC);
+                Date expirationTime = authorization.getExpirationTime();
+                ps.setTimestamp(2, expirationTime == null ? null : new Timestamp(expirationTime.getTime()), UTC);
 
-            ps.setString(3, authzID);
+                ps.setString(3, authzID);
 
-            ps.executeUpdate();
-        }
+                ps.executeUpdate();
+            }
 
-        removeAuthorizationChallenges(authzID);
-        addAuthorizationChallenges(authorization);
+            removeAuthorizationChallenges(conn, authzID);
+            addAuthorizationChallenges(conn, authorization);
+
+        } finally {
+            connFactory.returnConn(conn);
+        }
     }
 
-    private void removeAuthorizationChallenges(String authzID) throws Exception {
+    private void removeAuthorizationChallenges(Connection conn, String authzID) throws Exception {
 
         logger.info("Removing challenges for authorization " + authzID);
 
         String sql = statements.getProperty("removeAuthorizationChallenges");
         logger.info("SQL: " + sql);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, authzID);
             ps.executeUpdate();
         }
     }
 
-    private void addAuthorizationChallenges(ACMEAuthorization authorization) throws Exception {
+    private void addAuthorizationChallenges(Connection conn, ACMEAuthorization authorization) throws Exception {
 
         Collection<ACMEChallenge> challenges = authorization.getChallenges();
         if (challenges == null) return;
@@ -1294,7 +1367,7 @@ public class PostgreSQLDatabase extends ACMEDatabase {
         String sql = statements.getProperty("addAuthorizationChallenges");
         logger.info("SQL: " + sql);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
 
             for (ACMEChallenge challenge : challenges) {
 
@@ -1307,85 +1380,88 @@ public class PostgreSQLDatabase extends ACMEDatabase {
                 Date validationTime = challenge.getValidationTime();
                 ps.setTimestamp(6, validationTime == null ? null : new Timestamp(validationTime.getTime()), UTC);
 
-                ps.executeUpdate();
+                ps.addBatch();
             }
-        }
-    }
-
-    private void removeAuthorization(String authzID) throws Exception {
-
-        removeAuthorizationChallenges(authzID);
-
-        logger.info("Removing authorization " + authzID);
 
-        String sql = statements.getProperty("removeAuthorization");
-        logger.info("SQL: " + sql);
-
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, authzID);
-            ps.executeUpdate();
+            ps.executeBatch();
         }
     }
 
     @Override
     public void removeExpiredAuthorizations(Date currentTime) throws Exception {
 
-        connect();
+        Connection conn = connect();
+
+        try {
+            logger.info("Removing expired authorizations");
+
+            if (removeExpired(conn, currentTime,
+                    "removeExpiredAuthorizationChallenges",
+                    "removeExpiredAuthorizations")) {
+                return;
+            }
 
-        logger.info("Getting expired authorization IDs");
+            logger.info("Getting expired authorization IDs");
 
-        Collection<String> authzIDs = getExpiredAuthorizationIDs(currentTime);
+            Collection<String> authzIDs = getExpiredAuthorizationIDs(conn, currentTime);
 
-        logger.info("Removing expired authorization");
+            removeRecords(conn, authzIDs,
+                    "removeAuthorizationChallenges",
+                    "removeAuthorization");
 
-        for (String authzID : authzIDs) {
-            removeAuthorization(authzID);
+        } finally {
+            connFactory.returnConn(conn);
         }
     }
 
     @Override
     public ACMECertificate getCertificate(String certID) throws Exception {
 
-        connect();
+        Connection conn = connect();
 
-        logger.info("Getting certificate " + certID);
+        try {
+            logger.info("Getting certificate " + certID);
 
-        String sql = statements.getProperty("getCertificate");
-        logger.info("SQL: " + sql);
+            String sql = statements.getProperty("getCertificate");
+            logger.info("SQL: " + sql);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, certID);
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, certID);
 
-            try (ResultSet rs = ps.executeQuery()) {
+                try (ResultSet rs = ps.executeQuery()) {
 
-                if (!rs.next()) {
-                    return null;
-                }
+                    if (!rs.next()) {
+                        return null;
+                    }
 
-                ACMECertificate certificate = new ACMECertificate();
-                certificate.setID(certID);
+                    ACMECertificate certificate = new ACMECertificate();
+                    certificate.setID(certID);
 
-                Timestamp created = rs.getTimestamp("created");
-                certificate.setCreationTime(created == null ? null : new Date(created.getTime()));
+                    Timestamp created = rs.getTimestamp("created");
+                    certificate.setCreationTime(created == null ? null : new Date(created.getTime()));
 
-                certificate.setData(rs.getBytes("data"));
+                    certificate.setData(rs.getBytes("data"));
 
-                Timestamp expires = rs.getTimestamp("expires");
-                certificate.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
+                    Timestamp expires = rs.getTimestamp("expires");
+                    certificate.setExpirationTime(expires == null ? null : new Date(expires.getTime()));
 
-                return certificate;
+                    return certificate;
+                }
             }
+
+        } finally {
+            connFactory.returnConn(conn);
         }
     }
 
-    private Collection<String> getExpiredCertificateIDs(Date currentTime) throws Exception {
+    private Collection<String> getExpiredCertificateIDs(Connection conn, Date currentTime) throws Exception {
 
         String sql = statements.getProperty("getExpiredCertificateIDs");
         logger.info("SQL: " + sql);
 
         Collection<String> certIDs = new ArrayList<>();
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setTimestamp(1, new Timestamp(currentTime.getTime()), UTC);
 
             try (ResultSet rs = ps.executeQuery()) {
@@ -1403,55 +1479,135 @@ public class PostgreSQLDatabase extends ACMEDatabase {
     @Override
     public void addCertificate(String certID, ACMECertificate certificate) throws Exception {
 
-        connect();
+        Connection conn = connect();
 
-        logger.info("Adding certificate " + certID);
+        try {
+            logger.info("Adding certificate " + certID);
 
-        String sql = statements.getProperty("addCertificate");
-        logger.info("SQL: " + sql);
+            String sql = statements.getProperty("addCertificate");
+            logger.info("SQL: " + sql);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
 
-            ps.setString(1, certID);
+                ps.setString(1, certID);
 
-            Date creationTime = certificate.getCreationTime();
-            ps.setTimestamp(2, creationTime == null ? null : new Timestamp(creationTime.getTime()), UTC);
+                Date creationTime = certificate.getCreationTime();
+                ps.setTimestamp(2, creationTime == null ? null : new Timestamp(creationTime.getTime()), UTC);
 
-            ps.setBytes(3, certificate.getData());
+                ps.setBytes(3, certificate.getData());
 
-            Date expirationTime = certificate.getExpirationTime();
-            ps.setTimestamp(4, expirationTime == null ? null : new Timestamp(expirationTime.getTime()), UTC);
+                Date expirationTime = certificate.getExpirationTime();
+                ps.setTimestamp(4, expirationTime == null ? null : new Timestamp(expirationTime.getTime()), UTC);
 
-            ps.executeUpdate();
+                ps.executeUpdate();
+            }
+
+        } finally {
+            connFactory.returnConn(conn);
         }
     }
 
-    private void removeCertificate(String certID) throws Exception {
+    @Override
+    public void removeExpiredCertificates(Date currentTime) throws Exception {
 
-        logger.info("Removing certificate " + certID);
+        Connection conn = connect();
 
-        String sql = statements.getProperty("removeCertificate");
-        logger.info("SQL: " + sql);
+        try {
+            logger.info("Removing expired certificates");
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
-            ps.setString(1, certID);
-            ps.executeUpdate();
+            if (removeExpired(conn, currentTime, "removeExpiredCertificates")) {
+                return;
+            }
+
+            logger.info("Getting expired certificate IDs");
+
+            Collection<String> certIDs = getExpiredCertificateIDs(conn, currentTime);
+
+            removeRecords(conn, certIDs, "removeCertificate");
+
+        } finally {
+            connFactory.returnConn(conn);
         }
     }
 
-    @Override
-    public void removeExpiredCertificates(Date currentTime) throws Exception {
+    /**
+     * This method will remove expired records with bulk delete statements
+     * that take the current time as the only parameter. The statements
+     * are executed in a single transaction in the given order.
+     *
+     * @return false if the statements are not defined (e.g. in a custom
+     * statements file), in which case nothing is removed
+     */
+    private boolean removeExpired(Connection conn, Date currentTime, String... names) throws Exception {
 
-        connect();
+        for (String name : names) {
+            if (statements.getProperty(name) == null) {
+                logger.info("Missing statement: " + name);
+                return false;
+            }
+        }
+
+        conn.setAutoCommit(false);
 
-        logger.info("Getting expired certificaate IDs");
+        try {
+            for (String name : names) {
 
-        Collection<String> certIDs = getExpiredCertificateIDs(currentTime);
+                String sql = statements.getProperty(name);
+                logger.info("SQL: " + sql);
 
-        logger.info("Removing expired certificates");
+                try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                    ps.setTimestamp(1, new Timestamp(currentTime.getTime()), UTC);
+                    int count = ps.executeUpdate();
+                    logger.info("Removed " + count + " record(s)");
+                }
+            }
 
-        for (String certID : certIDs) {
-            removeCertificate(certID);
+            conn.commit();
+
+        } catch (Exception e) {
+            conn.rollback();
+            throw e;
+
+        } finally {
+            conn.setAutoCommit(true);
+        }
+
+        return true;
+    }
+
+    /**
+     * This method will remove records with delete statements that take
+     * the record ID as the only parameter. Each statement is prepared
+     * once and executed in batches for all IDs.
+     */
+    private void removeRecords(Connection conn, Collection<String> ids, String... names) throws Exception {
+
+        if (ids.isEmpty()) return;
+
+        logger.info("Removing " + ids.size() + " record(s)");
+
+        for (String name : names) {
+
+            String sql = statements.getProperty(name);
+            logger.info("SQL: " + sql);
+
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+
+                int count = 0;
+                for (String id : ids) {
+
+                    ps.setString(1, id);
+                    ps.addBatch();
+
+                    if (++count % BATCH_SIZE == 0) {
+                        ps.executeBatch();
+                    }
+                }
+
+                if (count % BATCH_SIZE != 0) {
+                    ps.executeBatch();
+                }
+            }
         }
     }
 
@@ -1462,8 +1618,8 @@ public class PostgreSQLDatabase extends ACMEDatabase {
             monitor.stop();
         }
 
-        if (connection != null) {
-            connection.close();
+        if (connFactory != null) {
+            connFactory.shutdown();
         }
     }
 }
@@ -26,6 +26,7 @@ import com.netscape.certsrv.util.JSONSerializer;
 public class ACMESchedulerConfig implements JSONSerializer {
 
     private Integer threads;
+    private ACMEValidationConfig validation = new ACMEValidationConfig();
     private Map<String, ACMETaskConfig> tasks = new HashMap<>();
 
     public Integer getThreads() {
@@ -36,6 +37,14 @@ public class ACMESchedulerConfig implements JSONSerializer {
         this.threads = threads;
     }
 
+    public ACMEValidationConfig getValidation() {
+        return validation;
+    }
+
+    public void setValidation(ACMEValidationConfig validation) {
+        this.validation = validation;
+    }
+
     public ACMETaskConfig getTask(String name) {
         return tasks.get(name);
     }
@@ -67,6 +76,11 @@ public class ACMESchedulerConfig implements JSONSerializer {
                 continue;
             }
 
+            if (key.startsWith("validation.")) {
+                schedulerConfig.getValidation().setProperty(key.substring(11), value);
+                continue;
+            }
+
             // split key by dots
             String[] parts = key.split("\\.");
             String name = parts[0];
@@ -0,0 +1,119 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.acme.scheduler;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.netscape.certsrv.util.JSONSerializer;
+
+/**
+ * Challenge validation parameters in scheduler.conf, for example:
+ *
+ * <pre>
+ * validation.threads=4
+ * validation.maxAttempts=5
+ * validation.delay=5
+ * validation.backoff=2
+ * validation.maxDelay=30
+ * validation.maxPending=1000
+ * </pre>
+ *
+ * Delays are in seconds.
+ */
+@JsonInclude(Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown=true)
+public class ACMEValidationConfig implements JSONSerializer {
+
+    private Integer threads;
+    private Integer maxAttempts;
+    private Integer delay;
+    private Double backoff;
+    private Integer maxDelay;
+    private Integer maxPending;
+
+    public Integer getThreads() {
+        return threads;
+    }
+
+    public void setThreads(Integer threads) {
+        this.threads = threads;
+    }
+
+    public Integer getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(Integer maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public Integer getDelay() {
+        return delay;
+    }
+
+    public void setDelay(Integer delay) {
+        this.delay = delay;
+    }
+
+    public Double getBackoff() {
+        return backoff;
+    }
+
+    public void setBackoff(Double backoff) {
+        this.backoff = backoff;
+    }
+
+    public Integer getMaxDelay() {
+        return maxDelay;
+    }
+
+    public void setMaxDelay(Integer maxDelay) {
+        this.maxDelay = maxDelay;
+    }
+
+    public Integer getMaxPending() {
+        return maxPending;
+    }
+
+    public void setMaxPending(Integer maxPending) {
+        this.maxPending = maxPending;
+    }
+
+    public void setProperty(String key, String value) throws Exception {
+
+        if (key.equals("threads")) {
+            threads = Integer.valueOf(value);
+
+        } else if (key.equals("maxAttempts")) {
+            maxAttempts = Integer.valueOf(value);
+
+        } else if (key.equals("delay")) {
+            delay = Integer.valueOf(value);
+
+        } else if (key.equals("backoff")) {
+            backoff = Double.valueOf(value);
+
+        } else if (key.equals("maxDelay")) {
+            maxDelay = Integer.valueOf(value);
+
+        } else if (key.equals("maxPending")) {
+            maxPending = Integer.valueOf(value);
+
+        } else {
+            throw new Exception("Unknown validation parameter: " + key);
+        }
+    }
+
+    @Override
+    public String toString() {
+        try {
+            return toJSON();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
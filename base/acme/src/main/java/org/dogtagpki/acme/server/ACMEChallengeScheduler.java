@@ -0,0 +1,314 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.acme.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.dogtagpki.acme.ValidationResult;
+import org.dogtagpki.acme.scheduler.ACMEValidationConfig;
+
+/**
+ * Schedules challenge validation attempts on a bounded thread pool.
+ *
+ * Failed attempts are retried on a timer with exponential backoff
+ * instead of sleeping in a thread. Each challenge has at most one
+ * validation in progress, and a client asking to retry a challenge
+ * only moves the next attempt forward.
+ */
+public class ACMEChallengeScheduler {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ACMEChallengeScheduler.class);
+
+    public static final int DEFAULT_THREADS = 4;
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+    public static final int DEFAULT_DELAY = 5; // seconds
+    public static final double DEFAULT_BACKOFF = 2;
+    public static final int DEFAULT_MAX_DELAY = 30; // seconds
+    public static final int DEFAULT_MAX_PENDING = 1000;
+
+    private int threads;
+    private int maxAttempts;
+    private long delay; // milliseconds
+    private double backoff;
+    private long maxDelay; // milliseconds
+    private int maxPending;
+
+    private ScheduledThreadPoolExecutor executor;
+
+    // challenge ID -> validation in progress
+    private Map<String, Validation> validations = new ConcurrentHashMap<>();
+
+    private LongAdder validated = new LongAdder();
+    private LongAdder attempts = new LongAdder();
+    private LongAdder latency = new LongAdder(); // milliseconds
+
+    public void init(ACMEValidationConfig config) {
+
+        logger.info("Initializing ACME challenge scheduler");
+
+        Integer threads = config.getThreads();
+        this.threads = threads == null ? DEFAULT_THREADS : threads;
+        logger.info("- threads: " + this.threads);
+
+        Integer maxAttempts = config.getMaxAttempts();
+        this.maxAttempts = maxAttempts == null ? DEFAULT_MAX_ATTEMPTS : maxAttempts;
+        logger.info("- max attempts: " + this.maxAttempts);
+
+        Integer delay = config.getDelay();
+        this.delay = (delay == null ? DEFAULT_DELAY : delay) * 1000L;
+        logger.info("- delay: " + this.delay / 1000 + " s");
+
+        Double backoff = config.getBackoff();
+        this.backoff = backoff == null ? DEFAULT_BACKOFF : Math.max(1, backoff);
+        logger.info("- backoff: " + this.backoff);
+
+        Integer maxDelay = config.getMaxDelay();
+        this.maxDelay = (maxDelay == null ? DEFAULT_MAX_DELAY : maxDelay) * 1000L;
+        logger.info("- max delay: " + this.maxDelay / 1000 + " s");
+
+        Integer maxPending = config.getMaxPending();
+        this.maxPending = maxPending == null ? DEFAULT_MAX_PENDING : maxPending;
+        logger.info("- max pending: " + this.maxPending);
+
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ScheduledThreadPoolExecutor(this.threads, r -> {
+            Thread thread = new Thread(r, "ACMEChallengeScheduler-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Returns true if no more validations can be scheduled.
+     */
+    public boolean isFull() {
+        return validations.size() >= maxPending;
+    }
+
+    /**
+     * Schedules the validation of a challenge.
+     *
+     * @return false if the challenge is already being validated
+     */
+    public boolean schedule(ACMEChallengeProcessor processor) {
+
+        String challengeID = processor.getChallengeID();
+        Validation validation = new Validation(processor);
+
+        if (validations.putIfAbsent(challengeID, validation) != null) {
+            logger.info("Challenge " + challengeID + " is already being validated");
+            return false;
+        }
+
+        logger.info("Scheduling validation of challenge " + challengeID
+                + " (" + validations.size() + " pending)");
+
+        try {
+            validation.schedule(0);
+        } catch (RuntimeException e) {
+            validations.remove(challengeID, validation);
+            throw e;
+        }
+
+        return true;
+    }
+
+    /**
+     * Moves the next validation attempt of a challenge forward when the
+     * client asks to retry the challenge (RFC 8555 Section 8.2). Retries
+     * are limited to one per configured delay.
+     *
+     * @return false if the challenge is not being validated
+     */
+    public boolean retry(String challengeID) {
+
+        Validation validation = validations.get(challengeID);
+        if (validation == null) {
+            return false;
+        }
+
+        validation.retry();
+        return true;
+    }
+
+    /**
+     * Returns the time of the next validation attempt of a challenge,
+     * or null if the challenge is not being validated.
+     */
+    public Long getNextAttemptTime(String challengeID) {
+
+        Validation validation = validations.get(challengeID);
+        if (validation == null) {
+            return null;
+        }
+
+        return validation.getNextAttemptTime();
+    }
+
+    /**
+     * Returns the delay in milliseconds after the given number of failed
+     * attempts.
+     */
+    public long getDelay(int failedAttempts) {
+        double d = delay * Math.pow(backoff, Math.max(0, failedAttempts - 1));
+        return (long) Math.min(d, maxDelay);
+    }
+
+    /**
+     * Returns the number of challenges being validated.
+     */
+    public int getQueueSize() {
+        return validations.size();
+    }
+
+    /**
+     * Returns the number of validations that have completed.
+     */
+    public long getValidated() {
+        return validated.sum();
+    }
+
+    /**
+     * Returns the number of validation attempts.
+     */
+    public long getAttempts() {
+        return attempts.sum();
+    }
+
+    /**
+     * Returns the average time in milliseconds from scheduling a
+     * validation to its completion.
+     */
+    public long getAverageLatency() {
+        long n = validated.sum();
+        return n == 0 ? 0 : latency.sum() / n;
+    }
+
+    public void logStats() {
+        logger.info("ACMEChallengeScheduler: " + validations.size() + " pending, "
+                + validated.sum() + " completed, " + attempts.sum() + " attempts, "
+                + "average latency " + getAverageLatency() + " ms");
+    }
+
+    public void shutdown() {
+
+        logger.info("Shutting down ACME challenge scheduler");
+
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+
+        validations.clear();
+    }
+
+    class Validation implements Runnable {
+
+        final ACMEChallengeProcessor processor;
+        final long startTime = System.currentTimeMillis();
+
+        int failedAttempts;
+        boolean running;
+        long nextAttemptTime;
+        long lastRetryTime;
+        ScheduledFuture<?> future;
+
+        Validation(ACMEChallengeProcessor processor) {
+            this.processor = processor;
+        }
+
+        synchronized void schedule(long delay) {
+            nextAttemptTime = System.currentTimeMillis() + delay;
+            future = executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+        }
+
+        synchronized void retry() {
+
+            long now = System.currentTimeMillis();
+
+            if (running || nextAttemptTime <= now || now - lastRetryTime < delay) {
+                return;
+            }
+
+            if (future.cancel(false)) {
+                logger.info("Retrying challenge " + processor.getChallengeID());
+                lastRetryTime = now;
+                schedule(0);
+            }
+        }
+
+        synchronized long getNextAttemptTime() {
+            return nextAttemptTime;
+        }
+
+        @Override
+        public void run() {
+
+            String challengeID = processor.getChallengeID();
+
+            synchronized (this) {
+                running = true;
+            }
+
+            attempts.increment();
+
+            try {
+                ValidationResult r = processor.validateChallenge();
+
+                if (r.isOK()) {
+                    processor.finalizeValidAuthorization();
+                    complete();
+                    return;
+                }
+
+                if (executor.isShutdown()) {
+                    // the attempt failed because the server is shutting
+                    // down, leave the authorization pending
+                    logger.info("Challenge " + challengeID + " not validated due to shutdown");
+                    return;
+                }
+
+                synchronized (this) {
+                    failedAttempts++;
+
+                    if (failedAttempts < maxAttempts) {
+                        long d = getDelay(failedAttempts);
+                        logger.info("Challenge " + challengeID + " failed attempt " + failedAttempts
+                                + ", retrying in " + d + " ms");
+                        running = false;
+                        schedule(d);
+                        return;
+                    }
+                }
+
+                processor.finalizeInvalidAuthorization(r.getError());
+                complete();
+
+            } catch (Exception e) {
+                logger.error("Unable to process challenge " + challengeID + ": " + e.getMessage(), e);
+                complete();
+            }
+        }
+
+        void complete() {
+
+            long time = System.currentTimeMillis() - startTime;
+
+            validations.remove(processor.getChallengeID(), this);
+            validated.increment();
+            latency.add(time);
+
+            logger.info("Challenge " + processor.getChallengeID() + " processed in " + time + " ms, "
+                    + validations.size() + " validations pending");
+        }
+    }
+}
@@ -11,6 +11,7 @@ import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
@@ -20,6 +21,7 @@ import javax.ws.rs.core.UriInfo;
 import org.dogtagpki.acme.ACMEAccount;
 import org.dogtagpki.acme.ACMEAuthorization;
 import org.dogtagpki.acme.ACMEChallenge;
+import org.dogtagpki.acme.ACMEError;
 import org.dogtagpki.acme.ACMEHeader;
 import org.dogtagpki.acme.ACMENonce;
 import org.dogtagpki.acme.JWS;
@@ -71,17 +73,13 @@ public class ACMEChallengeService {
             throw new Exception("Unknown challenge: " + challengeID);
         }
 
+        ACMEChallengeScheduler challengeScheduler = engine.getChallengeScheduler();
+
         String challengeStatus = challenge.getStatus();
         if (challengeStatus.equals("pending")) {
 
-            String type = challenge.getType();
-            logger.info("Challenge Type: " + type);
-
-            ACMEValidator validator = engine.getValidator(type);
-            if (validator == null) {
-                // TODO: generate proper exception
-                throw new Exception("Unsupported challenge type: " + type);
-            }
+            ACMEValidator validator = getValidator(engine, challenge);
+            checkScheduler(challengeScheduler);
 
             challenge.setStatus("processing");
             engine.updateAuthorization(account, authorization);
@@ -92,11 +90,9 @@ public class ACMEChallengeService {
                     challenge,
                     validator);
 
-            // TODO: use thread pool
-            new Thread(processor).start();
+            challengeScheduler.schedule(processor);
 
         } else if (challengeStatus.equals("processing")) {
-            // TODO: retry the challenge
 
             // RFC 8555 Section 8.2: Retrying Challenges
             //
@@ -108,6 +104,25 @@ public class ACMEChallengeService {
             // avoid denial-of-service attacks via client-initiated retries, servers
             // SHOULD rate-limit such requests.
 
+            if (!challengeScheduler.retry(challengeID)) {
+
+                // The challenge is not being validated by this server, for
+                // example because the server was restarted or the validation
+                // could not be scheduled, so validate it again.
+                logger.info("Rescheduling validation of challenge " + challengeID);
+
+                ACMEValidator validator = getValidator(engine, challenge);
+                checkScheduler(challengeScheduler);
+
+                ACMEChallengeProcessor processor = new ACMEChallengeProcessor(
+                        account,
+                        authorization,
+                        challenge,
+                        validator);
+
+                challengeScheduler.schedule(processor);
+            }
+
 	} else if (challengeStatus.equals("valid")) {
 		logger.info("Challenge is already valid");
 
@@ -124,6 +139,17 @@ public class ACMEChallengeService {
         ACMENonce nonce = engine.createNonce();
         builder.header("Replay-Nonce", nonce.getID());
 
+        // RFC 8555 Section 8.2: Retrying Challenges
+        //
+        // The server SHOULD set the Retry-After header field to a time after the
+        // server's next validation query.
+
+        Long nextAttemptTime = challengeScheduler.getNextAttemptTime(challengeID);
+        if (nextAttemptTime != null) {
+            long delay = nextAttemptTime - System.currentTimeMillis();
+            builder.header("Retry-After", Math.max(1, (delay + 999) / 1000));
+        }
+
         URI directoryURL = uriInfo.getBaseUriBuilder().path("directory").build();
         builder.link(directoryURL, "index");
 
@@ -134,4 +160,42 @@ public class ACMEChallengeService {
 
         return builder.build();
     }
+
+    ACMEValidator getValidator(ACMEEngine engine, ACMEChallenge challenge) throws Exception {
+
+        String type = challenge.getType();
+        logger.info("Challenge Type: " + type);
+
+        ACMEValidator validator = engine.getValidator(type);
+        if (validator == null) {
+            // TODO: generate proper exception
+            throw new Exception("Unsupported challenge type: " + type);
+        }
+
+        return validator;
+    }
+
+    /**
+     * Rejects the request with a rateLimited error if no more
+     * validations can be scheduled.
+     */
+    void checkScheduler(ACMEChallengeScheduler challengeScheduler) {
+
+        if (!challengeScheduler.isFull()) {
+            return;
+        }
+
+        logger.warn("Too many pending challenge validations: " + challengeScheduler.getQueueSize());
+
+        ACMEError error = new ACMEError();
+        error.setType("urn:ietf:params:acme:error:rateLimited");
+        error.setDetail("Too many pending challenge validations, try again later");
+
+        throw new WebApplicationException(Response
+                .status(429)
+                .type("application/problem+json")
+                .header("Retry-After", challengeScheduler.getDelay(1) / 1000)
+                .entity(error)
+                .build());
+    }
 }
@@ -95,6 +95,7 @@ public class ACMEEngine {
     private ACMEIssuer issuer;
 
     private ACMEScheduler scheduler;
+    private ACMEChallengeScheduler challengeScheduler;
 
     private RealmCommon realm;
 
@@ -124,6 +125,10 @@ public class ACMEEngine {
         return policy;
     }
 
+    public ACMEChallengeScheduler getChallengeScheduler() {
+        return challengeScheduler;
+    }
+
     public ACMEMetadata getMetadata() {
         return metadata;
     }
@@ -356,6 +361,9 @@ public class ACMEEngine {
         scheduler = new ACMEScheduler();
         scheduler.setConfig(schedulerConfig);
         scheduler.init();
+
+        challengeScheduler = new ACMEChallengeScheduler();
+        challengeScheduler.init(schedulerConfig.getValidation());
     }
 
     public void initMonitors(String filename) throws Exception {
@@ -492,6 +500,13 @@ public class ACMEEngine {
     }
 
     public void shutdownScheduler() throws Exception {
+
+        if (challengeScheduler != null) {
+            challengeScheduler.logStats();
+            challengeScheduler.shutdown();
+            challengeScheduler = null;
+        }
+
         if (scheduler == null) return;
 
         scheduler.shutdown();
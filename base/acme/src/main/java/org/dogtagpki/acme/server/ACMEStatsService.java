@@ -0,0 +1,48 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.acme.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+
+/**
+ * Returns the statistics of the challenge validation scheduler.
+ */
+@Path("stats")
+public class ACMEStatsService {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ACMEStatsService.class);
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response handleGET() throws Exception {
+
+        logger.info("Getting ACME statistics");
+
+        ACMEEngine engine = ACMEEngine.getInstance();
+        ACMEChallengeScheduler challengeScheduler = engine.getChallengeScheduler();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+
+        if (challengeScheduler != null) {
+            stats.put("pendingValidations", challengeScheduler.getQueueSize());
+            stats.put("completedValidations", challengeScheduler.getValidated());
+            stats.put("validationAttempts", challengeScheduler.getAttempts());
+            stats.put("averageValidationLatency", challengeScheduler.getAverageLatency());
+        }
+
+        ResponseBuilder builder = Response.ok();
+        builder.entity(stats);
+        return builder.build();
+    }
+}
@@ -7,8 +7,6 @@ package com.netscape.ca;
 
 import org.dogtagpki.server.ca.CAEngine;
 
-import com.netscape.certsrv.ldap.ILdapConnFactory;
-import com.netscape.certsrv.ldap.ILdapConnModule;
 import com.netscape.cmscore.ldap.CAPublisherProcessor;
 import com.netscape.cmscore.request.RequestNotifier;
 
@@ -17,40 +15,34 @@ public class CANotify extends RequestNotifier {
     public CANotify() {
     }
 
+    /**
+     * Lets the publisher processor use the same LDAP connection
+     * for all requests in the batch.
+     */
     @Override
-    public boolean checkAvailablePublishingConnections() {
+    protected void startBatch() {
 
         CAEngine engine = CAEngine.getInstance();
         CAPublisherProcessor pp = engine.getPublisherProcessor();
 
         if (pp == null) {
             logger.warn("CANotify: Publisher processor is not accessible");
-            return false;
+            return;
         }
 
-        if (!pp.isCertPublishingEnabled() && !pp.isCRLPublishingEnabled()) {
-            logger.warn("CANotify: Publisher processor is not enabled");
-            return false;
-        }
-
-        ILdapConnModule ldapConnModule = pp.getLdapConnModule();
-        if (ldapConnModule == null) {
-            logger.warn("CANotify: LDAP connection module is not accessible");
-            return false;
-        }
+        pp.startBatch();
+    }
 
-        ILdapConnFactory ldapConnFactory = ldapConnModule.getLdapConnFactory();
-        if (ldapConnFactory == null) {
-            logger.warn("CANotify: LDAP connection factory is not accessible");
-            return false;
-        }
+    @Override
+    protected void endBatch() {
 
-        int maxConnection = ldapConnFactory.maxConn();
-        logger.debug("CANotify: max connection: " + maxConnection);
+        CAEngine engine = CAEngine.getInstance();
+        CAPublisherProcessor pp = engine.getPublisherProcessor();
 
-        int totalConnection = ldapConnFactory.totalConn();
-        logger.debug("CANotify: total connection: " + totalConnection);
+        if (pp == null) {
+            return;
+        }
 
-        return maxConnection > totalConnection;
+        pp.endBatch();
     }
 }
@@ -75,6 +75,7 @@ import com.netscape.cms.profile.common.Profile;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.base.ConfigStore;
 import com.netscape.cmscore.connector.HttpConnector;
+import com.netscape.cmscore.connector.HttpRequestEncoder;
 import com.netscape.cmscore.connector.LocalConnector;
 import com.netscape.cmscore.connector.RemoteAuthority;
 import com.netscape.cmscore.crmf.CRMFParser;
@@ -285,6 +286,7 @@ public class CAService implements IService {
             //	new RemoteAuthority(host, port, uri);
             RemoteAuthority remauthority =
                     new RemoteAuthority(host, port, uri, timeout);
+            remauthority.setWireFormat(config.getString("wireFormat", HttpRequestEncoder.FORMAT_LEGACY));
 
             // Changed by beomsuk
             //connector =
@@ -18,6 +18,14 @@
 package com.netscape.ca;
 
 import java.security.SignatureException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.mozilla.jss.CryptoManager;
 import org.mozilla.jss.NoSuchTokenException;
@@ -43,6 +51,12 @@ import com.netscape.cmsutil.crypto.CryptoUtil;
 /**
  * CA signing unit based on JSS.
  *
+ * Signature contexts initialized with the signing key are kept in a
+ * pool per algorithm and reused, since JSS resets a context to its
+ * initialized state after each signature. The number of concurrent
+ * signing operations can be limited with the maxSigners parameter,
+ * for example to match the number of sessions supported by an HSM.
+ *
  * $Revision$ $Date$
  */
 
@@ -50,6 +64,18 @@ public final class CASigningUnit extends SigningUnit {
 
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CASigningUnit.class);
 
+    // algorithm -> idle signature contexts initialized with mPrivk
+    private Map<SignatureAlgorithm, Pool> signers = new ConcurrentHashMap<>();
+
+    private int signerPoolSize = SigningUnitConfig.DEFAULT_SIGNER_POOL_SIZE;
+
+    // null if the number of concurrent signing operations is unlimited
+    private Semaphore permits;
+
+    private LongAdder created = new LongAdder();
+    private LongAdder reused = new LongAdder();
+    private LongAdder waits = new LongAdder();
+
     public CASigningUnit() {
     }
 
@@ -116,6 +142,16 @@ public final class CASigningUnit extends SigningUnit {
             mDefSigningAlgorithm = checkSigningAlgorithmFromName(mDefSigningAlgname);
             logger.debug("SigningUnit: signing algorithm: " + mDefSigningAlgorithm);
 
+            // contexts initialized with a previous key cannot be reused
+            signers.clear();
+
+            signerPoolSize = config.getSignerPoolSize();
+            logger.debug("SigningUnit: signer pool size: " + signerPoolSize);
+
+            int maxSigners = config.getMaxSigners();
+            logger.debug("SigningUnit: max signers: " + (maxSigners > 0 ? maxSigners : "unlimited"));
+            permits = maxSigners > 0 ? new Semaphore(maxSigners, true) : null;
+
             mInited = true;
 
         } catch (java.security.cert.CertificateException e) {
@@ -145,6 +181,15 @@ public final class CASigningUnit extends SigningUnit {
      */
     @Override
     public byte[] sign(byte[] data, String algname) throws Exception {
+        return sign(Collections.singletonList(data), algname);
+    }
+
+    /**
+     * Signs data that is provided in several chunks, in order.
+     *
+     * @param algname is expected to be one of JCA's algorithm names.
+     */
+    public byte[] sign(List<byte[]> data, String algname) throws Exception {
 
         if (!mInited) {
             throw new EBaseException("CASigningUnit not initialized");
@@ -158,31 +203,90 @@ public final class CASigningUnit extends SigningUnit {
             signAlg = checkSigningAlgorithmFromName(algname);
         }
 
-        // XXX use a pool of signers based on alg ?
-        // XXX Map algor. name to id. hack: use hardcoded define for now.
-        logger.info("CASigningUnit: Getting algorithm context for " + algname + " " + signAlg);
-        Signature signer = mToken.getSignatureContext(signAlg);
+        if (permits != null && !permits.tryAcquire()) {
+            waits.increment();
+            logger.debug("CASigningUnit: Waiting for signer");
+            permits.acquire();
+        }
 
-        signer.initSign(mPrivk);
-        signer.update(data);
+        try {
+            Signature signer = getSigner(signAlg);
+            boolean reusable = false;
+
+            try {
+                for (byte[] chunk : data) {
+                    signer.update(chunk);
+                }
+
+                /* debugging
+                boolean testAutoShutdown = false;
+                testAutoShutdown = mConfig.getBoolean("autoShutdown.test", false);
+                if (testAutoShutdown) {
+                    logger.debug("SigningUnit.sign: test auto shutdown");
+                    CMS.checkForAndAutoShutdown();
+                }
+                */
+
+                logger.info("CASigningUnit: Signing Certificate");
+
+                boolean testSignatureFailure = mConfig.getTestSignatureFailure();
+                if (testSignatureFailure) {
+                    throw new SignatureException("SignatureException forced for testing");
+                }
+
+                byte[] signature = signer.sign();
+                reusable = true;
+
+                return signature;
 
-        /* debugging
-        boolean testAutoShutdown = false;
-        testAutoShutdown = mConfig.getBoolean("autoShutdown.test", false);
-        if (testAutoShutdown) {
-            logger.debug("SigningUnit.sign: test auto shutdown");
-            CMS.checkForAndAutoShutdown();
+            } finally {
+                // contexts in an unknown state are discarded
+                if (reusable) {
+                    returnSigner(signAlg, signer);
+                }
+            }
+
+        } finally {
+            if (permits != null) {
+                permits.release();
+            }
         }
-        */
+    }
+
+    /**
+     * Returns an idle signature context for the algorithm, or a new
+     * context initialized with the signing key.
+     */
+    private Signature getSigner(SignatureAlgorithm signAlg) throws Exception {
 
-        logger.info("CASigningUnit: Signing Certificate");
+        Pool pool = signers.computeIfAbsent(signAlg, k -> new Pool());
 
-        boolean testSignatureFailure = mConfig.getTestSignatureFailure();
-        if (testSignatureFailure) {
-            throw new SignatureException("SignatureException forced for testing");
+        Signature signer = pool.poll();
+        if (signer != null) {
+            reused.increment();
+            return signer;
         }
 
-        return signer.sign();
+        logger.info("CASigningUnit: Getting algorithm context for " + signAlg);
+        signer = mToken.getSignatureContext(signAlg);
+        signer.initSign(mPrivk);
+        created.increment();
+
+        return signer;
+    }
+
+    private void returnSigner(SignatureAlgorithm signAlg, Signature signer) {
+
+        // the pool may have been replaced by init()
+        Pool pool = signers.get(signAlg);
+        if (pool != null) {
+            pool.offer(signer, signerPoolSize);
+        }
+    }
+
+    public void logStats() {
+        logger.info("CASigningUnit: " + mNickname + ": " + created.sum() + " signers created, "
+                + reused.sum() + " reused, " + waits.sum() + " waits");
     }
 
     @Override
@@ -207,4 +311,29 @@ public final class CASigningUnit extends SigningUnit {
 
         return signer.verify(signature);
     }
+
+    /**
+     * Idle signature contexts of one algorithm, most recently used first.
+     */
+    static class Pool {
+
+        private final ConcurrentLinkedDeque<Signature> idle = new ConcurrentLinkedDeque<>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        Signature poll() {
+            Signature signer = idle.pollFirst();
+            if (signer != null) {
+                size.decrementAndGet();
+            }
+            return signer;
+        }
+
+        void offer(Signature signer, int maxSize) {
+            if (size.incrementAndGet() > maxSize) {
+                size.decrementAndGet();
+                return;
+            }
+            idle.offerFirst(signer);
+        }
+    }
 }
@@ -0,0 +1,338 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.ca;
+
+import java.math.BigInteger;
+import java.security.cert.CRLException;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.mozilla.jss.netscape.security.x509.X509CRLImpl;
+
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.cmscore.dbs.CRLIssuingPointRecord;
+import com.netscape.cmscore.dbs.CRLRepository;
+
+/**
+ * Cache of the encoded CRLs and delta CRLs served by GetCRL and
+ * CRLDistributionServlet.
+ *
+ * Only the attributes needed to serve the CRLs are read from the
+ * database, so the revocation caches stored in the issuing point
+ * record are not transferred on every request. The cached entries
+ * are immutable and the encoded CRLs are shared by all requests.
+ *
+ * The entries of issuing points that generate CRLs on this server
+ * are refreshed by CRLIssuingPoint whenever a new CRL or delta CRL
+ * is stored. The entries of other issuing points, for example on
+ * clones, are reloaded after the configured timeout.
+ */
+public class CRLDistributionCache {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CRLDistributionCache.class);
+
+    public static final int DEFAULT_TIMEOUT = 60; // seconds
+
+    private static final String[] ATTRS = {
+            "objectclass",
+            CRLIssuingPointRecord.ATTR_ID,
+            CRLIssuingPointRecord.ATTR_CRL_NUMBER,
+            CRLIssuingPointRecord.ATTR_CRL_SIZE,
+            CRLIssuingPointRecord.ATTR_DELTA_NUMBER,
+            CRLIssuingPointRecord.ATTR_DELTA_SIZE,
+            CRLIssuingPointRecord.ATTR_THIS_UPDATE,
+            CRLIssuingPointRecord.ATTR_NEXT_UPDATE,
+            CRLIssuingPointRecord.ATTR_CRL,
+            CRLIssuingPointRecord.ATTR_DELTA_CRL
+    };
+
+    private final CRLRepository crlRepository;
+    private final boolean enabled;
+    private final long timeout; // milliseconds
+
+    // issuing point ID -> entry
+    private Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private LongAdder hits = new LongAdder();
+    private LongAdder misses = new LongAdder();
+
+    /**
+     * @param crlRepository repository to read the CRLs from
+     * @param enabled false to read the CRLs on every request
+     * @param timeout time in seconds the CRLs of an issuing point that
+     *   does not generate CRLs on this server are used, 0 to keep them
+     *   until they are updated
+     */
+    public CRLDistributionCache(CRLRepository crlRepository, boolean enabled, int timeout) {
+
+        logger.info("CRLDistributionCache: enabled: " + enabled + ", timeout: " + timeout + " s");
+
+        this.crlRepository = crlRepository;
+        this.enabled = enabled;
+        this.timeout = timeout * 1000L;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the CRLs of the issuing point.
+     *
+     * @param id issuing point ID
+     * @param local true if the issuing point generates CRLs on this
+     *   server so the cached CRLs do not expire
+     * @return the CRLs, or null if the issuing point has no record
+     */
+    public Entry get(String id, boolean local) throws EBaseException {
+
+        if (!enabled) {
+            return read(id);
+        }
+
+        Entry entry = entries.get(id);
+
+        if (entry != null
+                && (local || timeout <= 0 || System.currentTimeMillis() - entry.loadTime < timeout)) {
+            hits.increment();
+            return entry;
+        }
+
+        misses.increment();
+        return load(id);
+    }
+
+    /**
+     * Reloads the CRLs of the issuing point after a new CRL or delta
+     * CRL has been stored. If the CRLs cannot be read they are removed
+     * from the cache so the next request reads them again.
+     */
+    public void update(String id) {
+
+        if (!enabled) {
+            return;
+        }
+
+        logger.debug("CRLDistributionCache: Updating " + id);
+
+        try {
+            Entry entry = read(id);
+
+            if (entry == null) {
+                entries.remove(id);
+            } else {
+                // the stored CRLs are always the current ones
+                entries.put(id, entry);
+            }
+
+        } catch (Exception e) {
+            logger.warn("CRLDistributionCache: Unable to update " + id + ": " + e.getMessage(), e);
+            entries.remove(id);
+        }
+    }
+
+    public void invalidate(String id) {
+        entries.remove(id);
+    }
+
+    private Entry load(String id) throws EBaseException {
+
+        Entry entry = read(id);
+
+        if (entry == null) {
+            entries.remove(id);
+            return null;
+        }
+
+        // do not replace newer CRLs stored by a concurrent update()
+        return entries.merge(id, entry, (current, e) -> e.isOlderThan(current) ? current : e);
+    }
+
+    private Entry read(String id) throws EBaseException {
+
+        CRLIssuingPointRecord record = crlRepository.readCRLIssuingPointRecord(id, ATTRS);
+
+        if (record == null) {
+            return null;
+        }
+
+        return new Entry(id, record);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public void logStats() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        logger.info(String.format("CRLDistributionCache: %d lookups, %.1f%% hits",
+                total, total == 0 ? 0 : 100.0 * h / total));
+    }
+
+    /**
+     * Immutable snapshot of the CRLs of an issuing point.
+     */
+    public static class Entry {
+
+        private final String id;
+        private final BigInteger crlNumber;
+        private final Long crlSize;
+        private final BigInteger deltaCRLNumber;
+        private final Long deltaCRLSize;
+        private final Date thisUpdate;
+        private final Date nextUpdate;
+        private final Date deltaCRLThisUpdate;
+        private final byte[] crl;
+        private final byte[] deltaCRL;
+        private final long loadTime = System.currentTimeMillis();
+
+        // decoded on first use
+        private volatile X509CRLImpl x509CRL;
+        private volatile X509CRLImpl x509DeltaCRL;
+
+        Entry(String id, CRLIssuingPointRecord record) {
+
+            this.id = id;
+            crlNumber = record.getCRLNumber();
+            crlSize = record.getCRLSize();
+            deltaCRLNumber = record.getDeltaCRLNumber();
+            deltaCRLSize = record.getDeltaCRLSize();
+            thisUpdate = record.getThisUpdate();
+            nextUpdate = record.getNextUpdate();
+            crl = record.getCRL();
+            deltaCRL = record.getDeltaCRL();
+
+            Date date = null;
+            if (deltaCRL != null) {
+                try {
+                    // the record only stores the dates of the full CRL
+                    date = new X509CRLImpl(deltaCRL, false).getThisUpdate();
+                } catch (Exception e) {
+                    logger.warn("CRLDistributionCache: Unable to decode delta CRL of " + id + ": " + e.getMessage());
+                }
+            }
+            deltaCRLThisUpdate = date;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public BigInteger getCRLNumber() {
+            return crlNumber;
+        }
+
+        public Long getCRLSize() {
+            return crlSize;
+        }
+
+        public BigInteger getDeltaCRLNumber() {
+            return deltaCRLNumber;
+        }
+
+        public Long getDeltaCRLSize() {
+            return deltaCRLSize;
+        }
+
+        public Date getThisUpdate() {
+            return thisUpdate;
+        }
+
+        public Date getNextUpdate() {
+            return nextUpdate;
+        }
+
+        public Date getDeltaCRLThisUpdate() {
+            return deltaCRLThisUpdate;
+        }
+
+        /**
+         * Returns the encoded CRL. The array is shared and must not
+         * be modified.
+         */
+        public byte[] getCRL() {
+            return crl;
+        }
+
+        /**
+         * Returns the encoded delta CRL. The array is shared and must
+         * not be modified.
+         */
+        public byte[] getDeltaCRL() {
+            return deltaCRL;
+        }
+
+        /**
+         * Returns true if the delta CRL is based on the current CRL.
+         */
+        public boolean hasCurrentDeltaCRL() {
+            return deltaCRL != null
+                    && crlNumber != null
+                    && deltaCRLNumber != null
+                    && deltaCRLNumber.compareTo(crlNumber) >= 0
+                    && deltaCRLSize != null
+                    && deltaCRLSize.longValue() != -1;
+        }
+
+        public String getCRLETag() {
+            return crlNumber == null ? null : "\"" + id + "-" + crlNumber.toString(16) + "\"";
+        }
+
+        public String getDeltaCRLETag() {
+            return deltaCRLNumber == null ? null : "\"" + id + "-delta-" + deltaCRLNumber.toString(16) + "\"";
+        }
+
+        /**
+         * Returns the decoded CRL. The CRL is decoded once and shared,
+         * so it must not be modified.
+         */
+        public X509CRLImpl getX509CRL() throws CRLException {
+            X509CRLImpl result = x509CRL;
+            if (result == null && crl != null) {
+                result = new X509CRLImpl(crl);
+                x509CRL = result;
+            }
+            return result;
+        }
+
+        /**
+         * Returns the decoded delta CRL. The delta CRL is decoded once
+         * and shared, so it must not be modified.
+         */
+        public X509CRLImpl getX509DeltaCRL() throws CRLException {
+            X509CRLImpl result = x509DeltaCRL;
+            if (result == null && deltaCRL != null) {
+                result = new X509CRLImpl(deltaCRL);
+                x509DeltaCRL = result;
+            }
+            return result;
+        }
+
+        boolean isOlderThan(Entry entry) {
+
+            int c = compare(crlNumber, entry.crlNumber);
+            if (c != 0) {
+                return c < 0;
+            }
+
+            return compare(deltaCRLNumber, entry.deltaCRLNumber) < 0;
+        }
+
+        private static int compare(BigInteger a, BigInteger b) {
+            if (a == null || b == null) {
+                return a == null ? (b == null ? 0 : -1) : 1;
+            }
+            return a.compareTo(b);
+        }
+    }
+}
@@ -0,0 +1,348 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.ca;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mozilla.jss.netscape.security.util.DerOutputStream;
+import org.mozilla.jss.netscape.security.x509.RevokedCertImpl;
+import org.mozilla.jss.netscape.security.x509.RevokedCertificate;
+
+/**
+ * Sorted store of the DER-encoded entries of a CRL.
+ *
+ * The store is kept across CRL generations, so only the entries that
+ * have been added or replaced since the previous generation need to be
+ * encoded, and those are encoded in parallel chunks. The TBSCertList of
+ * the CRL is returned as a list of chunks which can be passed to the
+ * signer and written into the signed CRL without building a CRL object
+ * that holds all entries.
+ */
+public class CRLEntryStore {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CRLEntryStore.class);
+
+    public static final int DEFAULT_CHUNK_SIZE = 10000;
+
+    private static final int TAG_INTEGER = 0x02;
+    private static final int TAG_SEQUENCE = 0x30;
+    private static final int TAG_EXTENSIONS = 0xA0;
+
+    // version v2 (INTEGER 1)
+    private static final byte[] VERSION_2 = { TAG_INTEGER, 0x01, 0x01 };
+
+    private String id;
+    private int chunkSize;
+    private ExecutorService executorService;
+
+    private ConcurrentSkipListMap<BigInteger, Entry> entries = new ConcurrentSkipListMap<>();
+
+    // total length of the encoded entries
+    private AtomicLong length = new AtomicLong();
+
+    // number of entries with CRL entry extensions
+    private AtomicInteger extensions = new AtomicInteger();
+
+    /**
+     * @param id the CRL issuing point ID
+     * @param threads number of encoding threads, or 0 to use one
+     *   thread per available processor
+     * @param chunkSize number of entries per encoding task
+     */
+    public CRLEntryStore(String id, int threads, int chunkSize) {
+
+        this.id = id;
+        this.chunkSize = chunkSize > 0 ? chunkSize : DEFAULT_CHUNK_SIZE;
+
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+
+        AtomicInteger counter = new AtomicInteger();
+        executorService = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "CRLEntryStore-" + id + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+        length.set(0);
+        extensions.set(0);
+    }
+
+    /**
+     * Updates the store to contain exactly the given CRL entries.
+     * Entries that are no longer in the CRL are removed, entries that
+     * are new or have been replaced with a different object since the
+     * last update are encoded in parallel.
+     */
+    public synchronized void update(Hashtable<BigInteger, RevokedCertificate> certs) throws Exception {
+
+        long startTime = System.currentTimeMillis();
+
+        int removed = 0;
+        for (Iterator<Map.Entry<BigInteger, Entry>> i = entries.entrySet().iterator(); i.hasNext(); ) {
+            Map.Entry<BigInteger, Entry> e = i.next();
+            if (certs.containsKey(e.getKey())) {
+                continue;
+            }
+            i.remove();
+            removeEntry(e.getValue());
+            removed++;
+        }
+
+        List<RevokedCertificate> changed = new ArrayList<>();
+        for (Enumeration<RevokedCertificate> e = certs.elements(); e.hasMoreElements(); ) {
+            RevokedCertificate cert = e.nextElement();
+            Entry entry = entries.get(cert.getSerialNumber());
+            if (entry == null || entry.cert != cert) {
+                changed.add(cert);
+            }
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int start = 0; start < changed.size(); start += chunkSize) {
+            List<RevokedCertificate> chunk = changed.subList(start, Math.min(start + chunkSize, changed.size()));
+            tasks.add(() -> {
+                for (RevokedCertificate cert : chunk) {
+                    put(cert);
+                }
+                return null;
+            });
+        }
+
+        for (Future<Void> future : executorService.invokeAll(tasks)) {
+            // rethrow encoding errors
+            future.get();
+        }
+
+        logger.info("CRLEntryStore: Updated " + id + " CRL entries: " +
+                changed.size() + " encoded, " + removed + " removed, " +
+                entries.size() + " total (" + (System.currentTimeMillis() - startTime) + " ms)");
+    }
+
+    private void put(RevokedCertificate cert) throws Exception {
+
+        DerOutputStream out = new DerOutputStream();
+        ((RevokedCertImpl) cert).encode(out);
+
+        Entry entry = new Entry(cert, out.toByteArray());
+        Entry previous = entries.put(cert.getSerialNumber(), entry);
+
+        if (previous != null) {
+            removeEntry(previous);
+        }
+
+        length.addAndGet(entry.encoded.length);
+        if (cert.hasExtensions()) {
+            extensions.incrementAndGet();
+        }
+    }
+
+    private void removeEntry(Entry entry) {
+        length.addAndGet(-entry.encoded.length);
+        if (entry.cert.hasExtensions()) {
+            extensions.decrementAndGet();
+        }
+    }
+
+    /**
+     * Inserts the encoded entries into the TBSCertList of a CRL that
+     * has been encoded without entries, and returns the resulting
+     * TBSCertList as a list of chunks in encoding order.
+     *
+     * @param header the TBSCertList of a CRL without entries
+     */
+    public synchronized List<byte[]> getTBSCertList(byte[] header) throws IOException {
+
+        // find the fields of the TBSCertList
+        int offset = 1;
+        int contentLength = (int) readLength(header, offset);
+        offset += lengthOfLength(header[offset]);
+
+        if ((header[0] & 0xFF) != TAG_SEQUENCE || offset + contentLength != header.length) {
+            throw new IOException("Invalid TBSCertList");
+        }
+
+        int contentStart = offset;
+
+        // insert entries before the CRL extensions, if any
+        int insertPosition = header.length;
+        while (offset < header.length) {
+            if ((header[offset] & 0xFF) == TAG_EXTENSIONS) {
+                insertPosition = offset;
+                break;
+            }
+            int fieldLength = (int) readLength(header, offset + 1);
+            offset += 1 + lengthOfLength(header[offset + 1]) + fieldLength;
+        }
+
+        // CRL entry extensions require version v2
+        boolean addVersion = extensions.get() > 0 && (header[contentStart] & 0xFF) != TAG_INTEGER;
+
+        long entriesLength = length.get();
+        byte[] entriesHeader = entries.isEmpty() ? new byte[0] : encodeHeader(TAG_SEQUENCE, entriesLength);
+
+        long tbsLength = (addVersion ? VERSION_2.length : 0)
+                + (header.length - contentStart)
+                + entriesHeader.length + (entries.isEmpty() ? 0 : entriesLength);
+
+        List<byte[]> chunks = new ArrayList<>();
+
+        ByteArrayOutputStream prefix = new ByteArrayOutputStream();
+        prefix.write(encodeHeader(TAG_SEQUENCE, tbsLength));
+        if (addVersion) {
+            prefix.write(VERSION_2);
+        }
+        prefix.write(header, contentStart, insertPosition - contentStart);
+        prefix.write(entriesHeader);
+        chunks.add(prefix.toByteArray());
+
+        // pack entries into chunks of about the same size
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+        int count = 0;
+        for (Entry entry : entries.values()) {
+            chunk.write(entry.encoded);
+            if (++count == chunkSize) {
+                chunks.add(chunk.toByteArray());
+                chunk.reset();
+                count = 0;
+            }
+        }
+        if (count > 0) {
+            chunks.add(chunk.toByteArray());
+        }
+
+        if (insertPosition < header.length) {
+            byte[] suffix = new byte[header.length - insertPosition];
+            System.arraycopy(header, insertPosition, suffix, 0, suffix.length);
+            chunks.add(suffix);
+        }
+
+        return chunks;
+    }
+
+    /**
+     * Creates a signed CRL from the TBSCertList chunks and the encoded
+     * signature algorithm and signature.
+     */
+    public static byte[] createSignedCRL(List<byte[]> tbsCertList, byte[] signature) throws IOException {
+
+        long contentLength = signature.length;
+        for (byte[] chunk : tbsCertList) {
+            contentLength += chunk.length;
+        }
+
+        byte[] header = encodeHeader(TAG_SEQUENCE, contentLength);
+
+        if (header.length + contentLength > Integer.MAX_VALUE) {
+            throw new IOException("CRL too large: " + contentLength + " bytes");
+        }
+
+        byte[] crl = new byte[header.length + (int) contentLength];
+        int offset = 0;
+
+        System.arraycopy(header, 0, crl, offset, header.length);
+        offset += header.length;
+
+        for (byte[] chunk : tbsCertList) {
+            System.arraycopy(chunk, 0, crl, offset, chunk.length);
+            offset += chunk.length;
+        }
+
+        System.arraycopy(signature, 0, crl, offset, signature.length);
+
+        return crl;
+    }
+
+    private static byte[] encodeHeader(int tag, long length) {
+
+        if (length < 0x80) {
+            return new byte[] { (byte) tag, (byte) length };
+        }
+
+        int n = 0;
+        for (long l = length; l > 0; l >>= 8) {
+            n++;
+        }
+
+        byte[] header = new byte[2 + n];
+        header[0] = (byte) tag;
+        header[1] = (byte) (0x80 | n);
+
+        for (int i = 0; i < n; i++) {
+            header[1 + n - i] = (byte) (length >> (8 * i));
+        }
+
+        return header;
+    }
+
+    private static int lengthOfLength(byte b) {
+        return (b & 0x80) == 0 ? 1 : 1 + (b & 0x7F);
+    }
+
+    private static long readLength(byte[] data, int offset) throws IOException {
+
+        int b = data[offset] & 0xFF;
+
+        if (b < 0x80) {
+            return b;
+        }
+
+        int n = b & 0x7F;
+
+        if (n == 0 || n > 4 || offset + n >= data.length) {
+            throw new IOException("Invalid length in TBSCertList");
+        }
+
+        long length = 0;
+        for (int i = 1; i <= n; i++) {
+            length = (length << 8) | (data[offset + i] & 0xFF);
+        }
+
+        return length;
+    }
+
+    private static class Entry {
+
+        final RevokedCertificate cert;
+        final byte[] encoded;
+
+        Entry(RevokedCertificate cert, byte[] encoded) {
+            this.cert = cert;
+            this.encoded = encoded;
+        }
+    }
+}
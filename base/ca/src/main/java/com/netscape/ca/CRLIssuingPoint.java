@@ -372,6 +372,12 @@ public class CRLIssuingPoint implements Runnable {
 
     private boolean mSaveMemory = false;
 
+    /**
+     * Encoded CRL entries kept across full CRL generations,
+     * or null if full CRLs are generated from mCRLCerts directly.
+     */
+    private CRLEntryStore mEntryStore;
+
     /**
      * One time config flag that we have an updated schedule and we want it
      * followed immediately after startup.
@@ -904,6 +910,18 @@ public class CRLIssuingPoint implements Runnable {
 
         mSaveMemory = config.getSaveMemory();
 
+        if (config.getEncodedEntriesEnabled()) {
+            if (mEntryStore == null) {
+                mEntryStore = new CRLEntryStore(
+                        mId,
+                        config.getEncodedEntriesThreads(),
+                        config.getEncodedEntriesChunkSize());
+            }
+        } else if (mEntryStore != null) {
+            mEntryStore.shutdown();
+            mEntryStore = null;
+        }
+
         mCMSCRLExtensions = new CMSCRLExtensions(this, config);
 
         mExtendedNextUpdate =
@@ -1471,6 +1489,10 @@ public class CRLIssuingPoint implements Runnable {
         mEnable = false;
 
         setAutoUpdates();
+
+        if (mEntryStore != null) {
+            mEntryStore.shutdown();
+        }
         /*
         if (mUpdateThread != null) {
             try {
@@ -2647,6 +2669,18 @@ public class CRLIssuingPoint implements Runnable {
         }
     }
 
+    /**
+     * Refreshes the CRLs served by GetCRL after a new CRL or
+     * delta-CRL has been stored.
+     */
+    private void updateCRLDistributionCache() {
+        CAEngine engine = CAEngine.getInstance();
+        CRLDistributionCache crlDistributionCache = engine.getCRLDistributionCache();
+        if (crlDistributionCache != null) {
+            crlDistributionCache.update(mId);
+        }
+    }
+
     /**
      * Returns true if delta-CRL is enabled.
      *
@@ -3148,6 +3182,8 @@ public class CRLIssuingPoint implements Runnable {
                       Long.valueOf(deltaCRLCerts.size()), mNextDeltaUpdate, newDeltaCRL);
             mSplits[3] += System.currentTimeMillis();
 
+            updateCRLDistributionCache();
+
             mDeltaCRLSize = deltaCRLCerts.size();
 
             long totalTime = 0;
@@ -3248,13 +3284,27 @@ public class CRLIssuingPoint implements Runnable {
                 }
             }
 
-            logger.debug("CRLIssuingPoint: creating CRL object");
-            X509CRLImpl crl = new X509CRLImpl(mCA.getCRLX500Name(),
-                    AlgorithmId.get(signingAlgorithm),
-                    thisUpdate, nextUpdate, mCRLCerts, ext);
+            if (mEntryStore != null) {
+                logger.debug("CRLIssuingPoint: updating encoded CRL entries");
+                mEntryStore.update(mCRLCerts);
+
+                // the entries are inserted into the encoded CRL during signing
+                X509CRLImpl crl = new X509CRLImpl(mCA.getCRLX500Name(),
+                        AlgorithmId.get(signingAlgorithm),
+                        thisUpdate, nextUpdate, new Hashtable<>(), ext);
 
-            logger.debug("CRLIssuingPoint: signing CRL");
-            newX509CRL = mCA.sign(crl, signingAlgorithm);
+                logger.debug("CRLIssuingPoint: signing CRL with " + mEntryStore.size() + " encoded entries");
+                newX509CRL = mCA.sign(crl, mEntryStore, signingAlgorithm);
+
+            } else {
+                logger.debug("CRLIssuingPoint: creating CRL object");
+                X509CRLImpl crl = new X509CRLImpl(mCA.getCRLX500Name(),
+                        AlgorithmId.get(signingAlgorithm),
+                        thisUpdate, nextUpdate, mCRLCerts, ext);
+
+                logger.debug("CRLIssuingPoint: signing CRL");
+                newX509CRL = mCA.sign(crl, signingAlgorithm);
+            }
 
             logger.debug("CRLIssuingPoint: encoding CRL");
             byte[] newCRL = newX509CRL.getEncoded();
@@ -3286,6 +3336,8 @@ public class CRLIssuingPoint implements Runnable {
 
             mSplits[8] += System.currentTimeMillis();
 
+            updateCRLDistributionCache();
+
             mCRLSize = mCRLCerts.size();
             mCRLNumber = mNextCRLNumber;
             mDeltaCRLNumber = mCRLNumber;
@@ -297,6 +297,30 @@ public class CRLIssuingPointConfig extends ConfigStore {
         putBigInteger("crlEndSerialNo", crlEndSerialNo);
     }
 
+    public boolean getEncodedEntriesEnabled() throws EBaseException {
+        return getBoolean("encodedEntries.enable", false);
+    }
+
+    public void setEncodedEntriesEnabled(boolean enabled) {
+        putBoolean("encodedEntries.enable", enabled);
+    }
+
+    public int getEncodedEntriesThreads() throws EBaseException {
+        return getInteger("encodedEntries.threads", 0);
+    }
+
+    public void setEncodedEntriesThreads(int threads) {
+        putInteger("encodedEntries.threads", threads);
+    }
+
+    public int getEncodedEntriesChunkSize() throws EBaseException {
+        return getInteger("encodedEntries.chunkSize", CRLEntryStore.DEFAULT_CHUNK_SIZE);
+    }
+
+    public void setEncodedEntriesChunkSize(int chunkSize) {
+        putInteger("encodedEntries.chunkSize", chunkSize);
+    }
+
     public boolean getAutoUpdateIntervalEffectiveAtStart() throws EBaseException {
         return getBoolean("autoUpdateInterval.effectiveAtStart", false);
     }
@@ -37,6 +37,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Vector;
@@ -488,6 +489,18 @@ public class CertificateAuthority implements IAuthority, ICertificateAuthority,
      */
     @Override
     public void shutdown() {
+
+        if (mSigningUnit != null) {
+            mSigningUnit.logStats();
+        }
+
+        if (mCRLSigningUnit != null && mCRLSigningUnit != mSigningUnit) {
+            mCRLSigningUnit.logStats();
+        }
+
+        if (mOCSPSigningUnit != null && mOCSPSigningUnit != mSigningUnit) {
+            mOCSPSigningUnit.logStats();
+        }
     }
 
     /**
@@ -967,6 +980,85 @@ public class CertificateAuthority implements IAuthority, ICertificateAuthority,
         return signedcrl;
     }
 
+    /**
+     * Signs CRL whose entries are provided as pre-encoded CRL entries.
+     * The TBSCertList is passed to the signer in chunks and the signed
+     * CRL is assembled from the same chunks, so the entries are not
+     * re-encoded.
+     *
+     * @param crl the CRL to be signed without any revoked certificates.
+     * @param entries the encoded revoked certificates.
+     * @param algname the algorithm name to use. If set to null the
+     *            default signing algorithm is used.
+     * @return the signed CRL
+     * @exception EBaseException failed to sign CRL
+     */
+    public X509CRLImpl sign(X509CRLImpl crl, CRLEntryStore entries, String algname)
+            throws EBaseException {
+
+        CAEngine engine = CAEngine.getInstance();
+        ensureReady();
+
+        IStatsSubsystem statsSub = (IStatsSubsystem) engine.getSubsystem(IStatsSubsystem.ID);
+        if (statsSub != null) {
+            statsSub.startTiming("signing");
+        }
+
+        try (DerOutputStream tmp = new DerOutputStream()) {
+
+            if (algname == null) {
+                algname = mSigningUnit.getDefaultAlgorithm();
+            }
+
+            crl.encodeInfo(tmp);
+            List<byte[]> tbsCertList = entries.getTBSCertList(crl.getTBSCertList());
+
+            byte[] signature = mCRLSigningUnit.sign(tbsCertList, algname);
+
+            DerOutputStream out = new DerOutputStream();
+            AlgorithmId.get(algname).encode(out);
+            out.putBitString(signature);
+
+            byte[] signedCRL = CRLEntryStore.createSignedCRL(tbsCertList, out.toByteArray());
+
+            // the CRL is decoded without the entries
+            return new X509CRLImpl(signedCRL, false);
+
+        } catch (CRLException e) {
+            logger.error(CMS.getLogMessage("CMSCORE_CA_CA_SIGN_CRL", e.toString(), e.getMessage()), e);
+            throw new ECAException(
+                    CMS.getUserMessage("CMS_CA_SIGNING_CRL_FAILED", e.getMessage()), e);
+
+        } catch (X509ExtensionException e) {
+            logger.error(CMS.getLogMessage("CMSCORE_CA_CA_SIGN_CRL", e.toString(), e.getMessage()), e);
+            throw new ECAException(
+                    CMS.getUserMessage("CMS_CA_SIGNING_CRL_FAILED", e.getMessage()), e);
+
+        } catch (NoSuchAlgorithmException e) {
+            logger.error(CMS.getLogMessage("CMSCORE_CA_CA_SIGN_CRL", e.toString(), e.getMessage()), e);
+            throw new ECAException(CMS.getUserMessage("CMS_CA_SIGNING_CRL_FAILED", e.getMessage()), e);
+
+        } catch (IOException e) {
+            logger.error(CMS.getLogMessage("CMSCORE_CA_CA_SIGN_CRL", e.toString(), e.getMessage()), e);
+            throw new ECAException(
+                    CMS.getUserMessage("CMS_CA_SIGNING_CRL_FAILED", e.getMessage()), e);
+
+        } catch (SignatureException e) {
+            logger.error(CMS.getUserMessage("CMS_CA_SIGNING_OPERATION_FAILED", e.toString()), e);
+            engine.checkForAndAutoShutdown();
+            throw new EBaseException(e);
+
+        } catch (Exception e) {
+            logger.error("Unable to sign data: " + e.getMessage(), e);
+            throw new EBaseException(e);
+
+        } finally {
+            if (statsSub != null) {
+                statsSub.endTiming("signing");
+            }
+        }
+    }
+
     /**
      * Signs the given certificate info using specified signing algorithm
      * If no algorithm is specified the CA's default algorithm is used.
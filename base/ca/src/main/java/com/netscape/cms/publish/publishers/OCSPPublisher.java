@@ -19,10 +19,7 @@ package com.netscape.cms.publish.publishers;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.net.Socket;
+import java.io.StringReader;
 import java.net.URLEncoder;
 import java.security.cert.CRLException;
 import java.security.cert.X509CRL;
@@ -42,7 +39,9 @@ import com.netscape.certsrv.publish.ILdapPublisher;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.base.ConfigStore;
 import com.netscape.cmsutil.crypto.CryptoUtil;
+import com.netscape.cmsutil.http.HttpClient;
 import com.netscape.cmsutil.http.HttpRequest;
+import com.netscape.cmsutil.http.HttpResponse;
 import com.netscape.cmsutil.http.JssSSLSocketFactory;
 
 import netscape.ldap.LDAPConnection;
@@ -62,6 +61,10 @@ public class OCSPPublisher implements ILdapPublisher, IExtendedPluginInfo {
     private static final String PROP_PATH = "path";
     private static final String PROP_NICK = "nickName";
     private static final String PROP_CLIENT_AUTH_ENABLE = "enableClientAuth";
+    private static final String PROP_KEEP_ALIVE = "keepAlive";
+    private static final String PROP_BINARY = "binary";
+
+    public static final String CRL_CONTENT_TYPE = "application/pkix-crl";
 
     private ConfigStore mConfig;
     private String mHost = null;
@@ -69,6 +72,11 @@ public class OCSPPublisher implements ILdapPublisher, IExtendedPluginInfo {
     private String mPath = null;
     private String mNickname = null;
     private boolean mClientAuthEnabled = true;
+    private boolean mKeepAlive = false;
+    private boolean mBinary = true;
+
+    // connection kept open between CRLs if keep-alive is enabled
+    private HttpClient mClient;
 
     /**
      * Returns the implementation name.
@@ -94,6 +102,8 @@ public class OCSPPublisher implements ILdapPublisher, IExtendedPluginInfo {
                 PROP_PATH + ";string;URI of CMS's OCSP Secure agent service",
                 PROP_NICK + ";string;Nickname of cert used for client authentication",
                 PROP_CLIENT_AUTH_ENABLE + ";boolean;Client Authentication enabled",
+                PROP_KEEP_ALIVE + ";boolean;Keep the connection open between CRLs",
+                PROP_BINARY + ";boolean;Send DER encoded CRLs instead of form-encoded base-64 CRLs",
                 IExtendedPluginInfo.HELP_TOKEN +
                         ";configuration-ldappublish-publisher-ocsppublisher",
                 IExtendedPluginInfo.HELP_TEXT +
@@ -114,6 +124,8 @@ public class OCSPPublisher implements ILdapPublisher, IExtendedPluginInfo {
         String path = "";
         String nickname = "";
         String clientAuthEnabled = "";
+        String keepAlive = "";
+        String binary = "";
 
         try {
             host = mConfig.getString(PROP_HOST);
@@ -140,6 +152,16 @@ public class OCSPPublisher implements ILdapPublisher, IExtendedPluginInfo {
         } catch (EBaseException e) {
         }
         v.addElement(PROP_CLIENT_AUTH_ENABLE + "=" + clientAuthEnabled);
+        try {
+            keepAlive = mConfig.getString(PROP_KEEP_ALIVE, "false");
+        } catch (EBaseException e) {
+        }
+        v.addElement(PROP_KEEP_ALIVE + "=" + keepAlive);
+        try {
+            binary = mConfig.getString(PROP_BINARY, "true");
+        } catch (EBaseException e) {
+        }
+        v.addElement(PROP_BINARY + "=" + binary);
         return v;
     }
 
@@ -168,6 +190,8 @@ public class OCSPPublisher implements ILdapPublisher, IExtendedPluginInfo {
         v.addElement(PROP_PATH + "=/ocsp/agent/ocsp/addCRL");
         v.addElement(PROP_CLIENT_AUTH_ENABLE + "=true");
         v.addElement(PROP_NICK + "=" + nickname);
+        v.addElement(PROP_KEEP_ALIVE + "=false");
+        v.addElement(PROP_BINARY + "=true");
         return v;
     }
 
@@ -182,6 +206,8 @@ public class OCSPPublisher implements ILdapPublisher, IExtendedPluginInfo {
         mPath = mConfig.getString(PROP_PATH, "");
         mNickname = mConfig.getString(PROP_NICK, "");
         mClientAuthEnabled = mConfig.getBoolean(PROP_CLIENT_AUTH_ENABLE, true);
+        mKeepAlive = mConfig.getBoolean(PROP_KEEP_ALIVE, false);
+        mBinary = mConfig.getBoolean(PROP_BINARY, true);
     }
 
     @Override
@@ -189,32 +215,6 @@ public class OCSPPublisher implements ILdapPublisher, IExtendedPluginInfo {
         return mConfig;
     }
 
-    protected Socket Connect(String host, boolean secure, JssSSLSocketFactory factory) {
-        Socket socket = null;
-        StringTokenizer st = new StringTokenizer(host, " ");
-        while (st.hasMoreTokens()) {
-            String hp = st.nextToken(); // host:port
-            StringTokenizer st1 = new StringTokenizer(hp, ":");
-            String h = st1.nextToken();
-            int p = Integer.parseInt(st1.nextToken());
-            try {
-                if (secure) {
-                    socket = factory.makeSocket(h, p);
-                } else {
-                    socket = new Socket(h, p);
-                }
-                return socket;
-            } catch (Exception e) {
-                logger.warn("OCSPPublisher: " + e.getMessage(), e);
-            }
-            try {
-                Thread.sleep(5000); // 5 seconds delay
-            } catch (Exception e) {
-            }
-        }
-        return null;
-    }
-
     /**
      * Publishs a object to the ldap directory.
      *
@@ -237,10 +237,6 @@ public class OCSPPublisher implements ILdapPublisher, IExtendedPluginInfo {
             X509CRL crl = (X509CRL) object;
 
             // talk to agent port of CMS
-
-            // open the connection and prepare it to POST
-            boolean secure = true;
-
             String host = mHost;
             int port = Integer.parseInt(mPort);
             String path = mPath;
@@ -248,107 +244,213 @@ public class OCSPPublisher implements ILdapPublisher, IExtendedPluginInfo {
             String url = "https://" + host + ":" + port + path;
             logger.info("OCSPPublisher: Publishing CRL to " + url);
 
-            StringBuffer query = new StringBuffer();
-            query.append("crl=");
-            query.append(URLEncoder.encode("-----BEGIN CERTIFICATE REVOCATION LIST-----\n", "UTF-8"));
-            query.append(URLEncoder.encode(Utils.base64encode(crl.getEncoded(), true), "UTF-8"));
-            query.append(URLEncoder.encode("\n-----END CERTIFICATE REVOCATION LIST-----", "UTF-8"));
-            query.append("&noui=true");
-
-            Socket socket = null;
-            JssSSLSocketFactory factory;
-            PKIClientSocketListener sockListener = new PKIClientSocketListener();
-
-            if (mClientAuthEnabled) {
-                factory = new JssSSLSocketFactory(mNickname);
-            } else {
-                factory = new JssSSLSocketFactory();
+            byte[] encoded = crl.getEncoded();
+
+            if (!mBinary) {
+                processResponse(send(createRequest(path, encoded), host, port));
+                return;
             }
-            factory.addSocketListener(sockListener);
-
-            if (mHost != null && mHost.indexOf(' ') != -1) {
-                // support failover hosts configuration
-                // host parameter can be
-                // "directory.knowledge.com:1050 people.catalog.com 199.254.1.2"
-                do {
-                    socket = Connect(mHost, secure, factory);
-                } while (socket == null);
-            } else {
-                if (secure) {
-                    socket = factory.makeSocket(host, port);
-                } else {
-                    socket = new Socket(host, port);
-                }
+
+            logger.debug("OCSPPublisher: Sending " + encoded.length + " bytes DER encoded CRL");
+            HttpResponse resp = send(createBinaryRequest(path, encoded), host, port);
+
+            if (!isBinaryRejected(resp)) {
+                // the CRL was accepted or rejected for another reason
+                // (e.g. an older CRL), so resending it would not help
+                processResponse(resp);
+                return;
             }
 
-            if (socket == null) {
-                logger.error("OCSPPublisher: Unable to connect to " + url);
-                throw new ELdapException("Unable to connect to " + url);
+            // older OCSP responders only accept form-encoded CRLs
+            logger.info("OCSPPublisher: Resending form-encoded CRL to " + url);
+            if (processResponse(send(createRequest(path, encoded), host, port))) {
+                logger.warn("OCSPPublisher: " + url + " does not accept DER encoded CRLs, sending form-encoded CRLs");
+                mBinary = false;
             }
 
-            // use HttpRequest and POST
-            HttpRequest httpReq = new HttpRequest();
+        } catch (IOException e) {
+            logger.warn("OCSPPublisher: Unable to publish CRL: " + e.getMessage(), e);
+            logger.warn(CMS.getLogMessage("PUBLISH_OCSP_PUBLISHER_ERROR", e.toString()));
+
+        } catch (CRLException e) {
+            logger.warn("OCSPPublisher: Unable to publish CRL: " + e.getMessage(), e);
+            logger.warn(CMS.getLogMessage("PUBLISH_OCSP_PUBLISHER_ERROR", e.toString()));
 
-            httpReq.setMethod("POST");
-            httpReq.setURI(path);
-            httpReq.setHeader("Connection", "Keep-Alive");
+        } catch (Exception e) {
+            logger.warn("OCSPPublisher: Unable to publish CRL: " + e.getMessage(), e);
+            logger.warn(CMS.getLogMessage("PUBLISH_OCSP_PUBLISHER_ERROR", e.toString()));
+        }
+    }
 
-            httpReq.setHeader("Content-Type",
-                    "application/x-www-form-urlencoded");
-            httpReq.setHeader("Content-Transfer-Encoding", "7bit");
+    private HttpRequest createRequest(String path, byte[] crl) throws IOException {
 
-            httpReq.setHeader("Content-Length",
-                    Integer.toString(query.length()));
-            httpReq.setContent(query.toString());
-            OutputStream os = socket.getOutputStream();
-            OutputStreamWriter outputStreamWriter = new OutputStreamWriter(os, "UTF8");
+        StringBuilder query = new StringBuilder();
+        query.append("crl=");
+        query.append(URLEncoder.encode("-----BEGIN CERTIFICATE REVOCATION LIST-----\n", "UTF-8"));
+        query.append(URLEncoder.encode(Utils.base64encode(crl, true), "UTF-8"));
+        query.append(URLEncoder.encode("\n-----END CERTIFICATE REVOCATION LIST-----", "UTF-8"));
+        query.append("&noui=true");
 
-            logger.debug("OCSPPublisher: start sending CRL");
+        HttpRequest httpReq = new HttpRequest();
 
-            long startTime = new Date().getTime();
-            logger.debug("OCSPPublisher: start CRL sending startTime=" + startTime);
+        httpReq.setMethod("POST");
+        httpReq.setURI(path);
+        httpReq.setHeader("Connection", "Keep-Alive");
 
-            httpReq.write(outputStreamWriter);
+        httpReq.setHeader("Content-Type",
+                "application/x-www-form-urlencoded");
+        httpReq.setHeader("Content-Transfer-Encoding", "7bit");
 
-            long endTime = new Date().getTime();
-            logger.debug("OCSPPublisher: done CRL sending endTime=" + endTime + " diff=" + (endTime - startTime));
+        httpReq.setHeader("Content-Length",
+                Integer.toString(query.length()));
+        httpReq.setContent(query.toString());
 
-            // Read the response
-            logger.debug("OCSPPublisher: start getting response");
-            BufferedReader dis = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            String nextline;
-            String error = "";
-            boolean status = false;
+        return httpReq;
+    }
 
-            while ((nextline = dis.readLine()) != null) {
-                if (nextline.startsWith("status=")) {
-                    if (nextline.substring(7, nextline.length()).equals("0")) {
-                        status = true;
-                    }
-                }
-                if (nextline.startsWith("error=")) {
-                    error = nextline.substring(6, nextline.length());
+    /**
+     * Creates a request that sends the DER encoded CRL as the request
+     * body. The CRL is written as is, so it is not converted to base-64
+     * and URL-encoded, and the OCSP does not need to decode it again.
+     */
+    private HttpRequest createBinaryRequest(String path, byte[] crl) throws IOException {
+
+        HttpRequest httpReq = new HttpRequest();
+
+        httpReq.setMethod("POST");
+        httpReq.setURI(path + (path.indexOf('?') == -1 ? "?" : "&") + "noui=true");
+        httpReq.setHeader("Connection", "Keep-Alive");
+
+        httpReq.setHeader("Content-Type", CRL_CONTENT_TYPE);
+        httpReq.setHeader("Content-Length", Integer.toString(crl.length));
+        httpReq.setBinaryContent(crl);
+
+        return httpReq;
+    }
+
+    /**
+     * Sends the request over the connection kept from the previous CRL,
+     * or over a new connection if there is none or if the OCSP has closed
+     * the kept connection in the meantime. A request that fails is not
+     * sent again since the OCSP may have received the CRL already.
+     */
+    private HttpResponse send(HttpRequest httpReq, String host, int port) throws Exception {
+
+        boolean reused = mClient != null && mClient.connected();
+
+        if (reused && mClient.isStale()) {
+            logger.debug("OCSPPublisher: Kept connection closed by OCSP, reconnecting");
+            mClient.disconnect();
+            reused = false;
+        }
+
+        if (!reused) {
+            connect(host, port);
+        }
+
+        long startTime = new Date().getTime();
+        logger.debug("OCSPPublisher: start CRL sending startTime=" + startTime + " reused=" + reused);
+
+        HttpResponse resp = mClient.send(httpReq);
+
+        long endTime = new Date().getTime();
+        logger.debug("OCSPPublisher: done CRL sending endTime=" + endTime + " diff=" + (endTime - startTime));
+
+        return resp;
+    }
+
+    private void connect(String host, int port) throws Exception {
+
+        JssSSLSocketFactory factory;
+        if (mClientAuthEnabled) {
+            factory = new JssSSLSocketFactory(mNickname);
+        } else {
+            factory = new JssSSLSocketFactory();
+        }
+        factory.addSocketListener(new PKIClientSocketListener());
+
+        mClient = new HttpClient(factory);
+        mClient.setKeepAlive(mKeepAlive);
+
+        if (mHost == null || mHost.indexOf(' ') == -1) {
+            mClient.connect(host, port);
+            return;
+        }
+
+        // support failover hosts configuration
+        while (true) {
+            StringTokenizer st = new StringTokenizer(mHost, " ");
+            while (st.hasMoreTokens()) {
+                StringTokenizer st1 = new StringTokenizer(st.nextToken(), ":");
+                String h = st1.nextToken();
+                int p = Integer.parseInt(st1.nextToken());
+                try {
+                    mClient.connect(h, p);
+                    return;
+                } catch (Exception e) {
+                    logger.warn("OCSPPublisher: " + e.getMessage(), e);
                 }
+                Thread.sleep(5000); // 5 seconds delay
             }
-            dis.close();
-            if (status) {
-                logger.debug("OCSPPublisher: successful");
-            } else {
-                logger.warn("OCSPPublisher: Unable to publish CRL: " + error);
-            }
+        }
+    }
 
-        } catch (IOException e) {
-            logger.warn("OCSPPublisher: Unable to publish CRL: " + e.getMessage(), e);
-            logger.warn(CMS.getLogMessage("PUBLISH_OCSP_PUBLISHER_ERROR", e.toString()));
+    /**
+     * Returns true if the OCSP did not accept the DER encoded CRL
+     * because it only supports form-encoded CRLs. Older OCSP responders
+     * look for the crl parameter only, so they fail with a missing CRL
+     * error instead of returning a status.
+     */
+    private boolean isBinaryRejected(HttpResponse resp) {
 
-        } catch (CRLException e) {
-            logger.warn("OCSPPublisher: Unable to publish CRL: " + e.getMessage(), e);
-            logger.warn(CMS.getLogMessage("PUBLISH_OCSP_PUBLISHER_ERROR", e.toString()));
+        String statusCode = resp.getStatusCode();
+        if ("415".equals(statusCode) || "400".equals(statusCode)) {
+            return true;
+        }
 
-        } catch (Exception e) {
-            logger.warn("OCSPPublisher: Unable to publish CRL: " + e.getMessage(), e);
-            logger.warn(CMS.getLogMessage("PUBLISH_OCSP_PUBLISHER_ERROR", e.toString()));
+        String content = resp.getContent();
+        if (content == null || content.contains("status=")) {
+            return false;
+        }
+
+        return content.contains("CMS_GW_MISSING_CRL") || content.contains("Missing CRL.");
+    }
+
+    private boolean processResponse(HttpResponse resp) throws IOException {
+
+        String content = resp.getContent();
+        if (content == null) {
+            logger.warn("OCSPPublisher: Unable to publish CRL: HTTP " + resp.getStatusCode());
+            return false;
         }
+
+        return processResponse(new BufferedReader(new StringReader(content)));
+    }
+
+    private boolean processResponse(BufferedReader reader) throws IOException {
+
+        String nextline;
+        String error = "";
+        boolean status = false;
+
+        while ((nextline = reader.readLine()) != null) {
+            if (nextline.startsWith("status=")) {
+                if (nextline.substring(7, nextline.length()).equals("0")) {
+                    status = true;
+                }
+            }
+            if (nextline.startsWith("error=")) {
+                error = nextline.substring(6, nextline.length());
+            }
+        }
+
+        if (status) {
+            logger.debug("OCSPPublisher: successful");
+        } else {
+            logger.warn("OCSPPublisher: Unable to publish CRL: " + error);
+        }
+
+        return status;
     }
 
     /**
@@ -0,0 +1,294 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cms.servlet.cert;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.dogtagpki.server.ca.CAConfig;
+import org.dogtagpki.server.ca.CAEngine;
+
+import com.netscape.ca.CRLDistributionCache;
+import com.netscape.ca.CRLIssuingPoint;
+
+/**
+ * Serves the CRLs of the CA for CRL distribution points without
+ * authentication or templates:
+ *
+ * <pre>
+ * GET /ca/ee/ca/crl/&lt;issuing point&gt;[.crl]
+ * GET /ca/ee/ca/crl/&lt;issuing point&gt;/delta[.crl]
+ * </pre>
+ *
+ * The servlet is disabled unless ca.crlDistribution.servlet.enable
+ * is true. It also provides the conditional and partial responses
+ * used by GetCRL.
+ */
+public class CRLDistributionServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CRLDistributionServlet.class);
+
+    public static final String CRL_CONTENT_TYPE = "application/pkix-crl";
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
+        CAEngine engine = CAEngine.getInstance();
+
+        try {
+            CAConfig caConfig = engine.getConfig().getCAConfig();
+            if (!caConfig.getCRLDistributionServletEnabled()) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+
+            String path = request.getPathInfo();
+            if (path == null || path.length() <= 1) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+
+            path = path.substring(1);
+            if (path.endsWith(".crl")) {
+                path = path.substring(0, path.length() - 4);
+            }
+
+            boolean delta = false;
+            if (path.endsWith("/delta")) {
+                delta = true;
+                path = path.substring(0, path.length() - 6);
+            }
+
+            String id = path;
+            CRLIssuingPoint crlIP = engine.getCRLIssuingPoint(id);
+            if (crlIP == null) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+
+            CRLDistributionCache.Entry entry = engine.getCRLDistributionCache().get(
+                    id, crlIP.isCRLGenerationEnabled());
+
+            if (entry == null || (delta && !entry.hasCurrentDeltaCRL())) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+
+            byte[] bytes = delta ? entry.getDeltaCRL() : entry.getCRL();
+            if (bytes == null) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+
+            if (delta) {
+                sendCRL(request, response, bytes, CRL_CONTENT_TYPE,
+                        entry.getDeltaCRLETag(), entry.getDeltaCRLThisUpdate());
+            } else {
+                sendCRL(request, response, bytes, CRL_CONTENT_TYPE,
+                        entry.getCRLETag(), entry.getThisUpdate());
+            }
+
+        } catch (IOException e) {
+            throw e;
+
+        } catch (Exception e) {
+            logger.error("CRLDistributionServlet: Unable to get CRL: " + e.getMessage(), e);
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Sends an encoded CRL with ETag and Last-Modified headers.
+     *
+     * If the client already has the CRL according to the If-None-Match
+     * or If-Modified-Since header the response has no content. A single
+     * byte range requested with the Range header is returned as partial
+     * content. The CRL is written directly from the given array.
+     */
+    public static void sendCRL(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            byte[] bytes,
+            String contentType,
+            String etag,
+            Date lastModified) throws IOException {
+
+        if (etag != null) {
+            response.setHeader("ETag", etag);
+        }
+
+        if (lastModified != null) {
+            response.setDateHeader("Last-Modified", lastModified.getTime());
+        }
+
+        response.setHeader("Accept-Ranges", "bytes");
+
+        if (isNotModified(request, etag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        response.setContentType(contentType);
+
+        int length = bytes.length;
+        int[] range = getRange(request, etag, lastModified, length);
+
+        if (range != null && range[0] >= length) {
+            response.setHeader("Content-Range", "bytes */" + length);
+            response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+
+        OutputStream out = response.getOutputStream();
+
+        if (range == null) {
+            response.setContentLength(length);
+            out.write(bytes);
+
+        } else {
+            int start = range[0];
+            int end = range[1];
+
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+            response.setContentLength(end - start + 1);
+            out.write(bytes, start, end - start + 1);
+        }
+
+        out.flush();
+    }
+
+    static boolean isNotModified(HttpServletRequest request, String etag, Date lastModified) {
+
+        String ifNoneMatch = request.getHeader("If-None-Match");
+
+        // If-Modified-Since is ignored if If-None-Match is present
+        if (ifNoneMatch != null) {
+            return etag != null && matchesETag(ifNoneMatch, etag);
+        }
+
+        if (lastModified == null) {
+            return false;
+        }
+
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader("If-Modified-Since");
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+
+        // HTTP dates have a resolution of one second
+        return ifModifiedSince >= 0 && lastModified.getTime() / 1000 <= ifModifiedSince / 1000;
+    }
+
+    static boolean matchesETag(String header, String etag) {
+
+        for (String value : header.split(",")) {
+            value = value.trim();
+
+            if (value.equals("*")) {
+                return true;
+            }
+
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+
+            if (value.equals(etag)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the first and last byte requested with the Range header,
+     * or null to send the whole CRL. Multiple ranges and invalid ranges
+     * are ignored. If the range starts after the end of the CRL the
+     * first byte is set to the length of the CRL.
+     */
+    static int[] getRange(HttpServletRequest request, String etag, Date lastModified, int length) {
+
+        String range = request.getHeader("Range");
+        if (range == null || !range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+            return null;
+        }
+
+        // only send a partial CRL if the client has the current CRL
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange != null) {
+            if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+                if (etag == null || !ifRange.equals(etag)) {
+                    return null;
+                }
+            } else {
+                long date;
+                try {
+                    date = request.getDateHeader("If-Range");
+                } catch (IllegalArgumentException e) {
+                    return null;
+                }
+                if (lastModified == null || lastModified.getTime() / 1000 != date / 1000) {
+                    return null;
+                }
+            }
+        }
+
+        String spec = range.substring(6).trim();
+        int i = spec.indexOf('-');
+        if (i < 0) {
+            return null;
+        }
+
+        String first = spec.substring(0, i).trim();
+        String last = spec.substring(i + 1).trim();
+
+        long start;
+        long end;
+
+        try {
+            if (first.isEmpty()) {
+                // last N bytes
+                if (last.isEmpty()) {
+                    return null;
+                }
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) {
+                    return new int[] { length, length };
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+                if (start < 0 || (!last.isEmpty() && Long.parseLong(last) < start)) {
+                    return null;
+                }
+            }
+
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        if (start >= length) {
+            return new int[] { length, length };
+        }
+
+        return new int[] { (int) start, (int) end };
+    }
+}
@@ -34,6 +34,7 @@ import org.dogtagpki.server.ca.CAEngine;
 import org.mozilla.jss.netscape.security.util.Utils;
 import org.mozilla.jss.netscape.security.x509.X509CRLImpl;
 
+import com.netscape.ca.CRLDistributionCache;
 import com.netscape.ca.CRLIssuingPoint;
 import com.netscape.ca.CertificateAuthority;
 import com.netscape.certsrv.authorization.EAuthzAccessDenied;
@@ -49,8 +50,6 @@ import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.base.ArgBlock;
 import com.netscape.cmscore.cert.CrlCachePrettyPrint;
 import com.netscape.cmscore.cert.CrlPrettyPrint;
-import com.netscape.cmscore.dbs.CRLIssuingPointRecord;
-import com.netscape.cmscore.dbs.CRLRepository;
 
 /**
  * Retrieve CRL for a Certificate Authority
@@ -164,16 +163,17 @@ public class GetCRL extends CMSServlet {
         }
 
         CAEngine engine = CAEngine.getInstance();
-        CRLRepository crlRepository = engine.getCRLRepository();
+        CRLDistributionCache crlDistributionCache = engine.getCRLDistributionCache();
 
-        CRLIssuingPointRecord crlRecord = null;
+        CRLDistributionCache.Entry crlRecord = null;
         CertificateAuthority ca = (CertificateAuthority) mAuthority;
         CRLIssuingPoint crlIP = null;
         if (ca != null)
             crlIP = engine.getCRLIssuingPoint(crlId);
 
         try {
-            crlRecord = crlRepository.readCRLIssuingPointRecord(crlId);
+            // CRLs generated by this server are refreshed when they are stored
+            crlRecord = crlDistributionCache.get(crlId, crlIP != null && crlIP.isCRLGenerationEnabled());
         } catch (EBaseException e) {
             logger.error(CMS.getLogMessage("CMSGW_NO_CRL_ISSUING_POINT_FOUND", crlId), e);
             cmsReq.setError(new ECMSGWException(
@@ -215,11 +215,13 @@ public class GetCRL extends CMSServlet {
         }
 
         byte[] crlbytes = null;
+        boolean delta = false;
 
         if (op.equals("importDeltaCRL") || op.equals("getDeltaCRL") ||
                 (op.equals("displayCRL") && crlDisplayType != null &&
                 crlDisplayType.equals("deltaCRL"))) {
             crlbytes = crlRecord.getDeltaCRL();
+            delta = true;
         } else if (op.equals("importCRL") || op.equals("getCRL") ||
                    op.equals("checkCRL") ||
                    (op.equals("displayCRL") &&
@@ -254,8 +256,10 @@ public class GetCRL extends CMSServlet {
                 if (op.equals("displayCRL") && crlDisplayType != null &&
                         crlDisplayType.equals("crlHeader")) {
                     crl = new X509CRLImpl(crlbytes, false);
+                } else if (delta) {
+                    crl = crlRecord.getX509DeltaCRL();
                 } else {
-                    crl = new X509CRLImpl(crlbytes);
+                    crl = crlRecord.getX509CRL();
                 }
             } catch (Exception e) {
                 logger.error(CMS.getLogMessage("CMSGW_FAILED_DECODE_CRL_1", e.toString()), e);
@@ -267,11 +271,7 @@ public class GetCRL extends CMSServlet {
             if ((op.equals("importDeltaCRL") || (op.equals("displayCRL") &&
                     crlDisplayType != null && crlDisplayType.equals("deltaCRL"))) &&
                     ((!(crlIP != null && crlIP.isThisCurrentDeltaCRL(crl))) &&
-                    (crlRecord.getCRLNumber() == null ||
-                            crlRecord.getDeltaCRLNumber() == null ||
-                            crlRecord.getDeltaCRLNumber().compareTo(crlRecord.getCRLNumber()) < 0 ||
-                            crlRecord.getDeltaCRLSize() == null ||
-                    crlRecord.getDeltaCRLSize().longValue() == -1))) {
+                    !crlRecord.hasCurrentDeltaCRL())) {
                 logger.error(CMS.getLogMessage("CMSGW_ERR_NO_DELTA_CRL_1"));
                 cmsReq.setError(new ECMSGWException(
                         CMS.getUserMessage("CMS_GW_CRL_NOT_UPDATED")));
@@ -454,10 +454,13 @@ public class GetCRL extends CMSServlet {
             //            if (clientIsMSIE(httpReq) &&  op.equals("getCRL"))
             //                httpResp.setHeader("Content-disposition",
             //                  "attachment; filename=getCRL.crl");
-            httpResp.setContentType(mimeType);
-            httpResp.setContentLength(bytes.length);
-            httpResp.getOutputStream().write(bytes);
-            httpResp.getOutputStream().flush();
+            if (delta) {
+                CRLDistributionServlet.sendCRL(httpReq, httpResp, bytes, mimeType,
+                        crlRecord.getDeltaCRLETag(), crlRecord.getDeltaCRLThisUpdate());
+            } else {
+                CRLDistributionServlet.sendCRL(httpReq, httpResp, bytes, mimeType,
+                        crlRecord.getCRLETag(), crlRecord.getThisUpdate());
+            }
         } catch (IOException e) {
             logger.error(CMS.getLogMessage("CMSGW_ERROR_DISPLAYING_CRLINFO"), e);
             throw new ECMSGWException(CMS.getUserMessage("CMS_GW_DISPLAYING_CRLINFO_ERROR"), e);
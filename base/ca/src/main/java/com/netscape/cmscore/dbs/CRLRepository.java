@@ -18,8 +18,13 @@
 package com.netscape.cmscore.dbs;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Vector;
 
 import org.mozilla.jss.netscape.security.x509.RevokedCertificate;
@@ -43,8 +48,56 @@ public class CRLRepository extends Repository {
 
     public static final String PROP_INCREMENT = "crldbInc";
 
+    /**
+     * Maximum number of delta records in a CRL cache attribute
+     * before the attribute is replaced with a new snapshot.
+     */
+    public static final int MAX_CACHE_DELTAS = 64;
+
     private final String mLdapCRLIssuingPointName = "cn";
 
+    private static final String[] CRL_VERSION_ATTRS = {
+            "objectclass",
+            CRLIssuingPointRecord.ATTR_ID,
+            CRLIssuingPointRecord.ATTR_CRL_NUMBER,
+            CRLIssuingPointRecord.ATTR_THIS_UPDATE
+    };
+
+    /**
+     * CRL cache contents last stored in the database by issuing point
+     * and attribute. These are used to store only the changes in the
+     * CRL cache. Each state also keeps the CRL number and this update
+     * time of the record when it was stored, so that states which do
+     * not match the record anymore (e.g. because another CA replica has
+     * updated it) are not used as the base of a delta.
+     */
+    private Map<String, CRLCacheState> cacheStates = new HashMap<>();
+
+    private static class CRLCacheState {
+
+        Hashtable<BigInteger, RevokedCertificate> certs;
+        int sequence;
+        int deltaSize;
+        BigInteger crlNumber;
+        Date thisUpdate;
+
+        CRLCacheState(Hashtable<BigInteger, RevokedCertificate> certs, int sequence, int deltaSize) {
+            this.certs = certs;
+            this.sequence = sequence;
+            this.deltaSize = deltaSize;
+        }
+
+        boolean matches(BigInteger crlNumber, Date thisUpdate) {
+            return Objects.equals(this.crlNumber, crlNumber)
+                    && getSeconds(this.thisUpdate) == getSeconds(thisUpdate);
+        }
+
+        // dates are stored in the database in seconds
+        static long getSeconds(Date date) {
+            return date == null ? -1 : date.getTime() / 1000;
+        }
+    }
+
     /**
      * Constructs a CRL repository.
      */
@@ -211,6 +264,35 @@ public class CRLRepository extends Repository {
         return rec;
     }
 
+    /**
+     * Reads selected attributes of issuing point record.
+     *
+     * @param id issuing point record id
+     * @param attrs selected attributes, must include objectclass
+     * @return issuing point record
+     * @exception EBaseException failed to read issuing point record
+     */
+    public CRLIssuingPointRecord readCRLIssuingPointRecord(String id, String[] attrs)
+            throws EBaseException {
+
+        DBSSession s = null;
+        CRLIssuingPointRecord rec = null;
+
+        try {
+            s = dbSubsystem.createSession();
+
+            String name = mLdapCRLIssuingPointName + "=" + id + "," + mBaseDN;
+            logger.info("CRLRepository: Reading " + name);
+
+            rec = (CRLIssuingPointRecord) s.read(name, attrs);
+
+        } finally {
+            if (s != null) s.close();
+        }
+
+        return rec;
+    }
+
     /**
      * Deletes issuing point record.
      *
@@ -228,6 +310,9 @@ public class CRLRepository extends Repository {
 
             if (s != null)
                 s.delete(name);
+
+            resetCRLCacheStates(id);
+
         } finally {
             if (s != null)
                 s.close();
@@ -332,23 +417,29 @@ public class CRLRepository extends Repository {
         mods.add(CRLIssuingPointRecord.ATTR_CRL_NUMBER, Modification.MOD_REPLACE, crlNumber);
         mods.add(CRLIssuingPointRecord.ATTR_CRL_SIZE, Modification.MOD_REPLACE, crlSize);
 
-        if (revokedCerts != null) {
-            mods.add(CRLIssuingPointRecord.ATTR_REVOKED_CERTS, Modification.MOD_REPLACE, revokedCerts);
-        }
+        synchronized (cacheStates) {
 
-        if (unrevokedCerts != null) {
-            mods.add(CRLIssuingPointRecord.ATTR_UNREVOKED_CERTS, Modification.MOD_REPLACE, unrevokedCerts);
-        }
+            checkCRLCacheStates(id);
+            Map<String, CRLCacheState> states = new HashMap<>();
 
-        if (expiredCerts != null) {
-            mods.add(CRLIssuingPointRecord.ATTR_EXPIRED_CERTS, Modification.MOD_REPLACE, expiredCerts);
-        }
+            if (revokedCerts != null) {
+                addCRLCache(mods, states, id, CRLIssuingPointRecord.ATTR_REVOKED_CERTS, revokedCerts);
+            }
 
-        if (revokedCerts != null || unrevokedCerts != null) {
-            mods.add(CRLIssuingPointRecord.ATTR_FIRST_UNSAVED, Modification.MOD_REPLACE, CRLIssuingPointRecord.CLEAN_CACHE);
-        }
+            if (unrevokedCerts != null) {
+                addCRLCache(mods, states, id, CRLIssuingPointRecord.ATTR_UNREVOKED_CERTS, unrevokedCerts);
+            }
 
-        modifyCRLIssuingPointRecord(id, mods);
+            if (expiredCerts != null) {
+                addCRLCache(mods, states, id, CRLIssuingPointRecord.ATTR_EXPIRED_CERTS, expiredCerts);
+            }
+
+            if (revokedCerts != null || unrevokedCerts != null) {
+                mods.add(CRLIssuingPointRecord.ATTR_FIRST_UNSAVED, Modification.MOD_REPLACE, CRLIssuingPointRecord.CLEAN_CACHE);
+            }
+
+            modifyCRLCache(id, mods, states, crlNumber, thisUpdate);
+        }
     }
 
     /**
@@ -368,11 +459,18 @@ public class CRLRepository extends Repository {
         logger.info("CRLReposiotry: Updating revoked certificates");
 
         ModificationSet mods = new ModificationSet();
-        mods.add(CRLIssuingPointRecord.ATTR_REVOKED_CERTS, Modification.MOD_REPLACE, revokedCerts);
-        mods.add(CRLIssuingPointRecord.ATTR_UNREVOKED_CERTS, Modification.MOD_REPLACE, unrevokedCerts);
-        mods.add(CRLIssuingPointRecord.ATTR_FIRST_UNSAVED, Modification.MOD_REPLACE, CRLIssuingPointRecord.CLEAN_CACHE);
 
-        modifyCRLIssuingPointRecord(id, mods);
+        synchronized (cacheStates) {
+
+            CRLIssuingPointRecord rec = checkCRLCacheStates(id);
+            Map<String, CRLCacheState> states = new HashMap<>();
+
+            addCRLCache(mods, states, id, CRLIssuingPointRecord.ATTR_REVOKED_CERTS, revokedCerts);
+            addCRLCache(mods, states, id, CRLIssuingPointRecord.ATTR_UNREVOKED_CERTS, unrevokedCerts);
+            mods.add(CRLIssuingPointRecord.ATTR_FIRST_UNSAVED, Modification.MOD_REPLACE, CRLIssuingPointRecord.CLEAN_CACHE);
+
+            modifyCRLCache(id, mods, states, rec.getCRLNumber(), rec.getThisUpdate());
+        }
     }
 
     /**
@@ -386,9 +484,19 @@ public class CRLRepository extends Repository {
             throws EBaseException {
         ModificationSet mods = new ModificationSet();
 
-        mods.add(CRLIssuingPointRecord.ATTR_EXPIRED_CERTS,
-                Modification.MOD_REPLACE, expiredCerts);
-        modifyCRLIssuingPointRecord(id, mods);
+        synchronized (cacheStates) {
+
+            CRLIssuingPointRecord rec = checkCRLCacheStates(id);
+            Map<String, CRLCacheState> states = new HashMap<>();
+
+            addCRLCache(mods, states, id, CRLIssuingPointRecord.ATTR_EXPIRED_CERTS, expiredCerts);
+            if (states.isEmpty()) {
+                // no changes
+                return;
+            }
+
+            modifyCRLCache(id, mods, states, rec.getCRLNumber(), rec.getThisUpdate());
+        }
     }
 
     /**
@@ -412,15 +520,159 @@ public class CRLRepository extends Repository {
             mods.add(CRLIssuingPointRecord.ATTR_CRL_SIZE,
                     Modification.MOD_REPLACE, crlSize);
         }
-        mods.add(CRLIssuingPointRecord.ATTR_REVOKED_CERTS,
-                Modification.MOD_REPLACE, revokedCerts);
-        mods.add(CRLIssuingPointRecord.ATTR_UNREVOKED_CERTS,
-                Modification.MOD_REPLACE, unrevokedCerts);
-        mods.add(CRLIssuingPointRecord.ATTR_EXPIRED_CERTS,
-                Modification.MOD_REPLACE, expiredCerts);
-        mods.add(CRLIssuingPointRecord.ATTR_FIRST_UNSAVED,
-                Modification.MOD_REPLACE, CRLIssuingPointRecord.CLEAN_CACHE);
-        modifyCRLIssuingPointRecord(id, mods);
+
+        synchronized (cacheStates) {
+
+            CRLIssuingPointRecord rec = checkCRLCacheStates(id);
+            Map<String, CRLCacheState> states = new HashMap<>();
+
+            addCRLCache(mods, states, id, CRLIssuingPointRecord.ATTR_REVOKED_CERTS, revokedCerts);
+            addCRLCache(mods, states, id, CRLIssuingPointRecord.ATTR_UNREVOKED_CERTS, unrevokedCerts);
+            addCRLCache(mods, states, id, CRLIssuingPointRecord.ATTR_EXPIRED_CERTS, expiredCerts);
+            mods.add(CRLIssuingPointRecord.ATTR_FIRST_UNSAVED,
+                    Modification.MOD_REPLACE, CRLIssuingPointRecord.CLEAN_CACHE);
+
+            modifyCRLCache(id, mods, states, rec.getCRLNumber(), rec.getThisUpdate());
+        }
+    }
+
+    /**
+     * Adds a modification that stores a CRL cache attribute.
+     *
+     * If the contents last stored in the attribute are known, only the
+     * certificates that have been added, replaced, or removed since then
+     * are added to the attribute as a delta record. Otherwise, or if the
+     * deltas have outgrown the CRL cache, the attribute is replaced with
+     * a snapshot of the CRL cache.
+     *
+     * @param mods set of modifications
+     * @param states new CRL cache states to keep if the modifications succeed
+     * @param id issuing point record id
+     * @param name attribute name
+     * @param certs CRL cache
+     */
+    @SuppressWarnings("unchecked")
+    private void addCRLCache(
+            ModificationSet mods,
+            Map<String, CRLCacheState> states,
+            String id,
+            String name,
+            Hashtable<BigInteger, RevokedCertificate> certs) {
+
+        // clone the table since it may be modified by other threads
+        Hashtable<BigInteger, RevokedCertificate> snapshot =
+                (Hashtable<BigInteger, RevokedCertificate>) certs.clone();
+
+        String key = id + ":" + name;
+        CRLCacheState state = cacheStates.get(key);
+
+        if (state != null && state.sequence < MAX_CACHE_DELTAS) {
+
+            Map<BigInteger, RevokedCertificate> added = new HashMap<>();
+            for (Map.Entry<BigInteger, RevokedCertificate> entry : snapshot.entrySet()) {
+                if (state.certs.get(entry.getKey()) != entry.getValue()) {
+                    added.put(entry.getKey(), entry.getValue());
+                }
+            }
+
+            List<BigInteger> removed = new ArrayList<>();
+            for (BigInteger serialNumber : state.certs.keySet()) {
+                if (!snapshot.containsKey(serialNumber)) {
+                    removed.add(serialNumber);
+                }
+            }
+
+            if (added.isEmpty() && removed.isEmpty()) {
+                logger.debug("CRLRepository: No changes in " + name);
+                return;
+            }
+
+            int deltaSize = state.deltaSize + added.size() + removed.size();
+
+            if (deltaSize <= snapshot.size()) {
+                int sequence = state.sequence + 1;
+                logger.debug("CRLRepository: Adding delta " + sequence + " to " + name + ": " +
+                        added.size() + " added, " + removed.size() + " removed");
+
+                mods.add(name, Modification.MOD_ADD, new RevokedCertsMapper.Delta(sequence, added, removed));
+                states.put(key, new CRLCacheState(snapshot, sequence, deltaSize));
+                return;
+            }
+        }
+
+        logger.debug("CRLRepository: Replacing " + name + " with " + snapshot.size() + " entries");
+
+        mods.add(name, Modification.MOD_REPLACE, snapshot);
+        states.put(key, new CRLCacheState(snapshot, 0, 0));
+    }
+
+    /**
+     * Reads the CRL number and this update time of the issuing point
+     * record and discards the CRL cache states of the issuing point
+     * that were stored with a different CRL number or this update time,
+     * so the CRL cache attributes are replaced with snapshots instead
+     * of deltas against unknown contents.
+     *
+     * @param id issuing point record id
+     * @return issuing point record with the CRL number and this update time
+     * @exception EBaseException failed to read issuing point record
+     */
+    private CRLIssuingPointRecord checkCRLCacheStates(String id) throws EBaseException {
+
+        CRLIssuingPointRecord rec = readCRLIssuingPointRecord(id, CRL_VERSION_ATTRS);
+        BigInteger crlNumber = rec.getCRLNumber();
+        Date thisUpdate = rec.getThisUpdate();
+
+        boolean removed = cacheStates.entrySet().removeIf(entry ->
+                entry.getKey().startsWith(id + ":") && !entry.getValue().matches(crlNumber, thisUpdate));
+
+        if (removed) {
+            logger.info("CRLRepository: CRL issuing point " + id + " has been modified, replacing CRL cache");
+        }
+
+        return rec;
+    }
+
+    /**
+     * Modifies issuing point record with CRL cache modifications and
+     * keeps the new CRL cache states if the modifications succeed.
+     *
+     * @param id issuing point record id
+     * @param mods set of modifications
+     * @param states new CRL cache states
+     * @param crlNumber CRL number of the record after the modifications
+     * @param thisUpdate this update time of the record after the modifications
+     * @exception EBaseException failed to update issuing point record
+     */
+    private void modifyCRLCache(
+            String id,
+            ModificationSet mods,
+            Map<String, CRLCacheState> states,
+            BigInteger crlNumber,
+            Date thisUpdate) throws EBaseException {
+
+        try {
+            modifyCRLIssuingPointRecord(id, mods);
+            cacheStates.putAll(states);
+
+            for (Map.Entry<String, CRLCacheState> entry : cacheStates.entrySet()) {
+                if (entry.getKey().startsWith(id + ":")) {
+                    entry.getValue().crlNumber = crlNumber;
+                    entry.getValue().thisUpdate = thisUpdate;
+                }
+            }
+
+        } catch (EBaseException e) {
+            // the stored contents are unknown, replace them next time
+            resetCRLCacheStates(id);
+            throw e;
+        }
+    }
+
+    private void resetCRLCacheStates(String id) {
+        synchronized (cacheStates) {
+            cacheStates.keySet().removeIf(key -> key.startsWith(id + ":"));
+        }
     }
 
     /**
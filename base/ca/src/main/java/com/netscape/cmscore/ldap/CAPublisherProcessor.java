@@ -21,7 +21,14 @@ import java.math.BigInteger;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.dogtagpki.server.ca.CAEngine;
 import org.mozilla.jss.netscape.security.x509.X500Name;
@@ -38,6 +45,7 @@ import com.netscape.certsrv.publish.ILdapMapper;
 import com.netscape.certsrv.publish.ILdapPublisher;
 import com.netscape.cms.publish.mappers.LdapCertSubjMap;
 import com.netscape.cms.publish.publishers.FileBasedPublisher;
+import com.netscape.cms.publish.publishers.OCSPPublisher;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.base.ConfigStore;
 import com.netscape.cmscore.dbs.CertRecord;
@@ -63,6 +71,12 @@ public class CAPublisherProcessor extends PublisherProcessor {
     protected CertificateAuthority ca;
     private boolean createOwnDNEntry;
 
+    // publishes CRLs to OCSP responders concurrently
+    private ExecutorService ocspExecutor;
+
+    // LDAP connection shared by the requests in a publishing batch
+    private ThreadLocal<LDAPConnection[]> batchConn = new ThreadLocal<>();
+
     public CAPublisherProcessor(String id) {
         super(id);
     }
@@ -113,13 +127,17 @@ public class CAPublisherProcessor extends PublisherProcessor {
                 int savePublishingStatus = queueConfig.getInteger("saveStatus", 0);
                 logger.info("CAPublisherProcessor: - save status: " + savePublishingStatus);
 
+                int publishingQueueBatchSize = queueConfig.getInteger("batchSize", RequestNotifier.DEFAULT_BATCH_SIZE);
+                logger.info("CAPublisherProcessor: - batch size: " + publishingQueueBatchSize);
+
                 RequestNotifier requestNotifier = engine.getRequestNotifier();
                 requestNotifier.setPublishingQueue(
                         isPublishingQueueEnabled,
                         publishingQueuePriorityLevel,
                         maxNumberOfPublishingThreads,
                         publishingQueuePageSize,
-                        savePublishingStatus);
+                        savePublishingStatus,
+                        publishingQueueBatchSize);
             }
         }
     }
@@ -135,9 +153,78 @@ public class CAPublisherProcessor extends PublisherProcessor {
             engine.removeRequestListener(requestListener);
         }
 
+        synchronized (this) {
+            if (ocspExecutor != null) {
+                ocspExecutor.shutdownNow();
+                ocspExecutor = null;
+            }
+        }
+
         super.shutdown();
     }
 
+    /**
+     * Starts publishing a batch of requests on the current thread.
+     * Certificates published or unpublished until endBatch() is called
+     * share the same LDAP connection instead of getting a connection
+     * from the pool for each certificate.
+     */
+    public void startBatch() {
+        batchConn.set(new LDAPConnection[1]);
+    }
+
+    /**
+     * Ends publishing a batch of requests on the current thread and
+     * returns the shared LDAP connection to the pool.
+     */
+    public void endBatch() {
+
+        LDAPConnection[] holder = batchConn.get();
+        batchConn.remove();
+
+        if (holder != null && holder[0] != null) {
+            mLdapConnModule.returnConn(holder[0]);
+        }
+    }
+
+    /**
+     * Gets an LDAP connection for publishing. In a batch the connection
+     * is shared by all requests in the batch.
+     */
+    private LDAPConnection getConn() throws ELdapException {
+
+        LDAPConnection[] holder = batchConn.get();
+
+        if (holder == null) {
+            return mLdapConnModule.getConn();
+        }
+
+        if (holder[0] == null) {
+            holder[0] = mLdapConnModule.getConn();
+        }
+
+        return holder[0];
+    }
+
+    /**
+     * Returns an LDAP connection obtained with getConn(). In a batch
+     * the connection is kept for the next request unless publishing
+     * failed, in which case the next request gets a new connection.
+     */
+    private void returnConn(LDAPConnection conn, boolean failed) {
+
+        LDAPConnection[] holder = batchConn.get();
+
+        if (holder != null && holder[0] == conn) {
+            if (!failed) {
+                return;
+            }
+            holder[0] = null;
+        }
+
+        mLdapConnModule.returnConn(conn);
+    }
+
     /**
      * Set published flag - true when published, false when unpublished.
      * Not exist means not published.
@@ -546,6 +633,9 @@ public class CAPublisherProcessor extends PublisherProcessor {
         LDAPConnection conn = null;
         String dn = null;
 
+        // rule name -> OCSP publishing task
+        Map<String, Future<?>> ocspTasks = new LinkedHashMap<>();
+
         try {
             if (mLdapConnModule != null) {
                 conn = mLdapConnModule.getConn();
@@ -594,6 +684,17 @@ public class CAPublisherProcessor extends PublisherProcessor {
                             ((FileBasedPublisher) publisher).setIssuingPointId(crlIssuingPointId);
                         }
 
+                        if (publisher instanceof OCSPPublisher) {
+                            // OCSP publishers do not use the LDAP connection, so
+                            // the CRL is sent to all OCSP responders concurrently
+                            String ocspDN = dn;
+                            ocspTasks.put(rule.getInstanceName(), getOCSPExecutor().submit(() -> {
+                                publisher.publish(null, ocspDN, crl);
+                                return null;
+                            }));
+                            continue;
+                        }
+
                         publisher.publish(conn, dn, crl);
                         logger.info("CAPublisherProcessor: Published CRL");
                     }
@@ -617,11 +718,45 @@ public class CAPublisherProcessor extends PublisherProcessor {
             }
         }
 
+        for (Map.Entry<String, Future<?>> task : ocspTasks.entrySet()) {
+            String ruleName = task.getKey();
+            try {
+                task.getValue().get();
+                logger.info("CAPublisherProcessor: Published CRL with rule " + ruleName);
+
+            } catch (ExecutionException e) {
+                Throwable t = e.getCause();
+                logger.warn("Unable to publish CRL with rule " + ruleName + ": " + t.getMessage(), t);
+                error = true;
+                errorRule = errorRule + " " + ruleName;
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warn("Interrupted while publishing CRL with rule " + ruleName);
+                error = true;
+                errorRule = errorRule + " " + ruleName;
+            }
+        }
+
         if (error) {
             throw new ELdapException(CMS.getUserMessage("CMS_LDAP_PUBLISH_FAILED", errorRule));
         }
     }
 
+    private synchronized ExecutorService getOCSPExecutor() {
+
+        if (ocspExecutor == null) {
+            AtomicInteger counter = new AtomicInteger();
+            ocspExecutor = Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "OCSPPublisher-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        return ocspExecutor;
+    }
+
     /**
      * publishes a crl by mapping the issuer name in the crl to an entry
      * and publishing it there. entry must be a certificate authority.
@@ -701,6 +836,8 @@ public class CAPublisherProcessor extends PublisherProcessor {
         logger.info("CAPublisherProcessor: Running publisher " + publisher.getImplName());
 
         LDAPConnection conn = null;
+        boolean failed = true;
+
         try {
             Object dirdn = null;
 
@@ -708,7 +845,7 @@ public class CAPublisherProcessor extends PublisherProcessor {
                 logger.info("CAPublisherProcessor: LDAP connection module: " + mLdapConnModule);
                 if (mLdapConnModule != null) {
                     try {
-                        conn = mLdapConnModule.getConn();
+                        conn = getConn();
                     } catch (ELdapException e) {
                         throw e;
                     }
@@ -754,6 +891,7 @@ public class CAPublisherProcessor extends PublisherProcessor {
             }
 
             logger.info("CAPublisherProcessor: Published cert 0x" + cert.getSerialNumber().toString(16));
+            failed = false;
 
         } catch (ELdapException e) {
             throw e;
@@ -763,7 +901,7 @@ public class CAPublisherProcessor extends PublisherProcessor {
 
         } finally {
             if (conn != null) {
-                mLdapConnModule.returnConn(conn);
+                returnConn(conn, failed);
             }
         }
     }
@@ -833,13 +971,14 @@ public class CAPublisherProcessor extends PublisherProcessor {
         logger.info("CAPublisherProcessor: Unpublishing cert 0x" + cert.getSerialNumber().toString(16));
 
         LDAPConnection conn = null;
+        boolean failed = true;
 
         try {
             String dirdn = null;
 
             if (mapper != null) {
                 if (mLdapConnModule != null) {
-                    conn = mLdapConnModule.getConn();
+                    conn = getConn();
                 }
                 dirdn = mapper.map(conn, r, obj);
             }
@@ -847,13 +986,14 @@ public class CAPublisherProcessor extends PublisherProcessor {
             publisher.unpublish(conn, dirdn, cert);
 
             logger.info("CAPublisherProcessor: Unpublished cert 0x" + cert.getSerialNumber().toString(16));
+            failed = false;
 
         } catch (ELdapException e) {
             throw e;
 
         } finally {
             if (conn != null) {
-                mLdapConnModule.returnConn(conn);
+                returnConn(conn, failed);
             }
         }
     }
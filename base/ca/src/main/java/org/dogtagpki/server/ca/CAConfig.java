@@ -6,6 +6,8 @@
 package org.dogtagpki.server.ca;
 
 import com.netscape.ca.CRLConfig;
+import com.netscape.ca.CRLDistributionCache;
+import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.connector.ConnectorsConfig;
 import com.netscape.certsrv.security.SigningUnitConfig;
 import com.netscape.cmscore.base.ConfigStorage;
@@ -61,6 +63,27 @@ public class CAConfig extends ConfigStore {
         return getSubStore("crl", CRLConfig.class);
     }
 
+    /**
+     * Returns ca.crlDistribution.enable parameter.
+     */
+    public boolean getCRLDistributionCacheEnabled() throws EBaseException {
+        return getBoolean("crlDistribution.enable", true);
+    }
+
+    /**
+     * Returns ca.crlDistribution.timeout parameter (in seconds).
+     */
+    public int getCRLDistributionCacheTimeout() throws EBaseException {
+        return getInteger("crlDistribution.timeout", CRLDistributionCache.DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Returns ca.crlDistribution.servlet.enable parameter.
+     */
+    public boolean getCRLDistributionServletEnabled() throws EBaseException {
+        return getBoolean("crlDistribution.servlet.enable", false);
+    }
+
     /**
      * Returns ca.connector.* parameters.
      */
@@ -48,6 +48,7 @@ import com.netscape.ca.AuthorityMonitor;
 import com.netscape.ca.CANotify;
 import com.netscape.ca.CAService;
 import com.netscape.ca.CRLConfig;
+import com.netscape.ca.CRLDistributionCache;
 import com.netscape.ca.CRLIssuingPoint;
 import com.netscape.ca.CRLIssuingPointConfig;
 import com.netscape.ca.CertificateAuthority;
@@ -107,6 +108,7 @@ public class CAEngine extends CMSEngine {
 
     protected CertificateRepository certificateRepository;
     protected CRLRepository crlRepository;
+    protected CRLDistributionCache crlDistributionCache;
     protected ReplicaIDRepository replicaIDRepository;
 
     protected CAPolicy caPolicy;
@@ -204,6 +206,10 @@ public class CAEngine extends CMSEngine {
         return crlRepository;
     }
 
+    public CRLDistributionCache getCRLDistributionCache() {
+        return crlDistributionCache;
+    }
+
     public ReplicaIDRepository getReplicaIDRepository() {
         return replicaIDRepository;
     }
@@ -1624,6 +1630,14 @@ public class CAEngine extends CMSEngine {
 
         crlRepository = new CRLRepository(dbSubsystem);
         crlRepository.init();
+
+        CAEngineConfig engineConfig = getConfig();
+        CAConfig caConfig = engineConfig.getCAConfig();
+
+        crlDistributionCache = new CRLDistributionCache(
+                crlRepository,
+                caConfig.getCRLDistributionCacheEnabled(),
+                caConfig.getCRLDistributionCacheTimeout());
     }
 
     public void initReplicaIDRepository() throws Exception {
@@ -26,10 +26,7 @@ import java.security.Principal;
 import java.security.PublicKey;
 import java.security.SecureRandom;
 import java.security.cert.X509Certificate;
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.Enumeration;
-import java.util.List;
 import java.util.Map;
 
 import javax.ws.rs.core.Response;
@@ -427,7 +424,6 @@ public class CertService extends PKIService implements CertResource {
         logger.info("Listing certificates");
 
         maxResults = maxResults == null ? DEFAULT_MAXRESULTS : maxResults;
-        maxTime    = maxTime == null ? DEFAULT_MAXTIME : maxTime;
         start      = start == null ? 0 : start;
         size       = size == null ? DEFAULT_SIZE : size;
 
@@ -436,26 +432,25 @@ public class CertService extends PKIService implements CertResource {
 
         CertDataInfos infos = new CertDataInfos();
         try {
-            Enumeration<CertRecord> e = repo.searchCertificates(filter, maxResults, maxTime);
-            if (e == null) {
+            // use a virtual list so only the records in the requested
+            // page are retrieved and decoded
+            CertRecordList list = repo.findCertRecordsInList(filter, null, "serialno", size);
+            if (list == null) {
                 throw new EBaseException("search results are null");
             }
 
-            // store non-null results in a list
-            List<CertDataInfo> results = new ArrayList<>();
-            while (e.hasMoreElements()) {
-                CertRecord rec = e.nextElement();
-                if (rec == null) continue;
-                results.add(createCertDataInfo(rec));
+            int total = list.getSize();
+            if (maxResults > 0 && total > maxResults) {
+                total = maxResults;
             }
-
-            int total = results.size();
             logger.info("Search results: " + total);
             infos.setTotal(total);
 
             // return entries in the requested page
-            for (int i = start; i < start + size && i < total ; i++) {
-                infos.addEntry(results.get(i));
+            for (int i = start; i < start + size && i < total; i++) {
+                CertRecord rec = list.getCertRecord(i);
+                if (rec == null) continue;
+                infos.addEntry(createCertDataInfo(rec));
             }
         } catch (Exception e) {
             logger.error("Unable to list certificates: " + e.getMessage(), e);
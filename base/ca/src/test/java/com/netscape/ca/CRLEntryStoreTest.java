@@ -0,0 +1,257 @@
+package com.netscape.ca;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.junit.Test;
+import org.mozilla.jss.netscape.security.util.DerOutputStream;
+import org.mozilla.jss.netscape.security.x509.AlgorithmId;
+import org.mozilla.jss.netscape.security.x509.CRLExtensions;
+import org.mozilla.jss.netscape.security.x509.CRLNumberExtension;
+import org.mozilla.jss.netscape.security.x509.CRLReasonExtension;
+import org.mozilla.jss.netscape.security.x509.RevocationReason;
+import org.mozilla.jss.netscape.security.x509.RevokedCertImpl;
+import org.mozilla.jss.netscape.security.x509.RevokedCertificate;
+import org.mozilla.jss.netscape.security.x509.X500Name;
+import org.mozilla.jss.netscape.security.x509.X509CRLImpl;
+
+public class CRLEntryStoreTest {
+
+    private static final String ALGORITHM = "SHA256withRSA";
+
+    private static final Date THIS_UPDATE = new Date(1700000000000L);
+    private static final Date NEXT_UPDATE = new Date(1700086400000L);
+
+    /**
+     * Hash table that returns its entries sorted by serial number.
+     * X509CRLImpl encodes the entries in hash table order while
+     * CRLEntryStore sorts them, so the expected CRL is created with
+     * this table to get the same encoding.
+     */
+    private static class SortedHashtable extends Hashtable<BigInteger, RevokedCertificate> {
+
+        private static final long serialVersionUID = 1L;
+
+        private synchronized TreeMap<BigInteger, RevokedCertificate> sorted() {
+            TreeMap<BigInteger, RevokedCertificate> map = new TreeMap<>();
+            for (Map.Entry<BigInteger, RevokedCertificate> entry : super.entrySet()) {
+                map.put(entry.getKey(), entry.getValue());
+            }
+            return map;
+        }
+
+        @Override
+        public synchronized Enumeration<BigInteger> keys() {
+            return Collections.enumeration(sorted().keySet());
+        }
+
+        @Override
+        public synchronized Enumeration<RevokedCertificate> elements() {
+            return Collections.enumeration(sorted().values());
+        }
+
+        @Override
+        public Set<BigInteger> keySet() {
+            return sorted().keySet();
+        }
+
+        @Override
+        public Collection<RevokedCertificate> values() {
+            return sorted().values();
+        }
+
+        @Override
+        public Set<Map.Entry<BigInteger, RevokedCertificate>> entrySet() {
+            return sorted().entrySet();
+        }
+    }
+
+    private static RevokedCertImpl createRevokedCert(long serialNumber, boolean extensions) throws Exception {
+
+        Date revocationDate = new Date(1600000000000L + serialNumber * 1000);
+
+        if (!extensions) {
+            return new RevokedCertImpl(BigInteger.valueOf(serialNumber), revocationDate);
+        }
+
+        CRLExtensions exts = new CRLExtensions();
+        exts.set(CRLReasonExtension.NAME, new CRLReasonExtension(RevocationReason.KEY_COMPROMISE));
+
+        return new RevokedCertImpl(BigInteger.valueOf(serialNumber), revocationDate, exts);
+    }
+
+    /**
+     * Creates revoked certificates with serial numbers 1 to count.
+     * Every extensionsInterval-th certificate has entry extensions,
+     * none if extensionsInterval is 0.
+     */
+    private static Hashtable<BigInteger, RevokedCertificate> createRevokedCerts(int count, int extensionsInterval)
+            throws Exception {
+
+        Hashtable<BigInteger, RevokedCertificate> certs = new SortedHashtable();
+
+        for (long i = 1; i <= count; i++) {
+            boolean extensions = extensionsInterval > 0 && i % extensionsInterval == 0;
+            certs.put(BigInteger.valueOf(i), createRevokedCert(i, extensions));
+        }
+
+        return certs;
+    }
+
+    private static CRLExtensions createCRLExtensions() throws Exception {
+        CRLExtensions exts = new CRLExtensions();
+        exts.set(CRLNumberExtension.NAME, new CRLNumberExtension(Boolean.FALSE, BigInteger.valueOf(42)));
+        return exts;
+    }
+
+    private static byte[] getTBSCertList(
+            Hashtable<BigInteger, RevokedCertificate> certs,
+            CRLExtensions crlExts) throws Exception {
+
+        X509CRLImpl crl = new X509CRLImpl(
+                new X500Name("CN=CA Signing Certificate,O=EXAMPLE"),
+                AlgorithmId.get(ALGORITHM),
+                THIS_UPDATE,
+                NEXT_UPDATE,
+                certs,
+                crlExts);
+
+        crl.encodeInfo(new DerOutputStream());
+        return crl.getTBSCertList();
+    }
+
+    private static byte[] join(List<byte[]> chunks) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] chunk : chunks) {
+            out.write(chunk);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes the revoked certificates with X509CRLImpl and with
+     * CRLEntryStore, checks that both TBSCertLists are identical,
+     * and returns the signed CRL created from the CRLEntryStore chunks.
+     */
+    private static X509CRLImpl checkEncoding(
+            Hashtable<BigInteger, RevokedCertificate> certs,
+            CRLExtensions crlExts,
+            int chunkSize) throws Exception {
+
+        byte[] expected = getTBSCertList(certs, crlExts);
+
+        CRLEntryStore store = new CRLEntryStore("MasterCRL", 2, chunkSize);
+
+        try {
+            store.update(certs);
+            assertEquals(certs.size(), store.size());
+
+            // the CRL is encoded without entries before signing
+            byte[] header = getTBSCertList(new Hashtable<>(), crlExts);
+            List<byte[]> tbsCertList = store.getTBSCertList(header);
+
+            byte[] actual = join(tbsCertList);
+            assertArrayEquals(expected, actual);
+
+            DerOutputStream signature = new DerOutputStream();
+            AlgorithmId.get(ALGORITHM).encode(signature);
+            signature.putBitString(new byte[] { 0x01, 0x02, 0x03, 0x04 });
+
+            byte[] signedCRL = CRLEntryStore.createSignedCRL(tbsCertList, signature.toByteArray());
+
+            X509CRLImpl crl = new X509CRLImpl(signedCRL);
+            assertArrayEquals(expected, crl.getTBSCertList());
+
+            for (BigInteger serialNumber : certs.keySet()) {
+                assertNotNull(crl.getRevokedCertificate(serialNumber));
+            }
+
+            return crl;
+
+        } finally {
+            store.shutdown();
+        }
+    }
+
+    @Test
+    public void testNoEntries() throws Exception {
+
+        X509CRLImpl crl = checkEncoding(new SortedHashtable(), null, 10);
+        assertTrue(crl.getRevokedCertificates() == null || crl.getRevokedCertificates().isEmpty());
+
+        checkEncoding(new SortedHashtable(), createCRLExtensions(), 10);
+    }
+
+    @Test
+    public void testEntriesWithoutExtensions() throws Exception {
+        checkEncoding(createRevokedCerts(5, 0), null, 10);
+        checkEncoding(createRevokedCerts(5, 0), createCRLExtensions(), 10);
+    }
+
+    @Test
+    public void testEntriesWithExtensions() throws Exception {
+
+        // all entries with extensions
+        checkEncoding(createRevokedCerts(5, 1), null, 10);
+        checkEncoding(createRevokedCerts(5, 1), createCRLExtensions(), 10);
+
+        // some entries with extensions
+        checkEncoding(createRevokedCerts(5, 2), null, 10);
+        checkEncoding(createRevokedCerts(5, 2), createCRLExtensions(), 10);
+    }
+
+    @Test
+    public void testLongFormLengths() throws Exception {
+
+        // more than 127 bytes of entries
+        Hashtable<BigInteger, RevokedCertificate> certs = createRevokedCerts(20, 3);
+        byte[] tbsCertList = checkEncoding(certs, createCRLExtensions(), 7).getTBSCertList();
+        assertTrue(tbsCertList.length >= 128);
+
+        // more than 65535 bytes of entries in several chunks
+        certs = createRevokedCerts(5000, 3);
+        tbsCertList = checkEncoding(certs, null, 1000).getTBSCertList();
+        assertTrue(tbsCertList.length >= 65536);
+
+        tbsCertList = checkEncoding(certs, createCRLExtensions(), 1000).getTBSCertList();
+        assertTrue(tbsCertList.length >= 65536);
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+
+        CRLEntryStore store = new CRLEntryStore("MasterCRL", 2, 10);
+
+        try {
+            store.update(createRevokedCerts(30, 2));
+
+            // remove some entries and add others
+            Hashtable<BigInteger, RevokedCertificate> certs = createRevokedCerts(40, 2);
+            for (long i = 1; i <= 10; i++) {
+                certs.remove(BigInteger.valueOf(i));
+            }
+            store.update(certs);
+            assertEquals(30, store.size());
+
+            byte[] header = getTBSCertList(new Hashtable<>(), null);
+            assertArrayEquals(getTBSCertList(certs, null), join(store.getTBSCertList(header)));
+
+        } finally {
+            store.shutdown();
+        }
+    }
+}
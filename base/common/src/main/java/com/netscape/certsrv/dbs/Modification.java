@@ -50,7 +50,8 @@ public class Modification {
      *
      * @param name attribute name
      * @param op attribute operation (i.e. MOD_ADD, MOD_DELETE, or MOD_REPLACE)
-     * @param value attribute value
+     * @param value attribute value, or null to delete (MOD_DELETE) or
+     *   remove (MOD_REPLACE) all values of the attribute
      */
     public Modification(String name, int op, Object value) {
         mName = name;
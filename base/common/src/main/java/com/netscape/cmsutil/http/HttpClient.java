@@ -17,6 +17,7 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmsutil.http;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
@@ -24,6 +25,7 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 
 import org.mozilla.jss.ssl.SSLCertificateApprovalCallback;
 
@@ -32,9 +34,15 @@ import com.netscape.cmsutil.net.ISocketFactory;
 /**
  * basic http client.
  * not optimized for performance.
- * handles only string content.
+ * handles string content and binary request content.
  */
 public class HttpClient {
+    /**
+     * Time in milliseconds a connection has to be idle before isStale()
+     * probes the socket with a read.
+     */
+    public static final long STALE_PROBE_IDLE_TIME = 1000;
+
     protected ISocketFactory mFactory = null;
 
     protected Socket mSocket = null;
@@ -46,6 +54,8 @@ public class HttpClient {
     protected BufferedReader mBufferedReader = null;
     protected SSLCertificateApprovalCallback mCertApprovalCallback = null;
     protected boolean mConnected = false;
+    protected boolean mKeepAlive = false;
+    protected long mLastUsed = 0;
     // for auditing purposes
     protected String mHost;
     protected String mPort;
@@ -85,12 +95,14 @@ public class HttpClient {
             throw new IOException("Couldn't make connection");
         }
 
-        mInputStream = mSocket.getInputStream();
+        // responses are parsed from the byte stream
+        mInputStream = new BufferedInputStream(mSocket.getInputStream());
         mOutputStream = mSocket.getOutputStream();
         mInputStreamReader = new InputStreamReader(mInputStream, "UTF8");
         mBufferedReader = new BufferedReader(mInputStreamReader);
         mOutputStreamWriter = new OutputStreamWriter(mOutputStream, "UTF8");
         mConnected = true;
+        mLastUsed = System.currentTimeMillis();
     }
 
     public void connect(String host, int port) throws IOException {
@@ -101,6 +113,26 @@ public class HttpClient {
         return mConnected;
     }
 
+    /**
+     * Keeps the connection open after a response if the server
+     * allows it, so the next request does not need a new connection.
+     * Only responses with a Content-Length header can be kept.
+     */
+    public void setKeepAlive(boolean keepAlive) {
+        mKeepAlive = keepAlive;
+    }
+
+    public boolean getKeepAlive() {
+        return mKeepAlive;
+    }
+
+    /**
+     * Returns the time the last response was received.
+     */
+    public long getLastUsed() {
+        return mLastUsed;
+    }
+
     /**
      * Sends a request to http server.
      * Returns a http response.
@@ -111,18 +143,90 @@ public class HttpClient {
 
         if (mOutputStream == null)
             throw new IOException("Output stream not initialized");
-        request.write(mOutputStreamWriter);
+        request.write(mOutputStreamWriter, mOutputStream);
         try {
-            resp.parse(mBufferedReader);
+            resp.parse(mInputStream);
         } catch (IOException e) {
             // XXX should we disconnect in all cases ?
             disconnect();
             throw e;
         }
-        disconnect();
+        mLastUsed = System.currentTimeMillis();
+        if (!mKeepAlive || !isReusable(resp)) {
+            disconnect();
+        }
         return resp;
     }
 
+    /**
+     * Returns true if the connection can be used for another request
+     * after the response.
+     */
+    protected boolean isReusable(HttpResponse resp) {
+
+        // without Content-Length the content was read until the end of the stream
+        if (resp.getHeader("content-length") == null) {
+            return false;
+        }
+
+        String connection = resp.getHeader("connection");
+        if (connection != null && connection.equalsIgnoreCase("close")) {
+            return false;
+        }
+
+        // HTTP/1.0 connections are closed unless kept alive explicitly
+        if (Http.Vers1_0.equals(resp.getHttpVers())) {
+            return connection != null && connection.equalsIgnoreCase("keep-alive");
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks whether a kept connection can no longer be used, for
+     * example because the server closed it while it was idle. The
+     * server is not expected to send anything before the next request,
+     * so any data or the end of the stream makes the connection stale.
+     *
+     * A connection that was used within STALE_PROBE_IDLE_TIME is only
+     * checked for pending data, since the server is unlikely to have
+     * closed it in the meantime and the read probe blocks for up to
+     * a millisecond.
+     */
+    public boolean isStale() {
+
+        if (!mConnected || mSocket.isClosed()) {
+            return true;
+        }
+
+        try {
+            if (mInputStream.available() > 0) {
+                return true;
+            }
+
+            if (System.currentTimeMillis() - mLastUsed <= STALE_PROBE_IDLE_TIME) {
+                return false;
+            }
+
+            int timeout = mSocket.getSoTimeout();
+            try {
+                mSocket.setSoTimeout(1);
+                mInputStream.read();
+                return true;
+
+            } catch (SocketTimeoutException e) {
+                // nothing received, the connection is still open
+                return false;
+
+            } finally {
+                mSocket.setSoTimeout(timeout);
+            }
+
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
     public void disconnect()
             throws IOException {
         mSocket.close();
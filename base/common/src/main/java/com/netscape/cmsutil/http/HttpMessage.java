@@ -18,9 +18,13 @@
 package com.netscape.cmsutil.http;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.Enumeration;
 import java.util.Hashtable;
 
@@ -33,6 +37,10 @@ public class HttpMessage {
     protected String mLine = null; // request or response line.
     protected Hashtable<String, String> mHeaders = null;
     protected String mContent = null; // arbitrary content chars assumed.
+    protected byte[] mBinaryContent = null; // written as is
+
+    // size of the pieces binary content is written in
+    private static final int CHUNK_SIZE = 64 * 1024;
 
     /**
      * Instantiate a HttpResponse for write to http client.
@@ -87,22 +95,74 @@ public class HttpMessage {
             throws IOException {
         mHeaders = new Hashtable<>();
 
-        int colon;
-        String line, key, value;
+        String line;
 
         while (true) {
             line = reader.readLine();
             if (line == null || line.equals(""))
                 break;
-            colon = line.indexOf(':');
-            if (colon == -1) {
-                mHeaders = null;
-                throw new HttpProtocolException("Bad Http header format");
+            addHeader(line);
+        }
+    }
+
+    /**
+     * read http headers from a byte stream.
+     * does not support values of more than one line or multivalue headers.
+     */
+    public void readHeaders(InputStream in)
+            throws IOException {
+        mHeaders = new Hashtable<>();
+
+        String line;
+
+        while (true) {
+            line = readLine(in);
+            if (line == null || line.equals(""))
+                break;
+            addHeader(line);
+        }
+    }
+
+    private void addHeader(String line) throws HttpProtocolException {
+
+        int colon = line.indexOf(':');
+        if (colon == -1) {
+            mHeaders = null;
+            throw new HttpProtocolException("Bad Http header format");
+        }
+
+        String key = line.substring(0, colon);
+        String value = line.substring(colon + 1);
+        mHeaders.put(key.toLowerCase(), value.trim());
+    }
+
+    /**
+     * Reads a line terminated by LF or CRLF from a byte stream.
+     *
+     * @return the line without the terminator, or null at the end of the stream
+     */
+    private static String readLine(InputStream in) throws IOException {
+
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                if (line.size() == 0) {
+                    return null;
+                }
+                break;
             }
-            key = line.substring(0, colon);
-            value = line.substring(colon + 1);
-            mHeaders.put(key.toLowerCase(), value.trim());
+            line.write(b);
         }
+
+        byte[] bytes = line.toByteArray();
+        int length = bytes.length;
+        if (length > 0 && bytes[length - 1] == '\r') {
+            length--;
+        }
+
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
     }
 
     public void write(OutputStreamWriter writer)
@@ -116,6 +176,27 @@ public class HttpMessage {
         writer.flush();
     }
 
+    /**
+     * Writes the message and the binary content, if any, directly
+     * to the output stream without converting it to characters.
+     */
+    public void write(OutputStreamWriter writer, OutputStream out)
+            throws IOException {
+        write(writer);
+        if (mBinaryContent == null) {
+            return;
+        }
+        for (int offset = 0; offset < mBinaryContent.length; offset += CHUNK_SIZE) {
+            out.write(mBinaryContent, offset, Math.min(CHUNK_SIZE, mBinaryContent.length - offset));
+        }
+        out.flush();
+    }
+
+    /**
+     * Parses the message from a character stream. The Content-Length
+     * is counted in characters, so the content must not contain
+     * multi-byte characters. Use parse(InputStream) instead.
+     */
     public void parse(BufferedReader reader)
             throws IOException {
         String line = reader.readLine();
@@ -155,14 +236,75 @@ public class HttpMessage {
         }
     }
 
+    /**
+     * Parses the message from a byte stream. If the message has a
+     * Content-Length header, exactly that many bytes are read and
+     * decoded as UTF-8, so the stream is positioned at the next
+     * message. Otherwise the content is read until the end of the
+     * stream.
+     */
+    public void parse(InputStream in)
+            throws IOException {
+        String line = readLine(in);
+
+        if (line == null) {
+            throw new HttpEofException("End of stream reached");
+        }
+        if (line.equals("")) {
+            throw new HttpProtocolException("Bad Http req/resp line " + line);
+        }
+        mLine = line;
+        readHeaders(in);
+
+        String lenstr = mHeaders.get("content-length");
+
+        if (lenstr != null) {
+            int len;
+            try {
+                len = Integer.parseInt(lenstr);
+            } catch (NumberFormatException e) {
+                len = -1;
+            }
+            if (len < 0) {
+                throw new HttpProtocolException("Bad Content-Length " + lenstr);
+            }
+
+            byte[] content = in.readNBytes(len);
+            if (content.length < len) {
+                throw new HttpEofException("End of stream reached after " + content.length + " of " + len + " bytes");
+            }
+
+            mContent = new String(content, StandardCharsets.UTF_8);
+
+        } else {
+            byte[] content = in.readAllBytes();
+            if (content.length > 0) mContent = new String(content, StandardCharsets.UTF_8);
+        }
+    }
+
     public void reset() {
         mLine = null;
         mHeaders = null;
         mContent = null;
+        mBinaryContent = null;
     }
 
     public void setContent(String content) {
         mContent = content;
+        mBinaryContent = null;
+    }
+
+    /**
+     * Sets binary content. The array is not copied, so it must not be
+     * modified until the message is written.
+     */
+    public void setBinaryContent(byte[] content) {
+        mBinaryContent = content;
+        mContent = null;
+    }
+
+    public byte[] getBinaryContent() {
+        return mBinaryContent;
     }
 
     public String getContent() {
@@ -19,6 +19,7 @@ package com.netscape.cmsutil.http;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStreamWriter;
 
 /**
@@ -85,6 +86,20 @@ public class HttpRequest extends HttpMessage {
     public void parse(BufferedReader reader)
             throws IOException {
         super.parse(reader);
+        parseRequestLine();
+    }
+
+    /**
+     * parse a http request from a http client
+     */
+    @Override
+    public void parse(InputStream in)
+            throws IOException {
+        super.parse(in);
+        parseRequestLine();
+    }
+
+    private void parseRequestLine() throws HttpProtocolException {
 
         int method = mLine.indexOf(Http.SP);
 
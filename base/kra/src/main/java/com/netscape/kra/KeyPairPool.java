@@ -0,0 +1,385 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.kra;
+
+import java.security.KeyPair;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.mozilla.jss.crypto.KeyPairAlgorithm;
+import org.mozilla.jss.crypto.KeyPairGeneratorSpi;
+
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.cmscore.base.ConfigStore;
+
+/**
+ * Pool of key pairs generated in the background for server-side
+ * key generation, for example:
+ *
+ * <pre>
+ * kra.keygen.pool.enable=true
+ * kra.keygen.pool.keys=RSA:2048,RSA:3072,EC:nistp256
+ * kra.keygen.pool.size=10
+ * kra.keygen.pool.lowWaterMark=3
+ * kra.keygen.pool.threads=1
+ * </pre>
+ *
+ * The keys parameter lists the RSA key sizes and EC curves to pool.
+ * A separate pool is created for each combination of algorithm, key
+ * size or curve, key usages, and key attributes when the first key
+ * with these parameters is requested. Whenever a pool has fewer than
+ * lowWaterMark key pairs it is refilled up to size key pairs. A key
+ * pair is handed out only once.
+ *
+ * Key pairs that are not temporary (kra.keygen.temporaryPairs=false)
+ * are stored on the token, so the unused ones are deleted with the
+ * Remover when the pool is shut down.
+ */
+public class KeyPairPool {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(KeyPairPool.class);
+
+    public static final int DEFAULT_SIZE = 10;
+    public static final int DEFAULT_LOW_WATER_MARK = 3;
+    public static final int DEFAULT_THREADS = 1;
+
+    // seconds to wait for running key generation on shutdown
+    static final int SHUTDOWN_TIMEOUT = 10;
+
+    /**
+     * Generates key pairs for the pool.
+     */
+    public interface Generator {
+        KeyPair generate(Spec spec) throws Exception;
+    }
+
+    /**
+     * Removes unused permanent key pairs from the token.
+     */
+    public interface Remover {
+        void remove(KeyPair keyPair) throws Exception;
+    }
+
+    private Generator generator;
+    private Remover remover;
+
+    // <algorithm>:<key size or curve>
+    private Set<String> keys = new HashSet<>();
+
+    private int size = DEFAULT_SIZE;
+    private int lowWaterMark = DEFAULT_LOW_WATER_MARK;
+    private int threads = DEFAULT_THREADS;
+
+    private Map<Spec, Pool> pools = new ConcurrentHashMap<>();
+
+    private ThreadPoolExecutor executor;
+
+    private LongAdder hits = new LongAdder();
+    private LongAdder misses = new LongAdder();
+    private LongAdder generated = new LongAdder();
+    private LongAdder failures = new LongAdder();
+
+    public KeyPairPool(Generator generator) {
+        this(generator, null);
+    }
+
+    public KeyPairPool(Generator generator, Remover remover) {
+        this.generator = generator;
+        this.remover = remover;
+    }
+
+    public void init(ConfigStore config) throws EBaseException {
+
+        String value = config.getString("keys", "RSA:2048");
+        for (String key : value.split(",")) {
+            key = key.trim();
+            if (!key.isEmpty()) {
+                keys.add(key);
+            }
+        }
+
+        size = Math.max(1, config.getInteger("size", DEFAULT_SIZE));
+        lowWaterMark = Math.min(size, config.getInteger("lowWaterMark", DEFAULT_LOW_WATER_MARK));
+        threads = Math.max(1, config.getInteger("threads", DEFAULT_THREADS));
+
+        logger.info("KeyPairPool: keys: " + keys);
+        logger.info("KeyPairPool: size: " + size);
+        logger.info("KeyPairPool: low water mark: " + lowWaterMark);
+        logger.info("KeyPairPool: threads: " + threads);
+
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(
+                threads, threads,
+                0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread thread = new Thread(r, "KeyPairPool-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    // keep request threads ahead of the background keygen
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                });
+    }
+
+    public boolean isPooled(Spec spec) {
+        return keys.contains(spec.getKey());
+    }
+
+    /**
+     * Returns a pre-generated key pair, or null if the key pair has
+     * to be generated by the caller. The pool of the key pair is
+     * refilled in the background when necessary.
+     */
+    public KeyPair take(Spec spec) {
+
+        if (!isPooled(spec)) {
+            return null;
+        }
+
+        Pool pool = pools.computeIfAbsent(spec, Pool::new);
+        KeyPair keyPair = pool.poll();
+
+        if (keyPair == null) {
+            misses.increment();
+            logger.debug("KeyPairPool: No " + spec + " key pair available");
+        } else {
+            hits.increment();
+            logger.debug("KeyPairPool: Using pooled " + spec + " key pair, " + pool.size() + " remaining");
+        }
+
+        pool.refill();
+
+        return keyPair;
+    }
+
+    /**
+     * Returns the number of key pairs available with the given parameters.
+     */
+    int size(Spec spec) {
+        Pool pool = pools.get(spec);
+        return pool == null ? 0 : pool.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public void logStats() {
+
+        long h = hits.sum();
+        long total = h + misses.sum();
+
+        logger.info(String.format("KeyPairPool: %d requests, %.1f%% hits, %d generated, %d failures",
+                total, total == 0 ? 0 : 100.0 * h / total, generated.sum(), failures.sum()));
+
+        for (Pool pool : pools.values()) {
+            logger.info("KeyPairPool: " + pool.spec + ": " + pool.size() + " available");
+        }
+    }
+
+    /**
+     * Stops the background key generation and discards the unused
+     * key pairs. Unused permanent key pairs are removed from the token.
+     */
+    public void shutdown() {
+
+        logStats();
+
+        if (executor != null) {
+            executor.shutdownNow();
+            try {
+                // let a running generation finish so its key pair is removed too
+                if (!executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                    logger.warn("KeyPairPool: Key generation still running");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        for (Pool pool : pools.values()) {
+
+            KeyPair keyPair;
+            while ((keyPair = pool.poll()) != null) {
+
+                if (pool.spec.isTemporary() || remover == null) {
+                    continue;
+                }
+
+                try {
+                    remover.remove(keyPair);
+                } catch (Exception e) {
+                    logger.warn("KeyPairPool: Unable to remove " + pool.spec + " key pair: " + e.getMessage(), e);
+                }
+            }
+        }
+
+        pools.clear();
+    }
+
+    /**
+     * Parameters of pooled key pairs.
+     */
+    public static class Spec {
+
+        private final KeyPairAlgorithm algorithm;
+        private final int keySize;
+        private final String keyCurve;
+        private final KeyPairGeneratorSpi.Usage[] usages;
+        private final boolean temporary;
+
+        public Spec(
+                KeyPairAlgorithm algorithm,
+                int keySize,
+                String keyCurve,
+                KeyPairGeneratorSpi.Usage[] usages,
+                boolean temporary) {
+
+            this.algorithm = algorithm;
+            // the key size is ignored for EC keys
+            this.keySize = algorithm == KeyPairAlgorithm.EC ? 0 : keySize;
+            this.keyCurve = algorithm == KeyPairAlgorithm.EC ? keyCurve : null;
+            this.usages = usages == null ? null : usages.clone();
+            this.temporary = temporary;
+        }
+
+        public KeyPairAlgorithm getAlgorithm() {
+            return algorithm;
+        }
+
+        public int getKeySize() {
+            return keySize;
+        }
+
+        public String getKeyCurve() {
+            return keyCurve;
+        }
+
+        public KeyPairGeneratorSpi.Usage[] getUsages() {
+            return usages == null ? null : usages.clone();
+        }
+
+        public boolean isTemporary() {
+            return temporary;
+        }
+
+        String getKey() {
+            String name = algorithm == KeyPairAlgorithm.EC ? "EC" : algorithm == KeyPairAlgorithm.RSA ? "RSA" : "DSA";
+            return name + ":" + (algorithm == KeyPairAlgorithm.EC ? keyCurve : Integer.toString(keySize));
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(algorithm, keySize, keyCurve, Arrays.hashCode(usages), temporary);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (obj == null || getClass() != obj.getClass())
+                return false;
+            Spec other = (Spec) obj;
+            return algorithm == other.algorithm
+                    && keySize == other.keySize
+                    && Objects.equals(keyCurve, other.keyCurve)
+                    && Arrays.equals(usages, other.usages)
+                    && temporary == other.temporary;
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + (usages == null ? "" : " " + Arrays.toString(usages));
+        }
+    }
+
+    class Pool implements Runnable {
+
+        final Spec spec;
+
+        final ConcurrentLinkedQueue<KeyPair> keyPairs = new ConcurrentLinkedQueue<>();
+        final AtomicInteger count = new AtomicInteger();
+        final AtomicBoolean refilling = new AtomicBoolean();
+
+        Pool(Spec spec) {
+            this.spec = spec;
+        }
+
+        int size() {
+            return count.get();
+        }
+
+        KeyPair poll() {
+            KeyPair keyPair = keyPairs.poll();
+            if (keyPair != null) {
+                count.decrementAndGet();
+            }
+            return keyPair;
+        }
+
+        void refill() {
+
+            if (count.get() >= lowWaterMark || !refilling.compareAndSet(false, true)) {
+                return;
+            }
+
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                // shutting down
+                refilling.set(false);
+            }
+        }
+
+        @Override
+        public void run() {
+
+            logger.debug("KeyPairPool: Refilling " + spec + " key pairs");
+
+            try {
+                while (count.get() < size && !executor.isShutdown()) {
+
+                    KeyPair keyPair = generator.generate(spec);
+
+                    if (keyPair == null) {
+                        failures.increment();
+                        logger.warn("KeyPairPool: Unable to generate " + spec + " key pair");
+                        return;
+                    }
+
+                    generated.increment();
+                    keyPairs.offer(keyPair);
+                    count.incrementAndGet();
+                }
+
+                logger.debug("KeyPairPool: " + spec + ": " + count.get() + " key pairs available");
+
+            } catch (Exception e) {
+                failures.increment();
+                logger.warn("KeyPairPool: Unable to generate " + spec + " key pair: " + e.getMessage(), e);
+
+            } finally {
+                refilling.set(false);
+            }
+        }
+    }
+}
@@ -44,6 +44,7 @@ import org.mozilla.jss.crypto.KeyPairGenerator;
 import org.mozilla.jss.crypto.KeyPairGeneratorSpi;
 import org.mozilla.jss.crypto.PQGParamGenException;
 import org.mozilla.jss.crypto.PQGParams;
+import org.mozilla.jss.crypto.PrivateKey;
 import org.mozilla.jss.crypto.TokenException;
 import org.mozilla.jss.netscape.security.util.DerOutputStream;
 import org.mozilla.jss.netscape.security.util.Utils;
@@ -135,6 +136,9 @@ public class KeyRecoveryAuthority implements IAuthority, IKeyRecoveryAuthority {
     protected org.mozilla.jss.crypto.X509Certificate mJssCert = null;
     protected CryptoToken mKeygenToken = null;
 
+    // null if server-side keygen does not use pre-generated key pairs
+    protected KeyPairPool keyPairPool;
+
     // holds the number of bits of entropy to collect for each keygen
     private int mEntropyBitsPerKeyPair = 0;
 
@@ -375,6 +379,21 @@ public class KeyRecoveryAuthority implements IAuthority, IKeyRecoveryAuthority {
         initEntropy(mConfig);
         logger.debug("KeyRecoveryAuthority: completed init of entropy");
 
+        ConfigStore poolConfig = mConfig.getSubStore("keygen.pool", ConfigStore.class);
+        if (poolConfig.getBoolean("enable", false)) {
+            logger.info("KeyRecoveryAuthority: Initializing key pair pool");
+            keyPairPool = new KeyPairPool(
+                    spec -> createKeyPair(
+                            spec.getAlgorithm(),
+                            spec.getKeySize(),
+                            spec.getKeyCurve(),
+                            null,
+                            spec.getUsages(),
+                            spec.isTemporary()),
+                    keyPair -> CryptoUtil.deletePrivateKey((PrivateKey) keyPair.getPrivate()));
+            keyPairPool.init(poolConfig);
+        }
+
         logger.info(mName.toString() + " is started");
 
         // setup the KRA request queue
@@ -499,6 +518,10 @@ public class KeyRecoveryAuthority implements IAuthority, IKeyRecoveryAuthority {
             keyStatusUpdateTask.stop();
         }
 
+        if (keyPairPool != null) {
+            keyPairPool.shutdown();
+        }
+
         if (mKeyDB != null) {
             mKeyDB.shutdown();
         }
@@ -1834,6 +1857,26 @@ public KeyPair generateKeyPair(String alg, int keySize, String keyCurve,
             throws NoSuchAlgorithmException, TokenException, InvalidAlgorithmParameterException,
             InvalidParameterException, PQGParamGenException {
 
+        if (keyPairPool != null && pqg == null) {
+            KeyPair kp = keyPairPool.take(new KeyPairPool.Spec(kpAlg, keySize, keyCurve, usageList, temp));
+            if (kp != null) {
+                return kp;
+            }
+        }
+
+        return createKeyPair(kpAlg, keySize, keyCurve, pqg, usageList, temp);
+    }
+
+    /**
+     * Generates a key pair on the keygen token without using the
+     * key pair pool.
+     */
+    public KeyPair createKeyPair(
+            KeyPairAlgorithm kpAlg, int keySize, String keyCurve, PQGParams pqg,
+            KeyPairGeneratorSpi.Usage[] usageList, boolean temp)
+            throws NoSuchAlgorithmException, TokenException, InvalidAlgorithmParameterException,
+            InvalidParameterException, PQGParamGenException {
+
         KRAEngine engine = KRAEngine.getInstance();
         CryptoToken token = getKeygenToken();
 
@@ -21,12 +21,9 @@ package org.dogtagpki.server.kra.rest;
 
 import java.math.BigInteger;
 import java.security.Principal;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Iterator;
-import java.util.List;
 
 import javax.ws.rs.Path;
 import javax.ws.rs.core.MultivaluedMap;
@@ -67,6 +64,7 @@ import com.netscape.cms.realm.PKIPrincipal;
 import com.netscape.cms.servlet.base.SubsystemService;
 import com.netscape.cms.servlet.key.KeyRequestDAO;
 import com.netscape.cmscore.dbs.KeyRecord;
+import com.netscape.cmscore.dbs.KeyRecordList;
 import com.netscape.cmscore.dbs.KeyRepository;
 import com.netscape.cmscore.request.Request;
 import com.netscape.cmscore.request.RequestQueue;
@@ -508,38 +506,36 @@ public class KeyService extends SubsystemService implements KeyResource {
         logger.info("KeyService: - filter: " + filter);
 
         maxResults = maxResults == null ? DEFAULT_MAXRESULTS : maxResults;
-        maxTime = maxTime == null ? DEFAULT_MAXTIME : maxTime;
 
         KeyInfoCollection infos = new KeyInfoCollection();
         try {
-            Enumeration<KeyRecord> e = repo.searchKeys(filter, maxResults, maxTime);
-            if (e == null) {
+            // use a virtual list so only the records in the requested
+            // page are retrieved from the database
+            KeyRecordList list = repo.findKeyRecordsInList(filter, null, "serialno", size);
+            if (list == null) {
                 return infos;
             }
 
+            int total = list.getSize();
+            if (maxResults > 0 && total > maxResults) {
+                total = maxResults;
+            }
+            logger.info("KeyService: Total: " + total);
+            infos.setTotal(total);
+
             logger.info("KeyService: Results:");
 
-            // store non-null results in a list
-            List<KeyInfo> results = new ArrayList<>();
-            while (e.hasMoreElements()) {
-                KeyRecord rec = e.nextElement();
+            // return entries in the requested page
+            for (int i = start; i < start + size && i < total; i++) {
+                KeyRecord rec = list.getKeyRecord(i);
                 if (rec == null) continue;
 
                 KeyInfo info = createKeyDataInfo(rec, false);
                 logger.info("KeyService: - key " + info.getKeyId());
-                results.add(info);
+                infos.addEntry(info);
 
                 auditKeyInfoSuccess(info.getKeyId(), null);
             }
-
-            int total = results.size();
-            logger.info("KeyService: Total: " + total);
-            infos.setTotal(total);
-
-            // return entries in the requested page
-            for (int i = start; i < start + size && i < total; i++) {
-                infos.addEntry(results.get(i));
-            }
         } catch (EBaseException e) {
             throw new PKIException("Unable to list keys: " + e.getMessage(), e);
         }
@@ -0,0 +1,313 @@
+package com.netscape.kra;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.security.KeyPair;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.mozilla.jss.crypto.KeyPairAlgorithm;
+
+import com.netscape.cmscore.base.ConfigStore;
+
+public class KeyPairPoolTest {
+
+    private static final KeyPairPool.Spec RSA_2048 =
+            new KeyPairPool.Spec(KeyPairAlgorithm.RSA, 2048, null, null, false);
+
+    private static final KeyPairPool.Spec RSA_4096 =
+            new KeyPairPool.Spec(KeyPairAlgorithm.RSA, 4096, null, null, false);
+
+    private static final KeyPairPool.Spec RSA_2048_TEMP =
+            new KeyPairPool.Spec(KeyPairAlgorithm.RSA, 2048, null, null, true);
+
+    /**
+     * Generator that counts the key pairs it generates.
+     */
+    private static class TestGenerator implements KeyPairPool.Generator {
+
+        AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public KeyPair generate(KeyPairPool.Spec spec) throws Exception {
+            count.incrementAndGet();
+            return new KeyPair(null, null);
+        }
+    }
+
+    private static KeyPairPool createPool(KeyPairPool.Generator generator, int threads) throws Exception {
+        return createPool(generator, null, threads);
+    }
+
+    private static KeyPairPool createPool(
+            KeyPairPool.Generator generator,
+            KeyPairPool.Remover remover,
+            int threads) throws Exception {
+
+        ConfigStore config = new ConfigStore();
+        config.putString("keys", "RSA:2048");
+        config.putInteger("size", 4);
+        config.putInteger("lowWaterMark", 2);
+        config.putInteger("threads", threads);
+
+        KeyPairPool pool = new KeyPairPool(generator, remover);
+        pool.init(config);
+
+        return pool;
+    }
+
+    private static void waitForSize(KeyPairPool pool, KeyPairPool.Spec spec, int size) throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000;
+        while (pool.size(spec) < size && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertEquals(size, pool.size(spec));
+    }
+
+    private static void waitForCount(AtomicInteger count, int value) throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000;
+        while (count.get() < value && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertEquals(value, count.get());
+    }
+
+    @Test
+    public void testTake() throws Exception {
+
+        TestGenerator generator = new TestGenerator();
+        KeyPairPool pool = createPool(generator, 1);
+
+        try {
+            // the first request is a miss and fills the pool
+            assertNull(pool.take(RSA_2048));
+            assertEquals(0, pool.getHits());
+            assertEquals(1, pool.getMisses());
+
+            waitForSize(pool, RSA_2048, 4);
+
+            Set<KeyPair> keyPairs = new HashSet<>();
+            for (int i = 0; i < 2; i++) {
+                KeyPair keyPair = pool.take(RSA_2048);
+                assertNotNull(keyPair);
+                assertTrue("Key pair handed out twice", keyPairs.add(keyPair));
+            }
+
+            assertEquals(2, pool.getHits());
+            assertEquals(1, pool.getMisses());
+            assertEquals(2, pool.size(RSA_2048));
+
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testNotPooled() throws Exception {
+
+        TestGenerator generator = new TestGenerator();
+        KeyPairPool pool = createPool(generator, 1);
+
+        try {
+            assertTrue(pool.isPooled(RSA_2048));
+            assertFalse(pool.isPooled(RSA_4096));
+
+            assertNull(pool.take(RSA_4096));
+            assertEquals(0, pool.size(RSA_4096));
+            assertEquals(0, pool.getMisses());
+
+            Thread.sleep(100);
+            assertEquals(0, generator.count.get());
+
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testRefillBelowLowWaterMark() throws Exception {
+
+        TestGenerator generator = new TestGenerator();
+        KeyPairPool pool = createPool(generator, 1);
+
+        try {
+            pool.take(RSA_2048);
+            waitForSize(pool, RSA_2048, 4);
+            assertEquals(4, generator.count.get());
+
+            // the pool is not refilled at or above the low water mark
+            assertNotNull(pool.take(RSA_2048));
+            assertNotNull(pool.take(RSA_2048));
+
+            Thread.sleep(100);
+            assertEquals(2, pool.size(RSA_2048));
+            assertEquals(4, generator.count.get());
+
+            // the pool is refilled up to its size below the low water mark
+            assertNotNull(pool.take(RSA_2048));
+
+            waitForSize(pool, RSA_2048, 4);
+            assertEquals(7, generator.count.get());
+
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testSingleRefill() throws Exception {
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        AtomicInteger count = new AtomicInteger();
+
+        KeyPairPool.Generator generator = spec -> {
+            int n = active.incrementAndGet();
+            maxActive.accumulateAndGet(n, Math::max);
+            started.countDown();
+            try {
+                release.await();
+                count.incrementAndGet();
+                return new KeyPair(null, null);
+            } finally {
+                active.decrementAndGet();
+            }
+        };
+
+        // several threads, but a pool is refilled by one thread at a time
+        KeyPairPool pool = createPool(generator, 4);
+
+        try {
+            assertNull(pool.take(RSA_2048));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            for (int i = 0; i < 10; i++) {
+                assertNull(pool.take(RSA_2048));
+            }
+
+            release.countDown();
+            waitForSize(pool, RSA_2048, 4);
+
+            assertEquals(1, maxActive.get());
+            assertEquals(4, count.get());
+
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testGeneratorFailure() throws Exception {
+
+        AtomicInteger count = new AtomicInteger();
+
+        KeyPairPool.Generator generator = spec -> {
+            if (count.incrementAndGet() == 1) {
+                throw new Exception("Token unavailable");
+            }
+            return new KeyPair(null, null);
+        };
+
+        KeyPairPool pool = createPool(generator, 1);
+
+        try {
+            // the refill stops after the failure
+            assertNull(pool.take(RSA_2048));
+            waitForCount(count, 1);
+
+            Thread.sleep(100);
+            assertEquals(0, pool.size(RSA_2048));
+
+            // the next request refills the pool again
+            assertNull(pool.take(RSA_2048));
+            waitForSize(pool, RSA_2048, 4);
+            assertEquals(2, pool.getMisses());
+
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testGeneratorReturnsNull() throws Exception {
+
+        AtomicInteger count = new AtomicInteger();
+
+        KeyPairPool.Generator generator = spec -> {
+            return count.incrementAndGet() == 1 ? null : new KeyPair(null, null);
+        };
+
+        KeyPairPool pool = createPool(generator, 1);
+
+        try {
+            assertNull(pool.take(RSA_2048));
+            waitForCount(count, 1);
+
+            Thread.sleep(100);
+            assertEquals(0, pool.size(RSA_2048));
+
+            assertNull(pool.take(RSA_2048));
+            waitForSize(pool, RSA_2048, 4);
+
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testShutdown() throws Exception {
+
+        TestGenerator generator = new TestGenerator();
+        KeyPairPool pool = createPool(generator, 1);
+
+        pool.take(RSA_2048);
+        waitForSize(pool, RSA_2048, 4);
+
+        pool.shutdown();
+
+        // unused key pairs are discarded and no new ones are generated
+        assertEquals(0, pool.size(RSA_2048));
+        assertNull(pool.take(RSA_2048));
+
+        Thread.sleep(100);
+        assertEquals(0, pool.size(RSA_2048));
+        assertEquals(4, generator.count.get());
+    }
+
+    @Test
+    public void testShutdownRemovesPermanentKeyPairs() throws Exception {
+
+        TestGenerator generator = new TestGenerator();
+        Set<KeyPair> removed = ConcurrentHashMap.newKeySet();
+        KeyPairPool pool = createPool(generator, removed::add, 1);
+
+        pool.take(RSA_2048);
+        waitForSize(pool, RSA_2048, 4);
+
+        pool.take(RSA_2048_TEMP);
+        waitForSize(pool, RSA_2048_TEMP, 4);
+
+        KeyPair keyPair = pool.take(RSA_2048);
+        assertNotNull(keyPair);
+        waitForSize(pool, RSA_2048, 3);
+
+        pool.shutdown();
+
+        // only the unused permanent key pairs are removed from the token
+        assertEquals(3, removed.size());
+        assertFalse(removed.contains(keyPair));
+        assertEquals(0, pool.size(RSA_2048));
+        assertEquals(0, pool.size(RSA_2048_TEMP));
+    }
+}
@@ -0,0 +1,28 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.certsrv.ocsp;
+
+import java.security.cert.X509CRL;
+
+import org.mozilla.jss.netscape.security.x509.X509CertImpl;
+
+/**
+ * This interface represents a listener that is notified when an
+ * OCSP store has received a new CRL for one of its issuing points.
+ */
+public interface ICRLUpdateListener {
+
+    /**
+     * This method is called after the CRL has been committed.
+     * <P>
+     *
+     * @param caCert the certificate of the CA that issued the CRL,
+     *            or null if it cannot be determined
+     * @param crl the new CRL, or null if the CRL has been
+     *            received by another replica
+     */
+    public void crlUpdated(X509CertImpl caCert, X509CRL crl);
+}
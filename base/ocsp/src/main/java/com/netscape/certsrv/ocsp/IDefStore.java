@@ -91,6 +91,14 @@ public interface IDefStore extends IOCSPStore {
      */
     public void updateCRL(X509CRL crl) throws EBaseException;
 
+    /**
+     * This method specifies whether or not delta CRLs can be
+     * passed to updateCRL().
+     *
+     * @return boolean true or false
+     */
+    public boolean isDeltaCRLSupported();
+
     /**
      * This method attempts to read the CRL issuing point.
      * <P>
@@ -174,4 +182,21 @@ public interface IDefStore extends IOCSPStore {
      * @return boolean true or false
      */
     public boolean isNotFoundGood();
+
+    /**
+     * This method registers a listener that is notified whenever
+     * the CRL of an issuing point has been updated.
+     * <P>
+     *
+     * @param listener the CRL update listener
+     */
+    public void addCRLUpdateListener(ICRLUpdateListener listener);
+
+    /**
+     * This method unregisters a CRL update listener.
+     * <P>
+     *
+     * @param listener the CRL update listener
+     */
+    public void removeCRLUpdateListener(ICRLUpdateListener listener);
 }
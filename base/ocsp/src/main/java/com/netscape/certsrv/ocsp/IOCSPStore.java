@@ -50,6 +50,25 @@ public interface IOCSPStore {
      */
     public SingleResponse processRequest(Request req) throws Exception;
 
+    /**
+     * Check against the database for status of multiple certificates.
+     * Stores should override this method to resolve the issuer of
+     * the requested certificates only once per issuer.
+     *
+     * @param reqs the requests
+     * @return the responses in the same order as the requests
+     */
+    public default SingleResponse[] processRequests(Request[] reqs) throws Exception {
+
+        SingleResponse[] responses = new SingleResponse[reqs.length];
+
+        for (int i = 0; i < reqs.length; i++) {
+            responses[i] = processRequest(reqs[i]);
+        }
+
+        return responses;
+    }
+
     /**
      * This method retrieves the configuration parameters associated with this
      * OCSP store.
@@ -0,0 +1,421 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cms.ocsp;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Streaming reader for DER-encoded CRLs.
+ *
+ * The reader walks through the TBSCertList of the CRL and passes each
+ * revoked certificate to a handler as soon as it has been read, so the
+ * entries of the CRL are never materialized as a whole. Only the fields
+ * needed by the OCSP store are decoded: thisUpdate, nextUpdate, the CRL
+ * number, the base CRL number of delta CRLs, and the serial number,
+ * revocation date and reason code of each entry.
+ *
+ * The reader does not verify the CRL signature.
+ */
+public class CRLReader {
+
+    public static final int REASON_UNSPECIFIED = 0;
+    public static final int REASON_REMOVE_FROM_CRL = 8;
+
+    private static final int TAG_BOOLEAN = 0x01;
+    private static final int TAG_INTEGER = 0x02;
+    private static final int TAG_OCTET_STRING = 0x04;
+    private static final int TAG_OID = 0x06;
+    private static final int TAG_ENUMERATED = 0x0A;
+    private static final int TAG_UTC_TIME = 0x17;
+    private static final int TAG_GENERALIZED_TIME = 0x18;
+    private static final int TAG_SEQUENCE = 0x30;
+    private static final int TAG_EXTENSIONS = 0xA0;
+
+    // encoded OIDs of the supported extensions
+    private static final byte[] OID_CRL_NUMBER = { 0x55, 0x1D, 0x14 };
+    private static final byte[] OID_REASON_CODE = { 0x55, 0x1D, 0x15 };
+    private static final byte[] OID_DELTA_CRL_INDICATOR = { 0x55, 0x1D, 0x1B };
+
+    // upper bound for the size of a single decoded value
+    private static final int MAX_VALUE_SIZE = 64 * 1024;
+
+    /**
+     * Receives the revoked certificates of a CRL.
+     */
+    public interface EntryHandler {
+        void entry(BigInteger serialNumber, long revocationDate, int reason) throws IOException;
+    }
+
+    private InputStream in;
+    private long position;
+
+    private Date thisUpdate;
+    private Date nextUpdate;
+    private BigInteger crlNumber;
+    private BigInteger baseCRLNumber;
+    private long entries;
+
+    public CRLReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads the CRL and passes the revoked certificates to the handler.
+     * The stream is left positioned after the TBSCertList.
+     */
+    public void read(EntryHandler handler) throws IOException {
+
+        // CertificateList
+        readTag(TAG_SEQUENCE);
+        readLength();
+
+        // TBSCertList
+        readTag(TAG_SEQUENCE);
+        long tbsEnd = readLength() + position;
+
+        int tag = readTag();
+
+        if (tag == TAG_INTEGER) {
+            // version
+            skip(readLength());
+            tag = readTag();
+        }
+
+        // signature
+        checkTag(tag, TAG_SEQUENCE);
+        skip(readLength());
+
+        // issuer
+        readTag(TAG_SEQUENCE);
+        skip(readLength());
+
+        thisUpdate = readTime(readTag());
+
+        tag = position < tbsEnd ? readTag() : -1;
+
+        if (tag == TAG_UTC_TIME || tag == TAG_GENERALIZED_TIME) {
+            nextUpdate = readTime(tag);
+            tag = position < tbsEnd ? readTag() : -1;
+        }
+
+        if (tag == TAG_SEQUENCE) {
+            // revokedCertificates
+            long end = readLength() + position;
+            while (position < end) {
+                readEntry(handler);
+            }
+            tag = position < tbsEnd ? readTag() : -1;
+        }
+
+        if (tag == TAG_EXTENSIONS) {
+            // crlExtensions
+            readLength();
+            readTag(TAG_SEQUENCE);
+            long end = readLength() + position;
+
+            while (position < end) {
+                Extension extension = readExtension();
+
+                if (Arrays.equals(extension.oid, OID_CRL_NUMBER)) {
+                    crlNumber = new BigInteger(getContents(extension.value, TAG_INTEGER));
+
+                } else if (Arrays.equals(extension.oid, OID_DELTA_CRL_INDICATOR)) {
+                    baseCRLNumber = new BigInteger(getContents(extension.value, TAG_INTEGER));
+                }
+            }
+
+        } else if (tag != -1) {
+            throw new IOException("Unexpected tag in CRL: 0x" + Integer.toHexString(tag));
+        }
+
+        if (position != tbsEnd) {
+            throw new IOException("Invalid TBSCertList length");
+        }
+    }
+
+    private void readEntry(EntryHandler handler) throws IOException {
+
+        readTag(TAG_SEQUENCE);
+        long end = readLength() + position;
+
+        readTag(TAG_INTEGER);
+        BigInteger serialNumber = new BigInteger(readValue(readLength()));
+
+        long revocationDate = readTime(readTag()).getTime();
+        int reason = REASON_UNSPECIFIED;
+
+        if (position < end) {
+            // crlEntryExtensions
+            readTag(TAG_SEQUENCE);
+            long extensionsEnd = readLength() + position;
+
+            while (position < extensionsEnd) {
+                Extension extension = readExtension();
+
+                if (Arrays.equals(extension.oid, OID_REASON_CODE)) {
+                    reason = new BigInteger(getContents(extension.value, TAG_ENUMERATED)).intValue();
+                }
+            }
+        }
+
+        if (position != end) {
+            throw new IOException("Invalid CRL entry length");
+        }
+
+        entries++;
+        handler.entry(serialNumber, revocationDate, reason);
+    }
+
+    private Extension readExtension() throws IOException {
+
+        readTag(TAG_SEQUENCE);
+        long end = readLength() + position;
+
+        Extension extension = new Extension();
+
+        readTag(TAG_OID);
+        extension.oid = readValue(readLength());
+
+        int tag = readTag();
+
+        if (tag == TAG_BOOLEAN) {
+            // critical
+            skip(readLength());
+            tag = readTag();
+        }
+
+        checkTag(tag, TAG_OCTET_STRING);
+        extension.value = readValue(readLength());
+
+        if (position != end) {
+            throw new IOException("Invalid extension length");
+        }
+
+        return extension;
+    }
+
+    private Date readTime(int tag) throws IOException {
+
+        if (tag != TAG_UTC_TIME && tag != TAG_GENERALIZED_TIME) {
+            throw new IOException("Unexpected tag for time: 0x" + Integer.toHexString(tag));
+        }
+
+        String value = new String(readValue(readLength()), StandardCharsets.US_ASCII);
+
+        try {
+            if (tag == TAG_UTC_TIME) {
+                // YYMMDDHHMMSSZ
+                int year = Integer.parseInt(value.substring(0, 2));
+                year += year < 50 ? 2000 : 1900;
+                return parseTime(year, value.substring(2));
+            }
+
+            // YYYYMMDDHHMMSS[.fff]Z
+            int year = Integer.parseInt(value.substring(0, 4));
+            return parseTime(year, value.substring(4));
+
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid time: " + value, e);
+        }
+    }
+
+    private Date parseTime(int year, String value) throws IOException {
+
+        if (!value.endsWith("Z") || value.length() < 11) {
+            throw new IOException("Unsupported time format: " + value);
+        }
+
+        LocalDateTime time = LocalDateTime.of(
+                year,
+                Integer.parseInt(value.substring(0, 2)),
+                Integer.parseInt(value.substring(2, 4)),
+                Integer.parseInt(value.substring(4, 6)),
+                Integer.parseInt(value.substring(6, 8)),
+                Integer.parseInt(value.substring(8, 10)));
+
+        long millis = time.toInstant(ZoneOffset.UTC).toEpochMilli();
+
+        if (value.charAt(10) == '.') {
+            // fractional seconds
+            String fraction = (value.substring(11, value.length() - 1) + "000").substring(0, 3);
+            millis += Integer.parseInt(fraction);
+        }
+
+        return new Date(millis);
+    }
+
+    /**
+     * Returns the contents of a DER-encoded primitive value.
+     */
+    private static byte[] getContents(byte[] der, int tag) throws IOException {
+
+        if (der.length < 2 || (der[0] & 0xFF) != tag) {
+            throw new IOException("Expected tag 0x" + Integer.toHexString(tag));
+        }
+
+        int offset = 2;
+        int length = der[1] & 0xFF;
+
+        if (length >= 0x80) {
+            int n = length & 0x7F;
+            if (n == 0 || n > 4 || offset + n > der.length) {
+                throw new IOException("Invalid value length");
+            }
+            length = 0;
+            for (int i = 0; i < n; i++) {
+                length = (length << 8) | (der[offset++] & 0xFF);
+            }
+        }
+
+        if (offset + length != der.length) {
+            throw new IOException("Invalid value length");
+        }
+
+        return Arrays.copyOfRange(der, offset, der.length);
+    }
+
+    private int read() throws IOException {
+
+        int b = in.read();
+
+        if (b < 0) {
+            throw new EOFException("Unexpected end of CRL");
+        }
+
+        position++;
+        return b;
+    }
+
+    private int readTag() throws IOException {
+
+        int tag = read();
+
+        if ((tag & 0x1F) == 0x1F) {
+            throw new IOException("Unsupported tag: 0x" + Integer.toHexString(tag));
+        }
+
+        return tag;
+    }
+
+    private void readTag(int expected) throws IOException {
+        checkTag(readTag(), expected);
+    }
+
+    private void checkTag(int tag, int expected) throws IOException {
+        if (tag != expected) {
+            throw new IOException("Expected tag 0x" + Integer.toHexString(expected) +
+                    " in CRL, found 0x" + Integer.toHexString(tag));
+        }
+    }
+
+    private long readLength() throws IOException {
+
+        int b = read();
+
+        if (b < 0x80) {
+            return b;
+        }
+
+        int n = b & 0x7F;
+
+        if (n == 0) {
+            throw new IOException("Indefinite length is not supported in DER");
+        }
+
+        if (n > 4) {
+            throw new IOException("Length too large: " + n + " bytes");
+        }
+
+        long length = 0;
+        for (int i = 0; i < n; i++) {
+            length = (length << 8) | read();
+        }
+
+        return length;
+    }
+
+    private byte[] readValue(long length) throws IOException {
+
+        if (length > MAX_VALUE_SIZE) {
+            throw new IOException("Value too large: " + length + " bytes");
+        }
+
+        byte[] value = new byte[(int) length];
+
+        int offset = 0;
+        while (offset < value.length) {
+            int n = in.read(value, offset, value.length - offset);
+            if (n < 0) {
+                throw new EOFException("Unexpected end of CRL");
+            }
+            offset += n;
+        }
+
+        position += length;
+        return value;
+    }
+
+    private void skip(long length) throws IOException {
+
+        long remaining = length;
+
+        while (remaining > 0) {
+            long n = in.skip(remaining);
+            if (n <= 0) {
+                // skip() may return 0 before the end of the stream
+                read();
+                n = 1;
+            } else {
+                position += n;
+            }
+            remaining -= n;
+        }
+    }
+
+    public Date getThisUpdate() {
+        return thisUpdate;
+    }
+
+    public Date getNextUpdate() {
+        return nextUpdate;
+    }
+
+    public BigInteger getCRLNumber() {
+        return crlNumber;
+    }
+
+    /**
+     * Returns the base CRL number from the delta CRL indicator,
+     * or null if the CRL is not a delta CRL.
+     */
+    public BigInteger getBaseCRLNumber() {
+        return baseCRLNumber;
+    }
+
+    public boolean isDeltaCRL() {
+        return baseCRLNumber != null;
+    }
+
+    /**
+     * Returns the number of revoked certificates read so far.
+     */
+    public long getEntries() {
+        return entries;
+    }
+
+    private static class Extension {
+        byte[] oid;
+        byte[] value;
+    }
+}
@@ -17,24 +17,25 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cms.ocsp;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.math.BigInteger;
-import java.security.MessageDigest;
 import java.security.cert.X509CRL;
-import java.security.cert.X509CRLEntry;
-import java.util.Arrays;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.commons.codec.binary.Hex;
 import org.mozilla.jss.asn1.GeneralizedTime;
 import org.mozilla.jss.asn1.INTEGER;
-import org.mozilla.jss.netscape.security.x509.RevokedCertificate;
-import org.mozilla.jss.netscape.security.x509.X509CRLImpl;
 import org.mozilla.jss.netscape.security.x509.X509CertImpl;
-import org.mozilla.jss.netscape.security.x509.X509Key;
 
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.base.IExtendedPluginInfo;
@@ -42,6 +43,7 @@ import com.netscape.certsrv.common.Constants;
 import com.netscape.certsrv.common.NameValuePairs;
 import com.netscape.certsrv.dbs.Modification;
 import com.netscape.certsrv.dbs.ModificationSet;
+import com.netscape.certsrv.ocsp.ICRLUpdateListener;
 import com.netscape.certsrv.ocsp.IDefStore;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.base.ConfigStore;
@@ -72,8 +74,6 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
     // refreshInSec is useful in the master-clone situation.
     // clone does not know that the CRL has been updated in
     // the master (by default no refresh)
-    private static final String PROP_USE_CACHE = "useCache";
-
     private static final String PROP_REFRESH_IN_SEC = "refreshInSec";
     private static final int DEF_REFRESH_IN_SEC = 0;
 
@@ -88,12 +88,26 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
     private static final String PROP_INCLUDE_NEXT_UPDATE =
             "includeNextUpdate";
 
+    // minimum time between issuer index rebuilds caused by unknown issuers
+    private static final long ISSUER_RELOAD_INTERVAL = 60 * 1000;
+
     protected Hashtable<String, Long> mReqCounts = new Hashtable<>();
     protected boolean mNotFoundGood = true;
-    protected boolean mUseCache = true;
     protected boolean mByName = true;
     protected boolean mIncludeNextUpdate = false;
-    protected Hashtable<String, CRLIPContainer> mCacheCRLIssuingPoints = new Hashtable<>();
+    // issuing point containers keyed by the transformed issuing point name
+    protected ConcurrentHashMap<String, CRLIPContainer> mCacheCRLIssuingPoints = new ConcurrentHashMap<>();
+
+    // revocation index of each issuing point, keyed by the transformed
+    // issuing point name and replaced as a whole on each CRL update
+    protected ConcurrentHashMap<String, RevocationIndex> mRevocationIndexes = new ConcurrentHashMap<>();
+
+    protected List<ICRLUpdateListener> mCRLUpdateListeners = new CopyOnWriteArrayList<>();
+
+    // CAs known to this store, updated when CAs are added or removed
+    protected volatile IssuerIndex mIssuerIndex = new IssuerIndex();
+    private final Object mIssuerLock = new Object();
+    private long mIssuersLoadTime = 0;
     private ConfigStore mConfig;
     private String mId = null;
     private DBSubsystem dbSubsystem;
@@ -146,8 +160,6 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
         // is not revoked.
         mNotFoundGood = mConfig.getBoolean(PROP_NOT_FOUND_GOOD, true);
 
-        mUseCache = mConfig.getBoolean(PROP_USE_CACHE, true);
-
         mByName = mConfig.getBoolean(PROP_BY_NAME, true);
 
         // To include next update in the OCSP response. If included,
@@ -201,6 +213,38 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
         return mNotFoundGood;
     }
 
+    @Override
+    public void addCRLUpdateListener(ICRLUpdateListener listener) {
+        mCRLUpdateListeners.add(listener);
+    }
+
+    @Override
+    public void removeCRLUpdateListener(ICRLUpdateListener listener) {
+        mCRLUpdateListeners.remove(listener);
+    }
+
+    /**
+     * Notifies the registered listeners that the CRL of the issuing
+     * point has been committed.
+     */
+    protected void notifyCRLUpdateListeners(String name, X509CRL crl) {
+
+        if (mCRLUpdateListeners.isEmpty()) {
+            return;
+        }
+
+        IssuerIndex.Issuer issuer = mIssuerIndex.get(transformDN(name));
+        X509CertImpl caCert = issuer == null ? null : issuer.getCert();
+
+        for (ICRLUpdateListener listener : mCRLUpdateListeners) {
+            try {
+                listener.crlUpdated(caCert, crl);
+            } catch (Exception e) {
+                logger.warn("DefStore: Unable to notify CRL update listener: " + e.getMessage(), e);
+            }
+        }
+    }
+
     @Override
     public long getReqCount(String id) {
         Long c = mReqCounts.get(id);
@@ -284,11 +328,19 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
 
     @Override
     public void startup() throws EBaseException {
+
+        try {
+            loadIssuers();
+        } catch (EBaseException e) {
+            // the index will be loaded on the first request
+            logger.warn("DefStore: Unable to load CAs: " + e.getMessage(), e);
+        }
+
         int refresh = mConfig.getInteger(PROP_REFRESH_IN_SEC,
                 DEF_REFRESH_IN_SEC);
         if (refresh > 0) {
             DefStoreCRLUpdater updater =
-                    new DefStoreCRLUpdater(mCacheCRLIssuingPoints, refresh);
+                    new DefStoreCRLUpdater(this, refresh);
             updater.start();
         }
     }
@@ -317,103 +369,192 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
         // need to find the right CA
 
         CertID cid = req.getCertID();
-        INTEGER serialNo = cid.getSerialNumber();
-        logger.info("DefStore: Processing request for cert 0x" + serialNo.toString(16));
+        logger.info("DefStore: Processing request for cert 0x" + cid.getSerialNumber().toString(16));
+
+        CRLIPContainer container = findCRLIPContainer(cid);
+        return processRequest(cid, container);
+    }
+
+    /**
+     * Check against the database for status of multiple certificates.
+     * The issuing point of each issuer is resolved only once.
+     */
+    @Override
+    public SingleResponse[] processRequests(Request[] reqs) throws Exception {
+
+        SingleResponse[] responses = new SingleResponse[reqs.length];
+        Map<String, CRLIPContainer> containers = new HashMap<>();
+
+        for (int i = 0; i < reqs.length; i++) {
+            CertID cid = reqs[i].getCertID();
+            logger.info("DefStore: Processing request for cert 0x" + cid.getSerialNumber().toString(16));
+
+            String key = cid.getDigestName() + ":" + Hex.encodeHexString(cid.getIssuerKeyHash().toByteArray());
+            CRLIPContainer container = containers.get(key);
+
+            if (container == null) {
+                container = findCRLIPContainer(cid);
+                if (container != null) {
+                    containers.put(key, container);
+                }
+            }
+
+            responses[i] = processRequest(cid, container);
+        }
+
+        return responses;
+    }
+
+    /**
+     * Finds the CRL issuing point of the issuer identified in the
+     * certificate ID, or returns null if the issuer is unknown.
+     */
+    private CRLIPContainer findCRLIPContainer(CertID cid) throws Exception {
 
-        // cache result to speed up the performance
-        X509CertImpl theCert = null;
-        X509CRLImpl theCRL = null;
-        CRLIssuingPointRecord theRec = null;
         byte keyhsh[] = cid.getIssuerKeyHash().toByteArray();
         logger.info("DefStore: Issuer key hash: " + new String(Hex.encodeHex(keyhsh)));
 
-        CRLIPContainer matched = mCacheCRLIssuingPoints.get(new String(keyhsh));
+        IssuerIndex.Issuer issuer = mIssuerIndex.find(cid);
+
+        if (issuer == null) {
+            // the CA might have been added on another replica
+            if (!reloadIssuers()) {
+                return null;
+            }
+
+            issuer = mIssuerIndex.find(cid);
+            if (issuer == null) {
+                return null;
+            }
+        }
+
+        logger.info("DefStore: Found issuer " + issuer.getId());
+
+        String key = transformDN(issuer.getId());
+        CRLIPContainer matched = mCacheCRLIssuingPoints.get(key);
         logger.info("DefStore: CRL issuing point container: " + matched);
 
-        if (matched == null) {
-            logger.info("DefStore: Searching for objectclass=" + CRLIssuingPointRecord.class.getName());
-            Enumeration<CRLIssuingPointRecord> recs = searchCRLIssuingPointRecord(
-                    "objectclass=" + CRLIssuingPointRecord.class.getName(),
-                    100);
+        if (matched != null) {
+            return matched;
+        }
 
-            while (recs.hasMoreElements()) {
-                CRLIssuingPointRecord rec = recs.nextElement();
-                logger.info("DefStore: - ID: " + rec.getId());
+        CRLIssuingPointRecord rec = readCRLIssuingPoint(issuer.getId());
 
-                byte certdata[] = rec.getCACert();
-                X509CertImpl cert = null;
+        if (rec == null) {
+            logger.warn("DefStore: Missing CRL issuing point " + issuer.getId());
+            return null;
+        }
 
-                try {
-                    cert = new X509CertImpl(certdata);
-                } catch (Exception e) {
-                    logger.error(CMS.getLogMessage("OCSP_DECODE_CERT", e.toString()), e);
-                    throw e;
-                }
+        byte crldata[] = rec.getCRL();
+        logger.info("DefStore: CRL: " + crldata);
 
-                MessageDigest md = MessageDigest.getInstance(cid.getDigestName());
-                X509Key key = (X509Key) cert.getPublicKey();
-                byte digest[] = md.digest(key.getKey());
-                logger.info("DefStore:   Digest: " + new String(Hex.encodeHex(digest)));
+        if (crldata == null) {
+            throw new Exception("Missing CRL data");
+        }
 
-                if (!Arrays.equals(digest, keyhsh)) {
-                    continue;
-                }
+        matched = new CRLIPContainer(rec, issuer.getCert(), getRevocationIndex(rec));
 
-                logger.info("DefStore: Found issuer");
+        logger.info("DefStore: Adding CRL issuing point container for " + issuer.getId());
+        mCacheCRLIssuingPoints.put(key, matched);
 
-                theCert = cert;
-                theRec = rec;
-                incReqCount(theRec.getId());
+        return matched;
+    }
 
-                byte crldata[] = rec.getCRL();
-                logger.info("DefStore: CRL: " + crldata);
+    /**
+     * Rebuilds the issuer index from the CRL issuing point records
+     * unless it has been rebuilt recently.
+     *
+     * @return true if the index has been rebuilt
+     */
+    private boolean reloadIssuers() throws EBaseException {
 
-                if (crldata == null) {
-                    throw new Exception("Missing CRL data");
-                }
+        synchronized (mIssuerLock) {
+            if (System.currentTimeMillis() - mIssuersLoadTime < ISSUER_RELOAD_INTERVAL) {
+                return false;
+            }
+            loadIssuers();
+        }
 
-                if (rec.getCRLCache() == null) {
-                    logger.debug("DefStore: start building x509 crl impl");
-                    try {
-                        theCRL = new X509CRLImpl(crldata);
-                    } catch (Exception e) {
-                        logger.error(CMS.getLogMessage("OCSP_DECODE_CRL", e.toString()), e);
-                        throw e;
-                    }
-                    logger.debug("DefStore: done building x509 crl impl");
-                } else {
-                    logger.debug("DefStore: using crl cache");
-                }
+        return true;
+    }
+
+    /**
+     * Builds the issuer index from the CRL issuing point records.
+     */
+    public void loadIssuers() throws EBaseException {
 
-                logger.info("DefStore: Adding CRL issuing point container for " + new String(Hex.encodeHex(digest)));
-                mCacheCRLIssuingPoints.put(new String(digest), new CRLIPContainer(theRec, theCert, theCRL));
-                break;
+        logger.info("DefStore: Searching for objectclass=" + CRLIssuingPointRecord.class.getName());
+        Enumeration<CRLIssuingPointRecord> recs = searchCRLIssuingPointRecord(
+                "objectclass=" + CRLIssuingPointRecord.class.getName(),
+                100);
+
+        // build a new index and swap it in so that requests
+        // never see a partially loaded index
+        IssuerIndex index = new IssuerIndex();
+
+        synchronized (mIssuerLock) {
+            while (recs.hasMoreElements()) {
+                CRLIssuingPointRecord rec = recs.nextElement();
+                logger.info("DefStore: - ID: " + rec.getId());
+
+                addIssuer(index, rec.getId(), rec.getCACert());
             }
 
-        } else {
-            theCert = matched.getX509CertImpl();
-            theRec = matched.getCRLIssuingPointRecord();
-            theCRL = matched.getX509CRLImpl();
-            incReqCount(theRec.getId());
+            mIssuerIndex = index;
+            mIssuersLoadTime = System.currentTimeMillis();
         }
 
-        logger.info("DefStore: Issuer: " + theCert);
+        logger.info("DefStore: Loaded " + index.size() + " CA(s)");
+    }
+
+    private void addIssuer(IssuerIndex index, String id, byte[] certdata) {
+
+        if (certdata == null) {
+            return;
+        }
 
-        if (theCert == null) {
+        try {
+            X509CertImpl cert = new X509CertImpl(certdata);
+            index.add(transformDN(id), id, cert);
+
+        } catch (Exception e) {
+            logger.error(CMS.getLogMessage("OCSP_DECODE_CERT", e.toString()), e);
+        }
+    }
+
+    /**
+     * Checks the status of a certificate against the CRL issuing point
+     * of its issuer.
+     */
+    private SingleResponse processRequest(CertID cid, CRLIPContainer container) throws Exception {
+
+        if (container == null) {
             throw new Exception("Missing issuer certificate");
         }
 
+        INTEGER serialNo = cid.getSerialNumber();
+        X509CertImpl theCert = container.getX509CertImpl();
+        CRLIssuingPointRecord theRec = container.getCRLIssuingPointRecord();
+        RevocationIndex theIndex = container.getRevocationIndex();
+
+        incReqCount(theRec.getId());
+
+        logger.info("DefStore: Issuer: " + theCert);
+
         logger.info("DefStore: Issuer: " + theCert.getSubjectX500Principal());
 
         // check the serial number
         logger.info("Checked Status of certificate 0x" + serialNo.toString(16));
 
+        // the status is current as of the delta CRL if one has been applied
+        boolean delta = theRec != null && hasDeltaCRL(theRec) && theRec.getDeltaThisUpdate() != null;
+
         GeneralizedTime thisUpdate;
 
         if (theRec == null) {
             thisUpdate = new GeneralizedTime(new Date());
         } else {
-            Date d = theRec.getThisUpdate();
+            Date d = delta ? theRec.getDeltaThisUpdate() : theRec.getThisUpdate();
             logger.debug("DefStore: CRL record this update: " + d);
             thisUpdate = new GeneralizedTime(d);
         }
@@ -430,7 +571,8 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
             nextUpdate = new GeneralizedTime(new Date());
 
         } else {
-            Date d = theRec.getNextUpdate();
+            Date d = delta && theRec.getDeltaNextUpdate() != null
+                    ? theRec.getDeltaNextUpdate() : theRec.getNextUpdate();
             logger.debug("DefStore: CRL record next update: " + d);
             nextUpdate = new GeneralizedTime(d);
         }
@@ -439,41 +581,16 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
 
         CertStatus certStatus;
 
-        if (theCRL == null) {
-
+        if (theIndex == null) {
+            // neither the CRL nor the CRL cache is available
             certStatus = new UnknownInfo();
-
-            if (theRec == null) {
-                return new SingleResponse(cid, certStatus, thisUpdate, nextUpdate);
-            }
-
-            // if crl is not available, we can try crl cache
-            logger.debug("DefStore: evaluating crl cache");
-            Hashtable<BigInteger, RevokedCertificate> cache = theRec.getCRLCacheNoClone();
-            if (cache != null) {
-                RevokedCertificate rc = cache.get(new BigInteger(serialNo.toString()));
-                if (rc == null) {
-                    if (isNotFoundGood()) {
-                        certStatus = new GoodInfo();
-                    } else {
-                        certStatus = new UnknownInfo();
-                    }
-                } else {
-
-                    certStatus = new RevokedInfo(
-                            new GeneralizedTime(
-                                    rc.getRevocationDate()));
-                }
-            }
-
-            return new SingleResponse(cid, certStatus, thisUpdate,
-                    nextUpdate);
+            return new SingleResponse(cid, certStatus, thisUpdate, nextUpdate);
         }
 
-        logger.debug("DefStore: evaluating x509 crl impl");
-        X509CRLEntry crlentry = theCRL.getRevokedCertificate(new BigInteger(serialNo.toString()));
+        logger.debug("DefStore: evaluating revocation index");
+        int pos = theIndex.indexOf(serialNo);
 
-        if (crlentry == null) {
+        if (pos == RevocationIndex.NOT_FOUND) {
             // good or unknown
             if (isNotFoundGood()) {
                 certStatus = new GoodInfo();
@@ -483,13 +600,200 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
 
         } else {
             certStatus = new RevokedInfo(new GeneralizedTime(
-                            crlentry.getRevocationDate()));
+                            theIndex.getRevocationDate(pos)));
         }
 
         return new SingleResponse(cid, certStatus, thisUpdate,
                 nextUpdate);
     }
 
+    /**
+     * Returns the revocation index of the issuing point. The index
+     * built by the last CRL update is reused as long as it matches the
+     * CRL numbers stored in the record, otherwise (e.g. after a restart
+     * or on a clone) it is rebuilt by streaming the stored CRL and
+     * delta CRL. If an index built from an older CRL is replaced, e.g.
+     * because the CRL has been replicated from another replica, the CRL
+     * update listeners are notified.
+     */
+    RevocationIndex getRevocationIndex(CRLIssuingPointRecord rec) throws Exception {
+
+        String key = transformDN(rec.getId());
+        RevocationIndex index = mRevocationIndexes.get(key);
+        BigInteger deltaCRLNumber = hasDeltaCRL(rec) ? rec.getDeltaCRLNumber() : null;
+
+        if (index != null && index.isBuiltFrom(rec.getCRLNumber(), deltaCRLNumber)) {
+            logger.debug("DefStore: using revocation index");
+            return index;
+        }
+
+        logger.debug("DefStore: start building revocation index");
+
+        try {
+            RevocationIndex.Builder revoked = new RevocationIndex.Builder();
+            CRLReader reader = readCRL(rec.getCRL(), revoked, null);
+            index = revoked.build(reader.getThisUpdate().getTime(), rec.getCRLNumber());
+
+            if (deltaCRLNumber != null) {
+                logger.debug("DefStore: applying delta CRL " + deltaCRLNumber);
+                index = applyDeltaCRL(index, rec.getDeltaCRL(), deltaCRLNumber);
+            }
+
+        } catch (Exception e) {
+            logger.error(CMS.getLogMessage("OCSP_DECODE_CRL", e.toString()), e);
+            throw e;
+        }
+
+        logger.debug("DefStore: built revocation index with " + index.size() + " entries");
+        RevocationIndex previous = mRevocationIndexes.put(key, index);
+
+        if (previous != null) {
+            notifyCRLUpdateListeners(rec.getId(), null);
+        }
+
+        return index;
+    }
+
+    /**
+     * Discards the cached CRL issuing point records so that they are
+     * read again from the database. If there are CRL update listeners,
+     * the records are read right away so that CRLs replicated from
+     * another replica are detected and the listeners are notified.
+     */
+    void refreshCRLIssuingPoints() {
+
+        mCacheCRLIssuingPoints.clear();
+
+        if (mCRLUpdateListeners.isEmpty()) {
+            return;
+        }
+
+        for (String key : mRevocationIndexes.keySet()) {
+
+            IssuerIndex.Issuer issuer = mIssuerIndex.get(key);
+            if (issuer == null) {
+                continue;
+            }
+
+            try {
+                CRLIssuingPointRecord rec = readCRLIssuingPoint(issuer.getId());
+                if (rec != null && rec.getCRL() != null) {
+                    getRevocationIndex(rec);
+                }
+
+            } catch (Exception e) {
+                logger.warn("DefStore: Unable to refresh CRL issuing point " + issuer.getId() + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Reads the entries of a DER-encoded CRL. Entries with reason
+     * removeFromCRL are passed to the removed builder if provided,
+     * and ignored otherwise.
+     */
+    static CRLReader readCRL(
+            byte[] data,
+            RevocationIndex.Builder revoked,
+            RevocationIndex.Builder removed) throws IOException {
+
+        if (data == null) {
+            throw new IOException("Missing CRL");
+        }
+
+        CRLReader reader = new CRLReader(new ByteArrayInputStream(data));
+
+        reader.read((serialNumber, revocationDate, reason) -> {
+            if (reason != CRLReader.REASON_REMOVE_FROM_CRL) {
+                revoked.add(serialNumber, revocationDate);
+            } else if (removed != null) {
+                removed.add(serialNumber, revocationDate);
+            }
+        });
+
+        return reader;
+    }
+
+    private RevocationIndex applyDeltaCRL(
+            RevocationIndex index,
+            byte[] deltaCRL,
+            BigInteger deltaCRLNumber) throws IOException {
+
+        RevocationIndex.Builder revoked = new RevocationIndex.Builder();
+        RevocationIndex.Builder removed = new RevocationIndex.Builder();
+        CRLReader reader = readCRL(deltaCRL, revoked, removed);
+
+        long thisUpdate = reader.getThisUpdate().getTime();
+        return index.update(
+                revoked.build(thisUpdate, deltaCRLNumber),
+                removed.build(thisUpdate, deltaCRLNumber),
+                thisUpdate,
+                deltaCRLNumber);
+    }
+
+    /**
+     * Checks whether the record contains a delta CRL that applies
+     * to its full CRL. Delta CRL numbers are taken from the same
+     * sequence as full CRL numbers, so the delta CRL is obsolete
+     * once a full CRL with the same or a higher number is stored.
+     */
+    static boolean hasDeltaCRL(CRLIssuingPointRecord rec) {
+        return rec.getDeltaCRL() != null
+                && rec.getDeltaCRLNumber() != null
+                && rec.getCRLNumber() != null
+                && rec.getDeltaCRLNumber().compareTo(rec.getCRLNumber()) > 0;
+    }
+
+    /**
+     * Checks whether a CRL is not newer than the CRLs stored in the
+     * issuing point record.
+     *
+     * A delta CRL and the next full CRL can have the same thisUpdate
+     * time, so CRLs are compared by CRL number: a full CRL with the
+     * number of the current full CRL, and a delta CRL with the number
+     * of the current full CRL or delta CRL, are not newer. The
+     * thisUpdate times are only compared if the CRL numbers are not
+     * available.
+     *
+     * @param rec issuing point record, or null if there is none
+     * @param deltaCRL true if the CRL is a delta CRL
+     * @param crlNumber number of the CRL, or null if it has none
+     * @param thisUpdate thisUpdate time of the CRL
+     */
+    public static boolean isOlderCRL(
+            CRLIssuingPointRecord rec,
+            boolean deltaCRL,
+            BigInteger crlNumber,
+            Date thisUpdate) {
+
+        if (rec == null) {
+            return false;
+        }
+
+        // CRLs without number are stored with number -1
+        BigInteger currentNumber = rec.getCRLNumber();
+        if (currentNumber != null && currentNumber.signum() < 0) {
+            currentNumber = null;
+        }
+
+        BigInteger currentDeltaNumber = hasDeltaCRL(rec) ? rec.getDeltaCRLNumber() : null;
+
+        if (crlNumber != null && currentNumber != null) {
+
+            if (crlNumber.compareTo(currentNumber) <= 0) {
+                return true;
+            }
+
+            return deltaCRL && currentDeltaNumber != null && crlNumber.compareTo(currentDeltaNumber) <= 0;
+        }
+
+        Date current = deltaCRL && currentDeltaNumber != null ? rec.getDeltaThisUpdate() : rec.getThisUpdate();
+
+        return current != null
+                && thisUpdate != null
+                && current.getTime() >= thisUpdate.getTime();
+    }
+
     private String transformDN(String dn) {
         String newdn = dn;
 
@@ -592,6 +896,11 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
                 deleteAllCRLsInCA(id);
                 s.delete(name);
             }
+            mRevocationIndexes.remove(transformDN(id));
+            mCacheCRLIssuingPoints.remove(transformDN(id));
+            synchronized (mIssuerLock) {
+                mIssuerIndex.remove(transformDN(id));
+            }
         } finally {
             if (s != null)
                 s.close();
@@ -615,6 +924,10 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
             if (s != null)
                 s.close();
         }
+
+        synchronized (mIssuerLock) {
+            addIssuer(mIssuerIndex, name, rec.getCACert());
+        }
     }
 
     public Enumeration<RepositoryRecord> searchRepository(String name, String filter)
@@ -758,76 +1071,201 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
         }
     }
 
+    @Override
+    public boolean isDeltaCRLSupported() {
+        return true;
+    }
+
+    /**
+     * Updates the issuing point with a full or delta CRL.
+     *
+     * The entries of the CRL are streamed from its encoding into a new
+     * revocation index, so the CRL does not need to be decoded with its
+     * entries. A full CRL replaces the CRL stored in the issuing point
+     * record. A delta CRL is merged into the current revocation index
+     * and stored next to the full CRL, which is left unchanged.
+     */
     @Override
     public void updateCRL(X509CRL crl) throws EBaseException {
         try {
             mStateCount++;
 
-            logger.debug("DefStore: Ready to update Issuer");
+            String name = crl.getIssuerDN().getName();
+            logger.debug("DefStore: Ready to update Issuer " + name);
+
+            byte[] data;
+            RevocationIndex.Builder revoked = new RevocationIndex.Builder();
+            RevocationIndex.Builder removed = new RevocationIndex.Builder();
+            CRLReader reader;
 
             try {
-                if (!((X509CRLImpl) crl).areEntriesIncluded())
-                    crl = new X509CRLImpl(((X509CRLImpl) crl).getEncoded());
+                data = crl.getEncoded();
+                reader = readCRL(data, revoked, removed);
             } catch (Exception e) {
-                logger.warn("DefStore: " + e.getMessage(), e);
+                logger.error(CMS.getLogMessage("OCSP_DECODE_CRL", e.toString()), e);
+                throw new EBaseException(e);
             }
 
+            CRLIssuingPointRecord rec = readCRLIssuingPoint(name);
+
             // commit update
             ModificationSet mods = new ModificationSet();
+            RevocationIndex index = updateCRL(rec, reader, revoked, removed, data, mods);
 
-            if (crl.getThisUpdate() != null)
-                mods.add(CRLIssuingPointRecord.ATTR_THIS_UPDATE,
-                        Modification.MOD_REPLACE, crl.getThisUpdate());
-            if (crl.getNextUpdate() != null)
-                mods.add(CRLIssuingPointRecord.ATTR_NEXT_UPDATE,
-                        Modification.MOD_REPLACE, crl.getNextUpdate());
-            if (mUseCache) {
-                if (((X509CRLImpl) crl).getListOfRevokedCertificates() != null) {
-                    mods.add(CRLIssuingPointRecord.ATTR_CRL_CACHE,
-                            Modification.MOD_REPLACE,
-                            ((X509CRLImpl) crl).getListOfRevokedCertificates());
-                }
-            }
-            if (((X509CRLImpl) crl).getNumberOfRevokedCertificates() < 0) {
-                mods.add(CRLIssuingPointRecord.ATTR_CRL_SIZE,
-                        Modification.MOD_REPLACE, Long.valueOf(0));
-            } else {
-                mods.add(CRLIssuingPointRecord.ATTR_CRL_SIZE,
-                        Modification.MOD_REPLACE, Long.valueOf(((X509CRLImpl) crl).getNumberOfRevokedCertificates()));
-            }
-            BigInteger crlNumber = ((X509CRLImpl) crl).getCRLNumber();
-            if (crlNumber == null) {
-                mods.add(CRLIssuingPointRecord.ATTR_CRL_NUMBER,
-                        Modification.MOD_REPLACE, new BigInteger("-1"));
-            } else {
-                mods.add(CRLIssuingPointRecord.ATTR_CRL_NUMBER,
-                        Modification.MOD_REPLACE, crlNumber);
-            }
-            try {
-                mods.add(CRLIssuingPointRecord.ATTR_CRL,
-                        Modification.MOD_REPLACE, crl.getEncoded());
-            } catch (Exception e) {
-                // ignore
-            }
-            logger.debug("DefStore: ready to CRL update " +
-                    crl.getIssuerDN().getName());
-            modifyCRLIssuingPointRecord(
-                    crl.getIssuerDN().getName(), mods);
-            logger.debug("DefStore: done CRL update " +
-                    crl.getIssuerDN().getName());
+            logger.debug("DefStore: ready to CRL update " + name);
+            modifyCRLIssuingPointRecord(name, mods);
+            logger.debug("DefStore: done CRL update " + name);
+
+            // swap in the revocation index of the new CRL before
+            // invalidating the issuing point containers
+            logger.debug("DefStore: built revocation index with " + index.size() + " entries");
+            mRevocationIndexes.put(transformDN(name), index);
 
             // update cache
-            mCacheCRLIssuingPoints.clear();
+            mCacheCRLIssuingPoints.remove(transformDN(name));
 
-            logger.info("DefStore: Finish Committing CRL." +
-                    " thisUpdate=" + crl.getThisUpdate() +
-                    " nextUpdate=" + crl.getNextUpdate());
+            notifyCRLUpdateListeners(name, crl);
+
+            logger.info("DefStore: Finish Committing " + (reader.isDeltaCRL() ? "delta CRL." : "CRL.") +
+                    " thisUpdate=" + reader.getThisUpdate() +
+                    " nextUpdate=" + reader.getNextUpdate());
 
         } finally {
             mStateCount--;
         }
     }
 
+    /**
+     * Builds the revocation index of a full or delta CRL and adds the
+     * changes of the issuing point record to the modifications.
+     *
+     * The thisUpdate and nextUpdate times of a full CRL are stored in
+     * the thisUpdate and nextUpdate attributes, those of a delta CRL in
+     * the deltaThisUpdate and deltaNextUpdate attributes, so that a
+     * delta CRL does not affect the checks against the full CRL.
+     */
+    RevocationIndex updateCRL(
+            CRLIssuingPointRecord rec,
+            CRLReader reader,
+            RevocationIndex.Builder revoked,
+            RevocationIndex.Builder removed,
+            byte[] data,
+            ModificationSet mods) throws EBaseException {
+
+        if (isOlderCRL(rec, reader.isDeltaCRL(), reader.getCRLNumber(), reader.getThisUpdate())) {
+            throw new EBaseException((reader.isDeltaCRL() ? "Delta CRL " : "CRL ") + reader.getCRLNumber() +
+                    " is older than the current CRL");
+        }
+
+        if (reader.isDeltaCRL()) {
+            return updateDeltaCRL(rec, reader, revoked, removed, data, mods);
+        }
+
+        BigInteger crlNumber = reader.getCRLNumber();
+        if (crlNumber == null) {
+            crlNumber = new BigInteger("-1");
+        }
+
+        RevocationIndex index = revoked.build(reader.getThisUpdate().getTime(), crlNumber);
+
+        mods.add(CRLIssuingPointRecord.ATTR_THIS_UPDATE,
+                Modification.MOD_REPLACE, reader.getThisUpdate());
+        if (reader.getNextUpdate() != null)
+            mods.add(CRLIssuingPointRecord.ATTR_NEXT_UPDATE,
+                    Modification.MOD_REPLACE, reader.getNextUpdate());
+
+        // The revocation index is built from the stored CRL, so the
+        // serialized CRL cache (a second full copy of the entries)
+        // is no longer maintained. Remove any cache written by older
+        // versions so that it cannot become stale.
+        mods.add(CRLIssuingPointRecord.ATTR_CRL_CACHE,
+                Modification.MOD_REPLACE, null);
+
+        mods.add(CRLIssuingPointRecord.ATTR_CRL_SIZE,
+                Modification.MOD_REPLACE, Long.valueOf(index.size()));
+        mods.add(CRLIssuingPointRecord.ATTR_CRL_NUMBER,
+                Modification.MOD_REPLACE, crlNumber);
+
+        // invalidate the previous delta CRL
+        mods.add(CRLIssuingPointRecord.ATTR_DELTA_NUMBER,
+                Modification.MOD_REPLACE, new BigInteger("-1"));
+
+        mods.add(CRLIssuingPointRecord.ATTR_CRL,
+                Modification.MOD_REPLACE, data);
+
+        return index;
+    }
+
+    /**
+     * Merges a delta CRL into the current revocation index of the
+     * issuing point and adds the delta CRL to the modifications.
+     */
+    private RevocationIndex updateDeltaCRL(
+            CRLIssuingPointRecord rec,
+            CRLReader reader,
+            RevocationIndex.Builder revoked,
+            RevocationIndex.Builder removed,
+            byte[] data,
+            ModificationSet mods) throws EBaseException {
+
+        if (rec == null) {
+            throw new EBaseException("Unable to apply delta CRL: CRL issuing point not available");
+        }
+
+        BigInteger baseCRLNumber = reader.getBaseCRLNumber();
+        BigInteger crlNumber = rec.getCRLNumber();
+
+        // RFC 5280 section 5.2.4: the delta CRL can only be applied to
+        // a full CRL whose number is at least the base CRL number
+        if (rec.getCRL() == null || crlNumber == null || crlNumber.compareTo(baseCRLNumber) < 0) {
+            throw new EBaseException("Unable to apply delta CRL: base CRL " + baseCRLNumber +
+                    " not available, current CRL is " + crlNumber);
+        }
+
+        BigInteger deltaCRLNumber = reader.getCRLNumber();
+
+        if (deltaCRLNumber == null || deltaCRLNumber.compareTo(crlNumber) <= 0) {
+            throw new EBaseException("Unable to apply delta CRL " + deltaCRLNumber +
+                    " to CRL " + crlNumber);
+        }
+
+        RevocationIndex current;
+        try {
+            current = getRevocationIndex(rec);
+        } catch (EBaseException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new EBaseException(e);
+        }
+
+        long thisUpdate = reader.getThisUpdate().getTime();
+        RevocationIndex index = current.update(
+                revoked.build(thisUpdate, deltaCRLNumber),
+                removed.build(thisUpdate, deltaCRLNumber),
+                thisUpdate,
+                deltaCRLNumber);
+
+        logger.info("DefStore: Applied delta CRL " + deltaCRLNumber + ": " +
+                revoked.size() + " revoked, " + removed.size() + " removed");
+
+        mods.add(CRLIssuingPointRecord.ATTR_DELTA_THIS_UPDATE,
+                Modification.MOD_REPLACE, reader.getThisUpdate());
+        // remove the nextUpdate of the previous delta CRL if this one has none
+        mods.add(CRLIssuingPointRecord.ATTR_DELTA_NEXT_UPDATE,
+                Modification.MOD_REPLACE, reader.getNextUpdate());
+
+        mods.add(CRLIssuingPointRecord.ATTR_CRL_SIZE,
+                Modification.MOD_REPLACE, Long.valueOf(index.size()));
+        mods.add(CRLIssuingPointRecord.ATTR_DELTA_NUMBER,
+                Modification.MOD_REPLACE, deltaCRLNumber);
+        mods.add(CRLIssuingPointRecord.ATTR_DELTA_SIZE,
+                Modification.MOD_REPLACE, Long.valueOf(reader.getEntries()));
+        mods.add(CRLIssuingPointRecord.ATTR_DELTA_CRL,
+                Modification.MOD_REPLACE, data);
+
+        return index;
+    }
+
     @Override
     public int getStateCount() {
         return mStateCount;
@@ -854,12 +1292,12 @@ class DeleteOldCRLsThread extends Thread {
 class CRLIPContainer {
     private CRLIssuingPointRecord mRec = null;
     private X509CertImpl mCert = null;
-    private X509CRLImpl mCRL = null;
+    private RevocationIndex mIndex = null;
 
-    public CRLIPContainer(CRLIssuingPointRecord rec, X509CertImpl cert, X509CRLImpl crl) {
+    public CRLIPContainer(CRLIssuingPointRecord rec, X509CertImpl cert, RevocationIndex index) {
         mRec = rec;
         mCert = cert;
-        mCRL = crl;
+        mIndex = index;
     }
 
     public CRLIssuingPointRecord getCRLIssuingPointRecord() {
@@ -870,8 +1308,8 @@ class CRLIPContainer {
         return mCert;
     }
 
-    public X509CRLImpl getX509CRLImpl() {
-        return mCRL;
+    public RevocationIndex getRevocationIndex() {
+        return mIndex;
     }
 }
 
@@ -879,11 +1317,11 @@ class DefStoreCRLUpdater extends Thread {
 
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(DefStoreCRLUpdater.class);
 
-    private Hashtable<String, CRLIPContainer> mCache = null;
+    private DefStore mStore = null;
     private int mSec = 0;
 
-    public DefStoreCRLUpdater(Hashtable<String, CRLIPContainer> cache, int sec) {
-        mCache = cache;
+    public DefStoreCRLUpdater(DefStore store, int sec) {
+        mStore = store;
         mSec = sec;
     }
 
@@ -892,7 +1330,7 @@ class DefStoreCRLUpdater extends Thread {
         while (true) {
             try {
                 logger.debug("DefStore: CRLUpdater invoked");
-                mCache.clear();
+                mStore.refreshCRLIssuingPoints();
                 sleep(mSec * 1000); // turn sec into millis-sec
             } catch (Exception e) {
                 // ignore
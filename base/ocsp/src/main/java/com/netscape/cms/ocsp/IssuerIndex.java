@@ -0,0 +1,229 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cms.ocsp;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.codec.binary.Hex;
+import org.mozilla.jss.netscape.security.x509.X509CertImpl;
+import org.mozilla.jss.netscape.security.x509.X509Key;
+
+import com.netscape.cmsutil.ocsp.CertID;
+
+/**
+ * In-memory index of the CAs known to an OCSP store, keyed by the
+ * hash of the CA public key and the hash of the CA name as they
+ * appear in the CertID of OCSP requests.
+ *
+ * The hashes for SHA-1 and SHA-256 are computed when a CA is added.
+ * Hashes for other algorithms are computed for all CAs the first time
+ * a request uses that algorithm. Lookups do not lock; updates are
+ * serialized and replace the affected entries as a whole.
+ */
+public class IssuerIndex {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(IssuerIndex.class);
+
+    public static final String[] DEFAULT_DIGEST_NAMES = { "SHA-1", "SHA-256" };
+
+    // issuers by key
+    private Map<String, Issuer> issuers = new ConcurrentHashMap<>();
+
+    // issuers by digest name and hex-encoded key hash
+    private Map<String, Map<String, List<Issuer>>> keyHashes = new ConcurrentHashMap<>();
+
+    public IssuerIndex() {
+        for (String digestName : DEFAULT_DIGEST_NAMES) {
+            keyHashes.put(digestName, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * Adds or replaces a CA.
+     *
+     * @param key the key of the CA in this index
+     * @param id the ID of the CRL issuing point of the CA
+     * @param cert the CA certificate
+     */
+    public synchronized void add(String key, String id, X509CertImpl cert) throws NoSuchAlgorithmException {
+
+        remove(key);
+
+        Issuer issuer = new Issuer(id, cert);
+        issuers.put(key, issuer);
+
+        for (Map.Entry<String, Map<String, List<Issuer>>> entry : keyHashes.entrySet()) {
+            index(entry.getValue(), entry.getKey(), issuer);
+        }
+    }
+
+    /**
+     * Removes a CA.
+     *
+     * @param key the key of the CA in this index
+     */
+    public synchronized void remove(String key) {
+
+        Issuer issuer = issuers.remove(key);
+
+        if (issuer == null) {
+            return;
+        }
+
+        for (Map<String, List<Issuer>> hashes : keyHashes.values()) {
+            for (Map.Entry<String, List<Issuer>> entry : hashes.entrySet()) {
+
+                List<Issuer> list = entry.getValue();
+                if (!list.contains(issuer)) {
+                    continue;
+                }
+
+                List<Issuer> newList = new ArrayList<>(list);
+                newList.remove(issuer);
+
+                if (newList.isEmpty()) {
+                    hashes.remove(entry.getKey());
+                } else {
+                    hashes.put(entry.getKey(), Collections.unmodifiableList(newList));
+                }
+            }
+        }
+    }
+
+    public Issuer get(String key) {
+        return issuers.get(key);
+    }
+
+    public int size() {
+        return issuers.size();
+    }
+
+    private void index(Map<String, List<Issuer>> hashes, String digestName, Issuer issuer)
+            throws NoSuchAlgorithmException {
+
+        String keyHash = Hex.encodeHexString(issuer.getKeyHash(digestName));
+
+        List<Issuer> list = hashes.get(keyHash);
+        List<Issuer> newList = list == null ? new ArrayList<>() : new ArrayList<>(list);
+        newList.add(issuer);
+
+        hashes.put(keyHash, Collections.unmodifiableList(newList));
+    }
+
+    private synchronized Map<String, List<Issuer>> getKeyHashes(String digestName)
+            throws NoSuchAlgorithmException {
+
+        Map<String, List<Issuer>> hashes = keyHashes.get(digestName);
+        if (hashes != null) {
+            return hashes;
+        }
+
+        logger.info("IssuerIndex: Indexing " + issuers.size() + " CA(s) with " + digestName);
+
+        hashes = new ConcurrentHashMap<>();
+        for (Issuer issuer : issuers.values()) {
+            index(hashes, digestName, issuer);
+        }
+
+        keyHashes.put(digestName, hashes);
+        return hashes;
+    }
+
+    /**
+     * Finds the CA identified in the certificate ID. If several CAs
+     * share the same key, the one with the matching name hash is
+     * returned.
+     *
+     * @return the CA, or null if the CA is unknown
+     */
+    public Issuer find(CertID cid) throws NoSuchAlgorithmException {
+
+        String digestName = cid.getDigestName();
+        if (digestName == null) {
+            throw new NoSuchAlgorithmException("Unsupported hash algorithm: " + cid.getHashAlgorithm().getOID());
+        }
+
+        Map<String, List<Issuer>> hashes = keyHashes.get(digestName);
+        if (hashes == null) {
+            hashes = getKeyHashes(digestName);
+        }
+
+        List<Issuer> list = hashes.get(Hex.encodeHexString(cid.getIssuerKeyHash().toByteArray()));
+        if (list == null) {
+            return null;
+        }
+
+        if (list.size() == 1) {
+            return list.get(0);
+        }
+
+        byte[] nameHash = cid.getIssuerNameHash().toByteArray();
+        for (Issuer issuer : list) {
+            if (Arrays.equals(issuer.getNameHash(digestName), nameHash)) {
+                return issuer;
+            }
+        }
+
+        return list.get(0);
+    }
+
+    public static class Issuer {
+
+        private String id;
+        private X509CertImpl cert;
+
+        // hashes by digest name
+        private Map<String, byte[]> keyHashes = new ConcurrentHashMap<>();
+        private Map<String, byte[]> nameHashes = new ConcurrentHashMap<>();
+
+        Issuer(String id, X509CertImpl cert) {
+            this.id = id;
+            this.cert = cert;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public X509CertImpl getCert() {
+            return cert;
+        }
+
+        public byte[] getKeyHash(String digestName) throws NoSuchAlgorithmException {
+
+            byte[] hash = keyHashes.get(digestName);
+
+            if (hash == null) {
+                MessageDigest md = MessageDigest.getInstance(digestName);
+                X509Key key = (X509Key) cert.getPublicKey();
+                hash = md.digest(key.getKey());
+                keyHashes.put(digestName, hash);
+            }
+
+            return hash;
+        }
+
+        public byte[] getNameHash(String digestName) throws NoSuchAlgorithmException {
+
+            byte[] hash = nameHashes.get(digestName);
+
+            if (hash == null) {
+                MessageDigest md = MessageDigest.getInstance(digestName);
+                hash = md.digest(cert.getSubjectX500Principal().getEncoded());
+                nameHashes.put(digestName, hash);
+            }
+
+            return hash;
+        }
+    }
+}
@@ -21,13 +21,21 @@ import java.math.BigInteger;
 import java.security.MessageDigest;
 import java.security.cert.X509CRL;
 import java.security.cert.X509CRLEntry;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
 import java.util.Vector;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import org.apache.commons.codec.binary.Hex;
 import org.mozilla.jss.asn1.GeneralizedTime;
 import org.mozilla.jss.asn1.INTEGER;
 import org.mozilla.jss.netscape.security.x509.RevokedCertificate;
@@ -39,6 +47,7 @@ import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.base.IExtendedPluginInfo;
 import com.netscape.certsrv.common.Constants;
 import com.netscape.certsrv.common.NameValuePairs;
+import com.netscape.certsrv.ocsp.ICRLUpdateListener;
 import com.netscape.certsrv.ocsp.IDefStore;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.base.ConfigStore;
@@ -81,6 +90,13 @@ public class LDAPStore implements IDefStore, IExtendedPluginInfo {
     private static final String DEF_CA_CERT_ATTR = "cACertificate;binary";
     private static final String PROP_HOST = "host";
     private static final String PROP_PORT = "port";
+    private static final String PROP_DETECT_CHANGES = "detectChanges";
+    private static final String ATTR_MODIFY_TIMESTAMP = "modifyTimestamp";
+
+    // modifyTimestamp has a resolution of one second, so an entry
+    // modified within this time might be modified again with the
+    // same timestamp (includes one second for clock differences)
+    private static final long MODIFY_TIMESTAMP_MARGIN = 2000;
 
     private final static String PROP_NOT_FOUND_GOOD = "notFoundAsGood";
     private final static String PROP_INCLUDE_NEXT_UPDATE =
@@ -91,8 +107,10 @@ public class LDAPStore implements IDefStore, IExtendedPluginInfo {
     private String mCRLAttr = null;
     private boolean mByName = true;
     private String mCACertAttr = null;
+    private boolean mDetectChanges = true;
     protected Hashtable<String, Long> mReqCounts = new Hashtable<>();
     private Hashtable<X509CertImpl, X509CRLImpl> mCRLs = new Hashtable<>();
+    private List<ICRLUpdateListener> mCRLUpdateListeners = new CopyOnWriteArrayList<>();
 
     /**
      * Constructs the default store.
@@ -139,7 +157,103 @@ public class LDAPStore implements IDefStore, IExtendedPluginInfo {
         mCACertAttr = mConfig.getString(PROP_CA_CERT_ATTR,
                     DEF_CA_CERT_ATTR);
         mByName = mConfig.getBoolean(PROP_BY_NAME, true);
+        mDetectChanges = mConfig.getBoolean(PROP_DETECT_CHANGES, true);
+
+    }
+
+    public boolean isDetectChanges() {
+        return mDetectChanges;
+    }
+
+    /**
+     * Returns the DNs and modification times of the entries with the
+     * CA certificate or the CRL under the base DN without reading the
+     * certificate or the CRL, or null if the modification times are
+     * not available.
+     *
+     * Since modification times only have a resolution of one second,
+     * null is also returned if an entry was modified within the last
+     * two seconds, so that a CRL published again within the same
+     * second is not missed.
+     */
+    public String getModifyState(LDAPConnection conn, String baseDN)
+            throws EBaseException {
+        try {
+            String filter = "(|(" + mCACertAttr + "=*)(" + mCRLAttr + "=*))";
+            logger.debug("LDAPStore: Searching " + baseDN + " for " + filter);
+
+            LDAPSearchResults results = conn.search(
+                    baseDN,
+                    LDAPv3.SCOPE_SUB,
+                    filter,
+                    new String[] { ATTR_MODIFY_TIMESTAMP },
+                    false);
+
+            StringBuilder sb = new StringBuilder();
+            long lastModified = 0;
+
+            while (results.hasMoreElements()) {
+                LDAPEntry entry = results.next();
+
+                LDAPAttribute attr = entry.getAttribute(ATTR_MODIFY_TIMESTAMP);
+                if (attr == null) {
+                    logger.debug("LDAPStore: Unable to find " + ATTR_MODIFY_TIMESTAMP + " attribute in " + entry.getDN());
+                    return null;
+                }
+
+                Enumeration<String> values = attr.getStringValues();
+                if (!values.hasMoreElements()) {
+                    return null;
+                }
+
+                String value = values.nextElement();
+                Date modifyTime = parseModifyTimestamp(value);
+                if (modifyTime == null) {
+                    logger.debug("LDAPStore: Invalid " + ATTR_MODIFY_TIMESTAMP + " in " + entry.getDN() + ": " + value);
+                    return null;
+                }
+
+                lastModified = Math.max(lastModified, modifyTime.getTime());
+                sb.append(entry.getDN()).append('=').append(value).append('\n');
+            }
+
+            if (sb.length() == 0) {
+                return null;
+            }
+
+            if (System.currentTimeMillis() < lastModified + MODIFY_TIMESTAMP_MARGIN) {
+                logger.debug("LDAPStore: Entries under " + baseDN + " were modified recently");
+                return null;
+            }
 
+            return sb.toString();
+
+        } catch (Exception e) {
+            logger.warn("LDAPStore: Unable to check for changes under " + baseDN + ": " + e.getMessage(), e);
+        }
+
+        return null;
+    }
+
+    /**
+     * Parses an LDAP generalized time, e.g. 20240101120000Z, ignoring
+     * fractions of a second.
+     */
+    static Date parseModifyTimestamp(String value) {
+
+        if (value.length() < 14) {
+            return null;
+        }
+
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMddHHmmss");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        format.setLenient(false);
+
+        try {
+            return format.parse(value.substring(0, 14));
+        } catch (ParseException e) {
+            return null;
+        }
     }
 
     /**
@@ -155,7 +269,7 @@ public class LDAPStore implements IDefStore, IExtendedPluginInfo {
                     baseDN,
                     LDAPv3.SCOPE_SUB,
                     filter,
-                    null, false);
+                    new String[] { mCACertAttr }, false);
 
             if (!results.hasMoreElements()) {
                 logger.warn("Unable to find entries with CA cert under " + baseDN);
@@ -204,7 +318,7 @@ public class LDAPStore implements IDefStore, IExtendedPluginInfo {
                     baseDN,
                     LDAPv3.SCOPE_SUB,
                     filter,
-                    null, false);
+                    new String[] { mCRLAttr }, false);
 
             if (!results.hasMoreElements()) {
                 logger.warn("Unable to find entries with CRL under " + baseDN);
@@ -252,6 +366,24 @@ public class LDAPStore implements IDefStore, IExtendedPluginInfo {
         }
         logger.debug("Added '" + caCert.getSubjectName() + "' into CRL hash");
         mCRLs.put(caCert, crl);
+
+        for (ICRLUpdateListener listener : mCRLUpdateListeners) {
+            try {
+                listener.crlUpdated(caCert, crl);
+            } catch (Exception e) {
+                logger.warn("LDAPStore: Unable to notify CRL update listener: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public void addCRLUpdateListener(ICRLUpdateListener listener) {
+        mCRLUpdateListeners.add(listener);
+    }
+
+    @Override
+    public void removeCRLUpdateListener(ICRLUpdateListener listener) {
+        mCRLUpdateListeners.remove(listener);
     }
 
     @Override
@@ -332,6 +464,11 @@ public class LDAPStore implements IDefStore, IExtendedPluginInfo {
         throw new EBaseException("NOT SUPPORTED");
     }
 
+    @Override
+    public boolean isDeltaCRLSupported() {
+        return false;
+    }
+
     @Override
     public CRLIssuingPointRecord readCRLIssuingPoint(String name)
             throws EBaseException {
@@ -410,9 +547,46 @@ public class LDAPStore implements IDefStore, IExtendedPluginInfo {
         INTEGER serialNo = cid.getSerialNumber();
         logger.info("LDAPStore: Processing request for cert 0x" + serialNo.toString(16));
 
-        // locate the right CRL
-        X509CertImpl theCert = null;
-        X509CRLImpl theCRL = null;
+        return processRequest(cid, findCACert(cid));
+    }
+
+    /**
+     * Check against the database for status of multiple certificates.
+     * The CA certificate of each issuer is located only once.
+     */
+    @Override
+    public SingleResponse[] processRequests(Request[] reqs) throws Exception {
+
+        SingleResponse[] responses = new SingleResponse[reqs.length];
+        Map<String, X509CertImpl> caCerts = new HashMap<>();
+
+        for (int i = 0; i < reqs.length; i++) {
+            CertID cid = reqs[i].getCertID();
+            logger.info("LDAPStore: Processing request for cert 0x" + cid.getSerialNumber().toString(16));
+
+            String key = cid.getDigestName() + ":" + Hex.encodeHexString(cid.getIssuerKeyHash().toByteArray());
+            X509CertImpl caCert = caCerts.get(key);
+
+            if (caCert == null) {
+                caCert = findCACert(cid);
+                if (caCert != null) {
+                    caCerts.put(key, caCert);
+                }
+            }
+
+            responses[i] = processRequest(cid, caCert);
+        }
+
+        return responses;
+    }
+
+    /**
+     * Locates the CA certificate of the issuer identified in the
+     * certificate ID, or returns null if the issuer is unknown.
+     */
+    private X509CertImpl findCACert(CertID cid) throws Exception {
+
+        byte keyhsh[] = cid.getIssuerKeyHash().toByteArray();
 
         logger.info("LDAPStore: Checking against " + mCRLs.size() + " CA cert(s)");
         Enumeration<X509CertImpl> caCerts = mCRLs.keys();
@@ -429,22 +603,27 @@ public class LDAPStore implements IDefStore, IExtendedPluginInfo {
             }
 
             byte digest[] = md.digest(key.getKey());
-            byte keyhsh[] = cid.getIssuerKeyHash().toByteArray();
 
-            if (!Arrays.equals(digest, keyhsh)) {
-                continue;
+            if (Arrays.equals(digest, keyhsh)) {
+                return caCert;
             }
-
-            theCert = caCert;
-            incReqCount(caCert.getSubjectName().toString());
-            theCRL = mCRLs.get(caCert);
-            break;
         }
 
+        return null;
+    }
+
+    /**
+     * Checks the status of a certificate against the CRL of its issuer.
+     */
+    private SingleResponse processRequest(CertID cid, X509CertImpl theCert) throws Exception {
+
         if (theCert == null) {
             throw new Exception("Missing issuer certificate");
         }
 
+        incReqCount(theCert.getSubjectName().toString());
+        X509CRLImpl theCRL = mCRLs.get(theCert);
+
         if (theCRL == null) {
             throw new Exception("Missing CRL data");
         }
@@ -513,6 +692,8 @@ public class LDAPStore implements IDefStore, IExtendedPluginInfo {
                     mConfig.getString(PROP_NOT_FOUND_GOOD, "true"));
             params.put(PROP_INCLUDE_NEXT_UPDATE,
                     mConfig.getString(PROP_INCLUDE_NEXT_UPDATE, "false"));
+            params.put(PROP_DETECT_CHANGES,
+                    mConfig.getString(PROP_DETECT_CHANGES, "true"));
             return params;
         } catch (Exception e) {
             return null;
@@ -538,6 +719,9 @@ class CRLUpdater extends Thread {
     private int mSec = 0;
     private LDAPStore mStore = null;
 
+    // modification times of the CA entries when the CRL was last loaded
+    private String mModifyState = null;
+
     public CRLUpdater(LDAPStore store, LDAPConnection c,
             String baseDN, int sec) {
         mC = c;
@@ -550,6 +734,17 @@ class CRLUpdater extends Thread {
 
         logger.info("LDAPStore: Updating CRL");
 
+        String modifyState = null;
+
+        if (mStore.isDetectChanges()) {
+            modifyState = mStore.getModifyState(mC, mBaseDN);
+
+            if (modifyState != null && modifyState.equals(mModifyState)) {
+                logger.info("LDAPStore: CRL under " + mBaseDN + " has not changed");
+                return;
+            }
+        }
+
         X509CertImpl caCert = mStore.locateCACert(mC, mBaseDN);
         if (caCert == null) {
             logger.info("LDAPStore: Unable to find CA cert");
@@ -564,6 +759,9 @@ class CRLUpdater extends Thread {
 
         logger.info("LDAPStore: Updating CRL cache");
         mStore.updateCRLHash(caCert, crl);
+
+        // the CRL is read again if the entries changed while it was read
+        mModifyState = modifyState;
     }
 
     @Override
@@ -0,0 +1,386 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cms.ocsp;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * Immutable, sorted index of the revoked certificates of a single
+ * CRL issuing point.
+ *
+ * Serial numbers are stored as their low 64 bits in a sorted primitive
+ * array together with the revocation time in milliseconds, so that a
+ * lookup is a binary search that neither allocates nor locks. Serial
+ * numbers that do not fit into a long are additionally kept as-is
+ * to resolve collisions of their low 64 bits.
+ *
+ * An index is built once per CRL and replaced as a whole when a new
+ * CRL arrives. A delta CRL is merged with the current index into a
+ * new index.
+ */
+public class RevocationIndex {
+
+    public static final int NOT_FOUND = -1;
+
+    private final long[] keys;
+    private final long[] revocationDates;
+
+    // full serial numbers for entries whose serial does not fit into
+    // a long, null if the CRL has no such entries
+    private final BigInteger[] wideSerials;
+
+    private final long thisUpdate;
+
+    // numbers of the full CRL and of the delta CRL applied to it
+    // (null if no delta CRL has been applied)
+    private final BigInteger crlNumber;
+    private final BigInteger deltaCRLNumber;
+
+    private RevocationIndex(
+            long[] keys,
+            long[] revocationDates,
+            BigInteger[] wideSerials,
+            long thisUpdate,
+            BigInteger crlNumber,
+            BigInteger deltaCRLNumber) {
+
+        this.keys = keys;
+        this.revocationDates = revocationDates;
+        this.wideSerials = wideSerials;
+        this.thisUpdate = thisUpdate;
+        this.crlNumber = crlNumber;
+        this.deltaCRLNumber = deltaCRLNumber;
+    }
+
+    private static boolean fitsInLong(BigInteger serial) {
+        return serial.bitLength() < Long.SIZE;
+    }
+
+    /**
+     * Orders entries by the low 64 bits of the serial number, then
+     * entries whose serial fits into a long before the others, then
+     * by the full serial number.
+     */
+    private static int compare(long key1, BigInteger wide1, long key2, BigInteger wide2) {
+
+        int result = Long.compare(key1, key2);
+        if (result != 0) {
+            return result;
+        }
+
+        if (wide1 == null) {
+            return wide2 == null ? 0 : -1;
+        }
+
+        return wide2 == null ? 1 : wide1.compareTo(wide2);
+    }
+
+    private BigInteger getWideSerial(int index) {
+        return wideSerials == null ? null : wideSerials[index];
+    }
+
+    /**
+     * Returns a new index that applies the entries of a delta CRL to
+     * this index. Entries in the added index replace the entries of
+     * the same serial number in this index, entries in the removed
+     * index (i.e. entries with reason removeFromCRL) are dropped.
+     * This index is not modified.
+     */
+    public RevocationIndex update(
+            RevocationIndex added,
+            RevocationIndex removed,
+            long thisUpdate,
+            BigInteger deltaCRLNumber) {
+
+        int capacity = keys.length + added.keys.length;
+        long[] newKeys = new long[capacity];
+        long[] newRevocationDates = new long[capacity];
+        BigInteger[] newWideSerials =
+                wideSerials == null && added.wideSerials == null ? null : new BigInteger[capacity];
+
+        int i = 0; // position in this index
+        int j = 0; // position in added entries
+        int k = 0; // position in removed entries
+        int n = 0;
+
+        while (i < keys.length || j < added.keys.length) {
+
+            long key;
+            BigInteger wideSerial;
+            long revocationDate;
+
+            int result = i == keys.length ? 1 : j == added.keys.length ? -1
+                    : compare(keys[i], getWideSerial(i), added.keys[j], added.getWideSerial(j));
+
+            if (result < 0) {
+                key = keys[i];
+                wideSerial = getWideSerial(i);
+                revocationDate = revocationDates[i];
+                i++;
+
+                // skip removed entries that sort before this entry
+                while (k < removed.keys.length
+                        && compare(removed.keys[k], removed.getWideSerial(k), key, wideSerial) < 0) {
+                    k++;
+                }
+
+                if (k < removed.keys.length
+                        && compare(removed.keys[k], removed.getWideSerial(k), key, wideSerial) == 0) {
+                    continue;
+                }
+
+            } else {
+                key = added.keys[j];
+                wideSerial = added.getWideSerial(j);
+                revocationDate = added.revocationDates[j];
+                j++;
+
+                if (result == 0) {
+                    // replaced by the delta CRL
+                    i++;
+                }
+            }
+
+            newKeys[n] = key;
+            newRevocationDates[n] = revocationDate;
+            if (newWideSerials != null) {
+                newWideSerials[n] = wideSerial;
+            }
+            n++;
+        }
+
+        return new RevocationIndex(
+                Arrays.copyOf(newKeys, n),
+                Arrays.copyOf(newRevocationDates, n),
+                newWideSerials == null ? null : Arrays.copyOf(newWideSerials, n),
+                thisUpdate,
+                crlNumber,
+                deltaCRLNumber);
+    }
+
+    /**
+     * Returns the position of the serial number in this index,
+     * or NOT_FOUND if the certificate is not revoked.
+     */
+    public int indexOf(BigInteger serial) {
+
+        long key = serial.longValue();
+        boolean wide = !fitsInLong(serial);
+
+        // find the first entry with a matching key
+        int low = 0;
+        int high = keys.length;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        // several wide serials can share the same low 64 bits
+        for (int i = low; i < keys.length && keys[i] == key; i++) {
+            BigInteger wideSerial = wideSerials == null ? null : wideSerials[i];
+
+            if (wideSerial == null) {
+                if (!wide) {
+                    return i;
+                }
+            } else if (wide && wideSerial.equals(serial)) {
+                return i;
+            }
+        }
+
+        return NOT_FOUND;
+    }
+
+    public boolean isRevoked(BigInteger serial) {
+        return indexOf(serial) != NOT_FOUND;
+    }
+
+    /**
+     * Returns the revocation time (in milliseconds) of the entry
+     * at the given position.
+     */
+    public long getRevocationTime(int index) {
+        return revocationDates[index];
+    }
+
+    public Date getRevocationDate(int index) {
+        return new Date(revocationDates[index]);
+    }
+
+    /**
+     * Returns the thisUpdate time (in milliseconds) of the latest
+     * CRL or delta CRL this index was built from.
+     */
+    public long getThisUpdate() {
+        return thisUpdate;
+    }
+
+    public BigInteger getCRLNumber() {
+        return crlNumber;
+    }
+
+    public BigInteger getDeltaCRLNumber() {
+        return deltaCRLNumber;
+    }
+
+    /**
+     * Returns true if this index was built from the full CRL with the
+     * given number and the given delta CRL (null for none).
+     */
+    public boolean isBuiltFrom(BigInteger crlNumber, BigInteger deltaCRLNumber) {
+        return crlNumber != null
+                && crlNumber.equals(this.crlNumber)
+                && Objects.equals(deltaCRLNumber, this.deltaCRLNumber);
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * Collects revoked certificates (e.g. while a CRL is being read)
+     * into primitive arrays and sorts them once into an index.
+     */
+    public static class Builder {
+
+        private long[] keys;
+        private long[] revocationDates;
+        private BigInteger[] wideSerials;
+        private int size;
+
+        public Builder() {
+            this(16);
+        }
+
+        public Builder(int capacity) {
+            capacity = Math.max(capacity, 16);
+            keys = new long[capacity];
+            revocationDates = new long[capacity];
+        }
+
+        public Builder add(BigInteger serial, long revocationDate) {
+
+            if (size == keys.length) {
+                int capacity = size + (size >> 1);
+                keys = Arrays.copyOf(keys, capacity);
+                revocationDates = Arrays.copyOf(revocationDates, capacity);
+                if (wideSerials != null) {
+                    wideSerials = Arrays.copyOf(wideSerials, capacity);
+                }
+            }
+
+            if (!fitsInLong(serial)) {
+                if (wideSerials == null) {
+                    wideSerials = new BigInteger[keys.length];
+                }
+                wideSerials[size] = serial;
+            }
+
+            keys[size] = serial.longValue();
+            revocationDates[size] = revocationDate;
+            size++;
+
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Sorts the collected entries into an index. If a serial number
+         * was added more than once, only one of its entries is kept.
+         *
+         * @param thisUpdate thisUpdate time of the CRL
+         * @param crlNumber number of the CRL, or null if unknown
+         */
+        public RevocationIndex build(long thisUpdate, BigInteger crlNumber) {
+
+            // heapsort in place to avoid boxing the entries
+            for (int i = size / 2 - 1; i >= 0; i--) {
+                siftDown(i, size);
+            }
+
+            for (int end = size - 1; end > 0; end--) {
+                swap(0, end);
+                siftDown(0, end);
+            }
+
+            // remove duplicates
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                if (n > 0 && compare(n - 1, i) == 0) {
+                    continue;
+                }
+                swap(n++, i);
+            }
+
+            return new RevocationIndex(
+                    Arrays.copyOf(keys, n),
+                    Arrays.copyOf(revocationDates, n),
+                    wideSerials == null ? null : Arrays.copyOf(wideSerials, n),
+                    thisUpdate,
+                    crlNumber,
+                    null);
+        }
+
+        private int compare(int i, int j) {
+            return RevocationIndex.compare(
+                    keys[i], wideSerials == null ? null : wideSerials[i],
+                    keys[j], wideSerials == null ? null : wideSerials[j]);
+        }
+
+        private void siftDown(int root, int end) {
+
+            while (true) {
+                int child = 2 * root + 1;
+                if (child >= end) {
+                    return;
+                }
+
+                if (child + 1 < end && compare(child, child + 1) < 0) {
+                    child++;
+                }
+
+                if (compare(root, child) >= 0) {
+                    return;
+                }
+
+                swap(root, child);
+                root = child;
+            }
+        }
+
+        private void swap(int i, int j) {
+
+            if (i == j) {
+                return;
+            }
+
+            long key = keys[i];
+            keys[i] = keys[j];
+            keys[j] = key;
+
+            long revocationDate = revocationDates[i];
+            revocationDates[i] = revocationDates[j];
+            revocationDates[j] = revocationDate;
+
+            if (wideSerials != null) {
+                BigInteger wideSerial = wideSerials[i];
+                wideSerials[i] = wideSerials[j];
+                wideSerials[j] = wideSerial;
+            }
+        }
+    }
+}
@@ -17,9 +17,10 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cms.servlet.ocsp;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigInteger;
-import java.security.cert.CRLException;
 import java.security.cert.X509CRL;
 import java.util.Date;
 import java.util.Locale;
@@ -40,13 +41,13 @@ import org.mozilla.jss.netscape.security.util.Cert;
 import org.mozilla.jss.netscape.security.util.Utils;
 import org.mozilla.jss.netscape.security.x509.X509CRLImpl;
 import org.mozilla.jss.netscape.security.x509.X509CertImpl;
-import org.mozilla.jss.netscape.security.x509.X509ExtensionException;
 
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.logging.AuditEvent;
 import com.netscape.certsrv.logging.ILogger;
 import com.netscape.certsrv.ocsp.IDefStore;
 import com.netscape.certsrv.util.IStatsSubsystem;
+import com.netscape.cms.ocsp.DefStore;
 import com.netscape.cms.servlet.base.CMSServlet;
 import com.netscape.cms.servlet.common.CMSRequest;
 import com.netscape.cms.servlet.common.CMSTemplate;
@@ -73,6 +74,9 @@ public class AddCRLServlet extends CMSServlet {
             "-----BEGIN CERTIFICATE REVOCATION LIST-----";
     public static final String END_HEADER =
             "-----END CERTIFICATE REVOCATION LIST-----";
+    public static final String CRL_CONTENT_TYPE = "application/pkix-crl";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
 
     private final static String TPL_FILE = "addCRL.template";
     private String mFormPath = null;
@@ -107,6 +111,7 @@ public class AddCRLServlet extends CMSServlet {
      * <ul>
      * <li>http.param crl certificate revocation list, base-64, DER encoded wrapped in -----BEGIN CERTIFICATE REVOCATION
      * LIST-----, -----END CERTIFICATE REVOCATION LIST----- strings
+     * <li>alternatively, the DER encoded CRL can be sent as request body with content type application/pkix-crl
      * <li>http.param noui if true, use minimal hardcoded text response
      * <li>signed.audit LOGGING_SIGNED_AUDIT_CRL_RETRIEVAL used when CRLs are retrieved by the OCSP Responder ("agent"
      * or "EE")
@@ -178,10 +183,25 @@ public class AddCRLServlet extends CMSServlet {
                 }
             }
 
-            String b64 = cmsReq.getHttpReq().getParameter("crl");
-            logger.info("AddCRLServlet: CRL: " + b64);
+            String b64 = null;
+            byte[] crlData = null;
+
+            String contentType = req.getContentType();
+            if (contentType != null && contentType.startsWith(CRL_CONTENT_TYPE)) {
+                try {
+                    crlData = readCRL(req);
+                    logger.info("AddCRLServlet: CRL: " + crlData.length + " bytes");
+
+                } catch (IOException e) {
+                    logger.error("AddCRLServlet: Unable to read CRL: " + e.getMessage(), e);
+                }
+
+            } else {
+                b64 = cmsReq.getHttpReq().getParameter("crl");
+                logger.info("AddCRLServlet: CRL: " + b64);
+            }
 
-            if (b64 == null) {
+            if (b64 == null && crlData == null) {
                 // store a message in the signed audit log file
                 auditMessage = CMS.getLogMessage(
                         AuditEvent.CRL_RETRIEVAL,
@@ -232,7 +252,7 @@ public class AddCRLServlet extends CMSServlet {
             ArgBlock fixed = new ArgBlock();
             CMSTemplateParams argSet = new CMSTemplateParams(header, fixed);
 
-            if (b64.indexOf(BEGIN_HEADER) == -1) {
+            if (b64 != null && b64.indexOf(BEGIN_HEADER) == -1) {
                 logger.error(CMS.getLogMessage("CMSGW_MISSING_CRL_HEADER"));
 
                 // store a message in the signed audit log file
@@ -247,7 +267,7 @@ public class AddCRLServlet extends CMSServlet {
                 throw new ECMSGWException(CMS.getUserMessage(getLocale(req),
                                           "CMS_GW_MISSING_CRL_HEADER"));
             }
-            if (b64.indexOf(END_HEADER) == -1) {
+            if (b64 != null && b64.indexOf(END_HEADER) == -1) {
                 logger.error(CMS.getLogMessage("CMSGW_MISSING_CRL_FOOTER"));
 
                 // store a message in the signed audit log file
@@ -273,7 +293,7 @@ public class AddCRLServlet extends CMSServlet {
                 if (statsSub != null) {
                     statsSub.startTiming("decode_crl");
                 }
-                crl = mapCRL1(b64);
+                crl = crlData == null ? mapCRL1(b64) : mapCRL(crlData);
                 if (statsSub != null) {
                     statsSub.endTiming("decode_crl");
                 }
@@ -405,60 +425,60 @@ public class AddCRLServlet extends CMSServlet {
                 }
             }
 
-            if ((pt.getThisUpdate() != null) &&
-                    (pt.getThisUpdate().getTime() >=
-                    crl.getThisUpdate().getTime())) {
+            if (crl.isDeltaCRL() && !defStore.isDeltaCRLSupported()) {
 
-                logger.warn("AddCRLServlet: no update, received CRL is older than current CRL");
+                logger.warn("AddCRLServlet: no update, " + CMS.getUserMessage("CMS_GW_DELTA_CRL_NOT_SUPPORTED"));
 
                 if (noUI) {
                     try {
                         resp.setContentType("application/text");
                         resp.getOutputStream().write("status=1\n".getBytes());
                         resp.getOutputStream().write(
-                                "error=Sent CRL is older than the current CRL\n".getBytes());
+                                "error=Delta CRLs are not supported.\n".getBytes());
                         resp.getOutputStream().flush();
                         cmsReq.setStatus(CMSRequest.SUCCESS);
 
-                        // NOTE:  The signed audit events
-                        //        LOGGING_SIGNED_AUDIT_CRL_RETRIEVAL and
-                        //        LOGGING_SIGNED_AUDIT_CRL_VALIDATION have
-                        //        already been logged at this point!
-
                         return;
                     } catch (Exception e) {
                     }
                 } else {
-                    logger.error("AddCRLServlet: CRL is older");
-
-                    // NOTE:  The signed audit events
-                    //        LOGGING_SIGNED_AUDIT_CRL_RETRIEVAL and
-                    //        LOGGING_SIGNED_AUDIT_CRL_VALIDATION have
-                    //        already been logged at this point!
-
-                    throw new ECMSGWException(CMS.getUserMessage(
-                            "CMS_GW_OLD_CRL_ERROR"));
+                    throw new ECMSGWException(CMS.getUserMessage("CMS_GW_DELTA_CRL_NOT_SUPPORTED"));
                 }
             }
 
-            if (crl.isDeltaCRL()) {
+            // compare full and delta CRLs by CRL number since a delta CRL
+            // and the next full CRL may have the same thisUpdate time
+            if (DefStore.isOlderCRL(pt, crl.isDeltaCRL(), crl.getCRLNumber(), crl.getThisUpdate())) {
 
-                logger.warn("AddCRLServlet: no update, " + CMS.getUserMessage("CMS_GW_DELTA_CRL_NOT_SUPPORTED"));
+                logger.warn("AddCRLServlet: no update, received CRL is older than current CRL");
 
                 if (noUI) {
                     try {
                         resp.setContentType("application/text");
                         resp.getOutputStream().write("status=1\n".getBytes());
                         resp.getOutputStream().write(
-                                "error=Delta CRLs are not supported.\n".getBytes());
+                                "error=Sent CRL is older than the current CRL\n".getBytes());
                         resp.getOutputStream().flush();
                         cmsReq.setStatus(CMSRequest.SUCCESS);
 
+                        // NOTE:  The signed audit events
+                        //        LOGGING_SIGNED_AUDIT_CRL_RETRIEVAL and
+                        //        LOGGING_SIGNED_AUDIT_CRL_VALIDATION have
+                        //        already been logged at this point!
+
                         return;
                     } catch (Exception e) {
                     }
                 } else {
-                    throw new ECMSGWException(CMS.getUserMessage("CMS_GW_DELTA_CRL_NOT_SUPPORTED"));
+                    logger.error("AddCRLServlet: CRL is older");
+
+                    // NOTE:  The signed audit events
+                    //        LOGGING_SIGNED_AUDIT_CRL_RETRIEVAL and
+                    //        LOGGING_SIGNED_AUDIT_CRL_VALIDATION have
+                    //        already been logged at this point!
+
+                    throw new ECMSGWException(CMS.getUserMessage(
+                            "CMS_GW_OLD_CRL_ERROR"));
                 }
             }
 
@@ -558,14 +578,57 @@ public class AddCRLServlet extends CMSServlet {
         mime64 = Cert.stripCRLBrackets(mime64.trim());
 
         byte rawPub[] = Utils.base64decode(mime64);
-        X509CRLImpl crl = null;
+        return mapCRL(rawPub);
+    }
 
+    /**
+     * Decodes the CRL without its entries. The entries are read from
+     * the encoded CRL by the OCSP store.
+     */
+    public X509CRLImpl mapCRL(byte[] data) throws IOException {
         try {
-            crl = new X509CRLImpl(rawPub, false);
+            return new X509CRLImpl(data, false);
         } catch (Exception e) {
             throw new IOException(e.toString());
         }
-        return crl;
+    }
+
+    /**
+     * Reads a DER encoded CRL from the request body in chunks.
+     *
+     * The complete encoding is kept in memory since it is needed to
+     * verify the CRL signature and to store the CRL in the issuing
+     * point record. The entries are not decoded here, they are
+     * streamed from the encoding by the OCSP store.
+     */
+    public byte[] readCRL(HttpServletRequest req) throws IOException {
+
+        InputStream in = req.getInputStream();
+        int length = req.getContentLength();
+
+        if (length < 0) {
+            // unknown length
+            ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+
+        byte[] data = new byte[length];
+        int offset = 0;
+
+        while (offset < length) {
+            int n = in.read(data, offset, Math.min(BUFFER_SIZE, length - offset));
+            if (n < 0) {
+                throw new IOException("Incomplete CRL: " + offset + " of " + length + " bytes");
+            }
+            offset += n;
+        }
+
+        return data;
     }
 }
 
@@ -582,13 +645,9 @@ class UpdateCRLThread extends Thread {
     @Override
     public void run() {
         try {
-            if (!((X509CRLImpl) mCRL).areEntriesIncluded())
-                mCRL = new X509CRLImpl(((X509CRLImpl) mCRL).getEncoded());
             mDefStore.updateCRL(mCRL);
-        } catch (CRLException e) {
-        } catch (X509ExtensionException e) {
         } catch (EBaseException e) {
-            // ignore
+            AddCRLServlet.logger.error("AddCRLServlet: Unable to update CRL: " + e.getMessage(), e);
         }
     }
 }
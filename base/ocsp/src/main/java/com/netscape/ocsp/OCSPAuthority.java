@@ -28,11 +28,11 @@ import java.security.cert.CertificateParsingException;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.Hashtable;
-import java.util.Vector;
 
 import org.dogtagpki.server.ocsp.OCSPConfig;
 import org.dogtagpki.server.ocsp.OCSPEngine;
 import org.dogtagpki.server.ocsp.OCSPEngineConfig;
+import org.dogtagpki.server.ocsp.OCSPResponseCacheConfig;
 import org.mozilla.jss.asn1.ASN1Util;
 import org.mozilla.jss.asn1.GeneralizedTime;
 import org.mozilla.jss.asn1.InvalidBERException;
@@ -102,12 +102,14 @@ public class OCSPAuthority implements IOCSPAuthority, IOCSPService, IAuthority {
 
     private String[] mOCSPSigningAlgorithms = null;
     private IOCSPStore mDefStore = null;
+    private OCSPResponseCache mResponseCache = null;
 
     public long mNumOCSPRequest = 0;
     public long mTotalTime = 0;
     public long mTotalData = 0;
     public long mSignTime = 0;
     public long mLookupTime = 0;
+    public long mNumSign = 0;
 
     /**
      * Retrieves the name of this subsystem.
@@ -174,6 +176,14 @@ public class OCSPAuthority implements IOCSPAuthority, IOCSPService, IAuthority {
                 logger.warn(CMS.getLogMessage("CMSCORE_OCSP_SIGNING_UNIT", e.toString()), e);
             }
 
+            OCSPResponseCacheConfig cacheConfig = mConfig.getResponseCacheConfig();
+
+            if (cacheConfig.isEnabled()) {
+                logger.info("OCSPAuthority: Initializing OCSP response cache");
+                mResponseCache = new OCSPResponseCache(this);
+                mResponseCache.init(cacheConfig);
+            }
+
         } catch (EBaseException e) {
             logger.error("OCSPAuthority: " + e.getMessage(), e);
             throw e;
@@ -328,6 +338,13 @@ public class OCSPAuthority implements IOCSPAuthority, IOCSPService, IAuthority {
             if (mDefStore != null)
                 mDefStore.startup();
 
+            if (mResponseCache != null) {
+                if (mDefStore instanceof IDefStore) {
+                    ((IDefStore) mDefStore).addCRLUpdateListener(mResponseCache);
+                }
+                mResponseCache.start();
+            }
+
         } catch (EBaseException e) {
             logger.warn("OCSPAuthority: " + e.getMessage(), e);
             if (engine.isPreOpMode()) {
@@ -364,54 +381,12 @@ public class OCSPAuthority implements IOCSPAuthority, IOCSPService, IAuthority {
             throw new EBaseException("OCSP request is empty");
         }
 
-        OCSPEngine engine = OCSPEngine.getInstance();
-        IStatsSubsystem statsSub = (IStatsSubsystem) engine.getSubsystem(IStatsSubsystem.ID);
-
         incNumOCSPRequest(1);
         long startTime = new Date().getTime();
 
         OCSPResponse response;
 
         try {
-            // (3) look into database to check the certificate's status
-            Vector<SingleResponse> singleResponses = new Vector<>();
-
-            if (statsSub != null) {
-                statsSub.startTiming("lookup");
-            }
-
-            long lookupStartTime = new Date().getTime();
-
-            for (int i = 0; i < tbsReq.getRequestCount(); i++) {
-                logger.info("OCSPAuthority: Processing request #" + i);
-
-                Request req = tbsReq.getRequestAt(i);
-                SingleResponse sr = mDefStore.processRequest(req);
-                singleResponses.addElement(sr);
-            }
-
-            long lookupEndTime = new Date().getTime();
-            incLookupTime(lookupEndTime - lookupStartTime);
-
-            if (statsSub != null) {
-                statsSub.endTiming("lookup");
-            }
-
-            if (statsSub != null) {
-                statsSub.startTiming("build_response");
-            }
-
-            SingleResponse res[] = new SingleResponse[singleResponses.size()];
-            singleResponses.copyInto(res);
-
-            ResponderID rid = null;
-
-            if (mDefStore.isByName()) {
-                rid = getResponderIDByName();
-            } else {
-                rid = getResponderIDByHash();
-            }
-
             Extension nonce[] = null;
 
             for (int j = 0; j < tbsReq.getExtensionsCount(); j++) {
@@ -423,32 +398,39 @@ public class OCSPAuthority implements IOCSPAuthority, IOCSPService, IAuthority {
                 }
             }
 
-            ResponseData rd = new ResponseData(rid,
-                    new GeneralizedTime(new Date()), res, nonce);
+            // only responses to single-certificate requests without
+            // nonce can be served from the cache
+            boolean cacheable = mResponseCache != null
+                    && nonce == null
+                    && tbsReq.getRequestCount() == 1;
 
-            if (statsSub != null) {
-                statsSub.endTiming("build_response");
-            }
+            response = null;
+            long generation = 0;
 
-            if (statsSub != null) {
-                statsSub.startTiming("signing");
+            if (cacheable) {
+                generation = mResponseCache.getGeneration();
+                response = mResponseCache.get(tbsReq.getRequestAt(0));
             }
 
-            long signStartTime = new Date().getTime();
+            if (response != null) {
+                logger.info("OCSPAuthority: Using cached OCSP response");
 
-            BasicOCSPResponse basicRes = sign(rd);
+            } else {
+                Request requests[] = new Request[tbsReq.getRequestCount()];
 
-            long signEndTime = new Date().getTime();
-            incSignTime(signEndTime - signStartTime);
+                for (int i = 0; i < requests.length; i++) {
+                    requests[i] = tbsReq.getRequestAt(i);
+                }
 
-            if (statsSub != null) {
-                statsSub.endTiming("signing");
-            }
+                // (3) look into database to check the certificate's status
+                SingleResponse res[] = lookup(requests);
 
-            response = new OCSPResponse(
-                    OCSPResponseStatus.SUCCESSFUL,
-                    new ResponseBytes(ResponseBytes.OCSP_BASIC,
-                            new OCTET_STRING(ASN1Util.encode(basicRes))));
+                response = createResponse(res, nonce);
+
+                if (cacheable) {
+                    mResponseCache.put(requests[0], res[0], response, generation);
+                }
+            }
 
         } catch (EBaseException e) {
             logger.error(CMS.getLogMessage("OCSP_REQUEST_FAILURE", e.toString()), e);
@@ -469,6 +451,82 @@ public class OCSPAuthority implements IOCSPAuthority, IOCSPService, IAuthority {
         return response;
     }
 
+    /**
+     * Checks the status of the requested certificates against
+     * the default OCSP store.
+     */
+    public SingleResponse[] lookup(Request requests[]) throws Exception {
+
+        OCSPEngine engine = OCSPEngine.getInstance();
+        IStatsSubsystem statsSub = (IStatsSubsystem) engine.getSubsystem(IStatsSubsystem.ID);
+
+        if (statsSub != null) {
+            statsSub.startTiming("lookup");
+        }
+
+        long lookupStartTime = new Date().getTime();
+
+        logger.info("OCSPAuthority: Processing " + requests.length + " request(s)");
+        SingleResponse res[] = mDefStore.processRequests(requests);
+
+        long lookupEndTime = new Date().getTime();
+        incLookupTime(lookupEndTime - lookupStartTime);
+
+        if (statsSub != null) {
+            statsSub.endTiming("lookup");
+        }
+
+        return res;
+    }
+
+    /**
+     * Builds and signs an OCSP response for the given single responses.
+     */
+    public OCSPResponse createResponse(SingleResponse res[], Extension nonce[]) throws Exception {
+
+        OCSPEngine engine = OCSPEngine.getInstance();
+        IStatsSubsystem statsSub = (IStatsSubsystem) engine.getSubsystem(IStatsSubsystem.ID);
+
+        if (statsSub != null) {
+            statsSub.startTiming("build_response");
+        }
+
+        ResponderID rid = null;
+
+        if (mDefStore.isByName()) {
+            rid = getResponderIDByName();
+        } else {
+            rid = getResponderIDByHash();
+        }
+
+        ResponseData rd = new ResponseData(rid,
+                new GeneralizedTime(new Date()), res, nonce);
+
+        if (statsSub != null) {
+            statsSub.endTiming("build_response");
+        }
+
+        if (statsSub != null) {
+            statsSub.startTiming("signing");
+        }
+
+        long signStartTime = new Date().getTime();
+
+        BasicOCSPResponse basicRes = sign(rd);
+
+        long signEndTime = new Date().getTime();
+        incSignTime(signEndTime - signStartTime);
+
+        if (statsSub != null) {
+            statsSub.endTiming("signing");
+        }
+
+        return new OCSPResponse(
+                OCSPResponseStatus.SUCCESSFUL,
+                new ResponseBytes(ResponseBytes.OCSP_BASIC,
+                        new OCTET_STRING(ASN1Util.encode(basicRes))));
+    }
+
     /**
      * Stops this system. The owner may call shutdown
      * anytime after initialization.
@@ -476,6 +534,9 @@ public class OCSPAuthority implements IOCSPAuthority, IOCSPService, IAuthority {
      */
     @Override
     public void shutdown() {
+        if (mResponseCache != null) {
+            mResponseCache.stop();
+        }
     }
 
     /**
@@ -527,6 +588,7 @@ public class OCSPAuthority implements IOCSPAuthority, IOCSPService, IAuthority {
 
             logger.debug("OCSPAuthority: adding signature");
             byte[] signature = mSigningUnit.sign(rd_data, algname);
+            mNumSign++;
 
             tmp.putBitString(signature);
             // XXX - optional, put the certificate chains in also
@@ -698,6 +760,40 @@ public class OCSPAuthority implements IOCSPAuthority, IOCSPService, IAuthority {
         return mLookupTime;
     }
 
+    /**
+     * Returns the number of signed OCSP responses.
+     */
+    @Override
+    public long getOCSPTotalSignCount() {
+        return mNumSign;
+    }
+
+    /**
+     * Returns the number of OCSP requests served from the response cache.
+     */
+    @Override
+    public long getOCSPResponseCacheHits() {
+        return mResponseCache == null ? 0 : mResponseCache.getHits();
+    }
+
+    /**
+     * Returns the number of cacheable OCSP requests that were not
+     * found in the response cache.
+     */
+    @Override
+    public long getOCSPResponseCacheMisses() {
+        return mResponseCache == null ? 0 : mResponseCache.getMisses();
+    }
+
+    /**
+     * Returns the number of responses re-signed by the background
+     * refresh of the response cache.
+     */
+    @Override
+    public long getOCSPResponseCacheRefreshes() {
+        return mResponseCache == null ? 0 : mResponseCache.getRefreshes();
+    }
+
     /**
      * Returns the total data signed
      * for OCSP requests.
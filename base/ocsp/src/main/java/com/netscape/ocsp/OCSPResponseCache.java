@@ -0,0 +1,401 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.ocsp;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.cert.X509CRL;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.codec.binary.Hex;
+import org.dogtagpki.server.ocsp.OCSPResponseCacheConfig;
+import org.mozilla.jss.asn1.GeneralizedTime;
+import org.mozilla.jss.netscape.security.x509.X509CertImpl;
+import org.mozilla.jss.netscape.security.x509.X509Key;
+
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.ocsp.ICRLUpdateListener;
+import com.netscape.cmsutil.ocsp.CertID;
+import com.netscape.cmsutil.ocsp.OCSPResponse;
+import com.netscape.cmsutil.ocsp.Request;
+import com.netscape.cmsutil.ocsp.SingleResponse;
+
+/**
+ * Cache of signed OCSP responses for single-certificate requests
+ * without nonce.
+ *
+ * Responses are keyed by the CertID of the request (hash algorithm,
+ * issuer name hash, issuer key hash and serial number). All responses
+ * of an issuer are invalidated when the OCSP store receives a new CRL
+ * for that issuer. Responses that have been served from the cache are
+ * re-signed in the background after such an invalidation and before
+ * they expire, so hot serial numbers rarely incur a signing operation
+ * in the request path. When the cache is full the expired responses
+ * and then the least recently used responses are removed.
+ */
+public class OCSPResponseCache implements ICRLUpdateListener, Runnable {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(OCSPResponseCache.class);
+
+    private OCSPAuthority authority;
+
+    private int maxSize;
+    private long maxAge;
+    private int refreshInterval;
+    private long refreshAhead;
+
+    // cached responses grouped by issuer
+    private Map<String, IssuerEntries> issuers = new ConcurrentHashMap<>();
+
+    // requests of hot responses that have been invalidated
+    private ConcurrentLinkedQueue<Request> refreshQueue = new ConcurrentLinkedQueue<>();
+
+    private AtomicInteger size = new AtomicInteger();
+
+    // incremented on each invalidation so that responses built from
+    // an older CRL are not added after the invalidation
+    private AtomicLong generation = new AtomicLong();
+
+    private AtomicLong hits = new AtomicLong();
+    private AtomicLong misses = new AtomicLong();
+    private AtomicLong refreshes = new AtomicLong();
+
+    private ScheduledExecutorService executorService;
+
+    public OCSPResponseCache(OCSPAuthority authority) {
+        this.authority = authority;
+    }
+
+    public void init(OCSPResponseCacheConfig config) throws EBaseException {
+
+        maxSize = config.getSize();
+        maxAge = config.getMaxAge() * 1000L;
+        refreshInterval = config.getRefreshInterval();
+        refreshAhead = config.getRefreshAhead() * 1000L;
+
+        logger.info("OCSPResponseCache: - size: " + maxSize);
+        logger.info("OCSPResponseCache: - max age: " + config.getMaxAge());
+        logger.info("OCSPResponseCache: - refresh interval: " + refreshInterval);
+        logger.info("OCSPResponseCache: - refresh ahead: " + config.getRefreshAhead());
+    }
+
+    public void start() {
+
+        if (refreshInterval <= 0) {
+            return;
+        }
+
+        executorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "OCSPResponseCache");
+            }
+        });
+        executorService.scheduleWithFixedDelay(this, refreshInterval, refreshInterval, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        // shutdown executorService without interrupting running task
+        if (executorService != null) executorService.shutdown();
+    }
+
+    private static String getIssuerKey(CertID cid) {
+        return cid.getDigestName()
+                + ":" + Hex.encodeHexString(cid.getIssuerNameHash().toByteArray())
+                + ":" + Hex.encodeHexString(cid.getIssuerKeyHash().toByteArray());
+    }
+
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Returns the cached response for the request, or null if there
+     * is no valid cached response.
+     */
+    public OCSPResponse get(Request req) {
+
+        CertID cid = req.getCertID();
+        IssuerEntries entries = issuers.get(getIssuerKey(cid));
+        Entry entry = entries == null ? null : entries.get(cid.getSerialNumber());
+
+        if (entry == null || entry.expires <= System.currentTimeMillis()) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        entry.hits.incrementAndGet();
+        entry.lastUsed = System.currentTimeMillis();
+        hits.incrementAndGet();
+
+        return entry.response;
+    }
+
+    /**
+     * Adds a signed response to the cache. The response is discarded if
+     * the cache has been invalidated since the given generation was
+     * obtained, i.e. if the response may have been built from an old CRL.
+     */
+    public void put(Request req, SingleResponse sr, OCSPResponse response, long generation) {
+
+        long now = System.currentTimeMillis();
+        long expires = getExpirationTime(sr, now);
+
+        if (expires <= now) {
+            return;
+        }
+
+        if (maxSize <= 0) {
+            return;
+        }
+
+        if (size.get() >= maxSize) {
+            evict(now);
+        }
+
+        CertID cid = req.getCertID();
+        String key = getIssuerKey(cid);
+
+        IssuerEntries entries = issuers.computeIfAbsent(
+                key,
+                k -> new IssuerEntries(cid.getDigestName(), cid.getIssuerKeyHash().toByteArray()));
+
+        Entry previous = entries.put(cid.getSerialNumber(), new Entry(req, response, expires, now));
+        if (previous == null) {
+            size.incrementAndGet();
+        }
+
+        if (this.generation.get() != generation) {
+            // invalidated while the response was being built
+            if (entries.remove(cid.getSerialNumber()) != null) {
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Removes the expired responses and, if the cache is still full,
+     * the least recently used responses. The cache is trimmed a tenth
+     * below the maximum size so that this does not run on every put.
+     */
+    private synchronized void evict(long now) {
+
+        if (size.get() < maxSize) {
+            // another thread has made room already
+            return;
+        }
+
+        int count = 0;
+        long[] lastUsed = new long[size.get()];
+
+        for (IssuerEntries entries : issuers.values()) {
+            for (Iterator<Entry> i = entries.values().iterator(); i.hasNext(); ) {
+                Entry entry = i.next();
+
+                if (entry.expires <= now) {
+                    i.remove();
+                    size.decrementAndGet();
+
+                } else if (count < lastUsed.length) {
+                    lastUsed[count++] = entry.lastUsed;
+                }
+            }
+        }
+
+        int excess = size.get() - (maxSize - Math.max(1, maxSize / 10));
+
+        if (excess > 0 && count > 0) {
+
+            Arrays.sort(lastUsed, 0, count);
+            long threshold = lastUsed[Math.min(excess, count) - 1];
+
+            for (IssuerEntries entries : issuers.values()) {
+                for (Iterator<Entry> i = entries.values().iterator(); i.hasNext(); ) {
+                    Entry entry = i.next();
+
+                    if (entry.lastUsed <= threshold) {
+                        i.remove();
+                        size.decrementAndGet();
+                    }
+                }
+            }
+        }
+
+        logger.debug("OCSPResponseCache: Evicted responses, " + size.get() + " remaining");
+    }
+
+    private long getExpirationTime(SingleResponse sr, long now) {
+
+        long expires = now + maxAge;
+        GeneralizedTime nextUpdate = sr.getNextUpdate();
+
+        if (nextUpdate != null) {
+            expires = Math.min(expires, nextUpdate.toDate().getTime());
+        }
+
+        return expires;
+    }
+
+    /**
+     * Removes all cached responses of the CA that issued the CRL.
+     */
+    @Override
+    public void crlUpdated(X509CertImpl caCert, X509CRL crl) {
+
+        generation.incrementAndGet();
+
+        byte[] caKey = null;
+        if (caCert != null) {
+            X509Key key = (X509Key) caCert.getPublicKey();
+            caKey = key.getKey();
+        }
+
+        for (Iterator<IssuerEntries> i = issuers.values().iterator(); i.hasNext(); ) {
+            IssuerEntries entries = i.next();
+
+            if (caKey != null && !entries.matches(caKey)) {
+                continue;
+            }
+
+            i.remove();
+            size.addAndGet(-entries.size());
+
+            for (Entry entry : entries.values()) {
+                if (entry.hits.get() > 0) {
+                    refreshQueue.add(entry.request);
+                }
+            }
+        }
+
+        logger.info("OCSPResponseCache: Invalidated responses for " +
+                (caCert == null ? "all CAs" : caCert.getSubjectName()));
+    }
+
+    @Override
+    public void run() {
+        try {
+            refresh();
+
+        } catch (Exception e) {
+            logger.warn("OCSPResponseCache: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Re-signs hot responses that have been invalidated or that are
+     * about to expire, and removes the others once they expire.
+     */
+    public void refresh() throws Exception {
+
+        long now = System.currentTimeMillis();
+
+        Request req;
+        while ((req = refreshQueue.poll()) != null) {
+            refresh(req);
+        }
+
+        for (IssuerEntries entries : issuers.values()) {
+            for (Iterator<Entry> i = entries.values().iterator(); i.hasNext(); ) {
+                Entry entry = i.next();
+
+                if (entry.expires - now > refreshAhead) {
+                    continue;
+                }
+
+                i.remove();
+                size.decrementAndGet();
+
+                if (entry.hits.get() > 0 && entry.expires > now) {
+                    refresh(entry.request);
+                }
+            }
+        }
+    }
+
+    private void refresh(Request req) throws Exception {
+
+        long generation = getGeneration();
+
+        SingleResponse sr = authority.getDefaultStore().processRequest(req);
+        long expires = getExpirationTime(sr, System.currentTimeMillis());
+
+        if (expires - System.currentTimeMillis() <= refreshAhead) {
+            // would be refreshed again right away
+            return;
+        }
+
+        OCSPResponse response = authority.createResponse(new SingleResponse[] { sr }, null);
+        refreshes.incrementAndGet();
+
+        put(req, sr, response, generation);
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getRefreshes() {
+        return refreshes.get();
+    }
+
+    static class IssuerEntries extends ConcurrentHashMap<BigInteger, Entry> {
+
+        private static final long serialVersionUID = 1L;
+
+        String digestName;
+        byte[] keyHash;
+
+        IssuerEntries(String digestName, byte[] keyHash) {
+            this.digestName = digestName;
+            this.keyHash = keyHash;
+        }
+
+        boolean matches(byte[] caKey) {
+            try {
+                MessageDigest md = MessageDigest.getInstance(digestName);
+                return Arrays.equals(md.digest(caKey), keyHash);
+
+            } catch (Exception e) {
+                // unknown algorithm, invalidate to be safe
+                return true;
+            }
+        }
+    }
+
+    static class Entry {
+
+        Request request;
+        OCSPResponse response;
+        long expires;
+        AtomicLong hits = new AtomicLong();
+        volatile long lastUsed;
+
+        Entry(Request request, OCSPResponse response, long expires, long lastUsed) {
+            this.request = request;
+            this.response = response;
+            this.expires = expires;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.server.ocsp;
+
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.cmscore.base.ConfigStorage;
+import com.netscape.cmscore.base.ConfigStore;
+import com.netscape.cmscore.base.SimpleProperties;
+
+/**
+ * Provides ocsp.responseCache.* parameters.
+ */
+public class OCSPResponseCacheConfig extends ConfigStore {
+
+    public OCSPResponseCacheConfig(ConfigStorage storage) {
+        super(storage);
+    }
+
+    public OCSPResponseCacheConfig(String name, SimpleProperties source) {
+        super(name, source);
+    }
+
+    /**
+     * Returns ocsp.responseCache.enable parameter.
+     */
+    public boolean isEnabled() throws EBaseException {
+        return getBoolean("enable", false);
+    }
+
+    /**
+     * Returns ocsp.responseCache.size parameter.
+     * Maximum number of cached responses.
+     */
+    public int getSize() throws EBaseException {
+        return getInteger("size", 10000);
+    }
+
+    /**
+     * Returns ocsp.responseCache.maxAge parameter.
+     * Maximum time (in seconds) a cached response is served,
+     * even if the CRL has a later nextUpdate.
+     */
+    public int getMaxAge() throws EBaseException {
+        return getInteger("maxAge", 3600);
+    }
+
+    /**
+     * Returns ocsp.responseCache.refreshInterval parameter.
+     * Interval (in seconds) of the background refresh.
+     */
+    public int getRefreshInterval() throws EBaseException {
+        return getInteger("refreshInterval", 60);
+    }
+
+    /**
+     * Returns ocsp.responseCache.refreshAhead parameter.
+     * Responses that expire within this time (in seconds)
+     * are refreshed in the background.
+     */
+    public int getRefreshAhead() throws EBaseException {
+        return getInteger("refreshAhead", 300);
+    }
+}
@@ -0,0 +1,145 @@
+package com.netscape.cms.ocsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CRLReaderTest {
+
+    private static final Date THIS_UPDATE = new Date(1700000000000L);
+    private static final Date NEXT_UPDATE = new Date(1700086400000L);
+
+    private static List<String> read(CRLReader reader) throws IOException {
+        List<String> entries = new ArrayList<>();
+        reader.read((serialNumber, revocationDate, reason) ->
+                entries.add(serialNumber + ":" + revocationDate + ":" + reason));
+        return entries;
+    }
+
+    @Test
+    public void testFullCRL() throws Exception {
+
+        byte[] data = new TestCRL()
+                .thisUpdate(THIS_UPDATE)
+                .nextUpdate(NEXT_UPDATE)
+                .crlNumber(5)
+                .entry(1, new Date(1600000000000L))
+                .entry(0x1234567890L, new Date(1600000001000L))
+                .encode();
+
+        CRLReader reader = new CRLReader(new ByteArrayInputStream(data));
+        List<String> entries = read(reader);
+
+        assertEquals(THIS_UPDATE, reader.getThisUpdate());
+        assertEquals(NEXT_UPDATE, reader.getNextUpdate());
+        assertEquals(BigInteger.valueOf(5), reader.getCRLNumber());
+        assertNull(reader.getBaseCRLNumber());
+        assertFalse(reader.isDeltaCRL());
+        assertEquals(2, reader.getEntries());
+
+        assertEquals(Arrays.asList(
+                "1:1600000000000:" + CRLReader.REASON_UNSPECIFIED,
+                "78187493520:1600000001000:" + CRLReader.REASON_UNSPECIFIED),
+                entries);
+    }
+
+    @Test
+    public void testDeltaCRL() throws Exception {
+
+        byte[] data = new TestCRL()
+                .thisUpdate(THIS_UPDATE)
+                .crlNumber(6)
+                .baseCRLNumber(5)
+                .entry(2, new Date(1600000002000L), 1)
+                .entry(3, new Date(1600000003000L), CRLReader.REASON_REMOVE_FROM_CRL)
+                .encode();
+
+        CRLReader reader = new CRLReader(new ByteArrayInputStream(data));
+        List<String> entries = read(reader);
+
+        assertEquals(THIS_UPDATE, reader.getThisUpdate());
+        assertNull(reader.getNextUpdate());
+        assertEquals(BigInteger.valueOf(6), reader.getCRLNumber());
+        assertEquals(BigInteger.valueOf(5), reader.getBaseCRLNumber());
+        assertTrue(reader.isDeltaCRL());
+
+        assertEquals(Arrays.asList(
+                "2:1600000002000:1",
+                "3:1600000003000:" + CRLReader.REASON_REMOVE_FROM_CRL),
+                entries);
+    }
+
+    @Test
+    public void testEntriesWithAndWithoutExtensions() throws Exception {
+
+        byte[] data = new TestCRL()
+                .thisUpdate(THIS_UPDATE)
+                .crlNumber(7)
+                .entry(10, new Date(1600000010000L))
+                .entry(11, new Date(1600000011000L), 4)
+                .entry(12, new Date(1600000012000L))
+                .encode();
+
+        CRLReader reader = new CRLReader(new ByteArrayInputStream(data));
+        List<String> entries = read(reader);
+
+        assertEquals(Arrays.asList(
+                "10:1600000010000:" + CRLReader.REASON_UNSPECIFIED,
+                "11:1600000011000:4",
+                "12:1600000012000:" + CRLReader.REASON_UNSPECIFIED),
+                entries);
+    }
+
+    @Test
+    public void testEmptyCRL() throws Exception {
+
+        byte[] data = new TestCRL()
+                .thisUpdate(THIS_UPDATE)
+                .encode();
+
+        CRLReader reader = new CRLReader(new ByteArrayInputStream(data));
+        List<String> entries = read(reader);
+
+        assertTrue(entries.isEmpty());
+        assertNull(reader.getCRLNumber());
+        assertFalse(reader.isDeltaCRL());
+    }
+
+    @Test
+    public void testTruncatedCRL() throws Exception {
+
+        byte[] data = new TestCRL()
+                .thisUpdate(THIS_UPDATE)
+                .nextUpdate(NEXT_UPDATE)
+                .crlNumber(8)
+                .entry(1, new Date(1600000000000L))
+                .entry(2, new Date(1600000002000L), 1)
+                .encode();
+
+        // the reader stops after the TBSCertList, so truncating
+        // the signature is not detected
+        int tbsEnd = data.length - TestCRL.signatureAlgorithm().length - 4;
+
+        for (int length = 0; length < tbsEnd; length++) {
+            CRLReader reader = new CRLReader(new ByteArrayInputStream(Arrays.copyOf(data, length)));
+            try {
+                read(reader);
+                fail("CRL truncated to " + length + " bytes accepted");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.netscape.cms.ocsp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.Enumeration;
+
+import org.junit.Test;
+
+import com.netscape.certsrv.dbs.Modification;
+import com.netscape.certsrv.dbs.ModificationSet;
+import com.netscape.cmscore.dbs.CRLIssuingPointRecord;
+
+public class DefStoreTest {
+
+    // name without characters changed by DefStore.transformDN()
+    private static final String ISSUER = "TestCA";
+
+    private static final Date T0 = new Date(1700000000000L);
+    private static final Date T1 = new Date(1700003600000L);
+    private static final Date T2 = new Date(1700007200000L);
+
+    /**
+     * Applies a CRL to the record the same way DefStore.updateCRL()
+     * applies it to the issuing point record in the database.
+     */
+    private static RevocationIndex updateCRL(DefStore store, CRLIssuingPointRecord rec, byte[] data)
+            throws Exception {
+
+        RevocationIndex.Builder revoked = new RevocationIndex.Builder();
+        RevocationIndex.Builder removed = new RevocationIndex.Builder();
+        CRLReader reader = DefStore.readCRL(data, revoked, removed);
+
+        ModificationSet mods = new ModificationSet();
+        RevocationIndex index = store.updateCRL(rec, reader, revoked, removed, data, mods);
+
+        Enumeration<Modification> e = mods.getModifications();
+        while (e.hasMoreElements()) {
+            Modification mod = e.nextElement();
+            rec.set(mod.getName(), mod.getValue());
+        }
+
+        store.mRevocationIndexes.put(ISSUER, index);
+        return index;
+    }
+
+    private static void assertRevoked(RevocationIndex index, long... serialNumbers) {
+        for (long serialNumber : serialNumbers) {
+            assertTrue("Certificate " + serialNumber + " not revoked", index.isRevoked(BigInteger.valueOf(serialNumber)));
+        }
+    }
+
+    private static void assertNotRevoked(RevocationIndex index, long... serialNumbers) {
+        for (long serialNumber : serialNumbers) {
+            assertFalse("Certificate " + serialNumber + " revoked", index.isRevoked(BigInteger.valueOf(serialNumber)));
+        }
+    }
+
+    @Test
+    public void testFullCRLAfterDeltaCRLWithSameThisUpdate() throws Exception {
+
+        DefStore store = new DefStore();
+        CRLIssuingPointRecord rec = new CRLIssuingPointRecord(ISSUER, BigInteger.ZERO, -1L, null, null);
+
+        // full CRL 1
+        byte[] crl1 = new TestCRL()
+                .thisUpdate(T0).nextUpdate(T2).crlNumber(1)
+                .entry(1, T0)
+                .encode();
+        RevocationIndex index = updateCRL(store, rec, crl1);
+
+        assertRevoked(index, 1);
+        assertEquals(T0, rec.getThisUpdate());
+
+        // delta CRL 2 based on CRL 1
+        byte[] delta2 = new TestCRL()
+                .thisUpdate(T1).nextUpdate(T2).crlNumber(2).baseCRLNumber(1)
+                .entry(2, T1)
+                .encode();
+        index = updateCRL(store, rec, delta2);
+
+        assertRevoked(index, 1, 2);
+
+        // the delta CRL does not change the times of the full CRL
+        assertEquals(T0, rec.getThisUpdate());
+        assertEquals(T1, rec.getDeltaThisUpdate());
+        assertEquals(T2, rec.getDeltaNextUpdate());
+
+        // full CRL 3 issued together with the delta CRL
+        assertFalse(DefStore.isOlderCRL(rec, false, BigInteger.valueOf(3), T1));
+
+        byte[] crl3 = new TestCRL()
+                .thisUpdate(T1).nextUpdate(T2).crlNumber(3)
+                .entry(1, T0)
+                .entry(2, T1)
+                .entry(3, T1)
+                .encode();
+        index = updateCRL(store, rec, crl3);
+
+        assertRevoked(index, 1, 2, 3);
+        assertEquals(T1, rec.getThisUpdate());
+        assertEquals(BigInteger.valueOf(3), rec.getCRLNumber());
+        assertFalse(DefStore.hasDeltaCRL(rec));
+
+        // resent or obsolete CRLs are older
+        assertTrue(DefStore.isOlderCRL(rec, false, BigInteger.valueOf(3), T1));
+        assertTrue(DefStore.isOlderCRL(rec, true, BigInteger.valueOf(2), T1));
+
+        // delta CRL 4 based on CRL 3
+        assertFalse(DefStore.isOlderCRL(rec, true, BigInteger.valueOf(4), T2));
+
+        byte[] delta4 = new TestCRL()
+                .thisUpdate(T2).crlNumber(4).baseCRLNumber(3)
+                .entry(1, T2, CRLReader.REASON_REMOVE_FROM_CRL)
+                .entry(4, T2)
+                .encode();
+        index = updateCRL(store, rec, delta4);
+
+        assertRevoked(index, 2, 3, 4);
+        assertNotRevoked(index, 1);
+        assertEquals(T1, rec.getThisUpdate());
+        assertEquals(T2, rec.getDeltaThisUpdate());
+        assertNull(rec.getDeltaNextUpdate());
+        assertTrue(DefStore.isOlderCRL(rec, true, BigInteger.valueOf(4), T2));
+
+        // the index is rebuilt the same way from the stored CRLs,
+        // e.g. after a restart or on a clone
+        index = new DefStore().getRevocationIndex(rec);
+
+        assertRevoked(index, 2, 3, 4);
+        assertNotRevoked(index, 1);
+        assertEquals(BigInteger.valueOf(3), index.getCRLNumber());
+        assertEquals(BigInteger.valueOf(4), index.getDeltaCRLNumber());
+    }
+
+    @Test
+    public void testOlderCRLWithoutCRLNumber() throws Exception {
+
+        CRLIssuingPointRecord rec = new CRLIssuingPointRecord(ISSUER, BigInteger.ZERO, -1L, null, null);
+        DefStore store = new DefStore();
+
+        updateCRL(store, rec, new TestCRL().thisUpdate(T1).entry(1, T0).encode());
+
+        assertEquals(BigInteger.valueOf(-1), rec.getCRLNumber());
+        assertTrue(DefStore.isOlderCRL(rec, false, null, T0));
+        assertTrue(DefStore.isOlderCRL(rec, false, null, T1));
+        assertFalse(DefStore.isOlderCRL(rec, false, null, T2));
+        assertFalse(DefStore.isOlderCRL(rec, false, BigInteger.ONE, T2));
+    }
+}
@@ -0,0 +1,168 @@
+package com.netscape.cms.ocsp;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * Encodes minimal DER CRLs for tests. The signature is a dummy value
+ * since CRLReader does not verify it.
+ */
+class TestCRL {
+
+    static final byte[] OID_CRL_NUMBER = { 0x55, 0x1D, 0x14 };
+    static final byte[] OID_REASON_CODE = { 0x55, 0x1D, 0x15 };
+    static final byte[] OID_INVALIDITY_DATE = { 0x55, 0x1D, 0x18 };
+    static final byte[] OID_DELTA_CRL_INDICATOR = { 0x55, 0x1D, 0x1B };
+
+    // sha256WithRSAEncryption
+    static final byte[] OID_SIGNATURE_ALGORITHM = {
+            0x2A, (byte) 0x86, 0x48, (byte) 0x86, (byte) 0xF7, 0x0D, 0x01, 0x01, 0x0B };
+
+    // id-at-commonName
+    static final byte[] OID_COMMON_NAME = { 0x55, 0x04, 0x03 };
+
+    private Date thisUpdate;
+    private Date nextUpdate;
+    private BigInteger crlNumber;
+    private BigInteger baseCRLNumber;
+    private List<byte[]> entries = new ArrayList<>();
+
+    TestCRL thisUpdate(Date thisUpdate) {
+        this.thisUpdate = thisUpdate;
+        return this;
+    }
+
+    TestCRL nextUpdate(Date nextUpdate) {
+        this.nextUpdate = nextUpdate;
+        return this;
+    }
+
+    TestCRL crlNumber(long crlNumber) {
+        this.crlNumber = BigInteger.valueOf(crlNumber);
+        return this;
+    }
+
+    TestCRL baseCRLNumber(long baseCRLNumber) {
+        this.baseCRLNumber = BigInteger.valueOf(baseCRLNumber);
+        return this;
+    }
+
+    /**
+     * Adds an entry without extensions.
+     */
+    TestCRL entry(long serialNumber, Date revocationDate) {
+        entries.add(encode(0x30, integer(BigInteger.valueOf(serialNumber)), utcTime(revocationDate)));
+        return this;
+    }
+
+    /**
+     * Adds an entry with reason code and invalidity date extensions.
+     */
+    TestCRL entry(long serialNumber, Date revocationDate, int reason) {
+        byte[] extensions = encode(0x30,
+                extension(OID_INVALIDITY_DATE, false, generalizedTime(revocationDate)),
+                extension(OID_REASON_CODE, false, encode(0x0A, new byte[] { (byte) reason })));
+        entries.add(encode(0x30, integer(BigInteger.valueOf(serialNumber)), utcTime(revocationDate), extensions));
+        return this;
+    }
+
+    byte[] encode() {
+
+        List<byte[]> tbs = new ArrayList<>();
+
+        // v2
+        tbs.add(integer(BigInteger.ONE));
+        tbs.add(signatureAlgorithm());
+        tbs.add(encode(0x30, encode(0x31, encode(0x30,
+                encode(0x06, OID_COMMON_NAME),
+                encode(0x0C, "Test CA".getBytes(StandardCharsets.UTF_8))))));
+        tbs.add(utcTime(thisUpdate));
+
+        if (nextUpdate != null) {
+            tbs.add(utcTime(nextUpdate));
+        }
+
+        if (!entries.isEmpty()) {
+            tbs.add(encode(0x30, entries.toArray(new byte[0][])));
+        }
+
+        List<byte[]> extensions = new ArrayList<>();
+
+        if (crlNumber != null) {
+            extensions.add(extension(OID_CRL_NUMBER, false, integer(crlNumber)));
+        }
+
+        if (baseCRLNumber != null) {
+            extensions.add(extension(OID_DELTA_CRL_INDICATOR, true, integer(baseCRLNumber)));
+        }
+
+        if (!extensions.isEmpty()) {
+            tbs.add(encode(0xA0, encode(0x30, extensions.toArray(new byte[0][]))));
+        }
+
+        return encode(0x30,
+                encode(0x30, tbs.toArray(new byte[0][])),
+                signatureAlgorithm(),
+                encode(0x03, new byte[] { 0x00, 0x00 }));
+    }
+
+    static byte[] signatureAlgorithm() {
+        return encode(0x30, encode(0x06, OID_SIGNATURE_ALGORITHM), encode(0x05));
+    }
+
+    static byte[] extension(byte[] oid, boolean critical, byte[] value) {
+        if (critical) {
+            return encode(0x30, encode(0x06, oid), encode(0x01, new byte[] { (byte) 0xFF }), encode(0x04, value));
+        }
+        return encode(0x30, encode(0x06, oid), encode(0x04, value));
+    }
+
+    static byte[] integer(BigInteger value) {
+        return encode(0x02, value.toByteArray());
+    }
+
+    static byte[] utcTime(Date date) {
+        return encode(0x17, format("yyMMddHHmmss'Z'", date));
+    }
+
+    static byte[] generalizedTime(Date date) {
+        return encode(0x18, format("yyyyMMddHHmmss'Z'", date));
+    }
+
+    private static byte[] format(String pattern, Date date) {
+        SimpleDateFormat format = new SimpleDateFormat(pattern);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(date).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    static byte[] encode(int tag, byte[]... contents) {
+
+        ByteArrayOutputStream value = new ByteArrayOutputStream();
+        for (byte[] content : contents) {
+            value.writeBytes(content);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(tag);
+
+        int length = value.size();
+
+        if (length < 0x80) {
+            out.write(length);
+        } else {
+            byte[] bytes = BigInteger.valueOf(length).toByteArray();
+            int offset = bytes[0] == 0 ? 1 : 0;
+            out.write(0x80 | (bytes.length - offset));
+            out.write(bytes, offset, bytes.length - offset);
+        }
+
+        out.writeBytes(value.toByteArray());
+        return out.toByteArray();
+    }
+}
@@ -121,4 +121,33 @@ public interface IOCSPAuthority extends ISubsystem {
     public void incLookupTime(long inc);
 
     public void incNumOCSPRequest(long inc);
+
+    /**
+     * Returns the number of signed OCSP responses.
+     *
+     * @return number of signing operations
+     */
+    public long getOCSPTotalSignCount();
+
+    /**
+     * Returns the number of OCSP requests served from the response cache.
+     *
+     * @return number of cache hits
+     */
+    public long getOCSPResponseCacheHits();
+
+    /**
+     * Returns the number of cacheable OCSP requests that were not
+     * found in the response cache.
+     *
+     * @return number of cache misses
+     */
+    public long getOCSPResponseCacheMisses();
+
+    /**
+     * Returns the number of cached responses re-signed in the background.
+     *
+     * @return number of cache refreshes
+     */
+    public long getOCSPResponseCacheRefreshes();
 }
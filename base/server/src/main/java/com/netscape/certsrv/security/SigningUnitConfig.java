@@ -14,6 +14,8 @@ import com.netscape.cmsutil.crypto.CryptoUtil;
 
 public class SigningUnitConfig extends ConfigStore {
 
+    public static final int DEFAULT_SIGNER_POOL_SIZE = 16;
+
     public SigningUnitConfig(ConfigStorage storage) {
         super(storage);
     }
@@ -93,6 +95,22 @@ public class SigningUnitConfig extends ConfigStore {
         return getBoolean("testSignatureFailure", false);
     }
 
+    /**
+     * Returns the maximum number of idle signature contexts kept per
+     * signing algorithm.
+     */
+    public int getSignerPoolSize() throws EBaseException {
+        return getInteger("signerPoolSize", DEFAULT_SIGNER_POOL_SIZE);
+    }
+
+    /**
+     * Returns the maximum number of concurrent signing operations,
+     * or 0 if unlimited.
+     */
+    public int getMaxSigners() throws EBaseException {
+        return getInteger("maxSigners", 0);
+    }
+
     public String getDefaultSigningAlgorithm() throws EBaseException {
         return getString("defaultSigningAlgorithm");
     }
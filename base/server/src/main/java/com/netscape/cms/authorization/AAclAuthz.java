@@ -17,10 +17,16 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cms.authorization;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.dogtagpki.server.authentication.AuthToken;
 import org.dogtagpki.server.authorization.AuthorizationConfig;
@@ -39,6 +45,7 @@ import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.apps.CMSEngine;
 import com.netscape.cmscore.apps.EngineConfig;
 import com.netscape.cmscore.base.ConfigStore;
+import com.netscape.cmscore.usrgrp.UGSubsystem;
 
 /**
  * An abstract class represents an authorization manager that governs the
@@ -61,6 +68,12 @@ import com.netscape.cmscore.base.ConfigStore;
  * example.
  * <P>
  * default "evaluators" are used to evaluate the "group=.." or "user=.." rules. See evaluator for more info
+ * <P>
+ * The ACL entries and their expressions are parsed when the ACLs are
+ * added or updated, so permission checks do not need to lock the ACLs.
+ * If authz.decisionCache.size is set, the results of the permission
+ * checks that only depend on the user and groups are cached until the
+ * ACLs or the users and groups change.
  *
  * @version $Revision$, $Date$
  * @see <A HREF="http://developer.netscape.com/library/documentation/enterprise/admnunix/aclfiles.htm">ACL Files</A>
@@ -88,6 +101,18 @@ public abstract class AAclAuthz implements IAuthzManager {
     private Hashtable<String, ACL> mACLs = new Hashtable<>();
     private Hashtable<String, IAccessEvaluator> mEvaluators = new Hashtable<>();
 
+    /* ACL entries with parsed expressions, replaced when an ACL changes */
+    private volatile Map<String, CompiledEntry[]> mCompiledACLs = Collections.emptyMap();
+
+    /* parsed attribute expressions */
+    private Map<String, ACLExpression> mExpressions = new ConcurrentHashMap<>();
+
+    private AtomicLong mACLVersion = new AtomicLong();
+
+    private int mDecisionCacheSize;
+    private long mDecisionCacheTimeout; // milliseconds
+    private Map<String, Decision> mDecisions = new ConcurrentHashMap<>();
+
     /* Vector of extendedPluginInfo strings */
     protected static Vector<String> mExtendedPluginInfo = null;
 
@@ -155,6 +180,11 @@ public abstract class AAclAuthz implements IAuthzManager {
             }
         }
 
+        AuthorizationConfig authzConfig = mainConfig.getAuthorizationConfig();
+        mDecisionCacheSize = authzConfig.getDecisionCacheSize();
+        mDecisionCacheTimeout = authzConfig.getDecisionCacheTimeout() * 1000L;
+        logger.info("AAclAuthz: decision cache size: " + mDecisionCacheSize);
+
         logger.info("AAclAuthz: initialization done");
     }
 
@@ -187,7 +217,7 @@ public abstract class AAclAuthz implements IAuthzManager {
      * @param resACLs same format as the resourceACLs attribute
      * @throws EBaseException parsing error from <code>parseACL</code>
      */
-    public void addACLs(String resACLs) throws EBaseException {
+    public synchronized void addACLs(String resACLs) throws EBaseException {
         ACL acl = ACL.parseACL(resACLs);
 
         if (acl != null) {
@@ -197,11 +227,45 @@ public abstract class AAclAuthz implements IAuthzManager {
             } else {
                 curACL.merge(acl);
             }
+            compileACL(acl.getName());
         } else {
             logger.warn("AAclAuthz: parseACL failed");
         }
     }
 
+    /**
+     * Parses the expressions of the given ACL and publishes a new
+     * compiled ACL table. Must be called while holding the lock.
+     */
+    private void compileACL(String name) {
+
+        Map<String, CompiledEntry[]> compiledACLs = new HashMap<>(mCompiledACLs);
+        ACL acl = mACLs.get(name);
+
+        if (acl == null) {
+            compiledACLs.remove(name);
+
+        } else {
+            Vector<CompiledEntry> entries = new Vector<>();
+            Enumeration<ACLEntry> e = acl.entries();
+            while (e.hasMoreElements()) {
+                ACLEntry entry = e.nextElement();
+                entries.addElement(new CompiledEntry(entry, getExpression(entry.getAttributeExpressions())));
+            }
+            compiledACLs.put(name, entries.toArray(new CompiledEntry[entries.size()]));
+        }
+
+        mCompiledACLs = compiledACLs;
+
+        // discard decisions made with the old ACLs
+        mACLVersion.incrementAndGet();
+        mDecisions.clear();
+    }
+
+    private ACLExpression getExpression(String s) {
+        return mExpressions.computeIfAbsent(s == null ? "" : s, ACLExpression::parse);
+    }
+
     @Override
     public void accessInit(String accessInfo) throws EBaseException {
         addACLs(accessInfo);
@@ -252,6 +316,7 @@ public abstract class AAclAuthz implements IAuthzManager {
     @Override
     public void registerEvaluator(String type, IAccessEvaluator evaluator) {
         mEvaluators.put(type, evaluator);
+        mACLVersion.incrementAndGet();
         logger.info("AAclAuthz: " + type + " evaluator registered");
     }
 
@@ -283,7 +348,7 @@ public abstract class AAclAuthz implements IAuthzManager {
      * @param perm permission requested
      * @exception EACLsException access permission denied
      */
-    protected synchronized void checkPermission(String name, String perm)
+    protected void checkPermission(String name, String perm)
             throws EACLsException {
 
         String resource = "";
@@ -340,10 +405,10 @@ public abstract class AAclAuthz implements IAuthzManager {
      */
     private boolean checkACLs(String name, String perm)
             throws EACLsException {
-        ACL acl = mACLs.get(name);
+        CompiledEntry[] entries = mCompiledACLs.get(name);
 
         // no such resource, pass it down
-        if (acl == null) {
+        if (entries == null) {
             String infoMsg = "checkACLs(): no acl for" +
                     name + "...pass down to next node";
 
@@ -352,9 +417,7 @@ public abstract class AAclAuthz implements IAuthzManager {
             return false;
         }
 
-        Enumeration<ACLEntry> e = acl.entries();
-
-        if (e == null || !e.hasMoreElements()) {
+        if (entries.length == 0) {
             // no acis for node, pass down to next node
             String infoMsg = " AAclAuthz.checkACLs(): no acis for " +
                     name + " acl entry...pass down to next node";
@@ -367,12 +430,13 @@ public abstract class AAclAuthz implements IAuthzManager {
         /**
          * must pass all ACLEntry
          */
-        while (e.hasMoreElements()) {
-            ACLEntry entry = e.nextElement();
+        for (CompiledEntry compiledEntry : entries) {
+            ACLEntry entry = compiledEntry.entry;
 
             // if permission not pertinent, move on to next ACLEntry
             if (entry.containPermission(perm)) {
-                if (evaluateExpressions(entry.getAttributeExpressions())) {
+                logger.debug("checkACLs(): expressions: " + compiledEntry.expression);
+                if (compiledEntry.expression.evaluate(mEvaluators)) {
                     if (!entry.checkPermission(perm)) {
                         logger.error("AAclAuthz: checkACLs(): permission denied");
                         throw new EACLsException(CMS.getUserMessage("CMS_ACL_PERMISSION_DENIED"));
@@ -388,88 +452,6 @@ public abstract class AAclAuthz implements IAuthzManager {
         return true;
     }
 
-    /**
-     * Resolves the given expressions.
-     * expression || expression || ...
-     * example:
-     * group="Administrators" || group="Operators"
-     */
-    private boolean evaluateExpressions(String s) {
-        // XXX - just handle "||" (or) among multiple expressions for now
-        // XXX - could use some optimization ... later
-
-        logger.debug("evaluating expressions: " + s);
-
-        Vector<Object> v = new Vector<>();
-
-        while (s.length() > 0) {
-            int orIndex = s.indexOf("||");
-            int andIndex = s.indexOf("&&");
-
-            // this is the last expression
-            if (orIndex == -1 && andIndex == -1) {
-                boolean passed = evaluateExpression(s.trim());
-
-                v.addElement(Boolean.valueOf(passed));
-                break;
-
-                // || first
-            } else if (andIndex == -1 || (orIndex != -1 && orIndex < andIndex)) {
-                String s1 = s.substring(0, orIndex);
-                boolean passed = evaluateExpression(s1.trim());
-
-                v.addElement(Boolean.valueOf(passed));
-                v.addElement("||");
-                s = s.substring(orIndex + 2);
-                // && first
-            } else {
-                String s1 = s.substring(0, andIndex);
-                boolean passed = evaluateExpression(s1.trim());
-
-                v.addElement(Boolean.valueOf(passed));
-                v.addElement("&&");
-                s = s.substring(andIndex + 2);
-            }
-        }
-
-        if (v.size() == 1) {
-            Boolean bool = (Boolean) v.remove(0);
-
-            return bool.booleanValue();
-        }
-        boolean left = false;
-        String op = "";
-        boolean right = false;
-
-        while (!v.isEmpty()) {
-            if (op.equals(""))
-                left = ((Boolean) v.remove(0)).booleanValue();
-            op = (String) v.remove(0);
-            right = ((Boolean) v.remove(0)).booleanValue();
-            left = evaluateExp(left, op, right);
-        }
-
-        return left;
-    }
-
-    /**
-     * Resolves the given expression.
-     */
-    private boolean evaluateExpression(String expression) {
-        // XXX - just recognize "=" for now!!
-        int i = expression.indexOf("=");
-        String type = expression.substring(0, i);
-        String value = expression.substring(i + 1);
-        IAccessEvaluator evaluator = mEvaluators.get(type);
-
-        if (evaluator == null) {
-            logger.warn("AAclAuthz: " + CMS.getLogMessage("AUTHZ_EVALUATOR_NOT_FOUND", type));
-            return false;
-        }
-
-        return evaluator.evaluate(type, "=", value);
-    }
-
     /*******************************************************
      * with authToken
      *******************************************************/
@@ -499,7 +481,7 @@ public abstract class AAclAuthz implements IAuthzManager {
      * @param perm permission requested
      * @exception EACLsException access permission denied
      */
-    public synchronized void checkPermission(AuthToken authToken, String name,
+    public void checkPermission(AuthToken authToken, String name,
             String perm)
             throws EACLsException {
 
@@ -508,16 +490,47 @@ public abstract class AAclAuthz implements IAuthzManager {
         Vector<String> nodes = getNodes(name);
         EvaluationOrder order = getOrder();
 
-        boolean permitted = false;
-        if (order == EvaluationOrder.DENY_ALLOW) {
-            checkDenyEntries(authToken, nodes, perm);
-            permitted = checkAllowEntries(authToken, nodes, perm);
-        } else if (order == EvaluationOrder.ALLOW_DENY) {
-            permitted = checkAllowEntries(authToken, nodes, perm);
-            checkDenyEntries(authToken, nodes, perm);
+        String key = getDecisionKey(authToken, name, perm, order);
+        Decision decision = getDecision(key);
+
+        if (decision != null) {
+            logger.debug("AAclAuthz: Using cached decision for " + name);
+
+            if (decision.result == Decision.Result.DENIED) {
+                logger.error("AAclAuthz: checkPermission(): permission denied");
+                throw new EACLsException(CMS.getUserMessage("CMS_ACL_PERMISSION_DENIED"));
+            }
+
+        } else {
+            // get the versions before the evaluation so a concurrent
+            // change will invalidate the decision
+            long aclVersion = mACLVersion.get();
+            long ugVersion = getUGChangeCount();
+
+            try {
+                boolean permitted = false;
+                if (order == EvaluationOrder.DENY_ALLOW) {
+                    checkDenyEntries(authToken, nodes, perm);
+                    permitted = checkAllowEntries(authToken, nodes, perm);
+                } else if (order == EvaluationOrder.ALLOW_DENY) {
+                    permitted = checkAllowEntries(authToken, nodes, perm);
+                    checkDenyEntries(authToken, nodes, perm);
+                }
+
+                decision = new Decision(
+                        permitted ? Decision.Result.GRANTED : Decision.Result.NOT_PERMITTED,
+                        aclVersion,
+                        ugVersion);
+
+            } catch (EACLsException e) {
+                putDecision(key, new Decision(Decision.Result.DENIED, aclVersion, ugVersion), nodes, perm);
+                throw e;
+            }
+
+            putDecision(key, decision, nodes, perm);
         }
 
-        if (!permitted) {
+        if (decision.result != Decision.Result.GRANTED) {
             String[] params = new String[2];
             params[0] = name;
             params[1] = perm;
@@ -536,7 +549,7 @@ public abstract class AAclAuthz implements IAuthzManager {
             String perm) {
         for (ACLEntry entry : getEntries(ACLEntry.Type.ALLOW, nodes, perm)) {
             logger.debug("checkAllowEntries(): expressions: " + entry.getAttributeExpressions());
-            if (evaluateExpressions(authToken, entry.getAttributeExpressions())) {
+            if (getExpression(entry.getAttributeExpressions()).evaluate(authToken, mEvaluators)) {
                 return true;
             }
         }
@@ -551,7 +564,7 @@ public abstract class AAclAuthz implements IAuthzManager {
             throws EACLsException {
         for (ACLEntry entry : getEntries(ACLEntry.Type.DENY, nodes, perm)) {
             logger.debug("checkDenyEntries(): expressions: " + entry.getAttributeExpressions());
-            if (evaluateExpressions(authToken, entry.getAttributeExpressions())) {
+            if (getExpression(entry.getAttributeExpressions()).evaluate(authToken, mEvaluators)) {
                 logger.error("AAclAuthz: checkPermission(): permission denied");
                 throw new EACLsException(CMS.getUserMessage("CMS_ACL_PERMISSION_DENIED"));
             }
@@ -564,14 +577,14 @@ public abstract class AAclAuthz implements IAuthzManager {
             String operation
     ) {
         Vector<ACLEntry> v = new Vector<>();
+        Map<String, CompiledEntry[]> compiledACLs = mCompiledACLs;
 
         for (String name : nodes) {
-            ACL acl = mACLs.get(name);
-            if (acl == null)
+            CompiledEntry[] entries = compiledACLs.get(name);
+            if (entries == null)
                 continue;
-            Enumeration<ACLEntry> e = acl.entries();
-            while (e.hasMoreElements()) {
-                ACLEntry entry = e.nextElement();
+            for (CompiledEntry compiledEntry : entries) {
+                ACLEntry entry = compiledEntry.entry;
 
                 if (entry.getType() == entryType &&
                         entry.containPermission(operation)) {
@@ -584,154 +597,124 @@ public abstract class AAclAuthz implements IAuthzManager {
     }
 
     /**
-     * Resolves the given expressions.
-     * expression || expression || ...
-     * example:
-     * group="Administrators" || group="Operators"
+     * Returns true if the result of the permission check only depends
+     * on the user ID and the groups of the user.
      */
-    private boolean evaluateExpressions(AuthToken authToken, String s) {
-        // XXX - just handle "||" (or) among multiple expressions for now
-        // XXX - could use some optimization ... later
-        logger.debug("evaluating expressions: " + s);
-
-        Vector<Object> v = new Vector<>();
-
-        while (s.length() > 0) {
-            int orIndex = s.indexOf("||");
-            int andIndex = s.indexOf("&&");
-
-            // this is the last expression
-            if (orIndex == -1 && andIndex == -1) {
-                boolean passed = evaluateExpression(authToken, s.trim());
-
-                logger.debug("evaluated expression: " + s.trim() + " to be " + passed);
-                v.addElement(Boolean.valueOf(passed));
-                break;
-
-                // || first
-            } else if (andIndex == -1 || (orIndex != -1 && orIndex < andIndex)) {
-                String s1 = s.substring(0, orIndex);
-                boolean passed = evaluateExpression(authToken, s1.trim());
-
-                logger.debug("evaluated expression: " + s1.trim() + " to be " + passed);
-                v.addElement(Boolean.valueOf(passed));
-                v.addElement("||");
-                s = s.substring(orIndex + 2);
-                // && first
-            } else {
-                String s1 = s.substring(0, andIndex);
-                boolean passed = evaluateExpression(authToken, s1.trim());
+    private boolean isCacheable(Iterable<String> nodes, String operation) {
 
-                logger.debug("evaluated expression: " + s1.trim() + " to be " + passed);
-                v.addElement(Boolean.valueOf(passed));
-                v.addElement("&&");
-                s = s.substring(andIndex + 2);
+        Map<String, CompiledEntry[]> compiledACLs = mCompiledACLs;
+
+        for (String name : nodes) {
+            CompiledEntry[] entries = compiledACLs.get(name);
+            if (entries == null)
+                continue;
+            for (CompiledEntry compiledEntry : entries) {
+                if (compiledEntry.entry.containPermission(operation) &&
+                        !compiledEntry.expression.isCacheable()) {
+                    return false;
+                }
             }
         }
 
-        if (v.isEmpty()) {
-            return false;
+        return true;
+    }
+
+    private String getDecisionKey(AuthToken authToken, String name, String perm, EvaluationOrder order) {
+
+        if (mDecisionCacheSize <= 0 || authToken == null) {
+            return null;
         }
 
-        if (v.size() == 1) {
-            Boolean bool = (Boolean) v.remove(0);
+        // the user and group evaluators use both attributes
+        String userID = authToken.getInString(AuthToken.USER_ID);
+        String uid = authToken.getInString(AuthToken.UID);
 
-            return bool.booleanValue();
+        if (userID == null && uid == null) {
+            return null;
         }
 
-        boolean left = false;
-        String op = "";
-        boolean right = false;
+        StringBuilder sb = new StringBuilder();
+        sb.append(userID).append('\0').append(uid).append('\0');
 
-        while (!v.isEmpty()) {
-            if (op.equals(""))
-                left = ((Boolean) v.remove(0)).booleanValue();
-            op = (String) v.remove(0);
-            right = ((Boolean) v.remove(0)).booleanValue();
-            left = evaluateExp(left, op, right);
+        String[] groups = authToken.getInStringArray(AuthToken.GROUPS);
+        if (groups == null) {
+            // groups will be retrieved from the database
+            sb.append('\1');
+        } else {
+            groups = groups.clone();
+            Arrays.sort(groups);
+            for (String group : groups) {
+                sb.append(group).append('\2');
+            }
         }
 
-        return left;
+        sb.append('\0').append(name);
+        sb.append('\0').append(perm);
+        sb.append('\0').append(order);
+
+        return sb.toString();
     }
 
-    public Vector<String> getNodes(String resourceID) {
-        Vector<String> v = new Vector<>();
+    private Decision getDecision(String key) {
 
-        if (resourceID != null && !resourceID.equals("")) {
-            v.addElement(resourceID);
-        } else {
-            return v;
+        if (key == null) {
+            return null;
         }
-        int index = resourceID.lastIndexOf(".");
-        String name = resourceID;
 
-        while (index != -1) {
-            name = name.substring(0, index);
-            v.addElement(name);
-            index = name.lastIndexOf(".");
+        Decision decision = mDecisions.get(key);
+        if (decision == null) {
+            return null;
         }
 
-        return v;
-    }
+        if (decision.aclVersion != mACLVersion.get()
+                || decision.ugVersion != getUGChangeCount()
+                || mDecisionCacheTimeout > 0
+                        && System.currentTimeMillis() - decision.createTime >= mDecisionCacheTimeout) {
+            mDecisions.remove(key, decision);
+            return null;
+        }
 
-    /**
-     * Resolves the given expression.
-     */
-    private boolean evaluateExpression(AuthToken authToken, String expression) {
-        String op = getOp(expression);
-        String type = "";
-        String value = "";
+        return decision;
+    }
 
-        if (!op.equals("")) {
-            int len = op.length();
-            int i = expression.indexOf(op);
+    private void putDecision(String key, Decision decision, Iterable<String> nodes, String perm) {
 
-            type = expression.substring(0, i).trim();
-            value = expression.substring(i + len).trim();
+        if (key == null || !isCacheable(nodes, perm)) {
+            return;
         }
-        IAccessEvaluator evaluator = mEvaluators.get(type);
 
-        if (evaluator == null) {
-            logger.warn("AAclAuthz: " + CMS.getLogMessage("AUTHZ_EVALUATOR_NOT_FOUND", type));
-            return false;
+        if (mDecisions.size() >= mDecisionCacheSize) {
+            logger.debug("AAclAuthz: Clearing decision cache");
+            mDecisions.clear();
         }
 
-        return evaluator.evaluate(authToken, type, op, value);
+        mDecisions.put(key, decision);
     }
 
-    private String getOp(String exp) {
-        int i = exp.indexOf("!=");
+    private long getUGChangeCount() {
+        CMSEngine engine = CMS.getCMSEngine();
+        UGSubsystem ug = engine == null ? null : engine.getUGSubsystem();
+        return ug == null ? 0 : ug.getChangeCount();
+    }
 
-        if (i == -1) {
-            i = exp.indexOf("=");
-            if (i == -1) {
-                i = exp.indexOf(">");
-                if (i == -1) {
-                    i = exp.indexOf("<");
-                    if (i == -1) {
-                        logger.warn("AAclAuthz: " + CMS.getLogMessage("AUTHZ_OP_NOT_SUPPORTED", exp));
-                    } else {
-                        return "<";
-                    }
-                } else {
-                    return ">";
-                }
-            } else {
-                return "=";
-            }
+    public Vector<String> getNodes(String resourceID) {
+        Vector<String> v = new Vector<>();
+
+        if (resourceID != null && !resourceID.equals("")) {
+            v.addElement(resourceID);
         } else {
-            return "!=";
+            return v;
         }
-        return "";
-    }
+        int index = resourceID.lastIndexOf(".");
+        String name = resourceID;
 
-    private boolean evaluateExp(boolean left, String op, boolean right) {
-        if (op.equals("||")) {
-            return left || right;
-        } else if (op.equals("&&")) {
-            return left && right;
+        while (index != -1) {
+            name = name.substring(0, index);
+            v.addElement(name);
+            index = name.lastIndexOf(".");
         }
-        return false;
+
+        return v;
     }
 
     /*******************************************************
@@ -743,7 +726,7 @@ public abstract class AAclAuthz implements IAuthzManager {
      * also update to a permanent storage
      */
     @Override
-    public void updateACLs(String id, String rights, String strACLs,
+    public synchronized void updateACLs(String id, String rights, String strACLs,
             String desc) throws EACLsException {
         String resourceACLs = id;
 
@@ -760,6 +743,7 @@ public abstract class AAclAuthz implements IAuthzManager {
         }
 
         mACLs.put(ac.getName(), ac);
+        compileACL(ac.getName());
     }
 
     /**
@@ -873,6 +857,34 @@ public abstract class AAclAuthz implements IAuthzManager {
     }
 
     public boolean evaluateACLs(AuthToken authToken, String exp) {
-        return evaluateExpressions(authToken, exp);
+        logger.debug("evaluating expressions: " + exp);
+        return getExpression(exp).evaluate(authToken, mEvaluators);
+    }
+
+    private static class CompiledEntry {
+
+        final ACLEntry entry;
+        final ACLExpression expression;
+
+        CompiledEntry(ACLEntry entry, ACLExpression expression) {
+            this.entry = entry;
+            this.expression = expression;
+        }
+    }
+
+    private static class Decision {
+
+        enum Result { GRANTED, NOT_PERMITTED, DENIED }
+
+        final Result result;
+        final long aclVersion;
+        final long ugVersion;
+        final long createTime = System.currentTimeMillis();
+
+        Decision(Result result, long aclVersion, long ugVersion) {
+            this.result = result;
+            this.aclVersion = aclVersion;
+            this.ugVersion = ugVersion;
+        }
     }
 }
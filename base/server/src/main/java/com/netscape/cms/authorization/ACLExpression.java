@@ -0,0 +1,216 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cms.authorization;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.dogtagpki.server.authentication.AuthToken;
+
+import com.netscape.certsrv.evaluators.IAccessEvaluator;
+import com.netscape.cmscore.apps.CMS;
+
+/**
+ * Parsed ACL attribute expression, for example:
+ *
+ * <pre>{@code
+ * group="Administrators" || group="Certificate Manager Agents" && user!="tempAgent"
+ * }</pre>
+ *
+ * The expression is parsed once and evaluated from left to right
+ * without operator precedence, the same way the expression string
+ * has always been evaluated.
+ */
+final class ACLExpression {
+
+    public static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ACLExpression.class);
+
+    /**
+     * Evaluator types whose result depends only on the user ID and the
+     * group memberships of the user, so it can be cached per user.
+     */
+    private static final List<String> CACHEABLE_TYPES = Arrays.asList("user", "group");
+
+    private final String expression;
+    private final List<Term> terms;
+
+    // "||" or "&&" between the terms
+    private final List<String> ops;
+
+    private final boolean cacheable;
+
+    private ACLExpression(String expression, List<Term> terms, List<String> ops) {
+        this.expression = expression;
+        this.terms = Collections.unmodifiableList(terms);
+        this.ops = Collections.unmodifiableList(ops);
+
+        boolean c = true;
+        for (Term term : terms) {
+            c &= CACHEABLE_TYPES.contains(term.type);
+        }
+        this.cacheable = c;
+    }
+
+    public static ACLExpression parse(String s) {
+
+        String expression = s;
+        List<Term> terms = new ArrayList<>();
+        List<String> ops = new ArrayList<>();
+
+        while (s.length() > 0) {
+            int orIndex = s.indexOf("||");
+            int andIndex = s.indexOf("&&");
+
+            // this is the last expression
+            if (orIndex == -1 && andIndex == -1) {
+                terms.add(Term.parse(s.trim()));
+                break;
+
+                // || first
+            } else if (andIndex == -1 || (orIndex != -1 && orIndex < andIndex)) {
+                terms.add(Term.parse(s.substring(0, orIndex).trim()));
+                ops.add("||");
+                s = s.substring(orIndex + 2);
+
+                // && first
+            } else {
+                terms.add(Term.parse(s.substring(0, andIndex).trim()));
+                ops.add("&&");
+                s = s.substring(andIndex + 2);
+            }
+        }
+
+        return new ACLExpression(expression, terms, ops);
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    /**
+     * Returns true if the result of the expression depends only on
+     * the user ID and groups of the user.
+     */
+    public boolean isCacheable() {
+        return cacheable;
+    }
+
+    /**
+     * Evaluates the expression for the user of the current session.
+     */
+    public boolean evaluate(Map<String, IAccessEvaluator> evaluators) {
+        return evaluate(null, evaluators);
+    }
+
+    /**
+     * Evaluates the expression for the user of the authentication token,
+     * or for the user of the current session if the token is null.
+     */
+    public boolean evaluate(AuthToken authToken, Map<String, IAccessEvaluator> evaluators) {
+
+        if (terms.isEmpty()) {
+            return false;
+        }
+
+        boolean left = terms.get(0).evaluate(authToken, evaluators);
+
+        for (int i = 0; i < ops.size(); i++) {
+
+            if (i + 1 >= terms.size()) {
+                // expression ends with an operator
+                logger.warn("ACLExpression: Invalid expression: " + expression);
+                return false;
+            }
+
+            boolean right = terms.get(i + 1).evaluate(authToken, evaluators);
+
+            if (ops.get(i).equals("||")) {
+                left = left || right;
+            } else {
+                left = left && right;
+            }
+        }
+
+        return left;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    static class Term {
+
+        final String expression;
+        final String type;
+        final String op;
+        final String value;
+
+        Term(String expression, String type, String op, String value) {
+            this.expression = expression;
+            this.type = type;
+            this.op = op;
+            this.value = value;
+        }
+
+        static Term parse(String expression) {
+
+            String op = getOp(expression);
+            String type = "";
+            String value = "";
+
+            if (!op.equals("")) {
+                int i = expression.indexOf(op);
+                type = expression.substring(0, i).trim();
+                value = expression.substring(i + op.length()).trim();
+            }
+
+            return new Term(expression, type, op, value);
+        }
+
+        static String getOp(String exp) {
+
+            if (exp.indexOf("!=") != -1) {
+                return "!=";
+            }
+
+            if (exp.indexOf("=") != -1) {
+                return "=";
+            }
+
+            if (exp.indexOf(">") != -1) {
+                return ">";
+            }
+
+            if (exp.indexOf("<") != -1) {
+                return "<";
+            }
+
+            logger.warn("ACLExpression: " + CMS.getLogMessage("AUTHZ_OP_NOT_SUPPORTED", exp));
+            return "";
+        }
+
+        boolean evaluate(AuthToken authToken, Map<String, IAccessEvaluator> evaluators) {
+
+            IAccessEvaluator evaluator = evaluators.get(type);
+
+            if (evaluator == null) {
+                logger.warn("ACLExpression: " + CMS.getLogMessage("AUTHZ_EVALUATOR_NOT_FOUND", type));
+                return false;
+            }
+
+            boolean passed = authToken == null
+                    ? evaluator.evaluate(type, op, value)
+                    : evaluator.evaluate(authToken, type, op, value);
+            logger.debug("evaluated expression: " + expression + " to be " + passed);
+
+            return passed;
+        }
+    }
+}
@@ -43,14 +43,20 @@ import java.security.Signature;
 import java.security.SignatureException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
 
 import javax.servlet.ServletException;
 
@@ -116,6 +122,12 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
     static final String PROP_LAST_HASH_FILE_NAME = "lastHashFileName";
     static final String PROP_BUFFER_SIZE = "bufferSize";
     static final String PROP_FLUSH_INTERVAL = "flushInterval";
+    static final String PROP_ASYNC = "async";
+    static final String PROP_ASYNC_QUEUE_SIZE = "asyncQueueSize";
+    static final String PROP_ASYNC_OVERFLOW = "asyncOverflow";
+
+    static final String ASYNC_OVERFLOW_BLOCK = "block";
+    static final String ASYNC_OVERFLOW_FAIL = "fail";
 
     private final static String LOG_SIGNED_AUDIT_EXCEPTION =
                                "LOG_SIGNED_AUDIT_EXCEPTION_1";
@@ -140,6 +152,16 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
      */
     static final int FLUSH_INTERVAL = 5;
 
+    /**
+     * The default number of log entries waiting for the writer thread
+     */
+    static final int ASYNC_QUEUE_SIZE = 8192;
+
+    /**
+     * The maximum number of log entries written in one batch
+     */
+    static final int ASYNC_BATCH_SIZE = 1024;
+
     /**
      * The log file
      */
@@ -195,6 +217,31 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
      */
     private Thread mFlushThread = null;
 
+    /**
+     * Whether log entries are written by a separate writer thread
+     */
+    protected boolean mAsync = false;
+
+    /**
+     * Behavior when the writer thread queue is full: block or fail
+     */
+    protected String mAsyncOverflow = ASYNC_OVERFLOW_BLOCK;
+
+    /**
+     * The log entries waiting for the writer thread
+     */
+    private BlockingQueue<PendingEntry> mAsyncQueue;
+
+    /**
+     * Signals the writer thread that entries have been queued
+     */
+    private Semaphore mAsyncSignal;
+
+    /**
+     * The writer thread, null if entries are written synchronously
+     */
+    private volatile Thread mAsyncThread = null;
+
     /**
      * The mandatory log event types
      */
@@ -486,9 +533,23 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
             throw new ELogException(message, e);
         }
 
+        mAsync = config.getBoolean(PROP_ASYNC, false);
+        mAsyncOverflow = config.getString(PROP_ASYNC_OVERFLOW, ASYNC_OVERFLOW_BLOCK);
+
+        if (!ASYNC_OVERFLOW_BLOCK.equals(mAsyncOverflow) && !ASYNC_OVERFLOW_FAIL.equals(mAsyncOverflow)) {
+            String message = CMS.getUserMessage("CMS_BASE_GET_PROPERTY_FAILED",
+                    config.getName() + "." + PROP_ASYNC_OVERFLOW);
+            logger.error("LogFile: " + message + ": " + mAsyncOverflow);
+            throw new ELogException(message);
+        }
+
         if (mOn) {
             init(fileName, config.getInteger(PROP_BUFFER_SIZE, BUFFER_SIZE),
                     config.getInteger(PROP_FLUSH_INTERVAL, FLUSH_INTERVAL));
+
+            if (mAsync) {
+                startAsyncWriter(config.getInteger(PROP_ASYNC_QUEUE_SIZE, ASYNC_QUEUE_SIZE));
+            }
         }
     }
 
@@ -829,6 +890,9 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
 
         setFlushInterval(0);
 
+        // write the queued entries, then log synchronously
+        stopAsyncWriter();
+
         // log signed audit shutdown success
         auditMessage = CMS.getLogMessage(
                            AuditEvent.AUDIT_LOG_SHUTDOWN,
@@ -902,11 +966,232 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
     }
 
     /**
-     * Synchronized method to write an event to the log file.
+     * Starts the writer thread. Subsequent log entries are queued and
+     * written in batches with one signature update per batch.
+     *
+     * @param queueSize The maximum number of queued entries
+     */
+    public synchronized void startAsyncWriter(int queueSize) {
+
+        if (mAsyncThread != null) {
+            return;
+        }
+
+        logger.info("LogFile: Writing " + mFileName + " asynchronously, queue size: " + queueSize
+                + ", overflow: " + mAsyncOverflow);
+
+        mAsyncQueue = new ArrayBlockingQueue<>(queueSize);
+        mAsyncSignal = new Semaphore(0);
+
+        mAsyncThread = new AsyncWriterThread();
+        mAsyncThread.setDaemon(true);
+        mAsyncThread.start();
+    }
+
+    /**
+     * Stops the writer thread after writing the queued entries.
+     * Subsequent log entries are written synchronously.
+     */
+    public synchronized void stopAsyncWriter() {
+
+        Thread thread = mAsyncThread;
+        if (thread == null) {
+            return;
+        }
+
+        logger.info("LogFile: Stopping " + mFileName + " writer thread");
+
+        mAsyncThread = null;
+        thread.interrupt();
+
+        writeQueue();
+    }
+
+    /**
+     * Returns true if log entries are written by the writer thread.
+     */
+    public boolean isAsync() {
+        return mAsyncThread != null;
+    }
+
+    /**
+     * Called by the writer thread after writing a batch of entries
+     * while holding the lock of this log file.
+     */
+    protected void batchWritten() throws ELogException {
+    }
+
+    /**
+     * Writes the queued entries in batches. Must be called while holding
+     * the lock of this log file so that entries are written in order.
+     */
+    private void writeQueue() {
+
+        // entries queued after this point will signal again
+        mAsyncSignal.drainPermits();
+
+        List<PendingEntry> batch = new ArrayList<>();
+        while (mAsyncQueue.drainTo(batch, ASYNC_BATCH_SIZE) > 0) {
+            try {
+                write(batch, false);
+            } catch (ELogException e) {
+                // already reported
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Reports an unexpected failure of the writer thread. Like a failed
+     * synchronous write, this disables the subsystem for signed logs.
+     */
+    private void asyncWriteFailed(Throwable t) {
+        String message = CMS.getUserMessage("CMS_LOG_WRITE_FAILED", mFileName, "queued entries", t.toString());
+        logger.error("LogFile: " + message, t);
+        System.err.println(message);
+        if (mLogSigning) {
+            // Failed to write to audit log, shut down CMS
+            shutdownCMS();
+        }
+    }
+
+    /**
+     * Log writer thread. Waits for queued entries and writes them
+     * in batches. Stopping the writer will cause this thread to exit.
+     * If the thread dies unexpectedly, the log file falls back to
+     * synchronous writes so that loggers are not left waiting for
+     * space in the queue.
+     */
+    final class AsyncWriterThread extends Thread {
+
+        public AsyncWriterThread() {
+            super();
+            super.setName(mFileName + ".writer-" + (Thread.activeCount() + 1));
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    try {
+                        mAsyncSignal.acquire();
+                    } catch (InterruptedException e) {
+                        // shutdown
+                        break;
+                    }
+
+                    synchronized (LogFile.this) {
+                        if (mAsyncThread != this) {
+                            break;
+                        }
+
+                        try {
+                            writeQueue();
+                            batchWritten();
+
+                        } catch (ELogException e) {
+                            logger.warn("LogFile: " + e.getMessage(), e);
+
+                        } catch (RuntimeException e) {
+                            asyncWriteFailed(e);
+
+                            // write the remaining entries without waiting for
+                            // another signal since loggers might be blocked
+                            if (!mAsyncQueue.isEmpty()) {
+                                mAsyncSignal.release();
+                            }
+                        }
+                    }
+                }
+
+            } catch (Error e) {
+                asyncWriteFailed(e);
+                throw e;
+
+            } finally {
+                synchronized (LogFile.this) {
+                    if (mAsyncThread == this) {
+                        logger.warn("LogFile: " + mFileName + " writer thread stopped, writing synchronously");
+                        mAsyncThread = null;
+                        try {
+                            writeQueue();
+                        } catch (RuntimeException | Error e) {
+                            // the entries cannot be written, release the loggers
+                            mAsyncQueue.clear();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Queues an event for the writer thread.
+     */
+    private void enqueue(LogEvent event) throws ELogException {
+
+        // events logged while writing (e.g. on failures) cannot wait for the writer
+        if (Thread.holdsLock(this)) {
+            doLog(event, false);
+            return;
+        }
+
+        PendingEntry pending = new PendingEntry(
+                event,
+                Thread.currentThread().getName(),
+                mTrace ? getTrace() : null);
+
+        if (ASYNC_OVERFLOW_FAIL.equals(mAsyncOverflow)) {
+            if (!mAsyncQueue.offer(pending)) {
+                String message = CMS.getUserMessage("CMS_LOG_WRITE_FAILED",
+                        mFileName, event.getEventType(), "Log queue is full");
+                logger.error("LogFile: " + message);
+                System.err.println(message);
+                if (mLogSigning) {
+                    // Failed to write to audit log, shut down CMS
+                    shutdownCMS();
+                }
+                throw new ELogException(message);
+            }
+
+        } else {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    mAsyncQueue.put(pending);
+                    break;
+                } catch (InterruptedException e) {
+                    // do not lose the entry, wait again
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        mAsyncSignal.release();
+
+        if (mAsyncThread == null) {
+            // the writer has been stopped in the meantime
+            synchronized (this) {
+                writeQueue();
+            }
+        }
+    }
+
+    /**
+     * Method to write an event to the log file.
      *
      * @param event The log event
      */
-    protected synchronized void doLog(LogEvent event) throws ELogException {
+    protected void doLog(LogEvent event) throws ELogException {
+
+        if (mAsyncThread != null) {
+            enqueue(event);
+            return;
+        }
+
         doLog(event, false);
     }
 
@@ -923,9 +1208,23 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
     private synchronized void doLog(LogEvent event, boolean noFlush)
             throws ELogException {
 
-        String entry = logEvt2String(event);
+        PendingEntry pending = new PendingEntry(
+                event,
+                Thread.currentThread().getName(),
+                mTrace ? getTrace() : null);
+
+        write(Collections.singletonList(pending), noFlush);
+    }
+
+    /**
+     * Writes log entries and updates the signature once for all entries.
+     */
+    private synchronized void write(List<PendingEntry> entries, boolean noFlush)
+            throws ELogException {
 
         if (mLogWriter == null) {
+            PendingEntry first = entries.get(0);
+            String entry = logEvt2String(first.event, first.threadName);
             String[] params = { mFileName, entry };
 
             String message = CMS.getUserMessage("CMS_LOG_LOGFILE_CLOSED", params);
@@ -936,106 +1235,141 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
                 shutdownCMS();
             }
             throw new ELogException(message);
+        }
+
+        String entry = null;
+        int nBytes = 0;
+
+        try {
+            // include newlines for calculating MAC
+            ByteArrayOutputStream signedBytes = new ByteArrayOutputStream();
+
+            for (PendingEntry pending : entries) {
+                entry = logEvt2String(pending.event, pending.threadName);
 
-        } else {
-            try {
                 mLogWriter.write(entry, 0/*offset*/, entry.length());
 
-                if (mLogSigning == true) {
-                    if (mSignature != null) {
-                        // include newline for calculating MAC
-                        mSignature.update(entry.getBytes("UTF-8"));
-                    } else {
-                        logger.warn("LogFile: missing audit log signature");
-                    }
-                }
-                if (mTrace) {
-                    CharArrayWriter cw = new CharArrayWriter(200);
-                    PrintWriter pw = new PrintWriter(cw);
-                    Exception e = new Exception();
-                    e.printStackTrace(pw);
-                    char[] c = cw.toCharArray();
-                    cw.close();
-                    pw.close();
-
-                    CharArrayReader cr = new CharArrayReader(c);
-                    LineNumberReader lr = new LineNumberReader(cr);
-
-                    String text = null;
-                    String method = null;
-                    String fileAndLine = null;
-                    if (lr.ready()) {
-                        text = lr.readLine();
-                        do {
-                            text = lr.readLine();
-                        } while (text.indexOf("logging") != -1);
-                        int p = text.indexOf("(");
-                        fileAndLine = text.substring(p);
-
-                        String classandmethod = text.substring(0, p);
-                        int q = classandmethod.lastIndexOf(".");
-                        method = classandmethod.substring(q + 1);
-                        mLogWriter.write(fileAndLine, 0/*offset*/, fileAndLine.length());
-                        mLogWriter.write(" ", 0/*offset*/, " ".length());
-                        mLogWriter.write(method, 0/*offset*/, method.length());
-                    }
+                if (pending.trace != null) {
+                    mLogWriter.write(pending.trace, 0/*offset*/, pending.trace.length());
                 }
                 mLogWriter.newLine();
 
-                if (mLogSigning == true) {
-                    if (mSignature != null) {
-                        mSignature.update(LINE_SEP_BYTE);
-                    } else {
-                        logger.warn("LogFile: missing audit log signature");
-                    }
+                if (mLogSigning) {
+                    signedBytes.write(entry.getBytes("UTF-8"));
+                    signedBytes.write(LINE_SEP_BYTE);
                 }
 
-            } catch (IOException e) {
-                String message = CMS.getUserMessage("CMS_LOG_WRITE_FAILED", mFileName, entry, e.getMessage());
-                logger.error("LogFile: " + message);
-                System.err.println(message);
-                if (mLogSigning) {
-                    // Failed to write to audit log, shut down CMS
-                    e.printStackTrace();
-                    shutdownCMS();
+                // XXX
+                // Although length will be in Unicode dual-bytes, the PrintWriter
+                // will only print out 1 byte per character.  I suppose this could
+                // be dependent on the encoding of your log file, but it ain't that
+                // smart yet.  Also, add one for the newline. (hmm, on NT, CR+LF)
+                nBytes += entry.length() + 1;
+            }
+
+            if (mLogSigning == true) {
+                if (mSignature != null) {
+                    mSignature.update(signedBytes.toByteArray());
+                } else {
+                    logger.warn("LogFile: missing audit log signature");
                 }
+            }
 
-            } catch (IllegalStateException e) {
-                String message = CMS.getLogMessage(LOG_SIGNED_AUDIT_EXCEPTION, e.getMessage());
-                logger.error("LogFile: " + message, e);
-                System.err.println(Thread.currentThread().getName() + ": " + message);
+        } catch (IOException e) {
+            String message = CMS.getUserMessage("CMS_LOG_WRITE_FAILED", mFileName, entry, e.getMessage());
+            logger.error("LogFile: " + message);
+            System.err.println(message);
+            if (mLogSigning) {
+                // Failed to write to audit log, shut down CMS
+                e.printStackTrace();
+                shutdownCMS();
+            }
 
-            } catch (GeneralSecurityException gse) {
-                // DJN: handle error
-                String message = CMS.getLogMessage(LOG_SIGNED_AUDIT_EXCEPTION, gse.getMessage());
-                logger.error("LogFile: " + message, gse);
-                System.err.println(Thread.currentThread().getName() + ": " + message);
+        } catch (IllegalStateException e) {
+            String message = CMS.getLogMessage(LOG_SIGNED_AUDIT_EXCEPTION, e.getMessage());
+            logger.error("LogFile: " + message, e);
+            System.err.println(Thread.currentThread().getName() + ": " + message);
 
-            } catch (Exception ee) { // Make darn sure we got everything
-                String message = CMS.getLogMessage(LOG_SIGNED_AUDIT_EXCEPTION, ee.getMessage());
-                logger.error("LogFile: " + message, ee);
-                System.err.println(Thread.currentThread().getName() + ": " + message);
+        } catch (GeneralSecurityException gse) {
+            // DJN: handle error
+            String message = CMS.getLogMessage(LOG_SIGNED_AUDIT_EXCEPTION, gse.getMessage());
+            logger.error("LogFile: " + message, gse);
+            System.err.println(Thread.currentThread().getName() + ": " + message);
 
-                if (mLogSigning) {
-                    // Failed to write to audit log, shut down CMS
-                    ee.printStackTrace();
-                    shutdownCMS();
-                }
+        } catch (Exception ee) { // Make darn sure we got everything
+            String message = CMS.getLogMessage(LOG_SIGNED_AUDIT_EXCEPTION, ee.getMessage());
+            logger.error("LogFile: " + message, ee);
+            System.err.println(Thread.currentThread().getName() + ": " + message);
+
+            if (mLogSigning) {
+                // Failed to write to audit log, shut down CMS
+                ee.printStackTrace();
+                shutdownCMS();
             }
+        }
 
-            // XXX
-            // Although length will be in Unicode dual-bytes, the PrintWriter
-            // will only print out 1 byte per character.  I suppose this could
-            // be dependent on the encoding of your log file, but it ain't that
-            // smart yet.  Also, add one for the newline. (hmm, on NT, CR+LF)
-            int nBytes = entry.length() + 1;
+        mBytesWritten += nBytes;
+        mBytesUnflushed += nBytes;
 
-            mBytesWritten += nBytes;
-            mBytesUnflushed += nBytes;
+        if (mBufferSize > 0 && mBytesUnflushed > mBufferSize && !noFlush) {
+            flush();
+        }
+    }
+
+    /**
+     * Returns the source file, line, and method of the caller
+     * outside the logging code for trace logs.
+     */
+    private String getTrace() {
 
-            if (mBufferSize > 0 && mBytesUnflushed > mBufferSize && !noFlush) {
-                flush();
+        CharArrayWriter cw = new CharArrayWriter(200);
+        PrintWriter pw = new PrintWriter(cw);
+        Exception e = new Exception();
+        e.printStackTrace(pw);
+        char[] c = cw.toCharArray();
+        cw.close();
+        pw.close();
+
+        CharArrayReader cr = new CharArrayReader(c);
+        LineNumberReader lr = new LineNumberReader(cr);
+
+        try {
+            if (!lr.ready()) {
+                return null;
             }
+
+            String text = lr.readLine();
+            do {
+                text = lr.readLine();
+            } while (text.indexOf("logging") != -1);
+            int p = text.indexOf("(");
+            String fileAndLine = text.substring(p);
+
+            String classandmethod = text.substring(0, p);
+            int q = classandmethod.lastIndexOf(".");
+            String method = classandmethod.substring(q + 1);
+
+            return fileAndLine + " " + method;
+
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * A log event waiting to be written, with the name of the thread
+     * that logged it.
+     */
+    static class PendingEntry {
+
+        final LogEvent event;
+        final String threadName;
+        final String trace;
+
+        PendingEntry(LogEvent event, String threadName, String trace) {
+            this.event = event;
+            this.threadName = threadName;
+            this.trace = trace;
         }
     }
 
@@ -1225,6 +1559,13 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
     }
 
     public String logEvt2String(LogEvent ev) {
+        return logEvt2String(ev, Thread.currentThread().getName());
+    }
+
+    /**
+     * Formats a log entry for an event logged by the given thread.
+     */
+    public String logEvt2String(LogEvent ev, String threadName) {
         String entry = null;
 
         // Hmm.. multiple threads could hit this and reset the time.
@@ -1237,12 +1578,12 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
         // This should follow the Common Log Format which still needs
         // some work.
         if (ev.getMultiline() == ILogger.L_MULTILINE) {
-            entry = engine.getPID() + "." + Thread.currentThread().getName() + " - ["
+            entry = engine.getPID() + "." + threadName + " - ["
                     + mLogDateFormat.format(mDate) + "] [" +
                     ev.getSource().value() + "] [" + Integer.toString(ev.getLevel())
                     + "] " + prepareMultiline(ev.toString());
         } else {
-            entry = engine.getPID() + "." + Thread.currentThread().getName() + " - ["
+            entry = engine.getPID() + "." + threadName + " - ["
                     + mLogDateFormat.format(mDate) + "] [" +
                     ev.getSource().value() + "] [" + Integer.toString(ev.getLevel())
                     + "] " + ev.toString();
@@ -1510,6 +1851,9 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
         v.addElement(PROP_FILE_NAME + "=");
         v.addElement(PROP_BUFFER_SIZE + "=");
         v.addElement(PROP_FLUSH_INTERVAL + "=");
+        v.addElement(PROP_ASYNC + "=");
+        v.addElement(PROP_ASYNC_QUEUE_SIZE + "=");
+        v.addElement(PROP_ASYNC_OVERFLOW + "=");
 
         // needs to find a way to determine what type you want. if this
         // is not for the signed audit type, then we should not show the
@@ -1560,6 +1904,10 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
             }
             v.addElement(PROP_BUFFER_SIZE + "=" + mBufferSize);
             v.addElement(PROP_FLUSH_INTERVAL + "=" + mFlushInterval / 1000);
+            v.addElement(PROP_ASYNC + "=" + String.valueOf(mAsync));
+            v.addElement(PROP_ASYNC_QUEUE_SIZE + "=" +
+                    mConfig.getInteger(PROP_ASYNC_QUEUE_SIZE, ASYNC_QUEUE_SIZE));
+            v.addElement(PROP_ASYNC_OVERFLOW + "=" + mAsyncOverflow);
 
             if ((mType != null) && mType.equals(ILogger.PROP_SIGNED_AUDIT)) {
                 v.addElement(PROP_SIGNED_AUDIT_LOG_SIGNING + "="
@@ -1599,6 +1947,11 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
                     PROP_BUFFER_SIZE + ";integer;The size of the buffer to receive log messages in kilobytes(KB)",
                     PROP_FLUSH_INTERVAL
                             + ";integer;The maximum time in seconds before the buffer is flushed to the file",
+                    PROP_ASYNC + ";boolean;Write the log messages in a separate thread",
+                    PROP_ASYNC_QUEUE_SIZE
+                            + ";integer;The maximum number of log messages waiting to be written",
+                    PROP_ASYNC_OVERFLOW
+                            + ";choice(block,fail);Whether to wait or to fail when too many log messages are waiting",
                     IExtendedPluginInfo.HELP_TOKEN +
                             ";configuration-logrules-logfile",
                     IExtendedPluginInfo.HELP_TEXT +
@@ -1633,6 +1986,11 @@ public class LogFile extends LogEventListener implements IExtendedPluginInfo {
                     PROP_BUFFER_SIZE + ";integer;The size of the buffer to receive log messages in kilobytes(KB)",
                     PROP_FLUSH_INTERVAL
                             + ";integer;The maximum time in seconds before the buffer is flushed to the file",
+                    PROP_ASYNC + ";boolean;Write the log messages in a separate thread",
+                    PROP_ASYNC_QUEUE_SIZE
+                            + ";integer;The maximum number of log messages waiting to be written",
+                    PROP_ASYNC_OVERFLOW
+                            + ";choice(block,fail);Whether to wait or to fail when too many log messages are waiting",
                     IExtendedPluginInfo.HELP_TOKEN +
                             ";configuration-logrules-logfile",
                     IExtendedPluginInfo.HELP_TEXT +
@@ -492,10 +492,30 @@ public class RollingLogFile extends LogFile {
      * @param ev The event to be logged.
      **/
     @Override
-    public synchronized void log(LogEvent ev) throws ELogException {
-        //xxx, Shall we log first without checking if it exceed the maximum?
-        super.log(ev); // Will increment mBytesWritten
+    public void log(LogEvent ev) throws ELogException {
 
+        if (isAsync()) {
+            // the file size is checked by the writer thread
+            super.log(ev);
+            return;
+        }
+
+        synchronized (this) {
+            //xxx, Shall we log first without checking if it exceed the maximum?
+            super.log(ev); // Will increment mBytesWritten
+            checkFileSize();
+        }
+    }
+
+    @Override
+    protected void batchWritten() throws ELogException {
+        checkFileSize();
+    }
+
+    /**
+     * Rotate the log file if it exceeds the maximum file size.
+     **/
+    private synchronized void checkFileSize() throws ELogException {
         if ((0 != mMaxFileSize) && (mBytesWritten > mMaxFileSize)) {
             flush();
             try {
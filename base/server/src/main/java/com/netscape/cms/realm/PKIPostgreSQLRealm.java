@@ -12,11 +12,9 @@ import java.security.NoSuchAlgorithmException;
 import java.security.Principal;
 import java.security.cert.X509Certificate;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -28,6 +26,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.mozilla.jss.netscape.security.util.Cert;
 import org.mozilla.jss.netscape.security.x509.X509CertImpl;
 
+import com.netscape.cmscore.dbs.JDBCConnFactory;
 import com.netscape.cmscore.usrgrp.User;
 
 /**
@@ -41,7 +40,8 @@ public class PKIPostgreSQLRealm extends RealmCommon {
     String url;
 
     Properties statements;
-    Connection connection;
+    JDBCConnFactory connFactory;
+    volatile boolean initialized;
 
     MessageDigestCredentialHandler handler;
 
@@ -81,6 +81,9 @@ public class PKIPostgreSQLRealm extends RealmCommon {
             logger.info("- " + name + ": " + value);
         }
 
+        connFactory = new JDBCConnFactory(url, info);
+        connFactory.init();
+
         logger.info("Initializing credential handler:");
         // https://tomcat.apache.org/tomcat-9.0-doc/config/credentialhandler.html
 
@@ -124,7 +127,7 @@ public class PKIPostgreSQLRealm extends RealmCommon {
     /**
      * This method will create the tables if they do not exist.
      */
-    public void setup() throws Exception {
+    public void setup(Connection conn) throws Exception {
 
         logger.info("Setting up PostgreSQL realm");
 
@@ -137,7 +140,7 @@ public class PKIPostgreSQLRealm extends RealmCommon {
             if (StringUtils.isEmpty(sql)) continue;
             logger.info("SQL: " + sql);
 
-            try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
                 ps.executeUpdate();
 
             } catch (SQLException e) {
@@ -158,40 +161,34 @@ public class PKIPostgreSQLRealm extends RealmCommon {
     }
 
     /**
-     * This method will create the initial connection, validate
-     * the current connection, or reestablish the connection if
-     * it's closed.
+     * This method will get a connection from the connection pool.
+     * The tables will be created with the first connection if they
+     * do not exist.
      *
-     * TODO: Use connection pool.
+     * The connection must be released with connFactory.returnConn().
      */
-    public void connect() throws Exception {
-
-        if (connection == null) { // create the initial connection
-            logger.info("Connecting to " + url);
-            connection = DriverManager.getConnection(url, info);
-            setup();
-            return;
-        }
+    public Connection connect() throws Exception {
 
-        // validate the current connection
-        try (Statement st = connection.createStatement();
-            ResultSet rs = st.executeQuery("SELECT 1")) {
+        Connection conn = connFactory.getConn();
 
-        } catch (SQLException e) {
+        if (initialized) {
+            return conn;
+        }
 
-            if (connection.isClosed()) { // reestablish the connection
-                logger.info("Reconnecting to " + url);
-                connection = DriverManager.getConnection(url, info);
-                return;
+        try {
+            synchronized (this) {
+                if (!initialized) {
+                    setup(conn);
+                    initialized = true;
+                }
             }
 
-            logger.error("Unable to access database: " + e.getMessage());
-
-            // https://www.postgresql.org/docs/current/errcodes-appendix.html
-            logger.error("SQL state: " + e.getSQLState());
-
+        } catch (Exception e) {
+            connFactory.returnConn(conn);
             throw e;
         }
+
+        return conn;
     }
 
     public User createUser(ResultSet rs) throws Exception {
@@ -209,14 +206,14 @@ public class PKIPostgreSQLRealm extends RealmCommon {
         return user;
     }
 
-    public User getUserByID(String userID) throws Exception {
+    public User getUserByID(Connection conn, String userID) throws Exception {
 
         logger.info("Getting user " + userID);
 
         String sql = statements.getProperty("getUserByID");
         logger.info("SQL: " + sql);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, userID);
 
             try (ResultSet rs = ps.executeQuery()) {
@@ -237,14 +234,14 @@ public class PKIPostgreSQLRealm extends RealmCommon {
                 + cert.getSubjectDN();
     }
 
-    public User getUserByCertID(String certID) throws Exception {
+    public User getUserByCertID(Connection conn, String certID) throws Exception {
 
         logger.info("Getting user for cert " + certID);
 
         String sql = statements.getProperty("getUserByCertID");
         logger.info("SQL: " + sql);
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, certID);
 
             try (ResultSet rs = ps.executeQuery()) {
@@ -258,7 +255,7 @@ public class PKIPostgreSQLRealm extends RealmCommon {
         }
     }
 
-    public List<X509Certificate> getUserCerts(String userID) throws Exception {
+    public List<X509Certificate> getUserCerts(Connection conn, String userID) throws Exception {
 
         logger.info("Getting certs for user " + userID);
 
@@ -267,7 +264,7 @@ public class PKIPostgreSQLRealm extends RealmCommon {
 
         List<X509Certificate> results = new ArrayList<>();
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, userID);
 
             try (ResultSet rs = ps.executeQuery()) {
@@ -281,7 +278,7 @@ public class PKIPostgreSQLRealm extends RealmCommon {
         return results;
     }
 
-    public List<String> getUserRoles(String userID) throws Exception {
+    public List<String> getUserRoles(Connection conn, String userID) throws Exception {
 
         logger.info("Getting roles for user " + userID);
 
@@ -290,7 +287,7 @@ public class PKIPostgreSQLRealm extends RealmCommon {
 
         List<String> roles = new ArrayList<>();
 
-        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
             ps.setString(1, userID);
 
             try (ResultSet rs = ps.executeQuery()) {
@@ -310,11 +307,13 @@ public class PKIPostgreSQLRealm extends RealmCommon {
 
         logger.info("Authenticating user " + username + " with password");
 
+        Connection conn = null;
+
         try {
-            connect();
+            conn = connect();
 
             logger.info("Searching for user " + username);
-            User user = getUserByID(username);
+            User user = getUserByID(conn, username);
 
             if (user == null) {
                 logger.warn("Unable to authenticate user " + username + ": User not found");
@@ -331,16 +330,21 @@ public class PKIPostgreSQLRealm extends RealmCommon {
 
             logger.info("User " + username + " authenticated");
 
-            List<String> roles = getUserRoles(username);
+            List<String> roles = getUserRoles(conn, username);
             return new PKIPrincipal(user, null, roles);
         } catch (Exception e) {
             logger.error("Problem to verify user credentials: "+ e.getMessage(), e);
             throw new RuntimeException(e);
+        } finally {
+            connFactory.returnConn(conn);
         }
     }
 
     @Override
     public Principal authenticate(X509Certificate[] certChain) {
+
+        Connection conn = null;
+
         try {
             // sort cert chain from leaf to root
             certChain = Cert.sortCertificateChain(certChain, true);
@@ -351,12 +355,12 @@ public class PKIPostgreSQLRealm extends RealmCommon {
 
             logger.info("Authenticating user with certificate " + certID);
 
-            connect();
+            conn = connect();
 
             // cert already validated during SSL handshake
 
             logger.info("Searching for user with certificate " + certID);
-            User user = getUserByCertID(certID);
+            User user = getUserByCertID(conn, certID);
 
             if (user == null) {
                 logger.warn("Unable to authenticate user with certificate " + certID + ": User not found");
@@ -364,7 +368,7 @@ public class PKIPostgreSQLRealm extends RealmCommon {
             }
 
             logger.info("Searching for matching certificates in user " + user.getUserID());
-            List<X509Certificate> certs = getUserCerts(user.getUserID());
+            List<X509Certificate> certs = getUserCerts(conn, user.getUserID());
 
             if (certs == null || certs.isEmpty()) {
                 logger.warn("Unable to authenticate user " + user.getUserID() + ": User has no certificates");
@@ -388,11 +392,13 @@ public class PKIPostgreSQLRealm extends RealmCommon {
 
             logger.info("User " + user.getUserID() + " authenticated");
 
-            List<String> roles = getUserRoles(user.getUserID());
+            List<String> roles = getUserRoles(conn, user.getUserID());
             return new PKIPrincipal(user, null, roles);
         } catch(Exception e) {
             logger.error("Problem to verify the certificate", e);
             throw new RuntimeException(e);
+        } finally {
+            connFactory.returnConn(conn);
         }
     }
 
@@ -401,12 +407,8 @@ public class PKIPostgreSQLRealm extends RealmCommon {
 
         logger.info("Shutting down PostgreSQL realm");
 
-        if (connection != null) {
-            try {
-                connection.close();
-            } catch(Exception e) {
-                throw new LifecycleException("Cannot close the DB connection: " + e.getMessage(), e);
-            }
+        if (connFactory != null) {
+            connFactory.shutdown();
         }
     }
 }
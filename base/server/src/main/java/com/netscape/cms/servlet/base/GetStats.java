@@ -42,6 +42,9 @@ import com.netscape.cms.servlet.common.ECMSGWException;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.apps.CMSEngine;
 import com.netscape.cmscore.base.ArgBlock;
+import com.netscape.cmscore.connector.HttpConnFactory;
+import com.netscape.cmscore.ldapconn.LdapConnPool;
+import com.netscape.cmscore.util.StatsSubsystem;
 
 /**
  * Retrieve information.
@@ -137,6 +140,15 @@ public class GetStats extends CMSServlet {
         header.addStringValue("curTime", (new Date()).toString());
         parse(argSet, st, 0);
 
+        if (statsSub instanceof StatsSubsystem) {
+            for (LdapConnPool pool : ((StatsSubsystem) statsSub).getConnPools()) {
+                parse(argSet, pool);
+            }
+            for (HttpConnFactory factory : ((StatsSubsystem) statsSub).getHttpConnFactories()) {
+                parse(argSet, factory);
+            }
+        }
+
         try {
             ServletOutputStream out = httpResp.getOutputStream();
 
@@ -161,6 +173,91 @@ public class GetStats extends CMSServlet {
         return s.toString();
     }
 
+    /**
+     * Adds the connection acquire times of an LDAP connection pool,
+     * with the current pool usage and the acquire time histogram in
+     * the name.
+     */
+    public void parse(CMSTemplateParams argSet, LdapConnPool pool) {
+
+        long count = pool.getAcquireCount();
+        long time = pool.getAcquireTime();
+        long avg = count == 0 ? -1 : time / count;
+        long stddev = count == 0 ? 0 : (long) Math.sqrt(
+                Math.max(0, (double) pool.getAcquireTimeSqSum() / count - (double) avg * avg));
+
+        ArgBlock rarg = new ArgBlock();
+        rarg.addStringValue("name", "LDAP connection pool " + pool.getId()
+                + " (in use: " + pool.getInUse() + "/" + pool.getMaxConns()
+                + ", idle: " + pool.getIdle()
+                + ", waiting: " + pool.getWaitQueueLength()
+                + ", timeouts: " + pool.getTimeouts()
+                + ", acquire times: " + getHistogram(pool) + ")");
+        rarg.addLongValue("noOfOp", count);
+        rarg.addLongValue("timeTaken", time);
+        rarg.addLongValue("max", pool.getMaxAcquireTime());
+        rarg.addLongValue("min", pool.getMinAcquireTime());
+        rarg.addLongValue("percentage", 100);
+        rarg.addLongValue("avg", avg);
+        rarg.addLongValue("stddev", stddev);
+        argSet.addRepeatRecord(rarg);
+    }
+
+    /**
+     * Adds the request times of a connector's HTTP connection factory,
+     * with the current requests in flight and connection usage in the
+     * name.
+     */
+    public void parse(CMSTemplateParams argSet, HttpConnFactory factory) {
+
+        long count = factory.getRequests();
+        long time = factory.getLatency();
+        long avg = count == 0 ? -1 : time / count;
+        long stddev = count == 0 ? 0 : (long) Math.sqrt(
+                Math.max(0, (double) factory.getLatencySqSum() / count - (double) avg * avg));
+
+        ArgBlock rarg = new ArgBlock();
+        rarg.addStringValue("name", "HTTP connections to "
+                + factory.getDestination().getHost() + ":" + factory.getDestination().getPort()
+                + " (in flight: " + factory.getInFlight()
+                + ", waiting: " + factory.getWaiting()
+                + ", connections: " + factory.getAvailableConns() + " idle, "
+                + factory.getTotalConns() + "/" + factory.getMaxConns() + " total"
+                + ", failures: " + factory.getFailures() + ")");
+        rarg.addLongValue("noOfOp", count);
+        rarg.addLongValue("timeTaken", time);
+        rarg.addLongValue("max", factory.getMaxLatency());
+        rarg.addLongValue("min", factory.getMinLatency());
+        rarg.addLongValue("percentage", 100);
+        rarg.addLongValue("avg", avg);
+        rarg.addLongValue("stddev", stddev);
+        argSet.addRepeatRecord(rarg);
+    }
+
+    /**
+     * Returns the number of connections acquired within each bucket of
+     * the acquire time histogram, e.g. "<=1ms: 90, <=10ms: 8, ...".
+     */
+    public String getHistogram(LdapConnPool pool) {
+
+        long[] counts = pool.getAcquireTimeHistogram();
+        StringBuilder sb = new StringBuilder();
+
+        for (int i = 0; i < counts.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            if (i < LdapConnPool.HISTOGRAM_BUCKETS.length) {
+                sb.append("<=").append(LdapConnPool.HISTOGRAM_BUCKETS[i]).append("ms: ");
+            } else {
+                sb.append(">").append(LdapConnPool.HISTOGRAM_BUCKETS[i - 1]).append("ms: ");
+            }
+            sb.append(counts[i]);
+        }
+
+        return sb.toString();
+    }
+
     public void parse(CMSTemplateParams argSet, StatsEvent st, int level) {
         Enumeration<String> names = st.getSubEventNames();
         while (names.hasMoreElements()) {
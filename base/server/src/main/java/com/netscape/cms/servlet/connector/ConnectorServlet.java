@@ -280,8 +280,12 @@ public class ConnectorServlet extends CMSServlet {
 
         logger.info("ConnectorServlet: RA ID: " + RA_Id);
 
+        // reply in the format of the request
+        String format = HttpRequestEncoder.FORMAT_LEGACY;
+
         try {
             // decode request.
+            format = HttpRequestEncoder.getFormat(encodedreq);
             msg = (IPKIMessage) mReqEncoder.decode(encodedreq);
             // process request
             replymsg = processRequest(RA_Id, raUserId, msg, token);
@@ -306,7 +310,7 @@ public class ConnectorServlet extends CMSServlet {
 
         // encode reply
         try {
-            String encodedrep = mReqEncoder.encode(replymsg);
+            String encodedrep = mReqEncoder.encode(replymsg, format);
 
             resp.setStatus(HttpServletResponse.SC_OK);
             resp.setContentType("text/html");
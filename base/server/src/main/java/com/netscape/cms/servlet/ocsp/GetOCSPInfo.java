@@ -31,6 +31,7 @@ import org.dogtagpki.server.authorization.AuthzToken;
 
 import com.netscape.certsrv.authorization.EAuthzAccessDenied;
 import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.ocsp.IOCSPAuthority;
 import com.netscape.certsrv.ocsp.IOCSPService;
 import com.netscape.cms.servlet.base.CMSServlet;
 import com.netscape.cms.servlet.common.CMSRequest;
@@ -139,6 +140,15 @@ public class GetOCSPInfo extends CMSServlet {
         header.addLongValue("totalSignSec", ca.getOCSPTotalSignTime());
         header.addLongValue("totalLookupSec", ca.getOCSPTotalLookupTime());
         header.addLongValue("totalData", ca.getOCSPTotalData());
+
+        if (mAuthority instanceof IOCSPAuthority) {
+            IOCSPAuthority ocsp = (IOCSPAuthority) mAuthority;
+            header.addLongValue("totalSignCount", ocsp.getOCSPTotalSignCount());
+            header.addLongValue("cacheHits", ocsp.getOCSPResponseCacheHits());
+            header.addLongValue("cacheMisses", ocsp.getOCSPResponseCacheMisses());
+            header.addLongValue("cacheRefreshes", ocsp.getOCSPResponseCacheRefreshes());
+        }
+
         long secs = 0;
 
         if (ca.getOCSPRequestTotalTime() != 0) {
@@ -137,8 +137,9 @@ public abstract class CMSRequestDAO {
 
             logger.debug("CMSRequestDAO: records:");
             while (requests.hasMoreElements()) {
-                RequestId rid = requests.nextElement();
-                Request request = requestRepository.readRequest(rid);
+                // use the records from the search results instead of
+                // reading each request from the database again
+                Request request = requests.nextRequestObject();
                 if (request != null) {
                     logger.debug("- " + request.getRequestId().toHexString());
                     ret.addEntry(createCMSRequestInfo(request, uriInfo));
@@ -680,6 +680,10 @@ public class CMSEngine {
         IPasswordStore passwordStore = getPasswordStore();
 
         ugSubsystem.init(ldapConfig, socketConfig, passwordStore);
+
+        if (ugConfig.getCacheEnabled()) {
+            ugSubsystem.initCache(ugConfig.getCacheSize(), ugConfig.getCacheTimeout());
+        }
     }
 
     public void initOIDLoaderSubsystem() throws Exception {
@@ -1348,6 +1352,17 @@ public class CMSEngine {
         requestSubsystem.shutdown();
     }
 
+    public void shutdownRequestNotifiers() {
+
+        if (requestNotifier != null) {
+            requestNotifier.shutdown();
+        }
+
+        if (pendingNotifier != null) {
+            pendingNotifier.shutdown();
+        }
+    }
+
     public void shutdownX500NameSubsystem() {
         x500NameSubsystem.shutdown();
     }
@@ -1419,6 +1434,7 @@ public class CMSEngine {
         shutdownJobsScheduler();
         shutdownAuthzSubsystem();
         shutdownAuthSubsystem();
+        shutdownRequestNotifiers();
 
         shutdownSubsystems();
 
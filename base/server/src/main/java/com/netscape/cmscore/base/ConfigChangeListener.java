@@ -0,0 +1,26 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.base;
+
+import java.util.Set;
+
+/**
+ * Listener for changes in a config store.
+ *
+ * @see ConfigStore#addChangeListener(ConfigChangeListener)
+ */
+public interface ConfigChangeListener {
+
+    /**
+     * Called after the config has been committed or loaded with
+     * properties in the config store that have been added, changed,
+     * or removed.
+     *
+     * @param config the config store the listener was registered with
+     * @param names names of the changed properties relative to the config store
+     */
+    void configChanged(ConfigStore config, Set<String> names);
+}
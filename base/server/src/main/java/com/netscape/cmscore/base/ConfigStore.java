@@ -170,18 +170,8 @@ public class ConfigStore implements Cloneable {
      * @return property value
      */
     public String get(String name) {
-        return mSource.get(getFullName(name));
-    }
-
-    /**
-     * Retrieves a property from the configuration file. Does not prepend
-     * the config store name to the property.
-     *
-     * @param name property name
-     * @return property value
-     */
-    private String nakedGet(String name) {
-        return mSource.get(name);
+        ConfigValue value = mSource.getValue(getFullName(name));
+        return value == null ? null : value.getRaw();
     }
 
     /**
@@ -247,19 +237,18 @@ public class ConfigStore implements Cloneable {
      *
      * @param map the map
      */
-    private synchronized void enumerate(Map<String, String> map) {
-        Enumeration<String> e = mSource.keys();
+    private void enumerate(Map<String, String> map) {
         // We only want the keys which match the current substore name
         // without the current substore prefix.  This code works even
         // if mStoreName is null.
         String fullName = getFullName("");
         int kIndex = fullName.length();
 
-        while (e.hasMoreElements()) {
-            String key = e.nextElement();
+        for (Map.Entry<String, ConfigValue> entry : mSource.getSnapshot().entrySet()) {
+            String key = entry.getKey();
 
             if (key.startsWith(fullName)) {
-                map.put(key.substring(kIndex), nakedGet(key));
+                map.put(key.substring(kIndex), entry.getValue().getRaw());
             }
         }
     }
@@ -279,6 +268,7 @@ public class ConfigStore implements Cloneable {
         if (storage != null) {
             storage.load(this);
         }
+        mSource.fireChanges();
     }
 
     /**
@@ -291,6 +281,24 @@ public class ConfigStore implements Cloneable {
         if (storage != null) {
             storage.commit(this, createBackup);
         }
+        mSource.fireChanges();
+    }
+
+    /**
+     * Registers a listener that will be notified after a commit or a
+     * load about the properties in this config store (including its
+     * sub-stores) that have changed since the previous notification.
+     * This allows reading the config once and updating it on changes
+     * instead of reading it for every operation.
+     *
+     * @param listener change listener
+     */
+    public void addChangeListener(ConfigChangeListener listener) {
+        mSource.addChangeListener(this, getFullName(""), listener);
+    }
+
+    public void removeChangeListener(ConfigChangeListener listener) {
+        mSource.removeChangeListener(listener);
     }
 
     /**
@@ -327,9 +335,9 @@ public class ConfigStore implements Cloneable {
      * @exception EBaseException If an internal error occurred
      */
     public String getString(String name) throws EBaseException {
-        String str = get(name);
+        ConfigValue value = mSource.getValue(getFullName(name));
 
-        if (str == null) {
+        if (value == null) {
             logger.trace("Property {} not found", getFullName(name));
             throw new EPropertyNotFound(CMS.getUserMessage("CMS_BASE_GET_PROPERTY_FAILED", getFullName(name)));
         }
@@ -337,13 +345,9 @@ public class ConfigStore implements Cloneable {
         // if (str.length() == 0) {
         //	throw new EPropertyNotDefined(getName() + "." + name);
         // }
-        String ret = null;
 
-        try {
-            ret = new String(str.getBytes(), "UTF8").trim();
-        } catch (java.io.UnsupportedEncodingException e) {
-            throw new EBaseException(CMS.getUserMessage("CMS_BASE_UTF8_NOT_SUPPORTED"));
-        }
+        // converted and trimmed once per snapshot
+        String ret = value.getString();
 
         logger.trace("Getting {}={}", getFullName(name), ret);
         return ret;
@@ -455,24 +459,24 @@ public class ConfigStore implements Cloneable {
      * @exception EBaseException failed to retrieve
      */
     public boolean getBoolean(String name) throws EBaseException {
-        String value = get(name);
+        ConfigValue value = mSource.getValue(getFullName(name));
 
         if (value == null) {
             logger.trace("Property {} not found", getFullName(name));
             throw new EPropertyNotFound(CMS.getUserMessage("CMS_BASE_GET_PROPERTY_FAILED", getName() + "." + name));
         }
-        if (value.length() == 0) {
+        if (value.getRaw().length() == 0) {
             throw new EPropertyNotDefined(CMS.getUserMessage("CMS_BASE_GET_PROPERTY_NOVALUE", getName() + "." + name));
         }
 
-        if (value.equalsIgnoreCase("true")) {
-            return true;
-        } else if (value.equalsIgnoreCase("false")) {
-            return false;
-        } else {
+        Boolean bool = value.getBoolean();
+
+        if (bool == null) {
             throw new EBaseException(CMS.getUserMessage("CMS_BASE_INVALID_PROPERTY_1", getName() + "." + name,
                     "boolean", "\"true\" or \"false\""));
         }
+
+        return bool;
     }
 
     /**
@@ -522,22 +526,25 @@ public class ConfigStore implements Cloneable {
      * @exception EBaseException If an internal error occurred
      */
     public int getInteger(String name) throws EBaseException {
-        String value = get(name);
+        ConfigValue value = mSource.getValue(getFullName(name));
 
         if (value == null) {
             logger.trace("Property {} not found", getFullName(name));
             throw new EPropertyNotFound(CMS.getUserMessage("CMS_BASE_GET_PROPERTY_FAILED", getName() + "." + name));
         }
-        if (value.length() == 0) {
+        if (value.getRaw().length() == 0) {
             throw new EPropertyNotDefined(CMS.getUserMessage("CMS_BASE_GET_PROPERTY_NOVALUE", getName() + "." + name));
         }
-        try {
-            logger.trace("Getting {}={}", getFullName(name), value);
-            return Integer.parseInt(value);
-        } catch (NumberFormatException e) {
+
+        Integer integer = value.getInteger();
+
+        if (integer == null) {
             throw new EBaseException(CMS.getUserMessage("CMS_BASE_INVALID_PROPERTY_1", getName() + "." + name, "int",
                     "number"));
         }
+
+        logger.trace("Getting {}={}", getFullName(name), integer);
+        return integer;
     }
 
     /**
@@ -721,7 +728,8 @@ public class ConfigStore implements Cloneable {
     public <T extends ConfigStore> T getSubStore(String name, Class<T> clazz) {
 
         String fullname = getFullName(name);
-        String reference = mSource.get(fullname);
+        ConfigValue value = mSource.getValue(fullname);
+        String reference = value == null ? null : value.getRaw();
 
         try {
             Constructor<T> constructor = clazz.getDeclaredConstructor(String.class, SimpleProperties.class);
@@ -0,0 +1,97 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.base;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Immutable config property value in a config snapshot.
+ *
+ * The string value returned by ConfigStore.getString() is computed
+ * once, and the integer and boolean values are parsed on first use
+ * and kept for the following reads.
+ */
+final class ConfigValue {
+
+    private final String raw;
+    private final String string;
+
+    // parsed values, null until first parsed successfully
+    private volatile Integer integerValue;
+    private volatile Boolean booleanValue;
+
+    ConfigValue(String raw) {
+        this.raw = raw;
+        this.string = new String(raw.getBytes(), StandardCharsets.UTF_8).trim();
+    }
+
+    /**
+     * Returns the value as stored in the config.
+     */
+    String getRaw() {
+        return raw;
+    }
+
+    /**
+     * Returns the value as returned by ConfigStore.getString().
+     */
+    String getString() {
+        return string;
+    }
+
+    /**
+     * Returns the value as an integer, or null if it is not a number.
+     */
+    Integer getInteger() {
+
+        Integer value = integerValue;
+        if (value != null) {
+            return value;
+        }
+
+        try {
+            value = Integer.parseInt(raw);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        integerValue = value;
+        return value;
+    }
+
+    /**
+     * Returns the value as a boolean, or null if it is neither
+     * "true" nor "false".
+     */
+    Boolean getBoolean() {
+
+        Boolean value = booleanValue;
+        if (value != null) {
+            return value;
+        }
+
+        if (raw.equalsIgnoreCase("true")) {
+            value = Boolean.TRUE;
+        } else if (raw.equalsIgnoreCase("false")) {
+            value = Boolean.FALSE;
+        } else {
+            return null;
+        }
+
+        booleanValue = value;
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof ConfigValue && raw.equals(((ConfigValue) obj).raw);
+    }
+
+    @Override
+    public int hashCode() {
+        return raw.hashCode();
+    }
+}
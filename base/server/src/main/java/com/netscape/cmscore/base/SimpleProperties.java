@@ -26,9 +26,17 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The <code>Properties</code> class represents a persistent set of
@@ -53,6 +61,14 @@ public class SimpleProperties extends Hashtable<String, String> {
      */
     private static final long serialVersionUID = -6129810287662322712L;
 
+    /**
+     * Number of reads after a change before the snapshot is rebuilt.
+     * Until then reads go to the properties directly, so a series of
+     * changes (e.g. during installation) does not rebuild the snapshot
+     * after every change.
+     */
+    private static final int SNAPSHOT_REBUILD_READS = 64;
+
     /**
      * A property list that contains default values for any keys not
      * found in this property list.
@@ -61,6 +77,28 @@ public class SimpleProperties extends Hashtable<String, String> {
      */
     protected SimpleProperties defaults;
 
+    /**
+     * Immutable copy of the properties used by ConfigStore for reads
+     * without locking. It is discarded by put(), remove(), and clear()
+     * and rebuilt on the next read.
+     */
+    private transient volatile Map<String, ConfigValue> snapshot;
+
+    /**
+     * Last snapshot built, used to keep parsed values across rebuilds.
+     */
+    private transient Map<String, ConfigValue> lastSnapshot;
+
+    // reads since the snapshot was discarded
+    private transient AtomicInteger dirtyReads = new AtomicInteger();
+
+    /**
+     * Snapshot at the time the change listeners were last notified.
+     */
+    private transient Map<String, ConfigValue> notifiedSnapshot;
+
+    private transient List<Registration> registrations = new CopyOnWriteArrayList<>();
+
     /**
      * Creates an empty property list with no default values.
      */
@@ -77,6 +115,180 @@ public class SimpleProperties extends Hashtable<String, String> {
         this.defaults = defaults;
     }
 
+    @Override
+    public synchronized String put(String key, String value) {
+        String previous = super.put(key, value);
+        snapshot = null;
+        return previous;
+    }
+
+    @Override
+    public synchronized String remove(Object key) {
+        String previous = super.remove(key);
+        snapshot = null;
+        return previous;
+    }
+
+    @Override
+    public synchronized void clear() {
+        super.clear();
+        snapshot = null;
+    }
+
+    /**
+     * Returns an immutable snapshot of the properties. Reading the
+     * snapshot does not lock the properties.
+     */
+    Map<String, ConfigValue> getSnapshot() {
+
+        Map<String, ConfigValue> s = snapshot;
+        if (s != null) {
+            return s;
+        }
+
+        return buildSnapshot();
+    }
+
+    private synchronized Map<String, ConfigValue> buildSnapshot() {
+
+        Map<String, ConfigValue> s = snapshot;
+        if (s != null) {
+            return s;
+        }
+
+        // reuse the values that have not changed to keep parsed values
+        Map<String, ConfigValue> previous = lastSnapshot;
+        Map<String, ConfigValue> map = new HashMap<>(size() * 4 / 3 + 1);
+
+        for (Map.Entry<String, String> entry : entrySet()) {
+            String key = entry.getKey();
+            String raw = entry.getValue();
+
+            ConfigValue value = previous == null ? null : previous.get(key);
+            if (value == null || !value.getRaw().equals(raw)) {
+                value = new ConfigValue(raw);
+            }
+
+            map.put(key, value);
+        }
+
+        s = Collections.unmodifiableMap(map);
+        snapshot = s;
+        lastSnapshot = s;
+        dirtyReads.set(0);
+
+        return s;
+    }
+
+    /**
+     * Returns the snapshot value of a property.
+     *
+     * @return property value, or null if the property does not exist
+     */
+    ConfigValue getValue(String key) {
+
+        Map<String, ConfigValue> s = snapshot;
+        if (s != null) {
+            return s.get(key);
+        }
+
+        if (dirtyReads.incrementAndGet() >= SNAPSHOT_REBUILD_READS) {
+            return buildSnapshot().get(key);
+        }
+
+        String raw = get(key);
+        return raw == null ? null : new ConfigValue(raw);
+    }
+
+    void addChangeListener(ConfigStore config, String prefix, ConfigChangeListener listener) {
+
+        synchronized (this) {
+            if (notifiedSnapshot == null) {
+                notifiedSnapshot = getSnapshot();
+            }
+        }
+
+        registrations.add(new Registration(config, prefix, listener));
+    }
+
+    void removeChangeListener(ConfigChangeListener listener) {
+        registrations.removeIf(r -> r.listener == listener);
+    }
+
+    /**
+     * Notifies the change listeners about the properties that have
+     * changed since the listeners were last notified.
+     */
+    void fireChanges() {
+
+        if (registrations.isEmpty()) {
+            return;
+        }
+
+        Set<String> changes = new HashSet<>();
+
+        synchronized (this) {
+            Map<String, ConfigValue> current = getSnapshot();
+            Map<String, ConfigValue> previous = notifiedSnapshot;
+
+            if (current == previous) {
+                return;
+            }
+
+            for (Map.Entry<String, ConfigValue> entry : current.entrySet()) {
+                if (!entry.getValue().equals(previous.get(entry.getKey()))) {
+                    changes.add(entry.getKey());
+                }
+            }
+
+            for (String key : previous.keySet()) {
+                if (!current.containsKey(key)) {
+                    changes.add(key);
+                }
+            }
+
+            notifiedSnapshot = current;
+        }
+
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        // notify listeners without holding the lock
+        for (Registration registration : registrations) {
+
+            Set<String> names = new HashSet<>();
+            for (String key : changes) {
+                if (key.startsWith(registration.prefix)) {
+                    names.add(key.substring(registration.prefix.length()));
+                }
+            }
+
+            if (names.isEmpty()) {
+                continue;
+            }
+
+            try {
+                registration.listener.configChanged(registration.config, Collections.unmodifiableSet(names));
+            } catch (Exception e) {
+                ConfigStore.logger.warn("Unable to process config changes: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private static class Registration {
+
+        final ConfigStore config;
+        final String prefix;
+        final ConfigChangeListener listener;
+
+        Registration(ConfigStore config, String prefix, ConfigChangeListener listener) {
+            this.config = config;
+            this.prefix = prefix;
+            this.listener = listener;
+        }
+    }
+
     /**
      * Calls the hashtable method <code>put</code>. Provided for
      * parallelism with the getProperties method. Enforces use of
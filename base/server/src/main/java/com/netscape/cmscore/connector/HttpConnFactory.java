@@ -17,6 +17,18 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmscore.connector;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
 import org.dogtagpki.server.PKIClientSocketListener;
 
 import com.netscape.certsrv.base.EBaseException;
@@ -26,21 +38,42 @@ import com.netscape.cmsutil.net.ISocketFactory;
 
 /**
  * Factory for getting HTTP Connections to a HTTPO server
+ *
+ * Idle connections are kept in a lock-free deque. The number of
+ * connections handed out is bounded by a fair semaphore, so callers
+ * waiting for a connection are served in arrival order. With keep-alive
+ * enabled the connections stay open between requests. The factory also
+ * collects in-flight and latency statistics for requests to its target,
+ * which are shown on the statistics page and logged when the connector
+ * is stopped.
  */
 public class HttpConnFactory {
 
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(HttpConnFactory.class);
 
+    private static final Set<HttpConnFactory> factories = ConcurrentHashMap.newKeySet();
+
     protected int mMinConns = 1;
     protected int mMaxConns = 30;
 
-    private int mNumConns = 0; // number of available conns in array
-    private int mTotal = 0; // total num conns
-    private HttpConnection mConns[];
+    private Deque<HttpConnection> mConns = new ConcurrentLinkedDeque<>();
+    private AtomicInteger mNumConns = new AtomicInteger(); // number of available conns
+    private AtomicInteger mTotal = new AtomicInteger(); // total num conns
+    private Semaphore mPermits;
     private RemoteAuthority mDest;
     private String mNickname = "";
     private String mClientCiphers = null;
     private int mTimeout = 0;
+    private boolean mKeepAlive = false;
+    private int mKeepAliveTimeout = 0;
+
+    private AtomicInteger mInFlight = new AtomicInteger();
+    private LongAdder mRequests = new LongAdder();
+    private LongAdder mFailures = new LongAdder();
+    private LongAdder mLatency = new LongAdder();
+    private LongAdder mLatencySqSum = new LongAdder();
+    private AtomicLong mMinLatency = new AtomicLong(-1);
+    private AtomicLong mMaxLatency = new AtomicLong(-1);
 
     /**
      * Constructor for initializing from the config store.
@@ -62,6 +95,27 @@ public class HttpConnFactory {
             String nickname,
             String clientCiphers,
             int timeout) throws EBaseException {
+        this(minConns, maxConns, dest, nickname, clientCiphers, timeout, false, 0);
+    }
+
+    /**
+     * Constructor for HttpConnFactory
+     *
+     * @param minConns minimum number of connections to have available
+     * @param maxConns max number of connections to have available. This is
+     * @param keepAlive keep connections open between requests
+     * @param keepAliveTimeout time in seconds after which an idle connection
+     *            is reopened, or 0 to always reuse it
+     */
+    public HttpConnFactory(
+            int minConns,
+            int maxConns,
+            RemoteAuthority dest,
+            String nickname,
+            String clientCiphers,
+            int timeout,
+            boolean keepAlive,
+            int keepAliveTimeout) throws EBaseException {
 
         logger.debug("In HttpConnFactory constructor mTimeout " + timeout);
         if (mClientCiphers != null)
@@ -72,6 +126,8 @@ public class HttpConnFactory {
         mNickname = nickname;
         mClientCiphers = clientCiphers;
         mTimeout = timeout;
+        mKeepAlive = keepAlive;
+        mKeepAliveTimeout = keepAliveTimeout;
 
         init(minConns, maxConns);
     }
@@ -100,21 +156,18 @@ public class HttpConnFactory {
             mMaxConns = maxConns;
         }
 
-        logger.debug("before creating httpconn array");
-
-        mConns = new HttpConnection[mMaxConns];
-
-        // Create connection handle and make initial connection
-
-        logger.debug("before makeConnection");
+        mPermits = new Semaphore(mMaxConns, true);
 
         logger.debug(
                 "initializing HttpConnFactory with mininum " + mMinConns + " and maximum " + mMaxConns +
                         " connections to ");
+        logger.debug("HttpConnFactory: keep-alive: " + mKeepAlive + ", timeout: " + mKeepAliveTimeout);
 
         // initalize minimum number of connection handles available.
         //makeMinimum();
 
+        factories.add(this);
+
         logger.debug("leaving HttpConnFactory init.");
     }
 
@@ -136,39 +189,18 @@ public class HttpConnFactory {
                 retConn = new HttpConnection(mDest, tFactory, mTimeout);
             }
 
+            retConn.setKeepAlive(mKeepAlive, mKeepAliveTimeout * 1000L);
+
         } catch (Exception e) {
             String message = "Unable to create HTTP connection: " + e.getMessage();
             logger.error(message, e);
             throw new EBaseException(message, e);
         }
 
-        return retConn;
-    }
-
-    /**
-     * makes the minumum number of connections
-     */
-    private void makeMinimum() throws EBaseException {
-
-        logger.debug("In HttpConnFactory.makeMinimum.");
-        int increment;
+        int total = mTotal.incrementAndGet();
+        logger.debug("new total available http connections " + total);
 
-        if (mNumConns < mMinConns && mTotal <= mMaxConns) {
-
-            increment = Math.min(mMinConns - mNumConns, mMaxConns - mTotal);
-
-            if (increment == 0)
-                return;
-
-            logger.debug("increasing minimum connections by " + increment);
-            for (int i = increment - 1; i >= 0; i--) {
-                mConns[i] = createConnection();
-            }
-            mTotal += increment;
-            mNumConns += increment;
-            logger.debug("new total available http connections " + mTotal);
-            logger.debug("new number of http connections " + mNumConns);
-        }
+        return retConn;
     }
 
     /**
@@ -217,37 +249,51 @@ public class HttpConnFactory {
      * }
      * </pre>
      */
-    public synchronized HttpConnection getConn(boolean waitForConn)
+    public HttpConnection getConn(boolean waitForConn)
             throws EBaseException {
         boolean waited = false;
 
         logger.debug("In HttpConnFactory.getConn");
-        if (mNumConns == 0)
-            makeMinimum();
-        if (mNumConns == 0) {
+
+        if (!mPermits.tryAcquire()) {
             if (!waitForConn)
                 return null;
-            try {
-                logger.warn("HttpConnFactory: Ran out of HTTP connections");
-                waited = true;
-                logger.debug("HttpConn:about to wait for a new http connection");
-                while (mNumConns == 0)
-                    wait();
 
-                logger.debug("HttpConn:done waiting for new http connection");
+            logger.warn("HttpConnFactory: Ran out of HTTP connections");
+            waited = true;
+            logger.debug("HttpConn:about to wait for a new http connection");
+
+            try {
+                mPermits.acquire();
             } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new EBaseException("Interrupted while waiting for HTTP connection", e);
             }
+
+            logger.debug("HttpConn:done waiting for new http connection");
         }
-        mNumConns--;
-        HttpConnection conn = mConns[mNumConns];
 
-        mConns[mNumConns] = null;
+        HttpConnection conn = mConns.pollFirst();
+
+        if (conn != null) {
+            mNumConns.decrementAndGet();
+
+        } else {
+            try {
+                conn = createConnection();
+            } catch (EBaseException e) {
+                mPermits.release();
+                throw e;
+            }
+        }
+
+        conn.inUse.set(true);
 
         if (waited) {
             logger.warn("HttpConn:had to wait for an available connection from pool");
             logger.warn("Http connections are available again in http connection pool");
         }
-        logger.debug("HttpgetConn: mNumConns now " + mNumConns);
+        logger.debug("HttpgetConn: mNumConns now " + mNumConns.get());
 
         return conn;
     }
@@ -270,22 +316,152 @@ public class HttpConnFactory {
      * }
      * </pre>
      */
-    public synchronized void returnConn(HttpConnection conn) {
+    public void returnConn(HttpConnection conn) {
 
         logger.debug("In HttpConnFactory.returnConn");
         if (conn == null) {
             return;
         }
-        HttpConnection boundconn = conn;
 
-        for (int i = 0; i < mNumConns; i++) {
-            if (mConns[i] == conn) {
-                logger.debug("returnConn: previously returned connection. " + conn);
+        if (!conn.inUse.compareAndSet(true, false)) {
+            logger.debug("returnConn: previously returned connection. " + conn);
+            return;
+        }
 
-            }
+        // most recently used connections first to reuse open connections
+        mConns.offerFirst(conn);
+        int numConns = mNumConns.incrementAndGet();
+        mPermits.release();
+
+        logger.debug("HttpreturnConn: mNumConns now " + numConns);
+    }
+
+    /**
+     * Records the start of a request to the remote authority.
+     *
+     * @return start time to pass to requestCompleted()
+     */
+    public long requestStarted() {
+        mInFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the completion of a request to the remote authority.
+     */
+    public void requestCompleted(long startTime, boolean success) {
+
+        long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+
+        mInFlight.decrementAndGet();
+        mRequests.increment();
+        if (!success) {
+            mFailures.increment();
         }
-        mConns[mNumConns++] = boundconn;
-        logger.debug("HttpreturnConn: mNumConns now " + mNumConns);
-        notify();
+        mLatency.add(latency);
+        mLatencySqSum.add(latency * latency);
+        mMinLatency.updateAndGet(min -> min < 0 ? latency : Math.min(min, latency));
+        mMaxLatency.accumulateAndGet(latency, Math::max);
+    }
+
+    /**
+     * Returns the factories that have been initialized and not shut down.
+     */
+    public static Collection<HttpConnFactory> getFactories() {
+        return Collections.unmodifiableSet(factories);
+    }
+
+    /**
+     * Logs the request statistics and removes the factory from the
+     * statistics page.
+     */
+    public void shutdown() {
+        logStats();
+        factories.remove(this);
+    }
+
+    public RemoteAuthority getDestination() {
+        return mDest;
+    }
+
+    /**
+     * Returns the number of requests being processed.
+     */
+    public int getInFlight() {
+        return mInFlight.get();
+    }
+
+    /**
+     * Returns the number of callers waiting for a connection.
+     */
+    public int getWaiting() {
+        return mPermits.getQueueLength();
+    }
+
+    public int getMaxConns() {
+        return mMaxConns;
+    }
+
+    public int getTotalConns() {
+        return mTotal.get();
+    }
+
+    public int getAvailableConns() {
+        return mNumConns.get();
+    }
+
+    public long getRequests() {
+        return mRequests.sum();
+    }
+
+    public long getFailures() {
+        return mFailures.sum();
+    }
+
+    /**
+     * Returns the total time spent on requests in milliseconds.
+     */
+    public long getLatency() {
+        return mLatency.sum();
+    }
+
+    public long getLatencySqSum() {
+        return mLatencySqSum.sum();
+    }
+
+    /**
+     * Returns the shortest request time in milliseconds, or -1 if
+     * there have been no requests.
+     */
+    public long getMinLatency() {
+        return mMinLatency.get();
+    }
+
+    /**
+     * Returns the longest request time in milliseconds, or -1 if
+     * there have been no requests.
+     */
+    public long getMaxLatency() {
+        return mMaxLatency.get();
+    }
+
+    public void resetCounters() {
+        mRequests.reset();
+        mFailures.reset();
+        mLatency.reset();
+        mLatencySqSum.reset();
+        mMinLatency.set(-1);
+        mMaxLatency.set(-1);
+    }
+
+    public void logStats() {
+
+        long requests = mRequests.sum();
+
+        logger.info("HttpConnFactory: " + mDest.getHost() + ":" + mDest.getPort() + ": " + requests + " requests, "
+                + mFailures.sum() + " failures, "
+                + (requests == 0 ? 0 : mLatency.sum() / requests) + " ms average latency, "
+                + mMaxLatency.get() + " ms max latency, "
+                + mTotal.get() + " connections");
     }
 }
@@ -23,6 +23,7 @@ import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,6 +57,10 @@ public class HttpConnection {
     protected HttpClient mHttpClient = null;
 
     int timeout = 0;
+
+    // set by HttpConnFactory while the connection is handed out
+    final AtomicBoolean inUse = new AtomicBoolean();
+    long maxIdleTime = 0;
     List<InetSocketAddress> targets;
     String localIP = "localhost";
 
@@ -71,7 +76,7 @@ public class HttpConnection {
         }
 
         mDest = dest;
-        mReqEncoder = new HttpRequestEncoder();
+        mReqEncoder = new HttpRequestEncoder(dest.getWireFormat());
         mHttpClient = new HttpClient(factory);
 
         this.timeout = timeout;
@@ -106,6 +111,18 @@ public class HttpConnection {
         this(dest, factory, 0);
     }
 
+    /**
+     * Keeps the connection open between requests.
+     *
+     * @param keepAlive whether to keep the connection open
+     * @param maxIdleTime time in milliseconds after which an idle connection
+     *   is reopened before sending, or 0 to always reuse it
+     */
+    public void setKeepAlive(boolean keepAlive, long maxIdleTime) {
+        mHttpClient.setKeepAlive(keepAlive);
+        this.maxIdleTime = maxIdleTime;
+    }
+
     List<InetSocketAddress> parseTarget(String target, int port) {
 
         List<InetSocketAddress> results = new ArrayList<>();
@@ -271,7 +288,6 @@ public class HttpConnection {
     private HttpResponse doSend(String content) throws EBaseException {
 
         HttpResponse resp = null;
-        boolean reconnected = false;
         SignedAuditEvent auditEvent;
         String localIP = "localhost";
         try {
@@ -289,10 +305,24 @@ public class HttpConnection {
         logger.debug("HttpConnection.doSend: with String content length: " + Integer.toString(content.length()));
         mHttpreq.setContent(content);
 
+        // Drop a connection (kept from a previous request or opened when
+        // this object was created) that has been idle for too long or that
+        // the server has closed, so the request is not sent over a dead
+        // connection. This is not a failure, so it is not audited.
+        if (mHttpClient.connected()
+                && (maxIdleTime > 0 && System.currentTimeMillis() - mHttpClient.getLastUsed() > maxIdleTime
+                        || mHttpClient.isStale())) {
+            logger.debug("HttpConnection.doSend: reopening idle connection");
+            try {
+                mHttpClient.disconnect();
+            } catch (IOException e) {
+                logger.debug("HttpConnection.doSend: unable to close idle connection: " + e.getMessage());
+            }
+        }
+
         try {
             if (!mHttpClient.connected()) {
                 connect();
-                reconnected = true;
             }
 
         } catch (IOException e) {
@@ -309,42 +339,26 @@ public class HttpConnection {
             throw new EBaseException(CMS.getUserMessage("CMS_BASE_CONN_FAILED", "Couldn't reconnect " + e));
         }
 
-        // if remote closed connection want to reconnect and resend.
-        while (resp == null) {
-            try {
-                logger.debug("HttpConnection.doSend: sending request");
-                resp = mHttpClient.send(mHttpreq);
-
-            } catch (IOException e) {
-                logger.error("Unable to send HTTP request: " + e.getMessage(), e);
-
-                auditEvent = ClientAccessSessionEstablishEvent.createFailureEvent(
-                        localIP,
-                        mHttpClient.getHost(),
-                        mHttpClient.getPort(),
-                        "SYSTEM",
-                        "send:" +e.toString());
-                signedAuditLogger.log(auditEvent);
-
-                if (reconnected) {
-                    logger.error("HttpConnection.doSend: resend failed again.");
-                    throw new EBaseException(
-                            CMS.getUserMessage("CMS_BASE_CONN_FAILED", "resend failed again: " + e), e);
-                }
+        // The request is not resent if it fails since the remote
+        // authority may have processed it already.
+        try {
+            logger.debug("HttpConnection.doSend: sending request");
+            resp = mHttpClient.send(mHttpreq);
 
-                try {
-                    logger.warn("HttpConnection.doSend: trying a reconnect ");
-                    connect();
+        } catch (IOException e) {
+            logger.error("Unable to send HTTP request: " + e.getMessage(), e);
 
-                } catch (IOException ex) {
-                    logger.error("HttpConnection.doSend: reconnect for resend failed: " + ex.getMessage(), ex);
-                    throw new EBaseException(
-                            CMS.getUserMessage("CMS_BASE_CONN_FAILED", "reconnect for resend failed: " + ex), e);
-                }
+            auditEvent = ClientAccessSessionEstablishEvent.createFailureEvent(
+                    localIP,
+                    mHttpClient.getHost(),
+                    mHttpClient.getPort(),
+                    "SYSTEM",
+                    "send:" +e.toString());
+            signedAuditLogger.log(auditEvent);
 
-                reconnected = true;
-            }
-        } //while
+            throw new EBaseException(
+                    CMS.getUserMessage("CMS_BASE_CONN_FAILED", "send failed: " + e), e);
+        }
 
         // got reply; check status
         String statusStr = resp.getStatusCode();
@@ -18,6 +18,12 @@
 package com.netscape.cmscore.connector;
 
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.dogtagpki.server.PKIClientSocketListener;
 
@@ -48,6 +54,10 @@ public class HttpConnector extends Connector {
 
     private HttpConnFactory mConnFactory = null;
 
+    // threads for sendAsync(), created on first use
+    private ThreadPoolExecutor mExecutor;
+    private int mMaxConns;
+
     public HttpConnector(
             String nickName,
             String clientCiphers,
@@ -65,12 +75,17 @@ public class HttpConnector extends Connector {
 
         int minConns = config.getInteger("minHttpConns", 1);
         int maxConns = config.getInteger("maxHttpConns", 15);
+        boolean keepAlive = config.getBoolean("keepAlive", false);
+        int keepAliveTimeout = config.getInteger("keepAliveTimeout", 15);
 
         logger.debug("HttpConn: min " + minConns);
         logger.debug("HttpConn: max " + maxConns);
+        logger.debug("HttpConn: keep-alive " + keepAlive);
+        mMaxConns = maxConns;
 
         try {
-            mConnFactory = new HttpConnFactory(minConns, maxConns, dest, nickName, clientCiphers, 0);
+            mConnFactory = new HttpConnFactory(minConns, maxConns, dest, nickName, clientCiphers, 0,
+                    keepAlive, keepAliveTimeout);
         } catch (EBaseException e) {
             logger.warn("HttpConn: can't create new HttpConnFactory: " + e.getMessage(), e);
         }
@@ -100,12 +115,17 @@ public class HttpConnector extends Connector {
 
         int minConns = config.getInteger("minHttpConns", 1);
         int maxConns = config.getInteger("maxHttpConns", 15);
+        boolean keepAlive = config.getBoolean("keepAlive", false);
+        int keepAliveTimeout = config.getInteger("keepAliveTimeout", 15);
 
         logger.debug("HttpConn: min " + minConns);
         logger.debug("HttpConn: max " + maxConns);
+        logger.debug("HttpConn: keep-alive " + keepAlive);
+        mMaxConns = maxConns;
 
         try {
-            mConnFactory = new HttpConnFactory(minConns, maxConns, dest, nickName, clientCiphers, timeout);
+            mConnFactory = new HttpConnFactory(minConns, maxConns, dest, nickName, clientCiphers, timeout,
+                    keepAlive, keepAliveTimeout);
         } catch (EBaseException e) {
             logger.warn("HttpConn: can't create new HttpConnFactory: " + e.getMessage(), e);
         }
@@ -136,6 +156,7 @@ public class HttpConnector extends Connector {
             throw new EBaseException(CMS.getUserMessage("CMS_BASE_INVALID_ATTRIBUTE", "HttpConnector.send(): cannot find uri for op"));
         }
 
+        long startTime = mConnFactory.requestStarted();
         try {
             curConn = mConnFactory.getConn();
             curConn.setRequestURI(uri);
@@ -148,14 +169,63 @@ public class HttpConnector extends Connector {
             if (curConn != null) {
                 mConnFactory.returnConn(curConn);
             }
+            mConnFactory.requestCompleted(startTime, resp != null);
         }
         return resp;
     }
 
+    /**
+     * Sends the message to the remote authority in a separate thread.
+     * At most maxHttpConns messages are sent at the same time.
+     *
+     * @param op operation to determine receiving servlet (multi-uri support)
+     * @param msg Request to be forwarded to remote authority.
+     * @return future HttpResponse, completed with null if the message could not be sent
+     */
+    public CompletableFuture<HttpResponse> sendAsync(String op, String msg) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return send(op, msg);
+            } catch (EBaseException e) {
+                throw new CompletionException(e);
+            }
+        }, getExecutor());
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor() {
+
+        if (mExecutor == null) {
+            AtomicInteger counter = new AtomicInteger();
+            // one thread per connection, idle threads are stopped
+            mExecutor = new ThreadPoolExecutor(
+                    mMaxConns, mMaxConns,
+                    60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(),
+                    r -> {
+                        Thread thread = new Thread(r, "HttpConnector-" + mDest.getHost() + "-" + counter.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            mExecutor.allowCoreThreadTimeOut(true);
+        }
+
+        return mExecutor;
+    }
+
+    /**
+     * Returns the connection factory, which provides the latency and
+     * in-flight request statistics for the remote authority.
+     */
+    public HttpConnFactory getConnFactory() {
+        return mConnFactory;
+    }
+
     @Override
     public boolean send(Request r)
             throws EBaseException {
         HttpConnection curConn = null;
+        boolean sent = false;
+        long startTime = mConnFactory.requestStarted();
 
         try {
             HttpPKIMessage tomsg = new HttpPKIMessage();
@@ -169,6 +239,7 @@ public class HttpConnector extends Connector {
             logger.debug("HttpConnector.send " + curConn);
 
             replymsg = (HttpPKIMessage) curConn.send(tomsg);
+            sent = replymsg != null;
 
             if (replymsg == null) {
                 logger.warn("HttpConncter. replymsg is null");
@@ -251,6 +322,7 @@ public class HttpConnector extends Connector {
             if (curConn != null) {
                 mConnFactory.returnConn(curConn);
             }
+            mConnFactory.requestCompleted(startTime, sent);
         }
     }
 
@@ -266,6 +338,17 @@ public class HttpConnector extends Connector {
         logger.debug("Stopping HttpConnector resender thread");
         if (mResender != null)
             mResender.stop();
+
+        synchronized (this) {
+            if (mExecutor != null) {
+                mExecutor.shutdown();
+                mExecutor = null;
+            }
+        }
+
+        if (mConnFactory != null) {
+            mConnFactory.shutdown();
+        }
     }
 
 }
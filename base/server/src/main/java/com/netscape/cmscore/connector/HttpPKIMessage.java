@@ -18,11 +18,15 @@
 package com.netscape.cmscore.connector;
 
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.OptionalDataException;
+import java.nio.charset.StandardCharsets;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Vector;
 
@@ -38,6 +42,10 @@ public class HttpPKIMessage implements IHttpPKIMessage {
 
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(HttpPKIMessage.class);
 
+    // value types in the binary format
+    private static final int VALUE_STRING = 1;
+    private static final int VALUE_HASHTABLE = 2;
+
     // initialized to "" because nulls don't serialize well.
     public String reqType = "";
     public String reqId = "";
@@ -135,6 +143,143 @@ public class HttpPKIMessage implements IHttpPKIMessage {
         }
     }
 
+    /**
+     * Writes the message in the binary format of HttpRequestEncoder.
+     * Values other than strings and string tables are skipped like
+     * non-serializable values in the legacy format.
+     */
+    void writeBinary(DataOutputStream out) throws IOException {
+
+        writeString(out, reqType);
+        writeString(out, reqId);
+        writeString(out, reqStatus);
+        writeString(out, reqRealm);
+
+        Vector<Object> nameVals = new Vector<>();
+        Enumeration<Object> enum1 = mNameVals.elements();
+
+        while (enum1.hasMoreElements()) {
+            Object key = enum1.nextElement();
+            if (!enum1.hasMoreElements()) {
+                logger.warn("Incorrect pairing of name/value for " + key);
+                break;
+            }
+            Object val = enum1.nextElement();
+
+            if (key instanceof String && isBinaryValue(val)) {
+                nameVals.addElement(key);
+                nameVals.addElement(val);
+            } else {
+                logger.warn("HttpPKIMessage: skipped key=" + key +
+                        " val=" + (val == null ? "null" : val.getClass().getName()));
+            }
+        }
+
+        out.writeInt(nameVals.size() / 2);
+
+        for (int i = 0; i < nameVals.size(); i += 2) {
+            writeString(out, (String) nameVals.elementAt(i));
+            Object val = nameVals.elementAt(i + 1);
+
+            if (val instanceof String) {
+                out.writeByte(VALUE_STRING);
+                writeString(out, (String) val);
+                continue;
+            }
+
+            Hashtable<?, ?> table = (Hashtable<?, ?>) val;
+            out.writeByte(VALUE_HASHTABLE);
+            out.writeInt(table.size());
+            for (Map.Entry<?, ?> entry : table.entrySet()) {
+                writeString(out, (String) entry.getKey());
+                writeString(out, (String) entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Reads a message written by writeBinary().
+     */
+    void readBinary(DataInputStream in) throws IOException {
+
+        reqType = readString(in);
+        reqId = readString(in);
+        reqStatus = readString(in);
+        reqRealm = readString(in);
+        mNameVals = new Vector<>();
+
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String key = readString(in);
+            int type = in.readByte();
+
+            if (type == VALUE_STRING) {
+                mNameVals.addElement(key);
+                mNameVals.addElement(readString(in));
+
+            } else if (type == VALUE_HASHTABLE) {
+                int size = in.readInt();
+                Hashtable<String, String> table = new Hashtable<>();
+                for (int j = 0; j < size; j++) {
+                    table.put(readString(in), readString(in));
+                }
+                mNameVals.addElement(key);
+                mNameVals.addElement(table);
+
+            } else {
+                throw new IOException("Unknown value type " + type + " for " + key);
+            }
+        }
+    }
+
+    private static boolean isBinaryValue(Object val) {
+
+        if (val instanceof String) {
+            return true;
+        }
+
+        if (!(val instanceof Hashtable)) {
+            return false;
+        }
+
+        for (Map.Entry<?, ?> entry : ((Hashtable<?, ?>) val).entrySet()) {
+            if (!(entry.getKey() instanceof String) || !(entry.getValue() instanceof String)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+
+        int length = in.readInt();
+
+        if (length < 0) {
+            return null;
+        }
+
+        if (length > in.available()) {
+            throw new IOException("Invalid string length: " + length);
+        }
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
     private void writeObject(java.io.ObjectOutputStream out)
             throws IOException {
         logger.debug("writeObject");
@@ -19,6 +19,8 @@ package com.netscape.cmscore.connector;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
@@ -30,13 +32,55 @@ import org.mozilla.jss.netscape.security.util.Utils;
  * This represents a rquest encoder that serializes and
  * deserializes a request to a Remote Authority so that it can be sent through
  * the connector.
+ *
+ * Messages are encoded either with Java serialization (legacy format)
+ * or, for HttpPKIMessage, with a versioned binary format that starts
+ * with a magic number. The decoder detects the format of each message,
+ * so a server can always reply in the format of the request.
  */
 public class HttpRequestEncoder {
 
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(HttpRequestEncoder.class);
 
+    public static final String FORMAT_LEGACY = "legacy";
+    public static final String FORMAT_BINARY = "binary";
+
+    // "PKIM" followed by the format version
+    private static final int BINARY_MAGIC = 0x504B494D;
+    private static final int BINARY_VERSION = 1;
+
+    private String mFormat = FORMAT_LEGACY;
+
+    public HttpRequestEncoder() {
+    }
+
+    public HttpRequestEncoder(String format) {
+        if (FORMAT_BINARY.equals(format)) {
+            mFormat = FORMAT_BINARY;
+        }
+    }
+
+    public String getFormat() {
+        return mFormat;
+    }
+
     /**
-     * Encodes a request object.
+     * Returns the format of an encoded message.
+     */
+    public static String getFormat(String s) {
+        return isBinary(Utils.base64decode(s)) ? FORMAT_BINARY : FORMAT_LEGACY;
+    }
+
+    private static boolean isBinary(byte[] data) {
+        return data.length >= 4
+                && (data[0] & 0xFF) == (BINARY_MAGIC >>> 24)
+                && (data[1] & 0xFF) == ((BINARY_MAGIC >>> 16) & 0xFF)
+                && (data[2] & 0xFF) == ((BINARY_MAGIC >>> 8) & 0xFF)
+                && (data[3] & 0xFF) == (BINARY_MAGIC & 0xFF);
+    }
+
+    /**
+     * Encodes a request object in the format of this encoder.
      *
      * @param r Object to serve as the source of the message.
      * @return String containing encoded message.
@@ -44,6 +88,33 @@ public class HttpRequestEncoder {
      */
     public String encode(Object r)
             throws IOException {
+        return encode(r, mFormat);
+    }
+
+    /**
+     * Encodes a request object in the given format. Objects other than
+     * HttpPKIMessage are always encoded in the legacy format.
+     *
+     * @param r Object to serve as the source of the message.
+     * @param format FORMAT_LEGACY or FORMAT_BINARY
+     * @return String containing encoded message.
+     * @exception IOException Failure of the encoding operation due to IO error.
+     */
+    public String encode(Object r, String format)
+            throws IOException {
+
+        if (FORMAT_BINARY.equals(format) && r instanceof HttpPKIMessage) {
+            ByteArrayOutputStream ba = new ByteArrayOutputStream();
+            DataOutputStream os = new DataOutputStream(ba);
+
+            os.writeInt(BINARY_MAGIC);
+            os.writeByte(BINARY_VERSION);
+            ((HttpPKIMessage) r).writeBinary(os);
+            os.flush();
+
+            return Utils.base64encode(ba.toByteArray(), true);
+        }
+
         String s = null;
         byte[] serial;
         ByteArrayOutputStream ba = new ByteArrayOutputStream();
@@ -70,6 +141,21 @@ public class HttpRequestEncoder {
 
             serial = Utils.base64decode(s);
             ByteArrayInputStream ba = new ByteArrayInputStream(serial);
+
+            if (isBinary(serial)) {
+                DataInputStream ds = new DataInputStream(ba);
+                ds.readInt();
+
+                int version = ds.readUnsignedByte();
+                if (version != BINARY_VERSION) {
+                    throw new IOException("Unsupported message format version: " + version);
+                }
+
+                HttpPKIMessage msg = new HttpPKIMessage();
+                msg.readBinary(ds);
+                return msg;
+            }
+
             ObjectInputStream is = new ObjectInputStream(ba);
 
             result = is.readObject();
@@ -35,6 +35,7 @@ public class RemoteAuthority {
     Hashtable<String, String> mURIs = new Hashtable<>();
     String mContentType = null;
     int mTimeout = 0;
+    String mWireFormat = HttpRequestEncoder.FORMAT_LEGACY;
 
     /**
      * host parameter can be:
@@ -139,4 +140,17 @@ public class RemoteAuthority {
     public String getContentType() {
         return mContentType;
     }
+
+    /**
+     * Retrieves the format of the messages sent to the remote Authority.
+     *
+     * @return HttpRequestEncoder.FORMAT_LEGACY or HttpRequestEncoder.FORMAT_BINARY
+     */
+    public String getWireFormat() {
+        return mWireFormat;
+    }
+
+    public void setWireFormat(String wireFormat) {
+        mWireFormat = wireFormat;
+    }
 }
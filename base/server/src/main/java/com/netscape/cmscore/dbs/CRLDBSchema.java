@@ -36,6 +36,8 @@ public class CRLDBSchema {
     public static final String LDAP_ATTR_DELTA_SIZE = "deltaSize";
     public static final String LDAP_ATTR_THIS_UPDATE = "thisUpdate";
     public static final String LDAP_ATTR_NEXT_UPDATE = "nextUpdate";
+    public static final String LDAP_ATTR_DELTA_THIS_UPDATE = "deltaThisUpdate";
+    public static final String LDAP_ATTR_DELTA_NEXT_UPDATE = "deltaNextUpdate";
     public static final String LDAP_ATTR_FIRST_UNSAVED = "firstUnsaved";
     public static final String LDAP_ATTR_CRL = "certificateRevocationList";
     public static final String LDAP_ATTR_CA_CERT = "cACertificate";
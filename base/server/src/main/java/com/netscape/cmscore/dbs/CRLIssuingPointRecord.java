@@ -45,6 +45,8 @@ public class CRLIssuingPointRecord implements IDBObj {
     public static final String ATTR_DELTA_SIZE = "deltaSize";
     public static final String ATTR_THIS_UPDATE = "thisUpdate";
     public static final String ATTR_NEXT_UPDATE = "nextUpdate";
+    public static final String ATTR_DELTA_THIS_UPDATE = "deltaThisUpdate";
+    public static final String ATTR_DELTA_NEXT_UPDATE = "deltaNextUpdate";
     public static final String ATTR_FIRST_UNSAVED = "firstUnsaved";
     public static final String ATTR_CRL = "certificaterevocationlist";
     public static final String ATTR_CRL_CACHE = "crlCache";
@@ -64,6 +66,8 @@ public class CRLIssuingPointRecord implements IDBObj {
     protected Date mNextUpdate = null;
     protected BigInteger mDeltaCRLNumber = null; // delta CRL number
     protected Long mDeltaCRLSize = null;
+    protected Date mDeltaThisUpdate = null;
+    protected Date mDeltaNextUpdate = null;
     protected String mFirstUnsaved = null;
     protected byte mCRL[] = null;
     protected byte mCACert[] = null;
@@ -81,6 +85,8 @@ public class CRLIssuingPointRecord implements IDBObj {
         mNames.addElement(ATTR_DELTA_SIZE);
         mNames.addElement(ATTR_THIS_UPDATE);
         mNames.addElement(ATTR_NEXT_UPDATE);
+        mNames.addElement(ATTR_DELTA_THIS_UPDATE);
+        mNames.addElement(ATTR_DELTA_NEXT_UPDATE);
         mNames.addElement(ATTR_FIRST_UNSAVED);
         mNames.addElement(ATTR_CRL);
         mNames.addElement(ATTR_CA_CERT);
@@ -156,6 +162,10 @@ public class CRLIssuingPointRecord implements IDBObj {
             mDeltaCRLNumber = (BigInteger) obj;
         } else if (name.equalsIgnoreCase(ATTR_DELTA_SIZE)) {
             mDeltaCRLSize = (Long) obj;
+        } else if (name.equalsIgnoreCase(ATTR_DELTA_THIS_UPDATE)) {
+            mDeltaThisUpdate = (Date) obj;
+        } else if (name.equalsIgnoreCase(ATTR_DELTA_NEXT_UPDATE)) {
+            mDeltaNextUpdate = (Date) obj;
         } else if (name.equalsIgnoreCase(ATTR_FIRST_UNSAVED)) {
             mFirstUnsaved = (String) obj;
         } else if (name.equalsIgnoreCase(ATTR_CRL)) {
@@ -193,6 +203,10 @@ public class CRLIssuingPointRecord implements IDBObj {
             return mDeltaCRLNumber;
         } else if (name.equalsIgnoreCase(ATTR_DELTA_SIZE)) {
             return mDeltaCRLSize;
+        } else if (name.equalsIgnoreCase(ATTR_DELTA_THIS_UPDATE)) {
+            return mDeltaThisUpdate;
+        } else if (name.equalsIgnoreCase(ATTR_DELTA_NEXT_UPDATE)) {
+            return mDeltaNextUpdate;
         } else if (name.equalsIgnoreCase(ATTR_FIRST_UNSAVED)) {
             return mFirstUnsaved;
         } else if (name.equalsIgnoreCase(ATTR_CRL)) {
@@ -292,6 +306,24 @@ public class CRLIssuingPointRecord implements IDBObj {
         return mDeltaCRLSize;
     }
 
+    /**
+     * Retrieves this update time of the delta CRL.
+     *
+     * @return time of this update of the delta CRL
+     */
+    public Date getDeltaThisUpdate() {
+        return mDeltaThisUpdate;
+    }
+
+    /**
+     * Retrieves next update time of the delta CRL.
+     *
+     * @return time of next update of the delta CRL
+     */
+    public Date getDeltaNextUpdate() {
+        return mDeltaNextUpdate;
+    }
+
     /**
      * Retrieve Retrieve reference to the first unsaved data.
      *
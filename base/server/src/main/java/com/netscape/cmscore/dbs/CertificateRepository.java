@@ -77,6 +77,7 @@ public class CertificateRepository extends Repository {
     private static final String PROP_COLLISION_RECOVERY_STEPS = "collisionRecoverySteps";
     private static final String PROP_COLLISION_RECOVERY_REGENERATIONS = "collisionRecoveryRegenerations";
     private static final String PROP_MINIMUM_RANDOM_BITS = "minimumRandomBits";
+    private static final String PROP_RANDOM_SERIAL_NUMBER_POOL_SIZE = "randomSerialNumberPoolSize";
     private static final BigInteger BI_MINUS_ONE = BigInteger.ONE.negate();
 
     public static final String PROP_CERT_ID_GENERATOR = "cert.id.generator";
@@ -95,6 +96,9 @@ public class CertificateRepository extends Repository {
     private DatabaseConfig mDBConfig = null;
     private boolean mForceModeChange = false;
 
+    private int mRandomSerialNumberPoolSize;
+    private volatile SerialNumberPool mSerialNumberPool;
+
     /**
      * Constructs a certificate repository.
      */
@@ -202,6 +206,9 @@ public class CertificateRepository extends Repository {
 
         if (mEnableRandomSerialNumbers ^ random || forceModeChange) {
             mEnableRandomSerialNumbers = random;
+            if (!mEnableRandomSerialNumbers) {
+                stopSerialNumberPool();
+            }
             logger.debug("CertificateRepository:  setEnableRandomSerialNumbers   switching to " +
                       ((random)?PROP_RANDOM_MODE:PROP_SEQUENTIAL_MODE) + " mode");
             if (updateMode) {
@@ -235,7 +242,13 @@ public class CertificateRepository extends Repository {
         }
     }
 
-    private BigInteger getRandomNumber() throws EBaseException {
+    /**
+     * Returns the bounds of the current serial number range. The bounds
+     * are read under the repository lock and passed to the random serial
+     * number generator, so the generator can run without the lock while
+     * the range is being changed.
+     */
+    private synchronized RandomRange getRandomRange() throws EBaseException {
 
         initCache();
 
@@ -246,8 +259,14 @@ public class CertificateRepository extends Repository {
             logger.debug("CertificateRepository: getRandomNumber  mBitLength="+mBitLength+
                       " >mMinRandomBitLength="+mMinRandomBitLength);
         }
-        if (mBitLength < mMinRandomBitLength) {
-            logger.debug("CertificateRepository: getRandomNumber  mBitLength="+mBitLength+
+
+        return new RandomRange(mMinSerialNo, mMaxSerialNo, mRangeSize, mBitLength);
+    }
+
+    private BigInteger getRandomNumber(RandomRange range) throws EBaseException {
+
+        if (range.bitLength < mMinRandomBitLength) {
+            logger.debug("CertificateRepository: getRandomNumber  mBitLength="+range.bitLength+
                       " <mMinRandomBitLength="+mMinRandomBitLength);
             logger.debug("CertificateRepository: getRandomNumber:  Range size is too small to support random certificate serial numbers.");
             throw new EBaseException ("Range size is too small to support random certificate serial numbers.");
@@ -257,23 +276,23 @@ public class CertificateRepository extends Repository {
         JssSubsystem jssSubsystem = engine.getJSSSubsystem();
 
         SecureRandom random = jssSubsystem.getRandomNumberGenerator();
-        BigInteger randomNumber = new BigInteger(mBitLength, random);
-        randomNumber = (randomNumber.multiply(mRangeSize)).shiftRight(mBitLength);
+        BigInteger randomNumber = new BigInteger(range.bitLength, random);
+        randomNumber = (randomNumber.multiply(range.size)).shiftRight(range.bitLength);
         logger.debug("CertificateRepository: getRandomNumber  randomNumber="+randomNumber);
 
         return randomNumber;
     }
 
-    private BigInteger getRandomSerialNumber(BigInteger randomNumber) throws EBaseException {
+    private BigInteger getRandomSerialNumber(RandomRange range, BigInteger randomNumber) throws EBaseException {
         BigInteger nextSerialNumber = null;
 
-        nextSerialNumber = randomNumber.add(mMinSerialNo);
+        nextSerialNumber = randomNumber.add(range.minSerialNo);
         logger.debug("CertificateRepository: getRandomSerialNumber  nextSerialNumber="+nextSerialNumber);
 
         return nextSerialNumber;
     }
 
-    private BigInteger checkSerialNumbers(BigInteger randomNumber, BigInteger serialNumber) throws EBaseException {
+    private BigInteger checkSerialNumbers(RandomRange range, BigInteger randomNumber, BigInteger serialNumber) throws EBaseException {
         BigInteger nextSerialNumber = null;
         BigInteger initialRandomNumber = randomNumber;
         BigInteger delta = BigInteger.ZERO;
@@ -296,18 +315,18 @@ public class CertificateRepository extends Repository {
             if (nextSerialNumber == null) {
                 if (i%2 == 0) {
                     delta = delta.add(BigInteger.ONE);
-                    serialNumber = getRandomSerialNumber(initialRandomNumber.add(delta));
+                    serialNumber = getRandomSerialNumber(range, initialRandomNumber.add(delta));
 
-                    if (mMaxSerialNo != null && serialNumber.compareTo(mMaxSerialNo) > 0) {
-                        serialNumber = getRandomSerialNumber(initialRandomNumber.subtract(delta));
+                    if (range.maxSerialNo != null && serialNumber.compareTo(range.maxSerialNo) > 0) {
+                        serialNumber = getRandomSerialNumber(range, initialRandomNumber.subtract(delta));
                         i++;
                         n++;
                     }
                 } else {
-                    serialNumber = getRandomSerialNumber(initialRandomNumber.subtract(delta));
-                    if (mMinSerialNo != null && serialNumber.compareTo(mMinSerialNo) < 0) {
+                    serialNumber = getRandomSerialNumber(range, initialRandomNumber.subtract(delta));
+                    if (range.minSerialNo != null && serialNumber.compareTo(range.minSerialNo) < 0) {
                         delta = delta.add(BigInteger.ONE);
-                        serialNumber = getRandomSerialNumber(initialRandomNumber.add(delta));
+                        serialNumber = getRandomSerialNumber(range, initialRandomNumber.add(delta));
                         i++;
                         n++;
                     }
@@ -319,55 +338,167 @@ public class CertificateRepository extends Repository {
         return nextSerialNumber;
     }
 
+    /**
+     * Generates a random serial number in the current range that is
+     * not used in the database.
+     *
+     * @return serial number, or null if no available number was found
+     */
+    private BigInteger generateRandomSerialNumber() throws EBaseException {
+
+        RandomRange range = getRandomRange();
+        BigInteger nextSerialNumber = null;
+        int i = 0;
+
+        do {
+            if (i > 0) {
+                logger.debug("CertificateRepository: getNextSerialNumber  regenerating serial number");
+            }
+            BigInteger randomNumber = getRandomNumber(range);
+            nextSerialNumber = getRandomSerialNumber(range, randomNumber);
+            nextSerialNumber = checkSerialNumbers(range, randomNumber, nextSerialNumber);
+            i++;
+        } while (nextSerialNumber == null && i < mMaxCollisionRecoveryRegenerations);
+
+        return nextSerialNumber;
+    }
+
+    /**
+     * Returns the pool of pre-generated random serial numbers,
+     * or null if the pool is not enabled.
+     */
+    private synchronized SerialNumberPool getSerialNumberPool() throws EBaseException {
+
+        initCache();
+
+        if (!mEnableRandomSerialNumbers || mRandomSerialNumberPoolSize <= 0) {
+            return null;
+        }
+
+        if (mSerialNumberPool == null) {
+            mSerialNumberPool = new SerialNumberPool(this::generateRandomSerialNumber, mRandomSerialNumberPoolSize);
+            mSerialNumberPool.start();
+        }
+
+        return mSerialNumberPool;
+    }
+
+    private synchronized void stopSerialNumberPool() {
+
+        if (mSerialNumberPool == null) {
+            return;
+        }
+
+        mSerialNumberPool.stop();
+        mSerialNumberPool = null;
+    }
+
+    /**
+     * Counts a random serial number against the current range and
+     * moves to the next range if necessary.
+     *
+     * @return false if the serial number is outside the current range,
+     * e.g. if it was generated before the range changed
+     */
+    private synchronized boolean issueRandomSerialNumber(BigInteger nextSerialNumber) throws EBaseException {
+
+        boolean bounded = mMinSerialNo != null && mMaxSerialNo != null;
+        boolean inRange = !bounded ||
+                nextSerialNumber.compareTo(mMinSerialNo) >= 0 &&
+                nextSerialNumber.compareTo(mMaxSerialNo) <= 0;
+
+        if (mCounter.compareTo(BigInteger.ZERO) >= 0 && bounded && inRange) {
+            mCounter = mCounter.add(BigInteger.ONE);
+        }
+        logger.debug("CertificateRepository: getNextSerialNumber  nextSerialNumber="+
+                  nextSerialNumber+"  mCounter="+mCounter);
+
+        BigInteger minSerialNo = mMinSerialNo;
+        super.checkRange();
+
+        if (mSerialNumberPool != null && minSerialNo != mMinSerialNo) {
+            // numbers in the pool belong to the previous range
+            mSerialNumberPool.clear();
+        }
+
+        return inRange;
+    }
+
     /**
      * Retrieves the next certificate serial number, and also increases
      * the serial number by one.
      *
+     * If random serial numbers are enabled with a serial number pool,
+     * the numbers are generated and checked against the database without
+     * holding the repository lock. The lock is only held to count the
+     * number against the current range.
+     *
      * @return serial number
      * @exception EBaseException failed to retrieve next serial number
      */
     @Override
-    public synchronized BigInteger getNextSerialNumber()
+    public BigInteger getNextSerialNumber()
             throws EBaseException {
 
         if (idGenerator == IDGenerator.RANDOM) {
             return super.getNextSerialNumber();
         }
 
+        SerialNumberPool pool = getSerialNumberPool();
+
+        if (pool == null) {
+            return getNextSerialNumberLocked();
+        }
+
+        BigInteger nextSerialNumber;
+
+        while ((nextSerialNumber = pool.poll()) != null) {
+            if (issueRandomSerialNumber(nextSerialNumber)) {
+                return nextSerialNumber;
+            }
+            logger.debug("CertificateRepository: Discarding serial number " + nextSerialNumber + " outside current range");
+        }
+
+        logger.debug("CertificateRepository: Serial number pool is empty");
+
+        int i = 0;
+        do {
+            nextSerialNumber = generateRandomSerialNumber();
+
+            if (nextSerialNumber == null) {
+                logger.error("CertificateRepository: in getNextSerialNumber  nextSerialNumber is null");
+                throw new EBaseException( "nextSerialNumber is null" );
+            }
+
+            if (pool.reserve(nextSerialNumber) && issueRandomSerialNumber(nextSerialNumber)) {
+                return nextSerialNumber;
+            }
+
+            i++;
+        } while (i < mMaxCollisionRecoveryRegenerations);
+
+        logger.error("CertificateRepository: in getNextSerialNumber  unable to reserve serial number");
+        throw new EBaseException( "nextSerialNumber is null" );
+    }
+
+    private synchronized BigInteger getNextSerialNumberLocked()
+            throws EBaseException {
+
         BigInteger nextSerialNumber = null;
-        BigInteger randomNumber = null;
 
         initCache();
         logger.debug("CertificateRepository: getNextSerialNumber  mEnableRandomSerialNumbers="+mEnableRandomSerialNumbers);
 
         if (mEnableRandomSerialNumbers) {
-            int i = 0;
-            do {
-                if (i > 0) {
-                    logger.debug("CertificateRepository: getNextSerialNumber  regenerating serial number");
-                }
-                randomNumber = getRandomNumber();
-                nextSerialNumber = getRandomSerialNumber(randomNumber);
-                nextSerialNumber = checkSerialNumbers(randomNumber, nextSerialNumber);
-                i++;
-            } while (nextSerialNumber == null && i < mMaxCollisionRecoveryRegenerations);
+            nextSerialNumber = generateRandomSerialNumber();
 
             if (nextSerialNumber == null) {
                 logger.error("CertificateRepository: in getNextSerialNumber  nextSerialNumber is null");
                 throw new EBaseException( "nextSerialNumber is null" );
             }
 
-            if (mCounter.compareTo(BigInteger.ZERO) >= 0 &&
-                mMinSerialNo != null && mMaxSerialNo != null &&
-                nextSerialNumber != null &&
-                nextSerialNumber.compareTo(mMinSerialNo) >= 0 &&
-                nextSerialNumber.compareTo(mMaxSerialNo) <= 0) {
-                mCounter = mCounter.add(BigInteger.ONE);
-            }
-            logger.debug("CertificateRepository: getNextSerialNumber  nextSerialNumber="+
-                      nextSerialNumber+"  mCounter="+mCounter);
+            issueRandomSerialNumber(nextSerialNumber);
 
-            super.checkRange();
         } else {
             nextSerialNumber = super.getNextSerialNumber();
         }
@@ -557,6 +688,7 @@ public class CertificateRepository extends Repository {
         mMinRandomBitLength = mDBConfig.getInteger(PROP_MINIMUM_RANDOM_BITS, 4);
         mMaxCollisionRecoverySteps = mDBConfig.getInteger(PROP_COLLISION_RECOVERY_STEPS, 10);
         mMaxCollisionRecoveryRegenerations = mDBConfig.getInteger(PROP_COLLISION_RECOVERY_REGENERATIONS, 3);
+        mRandomSerialNumberPoolSize = mDBConfig.getInteger(PROP_RANDOM_SERIAL_NUMBER_POOL_SIZE, 0);
         boolean modeChange = (mEnableRandomSerialNumbers && crMode != null && crMode.equals(PROP_SEQUENTIAL_MODE)) ||
                              ((!mEnableRandomSerialNumbers) && crMode != null && crMode.equals(PROP_RANDOM_MODE));
         boolean enableRsnAtConfig = mEnableRandomSerialNumbers && engine.isPreOpMode() &&
@@ -2182,5 +2314,25 @@ public class CertificateRepository extends Repository {
     }
 
     public void shutdown() {
+        stopSerialNumberPool();
+    }
+
+    /**
+     * Bounds of the serial number range used to generate a random
+     * serial number.
+     */
+    private static class RandomRange {
+
+        final BigInteger minSerialNo;
+        final BigInteger maxSerialNo;
+        final BigInteger size;
+        final int bitLength;
+
+        RandomRange(BigInteger minSerialNo, BigInteger maxSerialNo, BigInteger size, int bitLength) {
+            this.minSerialNo = minSerialNo;
+            this.maxSerialNo = maxSerialNo;
+            this.size = size;
+            this.bitLength = bitLength;
+        }
     }
 }
@@ -316,6 +316,10 @@ public class DBSubsystem {
                     DateMapper(CRLDBSchema.LDAP_ATTR_THIS_UPDATE));
             reg.registerAttribute(CRLIssuingPointRecord.ATTR_NEXT_UPDATE, new
                     DateMapper(CRLDBSchema.LDAP_ATTR_NEXT_UPDATE));
+            reg.registerAttribute(CRLIssuingPointRecord.ATTR_DELTA_THIS_UPDATE, new
+                    DateMapper(CRLDBSchema.LDAP_ATTR_DELTA_THIS_UPDATE));
+            reg.registerAttribute(CRLIssuingPointRecord.ATTR_DELTA_NEXT_UPDATE, new
+                    DateMapper(CRLDBSchema.LDAP_ATTR_DELTA_NEXT_UPDATE));
             reg.registerAttribute(CRLIssuingPointRecord.ATTR_FIRST_UNSAVED, new
                     StringMapper(CRLDBSchema.LDAP_ATTR_FIRST_UNSAVED));
             reg.registerAttribute(CRLIssuingPointRecord.ATTR_CRL, new
@@ -327,11 +331,11 @@ public class DBSubsystem {
             reg.registerAttribute(CRLIssuingPointRecord.ATTR_CRL_CACHE, new
                     ObjectStreamMapper(CRLDBSchema.LDAP_ATTR_CRL_CACHE));
             reg.registerAttribute(CRLIssuingPointRecord.ATTR_REVOKED_CERTS, new
-                    ObjectStreamMapper(CRLDBSchema.LDAP_ATTR_REVOKED_CERTS));
+                    RevokedCertsMapper(CRLDBSchema.LDAP_ATTR_REVOKED_CERTS));
             reg.registerAttribute(CRLIssuingPointRecord.ATTR_UNREVOKED_CERTS, new
-                    ObjectStreamMapper(CRLDBSchema.LDAP_ATTR_UNREVOKED_CERTS));
+                    RevokedCertsMapper(CRLDBSchema.LDAP_ATTR_UNREVOKED_CERTS));
             reg.registerAttribute(CRLIssuingPointRecord.ATTR_EXPIRED_CERTS, new
-                    ObjectStreamMapper(CRLDBSchema.LDAP_ATTR_EXPIRED_CERTS));
+                    RevokedCertsMapper(CRLDBSchema.LDAP_ATTR_EXPIRED_CERTS));
 
             boolean registered = reg.isObjectClassRegistered(RepositoryRecord.class.getName());
             logger.debug("registered: " + registered);
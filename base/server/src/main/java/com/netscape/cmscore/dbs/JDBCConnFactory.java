@@ -0,0 +1,296 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.dbs;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Factory for getting JDBC connections to a database with the same
+ * URL and properties.
+ *
+ * Maintains a pool of up to maxConns connections so that concurrent
+ * requests do not share a single connection. The connections stay
+ * open between requests, so statements prepared by the JDBC driver
+ * (e.g. the PostgreSQL driver's per-connection statement cache) are
+ * reused as well. A connection that has been idle for a while is
+ * validated before it is handed out again.
+ *
+ * Every connection obtained with getConn() must be released with
+ * returnConn().
+ */
+public class JDBCConnFactory {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(JDBCConnFactory.class);
+
+    public static final String PROP_MINCONNS = "minConns";
+    public static final String PROP_MAXCONNS = "maxConns";
+    public static final String PROP_TIMEOUT = "connTimeout";
+
+    public static final int DEFAULT_MIN_CONNS = 1;
+    public static final int DEFAULT_MAX_CONNS = 10;
+    public static final int DEFAULT_TIMEOUT = 30; // seconds
+
+    // idle time after which a connection is validated before reuse
+    public static final long VALIDATION_INTERVAL = 30000; // milliseconds
+    public static final int VALIDATION_TIMEOUT = 5; // seconds
+
+    private String url;
+    private Properties info;
+
+    private int minConns = DEFAULT_MIN_CONNS;
+    private int maxConns = DEFAULT_MAX_CONNS;
+    private long timeout = DEFAULT_TIMEOUT * 1000L; // milliseconds
+
+    // most recently used connections first
+    private BlockingDeque<IdleConn> idleConns = new LinkedBlockingDeque<>();
+
+    // one permit per connection that may be handed out
+    private Semaphore permits;
+
+    private volatile boolean closed;
+
+    private LongAdder created = new LongAdder();
+    private LongAdder waits = new LongAdder();
+
+    /**
+     * Creates a factory for the given JDBC URL. The pool parameters
+     * (minConns, maxConns, connTimeout) are removed from the properties,
+     * the remaining properties are passed to the JDBC driver.
+     */
+    public JDBCConnFactory(String url, Properties info) {
+
+        this.url = url;
+        this.info = new Properties();
+        this.info.putAll(info);
+
+        String value = (String) this.info.remove(PROP_MINCONNS);
+        if (value != null) {
+            minConns = Integer.parseInt(value);
+        }
+
+        value = (String) this.info.remove(PROP_MAXCONNS);
+        if (value != null) {
+            maxConns = Integer.parseInt(value);
+        }
+
+        value = (String) this.info.remove(PROP_TIMEOUT);
+        if (value != null) {
+            timeout = Integer.parseInt(value) * 1000L;
+        }
+
+        if (maxConns < 1) {
+            maxConns = 1;
+        }
+
+        if (minConns > maxConns) {
+            minConns = maxConns;
+        }
+
+        logger.info("JDBCConnFactory: min conns: " + minConns);
+        logger.info("JDBCConnFactory: max conns: " + maxConns);
+        logger.info("JDBCConnFactory: timeout: " + timeout / 1000 + " s");
+
+        permits = new Semaphore(maxConns, true);
+    }
+
+    /**
+     * Opens the minimum number of connections. Failures are logged
+     * so the server can start while the database is unavailable;
+     * connections are then opened on demand.
+     */
+    public void init() {
+
+        for (int i = idleConns.size(); i < minConns; i++) {
+            try {
+                idleConns.offerLast(new IdleConn(connect()));
+
+            } catch (SQLException e) {
+                logger.warn("JDBCConnFactory: Unable to connect to " + url + ": " + e.getMessage());
+                logger.warn("JDBCConnFactory: SQL state: " + e.getSQLState());
+                break;
+            }
+        }
+    }
+
+    public int getMinConns() {
+        return minConns;
+    }
+
+    public int getMaxConns() {
+        return maxConns;
+    }
+
+    /**
+     * Returns the number of connections in use.
+     */
+    public int getBusyConns() {
+        return maxConns - permits.availablePermits();
+    }
+
+    /**
+     * Returns the number of open connections that are not in use.
+     */
+    public int getIdleConns() {
+        return idleConns.size();
+    }
+
+    /**
+     * Returns a connection from the pool, or a new connection if no
+     * idle connection is available. Waits up to the configured timeout
+     * if maxConns connections are already in use.
+     */
+    public Connection getConn() throws SQLException {
+
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+
+        if (!permits.tryAcquire()) {
+            waits.increment();
+            logger.debug("JDBCConnFactory: Waiting for connection");
+
+            try {
+                if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                    // https://www.postgresql.org/docs/current/errcodes-appendix.html
+                    throw new SQLException(
+                            "Unable to get database connection in " + timeout / 1000 + " s"
+                            + " (" + maxConns + " connections in use)",
+                            "53300");
+                }
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for database connection", e);
+            }
+        }
+
+        try {
+            IdleConn idleConn;
+            while ((idleConn = idleConns.pollFirst()) != null) {
+
+                Connection conn = idleConn.conn;
+
+                if (System.currentTimeMillis() - idleConn.lastUsed < VALIDATION_INTERVAL) {
+                    return conn;
+                }
+
+                if (isValid(conn)) {
+                    return conn;
+                }
+
+                logger.info("JDBCConnFactory: Closing invalid connection");
+                close(conn);
+            }
+
+            return connect();
+
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a connection obtained with getConn() to the pool. Broken
+     * connections are closed, and pending transactions are rolled back.
+     */
+    public void returnConn(Connection conn) {
+
+        if (conn == null) {
+            return;
+        }
+
+        try {
+            if (closed || conn.isClosed()) {
+                close(conn);
+                return;
+            }
+
+            if (!conn.getAutoCommit()) {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+
+            idleConns.offerFirst(new IdleConn(conn));
+
+        } catch (SQLException e) {
+            logger.warn("JDBCConnFactory: Unable to reuse connection: " + e.getMessage());
+            close(conn);
+
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Closes all idle connections. Connections in use are closed when
+     * they are returned.
+     */
+    public void reset() {
+
+        IdleConn idleConn;
+        while ((idleConn = idleConns.pollFirst()) != null) {
+            close(idleConn.conn);
+        }
+    }
+
+    public void shutdown() {
+
+        logStats();
+
+        closed = true;
+        reset();
+    }
+
+    public void logStats() {
+        logger.info("JDBCConnFactory: " + created.sum() + " connections created, "
+                + getBusyConns() + " busy, " + idleConns.size() + " idle, "
+                + waits.sum() + " waits");
+    }
+
+    private Connection connect() throws SQLException {
+
+        logger.info("JDBCConnFactory: Connecting to " + url);
+        Connection conn = DriverManager.getConnection(url, info);
+        created.increment();
+
+        return conn;
+    }
+
+    private boolean isValid(Connection conn) {
+        try {
+            return conn.isValid(VALIDATION_TIMEOUT);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void close(Connection conn) {
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            logger.warn("JDBCConnFactory: Unable to close connection: " + e.getMessage());
+        }
+    }
+
+    static class IdleConn {
+
+        final Connection conn;
+        final long lastUsed = System.currentTimeMillis();
+
+        IdleConn(Connection conn) {
+            this.conn = conn;
+        }
+    }
+}
@@ -233,7 +233,15 @@ public class LDAPSession extends DBSSession {
                 Modification mod = (Modification) e.nextElement();
                 LDAPAttributeSet attrs = new LDAPAttributeSet();
 
-                dbSubsystem.getRegistry().mapObject(null, mod.getName(), mod.getValue(), attrs);
+                if (mod.getValue() == null) {
+                    // replace or delete all values of the attribute
+                    String[] names = dbSubsystem.getRegistry().getLDAPAttributes(new String[] { mod.getName() });
+                    for (String ldapName : names) {
+                        attrs.add(new LDAPAttribute(ldapName));
+                    }
+                } else {
+                    dbSubsystem.getRegistry().mapObject(null, mod.getName(), mod.getValue(), attrs);
+                }
                 Enumeration<LDAPAttribute> e0 = attrs.getAttributes();
 
                 while (e0.hasMoreElements()) {
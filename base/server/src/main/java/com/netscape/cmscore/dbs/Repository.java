@@ -304,11 +304,14 @@ public abstract class Repository {
      * @return serial number
      * @exception EBaseException failed to retrieve next serial number
      */
-    public synchronized BigInteger getNextSerialNumber() throws
+    public BigInteger getNextSerialNumber() throws
             EBaseException {
 
         if (idGenerator == IDGenerator.RANDOM) {
 
+            // random IDs do not depend on the repository state
+            // so they are generated without locking
+
             logger.debug("Repository: Generating random serial number");
 
             // JSS BigInt does not allow negative value.
@@ -320,6 +323,12 @@ public abstract class Repository {
             return id;
         }
 
+        return getNextSequentialSerialNumber();
+    }
+
+    private synchronized BigInteger getNextSequentialSerialNumber() throws
+            EBaseException {
+
         logger.debug("Repository: in getNextSerialNumber. ");
 
         initCache();
@@ -0,0 +1,481 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.dbs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.Vector;
+
+import org.mozilla.jss.netscape.security.util.DerOutputStream;
+import org.mozilla.jss.netscape.security.util.DerValue;
+import org.mozilla.jss.netscape.security.x509.CRLExtensions;
+import org.mozilla.jss.netscape.security.x509.CRLReasonExtension;
+import org.mozilla.jss.netscape.security.x509.CertAttrSet;
+import org.mozilla.jss.netscape.security.x509.Extension;
+import org.mozilla.jss.netscape.security.x509.InvalidityDateExtension;
+import org.mozilla.jss.netscape.security.x509.RevocationReason;
+import org.mozilla.jss.netscape.security.x509.RevokedCertImpl;
+import org.mozilla.jss.netscape.security.x509.RevokedCertificate;
+
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.dbs.DBAttrMapper;
+import com.netscape.certsrv.dbs.EDBException;
+import com.netscape.certsrv.dbs.IDBObj;
+import com.netscape.cmscore.apps.CMS;
+
+import netscape.ldap.LDAPAttribute;
+import netscape.ldap.LDAPAttributeSet;
+
+/**
+ * A class represents a mapper to store the revoked certificates
+ * of a CRL cache in a compact binary form.
+ *
+ * An attribute contains one snapshot value with all certificates and
+ * any number of delta values that add, replace, or remove certificates.
+ * Each value is a record in the following format:
+ *
+ * <pre>
+ * magic ("CRLC"), version, type (snapshot or delta), sequence, count,
+ * entries sorted by serial number:
+ *     operation (put or remove), serial number,
+ *     revocation date, flags, reason, invalidity date, other extensions
+ * </pre>
+ *
+ * Numbers and dates are stored as variable-length integers. Dates are
+ * stored in milliseconds. The reason code and the invalidity date are
+ * packed into the flags and values of the entry; other CRL entry
+ * extensions are stored in DER.
+ *
+ * Values created by Java serialization of a Hashtable are still read
+ * so existing CRL caches are migrated when they are saved again. The
+ * migration is one-way: older versions cannot read the binary format,
+ * so a CA cannot be downgraded once its CRL cache has been saved.
+ */
+public class RevokedCertsMapper extends DBAttrMapper {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RevokedCertsMapper.class);
+
+    public static final byte[] MAGIC = { 'C', 'R', 'L', 'C' };
+    public static final int VERSION = 1;
+
+    public static final int TYPE_SNAPSHOT = 0;
+    public static final int TYPE_DELTA = 1;
+
+    private static final int OP_PUT = 0;
+    private static final int OP_REMOVE = 1;
+
+    private static final int FLAG_REASON = 0x01;
+    private static final int FLAG_REASON_CRITICAL = 0x02;
+    private static final int FLAG_INVALIDITY_DATE = 0x04;
+    private static final int FLAG_INVALIDITY_DATE_CRITICAL = 0x08;
+    private static final int FLAG_OTHER_EXTENSIONS = 0x10;
+    private static final int FLAG_EXTENSIONS = 0x20;
+
+    // header of Java serialization streams
+    private static final int STREAM_MAGIC = 0xACED;
+
+    private String mLdapName;
+    private Vector<String> v = new Vector<>();
+
+    /**
+     * Changes of a CRL cache since the previous snapshot or delta.
+     */
+    public static class Delta {
+
+        private int sequence;
+        private Map<BigInteger, RevokedCertificate> added;
+        private Collection<BigInteger> removed;
+
+        public Delta(
+                int sequence,
+                Map<BigInteger, RevokedCertificate> added,
+                Collection<BigInteger> removed) {
+            this.sequence = sequence;
+            this.added = added;
+            this.removed = removed;
+        }
+
+        public int getSequence() {
+            return sequence;
+        }
+
+        public Map<BigInteger, RevokedCertificate> getAdded() {
+            return added;
+        }
+
+        public Collection<BigInteger> getRemoved() {
+            return removed;
+        }
+
+        public int size() {
+            return added.size() + removed.size();
+        }
+    }
+
+    public RevokedCertsMapper(String ldapName) {
+        mLdapName = ldapName;
+        v.addElement(mLdapName);
+    }
+
+    @Override
+    public Enumeration<String> getSupportedLDAPAttributeNames() {
+        return v.elements();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void mapObjectToLDAPAttributeSet(IDBObj parent, String name,
+            Object obj, LDAPAttributeSet attrs)
+            throws EBaseException {
+
+        try {
+            byte[] data;
+
+            if (obj instanceof Delta) {
+                Delta delta = (Delta) obj;
+                data = encode(TYPE_DELTA, delta.getSequence(), delta.getAdded(), delta.getRemoved());
+
+            } else {
+                // clone the table since it may be modified while it is encoded
+                Hashtable<BigInteger, RevokedCertificate> certs =
+                        (Hashtable<BigInteger, RevokedCertificate>) ((Hashtable<BigInteger, RevokedCertificate>) obj).clone();
+                data = encode(TYPE_SNAPSHOT, 0, certs, Collections.emptyList());
+            }
+
+            logger.debug("RevokedCertsMapper: Mapping " + name + " to " + mLdapName + " (" + data.length + " bytes)");
+            attrs.add(new LDAPAttribute(mLdapName, data));
+
+        } catch (IOException e) {
+            logger.error(CMS.getLogMessage("CMSCORE_DBS_OBJECTSTREAM_MAPPER_ERROR", e.toString()), e);
+            throw new EDBException(CMS.getUserMessage("CMS_DBS_SERIALIZE_FAILED", name), e);
+        }
+    }
+
+    @Override
+    public void mapLDAPAttributeSetToObject(LDAPAttributeSet attrs,
+            String name, IDBObj parent) throws EBaseException {
+
+        LDAPAttribute attr = attrs.getAttribute(mLdapName);
+
+        if (attr == null) {
+            return;
+        }
+
+        try {
+            List<byte[]> values = new ArrayList<>();
+            for (Enumeration<byte[]> e = attr.getByteValues(); e.hasMoreElements(); ) {
+                values.add(e.nextElement());
+            }
+
+            parent.set(name, decode(values));
+
+        } catch (IOException | ClassNotFoundException e) {
+            logger.error("RevokedCertsMapper: Unable to read " + mLdapName + ": " + e.getMessage(), e);
+            throw new EDBException(CMS.getUserMessage("CMS_DBS_DESERIALIZE_FAILED", name), e);
+        }
+    }
+
+    @Override
+    public String mapSearchFilter(String name, String op,
+            String value) throws EBaseException {
+        return mLdapName + op + value;
+    }
+
+    /**
+     * Encodes a snapshot or delta record.
+     */
+    public static byte[] encode(
+            int type,
+            int sequence,
+            Map<BigInteger, RevokedCertificate> certs,
+            Collection<BigInteger> removed) throws IOException {
+
+        // sort entries by serial number
+        TreeMap<BigInteger, RevokedCertificate> entries = new TreeMap<>(certs);
+        TreeSet<BigInteger> removedSerials = new TreeSet<>(removed);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        out.write(MAGIC);
+        out.write(VERSION);
+        out.write(type);
+        writeNumber(out, sequence);
+        writeNumber(out, entries.size() + removedSerials.size());
+
+        for (Map.Entry<BigInteger, RevokedCertificate> entry : entries.entrySet()) {
+            out.write(OP_PUT);
+            writeBytes(out, entry.getKey().toByteArray());
+            writeEntry(out, entry.getValue());
+        }
+
+        for (BigInteger serialNumber : removedSerials) {
+            out.write(OP_REMOVE);
+            writeBytes(out, serialNumber.toByteArray());
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes the values of an attribute into a CRL cache. The snapshot
+     * is applied first, followed by the deltas in sequence order.
+     */
+    @SuppressWarnings("unchecked")
+    public static Hashtable<BigInteger, RevokedCertificate> decode(List<byte[]> values)
+            throws IOException, ClassNotFoundException {
+
+        Hashtable<BigInteger, RevokedCertificate> certs = new Hashtable<>();
+        TreeMap<Integer, byte[]> deltas = new TreeMap<>();
+
+        for (byte[] value : values) {
+
+            if (value.length >= 2 && ((value[0] & 0xFF) << 8 | (value[1] & 0xFF)) == STREAM_MAGIC) {
+                // Java serialization from older versions
+                try (ObjectInputStream is = new ObjectInputStream(new ByteArrayInputStream(value))) {
+                    certs.putAll((Hashtable<BigInteger, RevokedCertificate>) is.readObject());
+                }
+                continue;
+            }
+
+            ByteArrayInputStream in = new ByteArrayInputStream(value);
+            int type = readHeader(in);
+            int sequence = (int) readNumber(in);
+
+            if (type == TYPE_SNAPSHOT) {
+                readEntries(in, certs);
+
+            } else if (type == TYPE_DELTA) {
+                deltas.put(sequence, value);
+
+            } else {
+                throw new IOException("Unsupported CRL cache record type: " + type);
+            }
+        }
+
+        for (byte[] value : deltas.values()) {
+            ByteArrayInputStream in = new ByteArrayInputStream(value);
+            readHeader(in);
+            readNumber(in);
+            readEntries(in, certs);
+        }
+
+        return certs;
+    }
+
+    private static int readHeader(InputStream in) throws IOException {
+
+        for (byte b : MAGIC) {
+            if (read(in) != b) {
+                throw new IOException("Invalid CRL cache record");
+            }
+        }
+
+        int version = read(in);
+        if (version != VERSION) {
+            throw new IOException("Unsupported CRL cache record version: " + version);
+        }
+
+        return read(in);
+    }
+
+    private static void readEntries(InputStream in, Hashtable<BigInteger, RevokedCertificate> certs)
+            throws IOException {
+
+        long count = readNumber(in);
+
+        for (long i = 0; i < count; i++) {
+
+            int op = read(in);
+            BigInteger serialNumber = new BigInteger(readBytes(in));
+
+            if (op == OP_REMOVE) {
+                certs.remove(serialNumber);
+
+            } else if (op == OP_PUT) {
+                certs.put(serialNumber, readEntry(in, serialNumber));
+
+            } else {
+                throw new IOException("Invalid CRL cache operation: " + op);
+            }
+        }
+    }
+
+    private static void writeEntry(OutputStream out, RevokedCertificate cert) throws IOException {
+
+        writeNumber(out, cert.getRevocationDate().getTime());
+
+        int flags = 0;
+        int reason = 0;
+        long invalidityDate = 0;
+        List<Extension> others = new ArrayList<>();
+
+        CRLExtensions exts = cert.getExtensions();
+        if (exts != null) {
+            flags |= FLAG_EXTENSIONS;
+            for (Enumeration<Extension> e = exts.getElements(); e.hasMoreElements(); ) {
+                Extension ext = e.nextElement();
+
+                if (ext instanceof CRLReasonExtension) {
+                    flags |= FLAG_REASON | (ext.isCritical() ? FLAG_REASON_CRITICAL : 0);
+                    reason = ((CRLReasonExtension) ext).getReason().getCode();
+
+                } else if (ext instanceof InvalidityDateExtension) {
+                    flags |= FLAG_INVALIDITY_DATE | (ext.isCritical() ? FLAG_INVALIDITY_DATE_CRITICAL : 0);
+                    invalidityDate = ((InvalidityDateExtension) ext).getInvalidityDate().getTime();
+
+                } else {
+                    others.add(ext);
+                }
+            }
+        }
+
+        if (!others.isEmpty()) {
+            flags |= FLAG_OTHER_EXTENSIONS;
+        }
+
+        out.write(flags);
+
+        if ((flags & FLAG_REASON) != 0) {
+            out.write(reason);
+        }
+
+        if ((flags & FLAG_INVALIDITY_DATE) != 0) {
+            writeNumber(out, invalidityDate);
+        }
+
+        if ((flags & FLAG_OTHER_EXTENSIONS) != 0) {
+            writeNumber(out, others.size());
+            for (Extension ext : others) {
+                try (DerOutputStream tmp = new DerOutputStream()) {
+                    if (ext instanceof CertAttrSet) {
+                        ((CertAttrSet) ext).encode(tmp);
+                    } else {
+                        ext.encode(tmp);
+                    }
+                    writeBytes(out, tmp.toByteArray());
+                } catch (Exception e) {
+                    throw new IOException("Unable to encode CRL entry extension: " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    private static RevokedCertificate readEntry(InputStream in, BigInteger serialNumber) throws IOException {
+
+        Date revocationDate = new Date(readNumber(in));
+        int flags = read(in);
+
+        if ((flags & FLAG_EXTENSIONS) == 0) {
+            return new RevokedCertImpl(serialNumber, revocationDate);
+        }
+
+        CRLExtensions exts = new CRLExtensions();
+
+        if ((flags & FLAG_REASON) != 0) {
+            RevocationReason reason = RevocationReason.valueOf(read(in));
+            boolean critical = (flags & FLAG_REASON_CRITICAL) != 0;
+            exts.set(CRLReasonExtension.NAME, new CRLReasonExtension(Boolean.valueOf(critical), reason));
+        }
+
+        if ((flags & FLAG_INVALIDITY_DATE) != 0) {
+            Date invalidityDate = new Date(readNumber(in));
+            boolean critical = (flags & FLAG_INVALIDITY_DATE_CRITICAL) != 0;
+            exts.set(InvalidityDateExtension.NAME, new InvalidityDateExtension(Boolean.valueOf(critical), invalidityDate));
+        }
+
+        if ((flags & FLAG_OTHER_EXTENSIONS) != 0) {
+            long count = readNumber(in);
+            for (long i = 0; i < count; i++) {
+                Extension ext = new Extension(new DerValue(readBytes(in)));
+                exts.set(ext.getExtensionId().toString(), ext);
+            }
+        }
+
+        return new RevokedCertImpl(serialNumber, revocationDate, exts);
+    }
+
+    private static int read(InputStream in) throws IOException {
+
+        int b = in.read();
+
+        if (b < 0) {
+            throw new EOFException("Unexpected end of CRL cache record");
+        }
+
+        return b;
+    }
+
+    /**
+     * Writes an unsigned number in 7-bit groups, least significant first.
+     */
+    private static void writeNumber(OutputStream out, long value) throws IOException {
+
+        if (value < 0) {
+            throw new IOException("Negative number in CRL cache record: " + value);
+        }
+
+        while (value >= 0x80) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        out.write((int) value);
+    }
+
+    private static long readNumber(InputStream in) throws IOException {
+
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = read(in);
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Invalid number in CRL cache record");
+    }
+
+    private static void writeBytes(OutputStream out, byte[] bytes) throws IOException {
+        writeNumber(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(InputStream in) throws IOException {
+
+        long length = readNumber(in);
+
+        if (length > in.available()) {
+            throw new EOFException("Unexpected end of CRL cache record");
+        }
+
+        byte[] bytes = new byte[(int) length];
+        int n = in.read(bytes);
+
+        if (n != bytes.length) {
+            throw new EOFException("Unexpected end of CRL cache record");
+        }
+
+        return bytes;
+    }
+}
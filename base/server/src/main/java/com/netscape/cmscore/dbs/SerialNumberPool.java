@@ -0,0 +1,190 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.dbs;
+
+import java.math.BigInteger;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of random serial numbers that have been generated and checked
+ * against the database in advance by a background thread.
+ *
+ * Serial numbers are handed out without locking. Every serial number
+ * in the pool, and every serial number handed out recently, is kept in
+ * a reservation set so the same number is never handed out twice even
+ * before its certificate has been stored in the database.
+ */
+public class SerialNumberPool implements Runnable {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(SerialNumberPool.class);
+
+    /**
+     * Generates a random serial number that is not used in the database.
+     */
+    public interface Generator {
+        BigInteger generate() throws Exception;
+    }
+
+    // delay after the generator failed to find an available number
+    private static final long RETRY_DELAY = 1000;
+
+    private Generator generator;
+    private int size;
+
+    private BlockingQueue<BigInteger> queue;
+
+    // numbers in the pool or handed out recently
+    private Set<BigInteger> reserved = ConcurrentHashMap.newKeySet();
+
+    // numbers handed out recently, oldest first
+    private Queue<BigInteger> issued = new ConcurrentLinkedQueue<>();
+    private AtomicInteger issuedCount = new AtomicInteger();
+
+    private Thread thread;
+    private volatile boolean running;
+
+    public SerialNumberPool(Generator generator, int size) {
+        this.generator = generator;
+        this.size = size;
+        this.queue = new LinkedBlockingQueue<>(size);
+    }
+
+    public synchronized void start() {
+
+        if (running) {
+            return;
+        }
+
+        logger.info("SerialNumberPool: Starting serial number pool with " + size + " entries");
+
+        running = true;
+        thread = new Thread(this, "SerialNumberPool");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+
+        if (!running) {
+            return;
+        }
+
+        logger.info("SerialNumberPool: Stopping serial number pool");
+
+        running = false;
+        thread.interrupt();
+        thread = null;
+    }
+
+    /**
+     * Discards the serial numbers in the pool, for example after the
+     * serial number range has changed. Numbers handed out recently
+     * remain reserved.
+     */
+    public void clear() {
+        BigInteger serialNumber;
+        while ((serialNumber = queue.poll()) != null) {
+            reserved.remove(serialNumber);
+        }
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    /**
+     * Returns a serial number from the pool.
+     *
+     * @return serial number, or null if the pool is empty
+     */
+    public BigInteger poll() {
+
+        BigInteger serialNumber = queue.poll();
+
+        if (serialNumber != null) {
+            issue(serialNumber);
+        }
+
+        return serialNumber;
+    }
+
+    /**
+     * Reserves a serial number obtained outside the pool.
+     *
+     * @return true if the number was reserved, false if the number
+     * is in the pool or has been handed out recently
+     */
+    public boolean reserve(BigInteger serialNumber) {
+
+        if (!reserved.add(serialNumber)) {
+            return false;
+        }
+
+        issue(serialNumber);
+        return true;
+    }
+
+    private void issue(BigInteger serialNumber) {
+
+        issued.add(serialNumber);
+
+        // certificates for older numbers have been stored by now
+        if (issuedCount.incrementAndGet() > size) {
+            BigInteger oldest = issued.poll();
+            if (oldest != null) {
+                reserved.remove(oldest);
+                issuedCount.decrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+
+        while (running) {
+            try {
+                BigInteger serialNumber = generator.generate();
+
+                if (serialNumber == null) {
+                    logger.warn("SerialNumberPool: Unable to generate available serial number");
+                    TimeUnit.MILLISECONDS.sleep(RETRY_DELAY);
+                    continue;
+                }
+
+                if (!reserved.add(serialNumber)) {
+                    logger.debug("SerialNumberPool: Serial number " + serialNumber + " already reserved");
+                    continue;
+                }
+
+                // wait until there is space in the pool
+                try {
+                    queue.put(serialNumber);
+                } catch (InterruptedException e) {
+                    reserved.remove(serialNumber);
+                    throw e;
+                }
+
+            } catch (InterruptedException e) {
+                break;
+
+            } catch (Exception e) {
+                logger.warn("SerialNumberPool: Unable to generate serial number: " + e.getMessage(), e);
+                try {
+                    TimeUnit.MILLISECONDS.sleep(RETRY_DELAY);
+                } catch (InterruptedException ie) {
+                    break;
+                }
+            }
+        }
+    }
+}
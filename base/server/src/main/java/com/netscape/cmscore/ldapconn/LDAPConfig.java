@@ -67,6 +67,65 @@ public class LDAPConfig extends ConfigStore {
         putString("dbuser", dbuser);
     }
 
+    /**
+     * Returns the connection pool implementation: legacy or concurrent.
+     */
+    public String getConnPoolType() throws EBaseException {
+        return getString("connPool.type", "legacy");
+    }
+
+    public void setConnPoolType(String type) {
+        putString("connPool.type", type);
+    }
+
+    /**
+     * Returns the maximum time to wait for a connection in milliseconds,
+     * or 0 to wait indefinitely.
+     */
+    public int getConnPoolTimeout() throws EBaseException {
+        return getInteger("connPool.timeout", 0);
+    }
+
+    public void setConnPoolTimeout(int timeout) {
+        putInteger("connPool.timeout", timeout);
+    }
+
+    /**
+     * Returns the time in seconds after which idle connections above
+     * the minimum are closed, or 0 to keep them.
+     */
+    public int getConnPoolIdleTimeout() throws EBaseException {
+        return getInteger("connPool.idleTimeout", 300);
+    }
+
+    public void setConnPoolIdleTimeout(int idleTimeout) {
+        putInteger("connPool.idleTimeout", idleTimeout);
+    }
+
+    /**
+     * Returns the time in seconds after which connections are replaced,
+     * or 0 to keep them.
+     */
+    public int getConnPoolMaxLifetime() throws EBaseException {
+        return getInteger("connPool.maxLifetime", 0);
+    }
+
+    public void setConnPoolMaxLifetime(int maxLifetime) {
+        putInteger("connPool.maxLifetime", maxLifetime);
+    }
+
+    /**
+     * Returns the interval in seconds for checking idle connections,
+     * or 0 to disable the checks.
+     */
+    public int getConnPoolKeepAliveInterval() throws EBaseException {
+        return getInteger("connPool.keepAliveInterval", 60);
+    }
+
+    public void setConnPoolKeepAliveInterval(int interval) {
+        putInteger("connPool.keepAliveInterval", interval);
+    }
+
     /**
      * Returns <LDAP>.ldapconn.* parameters.
      */
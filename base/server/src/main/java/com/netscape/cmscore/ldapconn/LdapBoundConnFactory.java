@@ -66,6 +66,9 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
 
     public static final String PROP_ERROR_IF_DOWN = "errorIfDown";
 
+    public static final String CONN_POOL_LEGACY = "legacy";
+    public static final String CONN_POOL_CONCURRENT = "concurrent";
+
     private int mNumConns = 0; // number of available conns in array
     private int mTotal = 0; // total num conns
 
@@ -73,6 +76,15 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
     private LdapBoundConnection mMasterConn = null; // master connection object.
     private LdapBoundConnection[] mConns;
 
+    private String mConnPoolType = CONN_POOL_LEGACY;
+    private long mConnPoolTimeout;
+    private long mConnPoolIdleTimeout;
+    private long mConnPoolMaxLifetime;
+    private long mConnPoolKeepAliveInterval;
+
+    // concurrent pool, null if the legacy pool is used
+    private volatile LdapConnPool mPool;
+
     /**
      * return error if server is down at creation time.
      */
@@ -100,12 +112,27 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
 
     @Override
     public int totalConn() {
-        return mTotal;
+        LdapConnPool pool = mPool;
+        return pool == null ? mTotal : pool.getTotal();
     }
 
     @Override
-    public synchronized int freeConn() {
-        return mNumConns;
+    public int freeConn() {
+        LdapConnPool pool = mPool;
+        if (pool != null) {
+            return pool.getIdle();
+        }
+        synchronized (this) {
+            return mNumConns;
+        }
+    }
+
+    /**
+     * Returns the concurrent connection pool, or null if the legacy
+     * pool is used.
+     */
+    public LdapConnPool getConnPool() {
+        return mPool;
     }
 
     @Override
@@ -223,6 +250,12 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
         doCloning = dbConfig.getBoolean("doCloning", true);
         logger.debug("LdapBoundConnFactory: doCloning: " + doCloning);
 
+        mConnPoolType = dbConfig.getConnPoolType();
+        mConnPoolTimeout = dbConfig.getConnPoolTimeout();
+        mConnPoolIdleTimeout = dbConfig.getConnPoolIdleTimeout() * 1000L;
+        mConnPoolMaxLifetime = dbConfig.getConnPoolMaxLifetime() * 1000L;
+        mConnPoolKeepAliveInterval = dbConfig.getConnPoolKeepAliveInterval() * 1000L;
+
         init();
     }
 
@@ -256,6 +289,37 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
         logger.debug("LdapBoundConnFactory: port: " + mConnInfo.getPort());
         logger.debug("LdapBoundConnFactory: secure: " + mConnInfo.getSecure());
         logger.debug("LdapBoundConnFactory: authentication: " + mAuthInfo.getAuthType());
+        logger.debug("LdapBoundConnFactory: pool: " + mConnPoolType);
+
+        if (mPool != null) {
+            mPool.shutdown();
+            mPool = null;
+        }
+
+        if (CONN_POOL_CONCURRENT.equals(mConnPoolType)) {
+
+            if (mMinConns > 0 && doCloning) {
+                makeConnection(mErrorIfDown);
+            }
+
+            LdapConnPool pool = new LdapConnPool(
+                    this,
+                    id,
+                    mMinConns,
+                    mMaxConns,
+                    mConnPoolTimeout,
+                    mConnPoolIdleTimeout,
+                    mConnPoolMaxLifetime,
+                    mConnPoolKeepAliveInterval);
+            pool.start(mErrorIfDown);
+
+            mPool = pool;
+            return;
+        }
+
+        if (!CONN_POOL_LEGACY.equals(mConnPoolType)) {
+            throw new ELdapException("Invalid connection pool: " + mConnPoolType);
+        }
 
         mConns = new LdapBoundConnection[mMaxConns];
 
@@ -327,6 +391,31 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
         return conn;
     }
 
+    /**
+     * Creates a connection for the concurrent pool, cloned from the
+     * master connection if cloning is enabled.
+     */
+    synchronized LdapBoundConnection createConnection() throws ELdapException {
+
+        if (mMinConns > 0 && doCloning) {
+
+            if (mMasterConn == null || !mMasterConn.isConnected()) {
+                try {
+                    makeConnection(true);
+                } catch (ELdapException e) {
+                    mMasterConn = null;
+                    throw new ELdapException("LdapBoundConnFactory: Unable to create master connection. " + e.getMessage(), e);
+                }
+            }
+
+            if (mMasterConn != null) {
+                return (LdapBoundConnection) mMasterConn.clone();
+            }
+        }
+
+        return makeNewConnection(true);
+    }
+
     /**
      * makes the minumum number of connections
      */
@@ -408,7 +497,31 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
      * }
      * </pre>
      */
-    public synchronized LdapBoundConnection getConn(boolean waitForConn)
+    public LdapBoundConnection getConn(boolean waitForConn)
+            throws ELdapException {
+
+        LdapConnPool pool = mPool;
+        if (pool == null) {
+            return getLegacyConn(waitForConn);
+        }
+
+        LdapBoundConnection conn = pool.acquire(waitForConn);
+        if (conn == null) {
+            return null;
+        }
+
+        try {
+            // see getLegacyConn()
+            conn.setOption(LDAPv3.SIZELIMIT, mMaxResults);
+        } catch (LDAPException e) {
+            pool.release(conn);
+            throw new ELdapException("Unable to set LDAP size limit: " + e.getMessage(), e);
+        }
+
+        return conn;
+    }
+
+    private synchronized LdapBoundConnection getLegacyConn(boolean waitForConn)
             throws ELdapException {
         LdapBoundConnection conn = null;
         String method = "LdapBoundConnFactory (" + id + ").getConn: ";
@@ -509,7 +622,39 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
      * </pre>
      */
     @Override
-    public synchronized void returnConn(LDAPConnection conn) {
+    public void returnConn(LDAPConnection conn) {
+
+        LdapConnPool pool = mPool;
+        if (pool == null) {
+            returnLegacyConn(conn);
+            return;
+        }
+
+        if (conn == null) {
+            return;
+        }
+
+        if (!(conn instanceof LdapBoundConnection)) {
+            logger.warn("LdapBoundConnFactory: Unable to return connection: not a bound connection");
+            return;
+        }
+
+        LdapBoundConnection boundconn = (LdapBoundConnection) conn;
+
+        if (boundconn.connectionFactory != this) {
+            logger.warn("LdapBoundConnFactory: Unknown connection");
+            try {
+                boundconn.disconnect();
+            } catch (LDAPException e) {
+                logger.warn("LdapBoundConnFactory: Unable to disconnect: " + e.getMessage(), e);
+            }
+            return;
+        }
+
+        pool.release(boundconn);
+    }
+
+    private synchronized void returnLegacyConn(LDAPConnection conn) {
         String method = "LdapBoundConnFactory (" + id + ").returnConn: ";
         logger.debug(method + "initial values. Total: " + mTotal + ", pool: " + mNumConns);
 
@@ -576,7 +721,12 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
     public synchronized void reset()
             throws ELdapException {
         logger.debug("Destroying LdapBoundConnFactory(" + id + ")");
-        if (mNumConns == mTotal) {
+
+        if (mPool != null) {
+            mPool.reset();
+            disconnectMaster();
+
+        } else if (mNumConns == mTotal) {
             for (int i = 0; i < mNumConns; i++) {
                 try {
                     mConns[i].disconnect();
@@ -585,16 +735,7 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
                 }
                 mConns[i] = null;
             }
-            if (mMasterConn != null) {
-                try {
-                    logger.debug("LdapBoundConnFactory: disconnecting master connection");
-                    mMasterConn.disconnect();
-                } catch (LDAPException e) {
-                    String message = "Unable to disconnect master connection: " + e.getMessage();
-                    logger.warn("LdapBoundConnFactory: " + message, e);
-                }
-            }
-            mMasterConn = null;
+            disconnectMaster();
             mTotal = 0;
             mNumConns = 0;
             mConns = new LdapBoundConnection[mMaxConns];
@@ -609,10 +750,28 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
         }
     }
 
+    private void disconnectMaster() {
+        if (mMasterConn != null) {
+            try {
+                logger.debug("LdapBoundConnFactory: disconnecting master connection");
+                mMasterConn.disconnect();
+            } catch (LDAPException e) {
+                String message = "Unable to disconnect master connection: " + e.getMessage();
+                logger.warn("LdapBoundConnFactory: " + message, e);
+            }
+        }
+        mMasterConn = null;
+    }
+
     public synchronized void shutdown() throws ELdapException {
 
         logger.debug("Destroying LdapBoundConnFactory(" + id + ")");
 
+        if (mPool != null) {
+            // connections returned later will be closed by the pool
+            mPool.shutdown();
+        }
+
         for (int i = 0; i < mNumConns; i++) {
             if (mConns[i] != null) {
                 mConns[i].close();
@@ -18,6 +18,7 @@
 package com.netscape.cmscore.ldapconn;
 
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import com.netscape.certsrv.base.EBaseException;
 
@@ -46,6 +47,18 @@ public class LdapBoundConnection extends LDAPConnection {
     private boolean mAuthenticated;
     LdapBoundConnFactory connectionFactory;
 
+    // state maintained by LdapConnPool
+    static final int POOL_IDLE = 0;
+    static final int POOL_IN_USE = 1;
+    static final int POOL_CLOSED = 2;
+
+    static final AtomicIntegerFieldUpdater<LdapBoundConnection> POOL_STATE =
+            AtomicIntegerFieldUpdater.newUpdater(LdapBoundConnection.class, "poolState");
+
+    volatile int poolState;
+    long createTime;
+    volatile long lastUsedTime;
+
     /**
      * Instantiates a connection to a ldap server, secure or non-secure
      * connection with LDAP basic bind DN and password authentication.
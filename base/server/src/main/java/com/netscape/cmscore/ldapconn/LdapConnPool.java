@@ -0,0 +1,536 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.ldapconn;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.netscape.certsrv.ldap.ELdapException;
+
+import netscape.ldap.LDAPException;
+
+/**
+ * Pool of bound LDAP connections used by LdapBoundConnFactory when
+ * the concurrent pool is enabled.
+ *
+ * Idle connections are kept in a lock-free deque and reused most
+ * recently used first. The number of connections handed out is bounded
+ * by a fair semaphore, so callers waiting for a connection are served
+ * in arrival order and can give up after a timeout. A background thread
+ * checks idle connections with a root DSE read, closes connections that
+ * have been idle or alive for too long, and creates new connections to
+ * keep the minimum number of connections open.
+ */
+public class LdapConnPool {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(LdapConnPool.class);
+
+    /**
+     * Upper bounds (in milliseconds) of the acquire time histogram
+     * buckets. The last bucket counts the remaining acquisitions.
+     */
+    public static final long[] HISTOGRAM_BUCKETS = { 1, 10, 100, 1000, 10000 };
+
+    private static final String[] NO_ATTRS = { "1.1" };
+
+    private static final Set<LdapConnPool> pools = ConcurrentHashMap.newKeySet();
+
+    private LdapBoundConnFactory factory;
+    private String id;
+
+    private int minConns;
+    private int maxConns;
+
+    private long timeout;
+    private long idleTimeout;
+    private long maxLifetime;
+    private long keepAliveInterval;
+
+    private Deque<LdapBoundConnection> idle = new ConcurrentLinkedDeque<>();
+    private AtomicInteger idleCount = new AtomicInteger();
+
+    private AtomicInteger total = new AtomicInteger();
+    private AtomicInteger inUse = new AtomicInteger();
+
+    // connections handed out
+    private Semaphore permits;
+
+    private ScheduledExecutorService executorService;
+    private volatile boolean closed;
+
+    private LongAdder acquireCount = new LongAdder();
+    private LongAdder acquireTime = new LongAdder();
+    private LongAdder acquireTimeSqSum = new LongAdder();
+    private AtomicLong minAcquireTime = new AtomicLong(-1);
+    private AtomicLong maxAcquireTime = new AtomicLong(-1);
+    private AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BUCKETS.length + 1);
+    private LongAdder timeouts = new LongAdder();
+    private LongAdder evictions = new LongAdder();
+
+    /**
+     * @param factory factory creating the connections
+     * @param id pool ID
+     * @param minConns minimum number of open connections
+     * @param maxConns maximum number of connections handed out
+     * @param timeout maximum time to wait for a connection in milliseconds, or 0 to wait indefinitely
+     * @param idleTimeout time in milliseconds after which connections above the minimum are closed, or 0 to keep them
+     * @param maxLifetime time in milliseconds after which connections are replaced, or 0 to keep them
+     * @param keepAliveInterval interval in milliseconds for checking idle connections, or 0 to disable the checks
+     */
+    public LdapConnPool(
+            LdapBoundConnFactory factory,
+            String id,
+            int minConns,
+            int maxConns,
+            long timeout,
+            long idleTimeout,
+            long maxLifetime,
+            long keepAliveInterval) {
+
+        this.factory = factory;
+        this.id = id;
+        this.minConns = minConns;
+        this.maxConns = maxConns;
+        this.timeout = timeout;
+        this.idleTimeout = idleTimeout;
+        this.maxLifetime = maxLifetime;
+        this.keepAliveInterval = keepAliveInterval;
+
+        permits = new Semaphore(maxConns, true);
+    }
+
+    /**
+     * Returns the pools that have been started and not shut down.
+     */
+    public static Collection<LdapConnPool> getPools() {
+        return Collections.unmodifiableSet(pools);
+    }
+
+    public void start(boolean errorIfDown) throws ELdapException {
+
+        logger.info("LdapConnPool: Starting " + id + " connection pool");
+        logger.info("LdapConnPool: - timeout: " + timeout + " ms");
+        logger.info("LdapConnPool: - idle timeout: " + idleTimeout + " ms");
+        logger.info("LdapConnPool: - max lifetime: " + maxLifetime + " ms");
+        logger.info("LdapConnPool: - keep-alive interval: " + keepAliveInterval + " ms");
+
+        try {
+            makeMinimum();
+
+        } catch (ELdapException e) {
+            if (errorIfDown) {
+                throw e;
+            }
+            logger.warn("LdapConnPool: Unable to create " + id + " connections: " + e.getMessage(), e);
+        }
+
+        if (keepAliveInterval > 0) {
+            executorService = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "LdapConnPool-" + id);
+                thread.setDaemon(true);
+                return thread;
+            });
+            executorService.scheduleWithFixedDelay(
+                    this::maintain,
+                    keepAliveInterval,
+                    keepAliveInterval,
+                    TimeUnit.MILLISECONDS);
+        }
+
+        pools.add(this);
+    }
+
+    /**
+     * Returns an open connection from the pool, creating a new one if
+     * there is no idle connection.
+     *
+     * @param waitForConn whether to wait if the maximum number of
+     *   connections has been handed out
+     * @return connection, or null if no connection is available without
+     *   waiting or the wait was interrupted
+     * @exception ELdapException if the wait timed out or a new
+     *   connection could not be created
+     */
+    public LdapBoundConnection acquire(boolean waitForConn) throws ELdapException {
+
+        if (closed) {
+            throw new ELdapException("LDAP connection pool " + id + " has been shut down");
+        }
+
+        long startTime = System.nanoTime();
+
+        try {
+            if (!waitForConn) {
+                if (!permits.tryAcquire()) {
+                    logger.warn("LdapConnPool: Out of " + id + " connections");
+                    return null;
+                }
+
+            } else if (timeout > 0) {
+                if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                    timeouts.increment();
+                    throw new ELdapException("Timed out waiting for " + id + " connection after " + timeout + " ms");
+                }
+
+            } else {
+                permits.acquire();
+            }
+
+        } catch (InterruptedException e) {
+            logger.warn("LdapConnPool: Connection wait interrupted");
+            Thread.currentThread().interrupt();
+            return null;
+        }
+
+        LdapBoundConnection conn;
+        try {
+            conn = pollIdle();
+            if (conn == null) {
+                conn = create();
+            }
+
+        } catch (ELdapException e) {
+            permits.release();
+            throw e;
+
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+
+        conn.poolState = LdapBoundConnection.POOL_IN_USE;
+        inUse.incrementAndGet();
+
+        record(System.nanoTime() - startTime);
+
+        return conn;
+    }
+
+    /**
+     * Returns a connection obtained with acquire() to the pool.
+     */
+    public void release(LdapBoundConnection conn) {
+
+        if (!LdapBoundConnection.POOL_STATE.compareAndSet(
+                conn, LdapBoundConnection.POOL_IN_USE, LdapBoundConnection.POOL_IDLE)) {
+            logger.warn("LdapConnPool: Connection already returned");
+            return;
+        }
+
+        inUse.decrementAndGet();
+
+        long now = System.currentTimeMillis();
+
+        if (closed || !isUsable(conn, now)) {
+            close(conn);
+
+        } else {
+            conn.lastUsedTime = now;
+            idle.offerFirst(conn);
+            idleCount.incrementAndGet();
+        }
+
+        permits.release();
+    }
+
+    private LdapBoundConnection pollIdle() {
+
+        long now = System.currentTimeMillis();
+        LdapBoundConnection conn;
+
+        while ((conn = idle.pollFirst()) != null) {
+            idleCount.decrementAndGet();
+
+            if (isUsable(conn, now)) {
+                return conn;
+            }
+
+            logger.debug("LdapConnPool: Discarding " + id + " connection");
+            evictions.increment();
+            close(conn);
+        }
+
+        return null;
+    }
+
+    private LdapBoundConnection create() throws ELdapException {
+
+        LdapBoundConnection conn = factory.createConnection();
+
+        if (conn == null) {
+            throw new ELdapException("Unable to create " + id + " connection");
+        }
+
+        // clones share the fields of the master connection
+        conn.createTime = conn.lastUsedTime = System.currentTimeMillis();
+        conn.poolState = LdapBoundConnection.POOL_IDLE;
+
+        int count = total.incrementAndGet();
+        logger.debug("LdapConnPool: Created " + id + " connection, total: " + count);
+
+        return conn;
+    }
+
+    private void close(LdapBoundConnection conn) {
+
+        conn.poolState = LdapBoundConnection.POOL_CLOSED;
+        total.decrementAndGet();
+
+        try {
+            conn.disconnect();
+        } catch (LDAPException e) {
+            logger.warn("LdapConnPool: Unable to disconnect: " + e.getMessage(), e);
+        }
+    }
+
+    private boolean isUsable(LdapBoundConnection conn, long now) {
+
+        if (!conn.isConnected()) {
+            return false;
+        }
+
+        return maxLifetime <= 0 || now - conn.createTime < maxLifetime;
+    }
+
+    private void makeMinimum() throws ELdapException {
+
+        while (!closed && total.get() < minConns) {
+            LdapBoundConnection conn = create();
+            idle.offerLast(conn);
+            idleCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Checks the idle connections, least recently used first, and
+     * reopens connections up to the minimum.
+     */
+    void maintain() {
+
+        if (closed) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        List<LdapBoundConnection> survivors = new ArrayList<>();
+        int held = 0;
+
+        try {
+            for (int i = idleCount.get(); i > 0; i--) {
+
+                // keep the number of connections bounded while a connection
+                // is being checked outside the deque
+                if (!permits.tryAcquire()) {
+                    break;
+                }
+                held++;
+
+                LdapBoundConnection conn = idle.pollLast();
+                if (conn == null) {
+                    break;
+                }
+                idleCount.decrementAndGet();
+
+                if (!isUsable(conn, now)) {
+                    logger.debug("LdapConnPool: Closing expired " + id + " connection");
+                    evictions.increment();
+                    close(conn);
+                    continue;
+                }
+
+                if (idleTimeout > 0 && now - conn.lastUsedTime >= idleTimeout && total.get() > minConns) {
+                    logger.debug("LdapConnPool: Closing idle " + id + " connection");
+                    evictions.increment();
+                    close(conn);
+                    continue;
+                }
+
+                try {
+                    conn.read("", NO_ATTRS);
+                } catch (LDAPException e) {
+                    logger.warn("LdapConnPool: Closing broken " + id + " connection: " + e.getMessage());
+                    evictions.increment();
+                    close(conn);
+                    continue;
+                }
+
+                survivors.add(conn);
+            }
+
+        } catch (RuntimeException e) {
+            logger.warn("LdapConnPool: Unable to check " + id + " connections: " + e.getMessage(), e);
+
+        } finally {
+            // put the connections back in their original order
+            for (int i = survivors.size() - 1; i >= 0; i--) {
+                idle.offerLast(survivors.get(i));
+                idleCount.incrementAndGet();
+            }
+            permits.release(held);
+        }
+
+        try {
+            makeMinimum();
+        } catch (ELdapException e) {
+            logger.warn("LdapConnPool: Unable to create " + id + " connections: " + e.getMessage(), e);
+        }
+    }
+
+    private void record(long nanos) {
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+
+        acquireCount.increment();
+        acquireTime.add(millis);
+        acquireTimeSqSum.add(millis * millis);
+
+        minAcquireTime.accumulateAndGet(millis, (prev, x) -> prev < 0 || x < prev ? x : prev);
+        maxAcquireTime.accumulateAndGet(millis, Math::max);
+
+        int bucket = 0;
+        while (bucket < HISTOGRAM_BUCKETS.length && millis >= HISTOGRAM_BUCKETS[bucket]) {
+            bucket++;
+        }
+        histogram.incrementAndGet(bucket);
+    }
+
+    /**
+     * Closes the idle connections. The pool remains usable.
+     *
+     * @exception ELdapException if there are outstanding connections
+     */
+    public void reset() throws ELdapException {
+
+        if (inUse.get() > 0) {
+            throw new ELdapException("Unable to reset LDAP connection pool due to outstanding connections");
+        }
+
+        closeIdle();
+    }
+
+    public void shutdown() {
+
+        logger.info("LdapConnPool: Shutting down " + id + " connection pool");
+
+        closed = true;
+        pools.remove(this);
+
+        if (executorService != null) {
+            executorService.shutdownNow();
+            executorService = null;
+        }
+
+        // outstanding connections will be closed when returned
+        closeIdle();
+    }
+
+    private void closeIdle() {
+        LdapBoundConnection conn;
+        while ((conn = idle.pollFirst()) != null) {
+            idleCount.decrementAndGet();
+            close(conn);
+        }
+    }
+
+    public void resetCounters() {
+        acquireCount.reset();
+        acquireTime.reset();
+        acquireTimeSqSum.reset();
+        minAcquireTime.set(-1);
+        maxAcquireTime.set(-1);
+        for (int i = 0; i < histogram.length(); i++) {
+            histogram.set(i, 0);
+        }
+        timeouts.reset();
+        evictions.reset();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getMaxConns() {
+        return maxConns;
+    }
+
+    /**
+     * Returns the number of open connections.
+     */
+    public int getTotal() {
+        return total.get();
+    }
+
+    public int getIdle() {
+        return idleCount.get();
+    }
+
+    public int getInUse() {
+        return inUse.get();
+    }
+
+    /**
+     * Returns the estimated number of callers waiting for a connection.
+     */
+    public int getWaitQueueLength() {
+        return permits.getQueueLength();
+    }
+
+    public long getAcquireCount() {
+        return acquireCount.sum();
+    }
+
+    /**
+     * Returns the total time spent acquiring connections in milliseconds.
+     */
+    public long getAcquireTime() {
+        return acquireTime.sum();
+    }
+
+    public long getAcquireTimeSqSum() {
+        return acquireTimeSqSum.sum();
+    }
+
+    public long getMinAcquireTime() {
+        return minAcquireTime.get();
+    }
+
+    public long getMaxAcquireTime() {
+        return maxAcquireTime.get();
+    }
+
+    /**
+     * Returns the number of acquisitions in each HISTOGRAM_BUCKETS bucket.
+     */
+    public long[] getAcquireTimeHistogram() {
+        long[] counts = new long[histogram.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = histogram.get(i);
+        }
+        return counts;
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+}
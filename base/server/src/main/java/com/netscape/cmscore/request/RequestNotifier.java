@@ -18,9 +18,18 @@
 package com.netscape.cmscore.request;
 
 import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Hashtable;
-import java.util.Vector;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.request.IRequestListener;
@@ -34,17 +43,43 @@ import com.netscape.cmscore.apps.CMSEngine;
  * so it will be invoked when a request is completely serviced
  * by the IService object, then it will notify all registered
  * request listeners.
+ *
+ * If the publishing queue is enabled, the IDs of the completed
+ * requests are added to a bounded queue which is drained in batches
+ * by a fixed number of publishing threads. If the queue is full the
+ * requests are read back from the request repository once the queue
+ * has been drained. The position of the queue is saved in the request
+ * repository so that the queue can be recovered after a restart.
+ *
+ * Otherwise the listeners are notified on a fixed number of threads.
+ * If all threads are busy and the backlog is full the listeners are
+ * notified on the calling thread.
  */
 public class RequestNotifier {
 
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RequestNotifier.class);
 
+    public static final int DEFAULT_BATCH_SIZE = 10;
+
     private Hashtable<String, IRequestListener> mListeners = new Hashtable<>();
-    private Vector<Thread> mNotifierThreads = new Vector<>();
-    private Vector<String> mRequests = new Vector<>();
+
+    // publishing queue, guarded by this object
+    private ArrayDeque<String> mRequests = new ArrayDeque<>();
     private int mMaxRequests = 100;
     private boolean mSearchForRequests = false;
+    private String mLastRequestId;
+    private int mBusyRequests = 0;
+    // IDs of requests that are queued or being processed
+    private TreeSet<BigInteger> mPendingRequests = new TreeSet<>();
+    // requests processed since the publishing status was last saved
+    private int mUnsavedRequests = 0;
+    private boolean mIdle = true;
+    private boolean mStopped = false;
+
     private int mMaxThreads = 1;
+    private int mBatchSize = DEFAULT_BATCH_SIZE;
+    private List<Thread> mNotifierThreads = new ArrayList<>();
+    private ExecutorService mExecutor;
 
     private boolean mIsPublishingQueueEnabled = false;
     private int mPublishingQueuePriority = 0;
@@ -53,6 +88,9 @@ public class RequestNotifier {
     private int mSavePublishingStatus = 0;
     private int mSavePublishingCounter = 0;
 
+    private LongAdder mProcessedRequests = new LongAdder();
+    private LongAdder mProcessedBatches = new LongAdder();
+
     public RequestNotifier() {
         mPublishingQueuePriority = Thread.currentThread().getPriority();
     }
@@ -64,20 +102,25 @@ public class RequestNotifier {
      * @param publishingQueuePriorityLevel publishing queue priority level
      * @param maxNumberOfPublishingThreads maximum number of publishing threads
      * @param publishingQueuePageSize publishing queue page size
+     * @param savePublishingStatus number of requests between saving publishing status
+     * @param publishingQueueBatchSize maximum number of requests processed in a batch
      */
     public void setPublishingQueue(boolean isPublishingQueueEnabled,
                                     int publishingQueuePriorityLevel,
                                     int maxNumberOfPublishingThreads,
                                     int publishingQueuePageSize,
-                                    int savePublishingStatus) {
+                                    int savePublishingStatus,
+                                    int publishingQueueBatchSize) {
         logger.debug("setPublishingQueue:  Publishing Queue Enabled: " + isPublishingQueueEnabled +
                   "  Priority Level: " + publishingQueuePriorityLevel +
                   "  Maximum Number of Threads: " + maxNumberOfPublishingThreads +
-                  "  Page Size: " + publishingQueuePageSize);
+                  "  Page Size: " + publishingQueuePageSize +
+                  "  Batch Size: " + publishingQueueBatchSize);
         mIsPublishingQueueEnabled = isPublishingQueueEnabled;
         mMaxThreads = maxNumberOfPublishingThreads;
-        mMaxRequests = publishingQueuePageSize;
+        mMaxRequests = Math.max(1, publishingQueuePageSize);
         mSavePublishingStatus = savePublishingStatus;
+        mBatchSize = Math.max(1, publishingQueueBatchSize);
 
         // Publishing Queue Priority Levels:  2 - maximum, 1 - higher, 0 - normal, -1 - lower, -2 - minimum
         if (publishingQueuePriorityLevel > 1) {
@@ -92,6 +135,10 @@ public class RequestNotifier {
             mPublishingQueuePriority = Thread.currentThread().getPriority();
         }
 
+        if (mIsPublishingQueueEnabled) {
+            startPublishingThreads();
+        }
+
         CMSEngine engine = CMS.getCMSEngine();
         RequestRepository requestRepository = engine.getRequestRepository();
 
@@ -108,7 +155,6 @@ public class RequestNotifier {
         }
 
     }
-
     /**
      * Registers a request listener.
      *
@@ -204,108 +250,178 @@ public class RequestNotifier {
     }
 
     /**
-     * Gets request from publishing queue.
+     * Gets the next batch of requests from publishing queue. Waits until
+     * requests are available or the notifier is shut down. If the queue
+     * is empty after it has been full, the queue is refilled with the
+     * completed requests from the request repository.
      *
-     * @return request
+     * @return IDs of up to batch size requests, or null if the notifier is shut down
+     */
+    synchronized List<String> getRequests() throws InterruptedException {
+
+        while (mRequests.isEmpty() && !mStopped) {
+
+            if (mSearchForRequests) {
+                searchForRequests();
+                continue;
+            }
+
+            wait();
+        }
+
+        if (mStopped) {
+            return null;
+        }
+
+        List<String> ids = new ArrayList<>(mBatchSize);
+        while (ids.size() < mBatchSize && !mRequests.isEmpty()) {
+            ids.add(mRequests.pollFirst());
+        }
+
+        mBusyRequests += ids.size();
+        logger.debug("getRequests  batch: " + ids.size() + "  mRequests=" + mRequests.size() +
+                "  mSearchForRequests=" + mSearchForRequests);
+
+        return ids;
+    }
+
+    /**
+     * Refills publishing queue with the completed requests that follow
+     * the last request added to the queue.
      */
-    public synchronized Request getRequest() {
-        Request r = null;
-        String id = null;
+    private void searchForRequests() {
 
         CMSEngine engine = CMS.getCMSEngine();
+        RequestRepository requestRepository = engine.getRequestRepository();
 
-        logger.debug("getRequest  mRequests=" + mRequests.size() + "  mSearchForRequests=" + mSearchForRequests);
-        if (mSearchForRequests && mRequests.size() == 1) {
+        String id = mLastRequestId;
 
-            id = mRequests.elementAt(0);
-            RequestRepository requestRepository = engine.getRequestRepository();
+        if (id == null || requestRepository == null) {
+            logger.warn("searchForRequests  has no access to the request queue");
+            mSearchForRequests = false;
+            return;
+        }
 
-            if (id != null && requestRepository != null) {
-                logger.debug("getRequest  request id=" + id);
+        logger.debug("searchForRequests  request id=" + id);
+
+        IRequestVirtualList list;
+        try {
+            list = requestRepository.getPagedRequestsByFilter(
+                    new RequestId(id),
+                    false,
+                    "(requeststate=complete)",
+                    mMaxRequests + 1,
+                    "requestId");
+
+        } catch (EBaseException e) {
+            logger.warn("searchForRequests  Exception: " + e.getMessage(), e);
+            mSearchForRequests = false;
+            return;
+        }
 
-                IRequestVirtualList list;
-                try {
-                    list = requestRepository.getPagedRequestsByFilter(
-                            new RequestId(id),
-                            false,
-                            "(requeststate=complete)",
-                            mMaxRequests,
-                            "requestId");
+        int s = list.getSize() - list.getCurrentIndex();
+        logger.debug("searchForRequests  list size: " + s);
 
-                } catch (EBaseException e) {
-                    throw new RuntimeException(e);
-                }
+        for (int i = 0; i < s; i++) {
+            Request r = null;
+            try {
+                r = list.getElementAt(i);
+            } catch (Exception e) {
+                // handled below
+            }
+            if (r == null) {
+                continue;
+            }
 
-                int s = list.getSize() - list.getCurrentIndex();
-                logger.debug("getRequest  list size: " + s);
-                for (int i = 0; i < s; i++) {
-                    r = null;
-                    try {
-                        r = list.getElementAt(i);
-                    } catch (Exception e) {
-                        // handled below
-                    }
-                    if (r == null) {
-                        continue;
-                    }
-                    String requestType = r.getRequestType();
-                    if (requestType == null) {
-                        continue;
-                    }
-                    if (!(requestType.equals(Request.ENROLLMENT_REQUEST) ||
-                            requestType.equals(Request.RENEWAL_REQUEST) ||
-                            requestType.equals(Request.REVOCATION_REQUEST) ||
-                            requestType.equals(Request.CMCREVOKE_REQUEST) ||
-                            requestType.equals(Request.UNREVOCATION_REQUEST))) {
-                        continue;
-                    }
-                    if (i == 0 && id.equals(r.getRequestId().toString())) {
-                        if (s == 1) {
-                            break;
-                        } else {
-                            continue;
-                        }
-                    }
-                    if (mRequests.size() < mMaxRequests) {
-                        mRequests.addElement(r.getRequestId().toString());
-                        logger.debug("getRequest  added "
-                                + r.getRequestType() + " request " + r.getRequestId().toString() +
-                                  " to mRequests: " + mRequests.size() + " (" + mMaxRequests + ")");
-                    } else {
-                        break;
-                    }
-                }
-                logger.debug("getRequest  done with adding requests to mRequests: " + mRequests.size());
-            } else {
-                logger.warn("getRequest  has no access to the request queue");
+            String requestId = r.getRequestId().toString();
+            if (i == 0 && id.equals(requestId)) {
+                // already processed
+                continue;
+            }
+
+            mLastRequestId = requestId;
+
+            if (!isPublishable(r)) {
+                continue;
             }
+
+            queueRequest(requestId);
         }
-        if (mRequests.size() > 0) {
-            id = mRequests.elementAt(0);
-            if (id != null) {
-                logger.debug("getRequest  getting request: " + id);
-                RequestRepository requestRepository = engine.getRequestRepository();
 
-                if (requestRepository != null) {
-                    try {
-                        r = requestRepository.readRequest(new RequestId(id));
-                        mRequests.remove(0);
-                        logger.debug("getRequest  request " + id + ((r != null) ? " found" : " not found"));
-                        //updatePublishingStatus(id);
-                    } catch (EBaseException e) {
-                        logger.warn("getRequest  Exception: " + e.getMessage(), e);
-                    }
-                } else {
-                    logger.warn("getRequest  has no access to the request queue");
-                }
+        // the queue is full again if the page is full
+        mSearchForRequests = s > mMaxRequests;
+
+        logger.debug("searchForRequests  done with adding requests to mRequests: " + mRequests.size() +
+                "  mSearchForRequests=" + mSearchForRequests);
+    }
+
+    private boolean isPublishable(Request r) {
+
+        String requestType = r.getRequestType();
+        if (requestType == null) {
+            return false;
+        }
+
+        return requestType.equals(Request.ENROLLMENT_REQUEST) ||
+                requestType.equals(Request.RENEWAL_REQUEST) ||
+                requestType.equals(Request.REVOCATION_REQUEST) ||
+                requestType.equals(Request.CMCREVOKE_REQUEST) ||
+                requestType.equals(Request.UNREVOCATION_REQUEST);
+    }
+
+    private void queueRequest(String id) {
+        mRequests.addLast(id);
+        mPendingRequests.add(new RequestId(id).toBigInteger());
+    }
+
+    /**
+     * Marks a batch of requests as processed. Batches may complete out
+     * of order on different publishing threads, so the publishing status
+     * is advanced to the lowest request that is still queued or being
+     * processed. If there are no more requests to process the publishing
+     * status is cleared.
+     *
+     * @param ids IDs of processed requests
+     */
+    synchronized void completeRequests(List<String> ids) {
+
+        mBusyRequests -= ids.size();
+
+        for (String id : ids) {
+            mPendingRequests.remove(new RequestId(id).toBigInteger());
+        }
+
+        CMSEngine engine = CMS.getCMSEngine();
+        RequestRepository requestRepository = engine.getRequestRepository();
+
+        if (mBusyRequests > 0 || !mRequests.isEmpty() || mSearchForRequests || mStopped) {
+
+            mUnsavedRequests += ids.size();
+
+            // on shutdown save the position of the remaining requests
+            if (mUnsavedRequests < mSavePublishingStatus && !mStopped || mPendingRequests.isEmpty()) {
+                return;
             }
-            if (mRequests.size() == 0) {
-                mSearchForRequests = false;
+
+            mUnsavedRequests = 0;
+
+            String id = mPendingRequests.first().toString();
+            logger.debug("completeRequests  publishing status: " + id);
+
+            if (requestRepository != null) {
+                requestRepository.setPublishingStatus(id);
             }
+
+            return;
         }
-        logger.debug("getRequest  mRequests=" + mRequests.size() + "  mSearchForRequests=" + mSearchForRequests + " done");
 
-        return r;
+        logger.debug("completeRequests  publishing queue is empty");
+        mIdle = true;
+        mUnsavedRequests = 0;
+
+        if (requestRepository != null) {
+            requestRepository.setPublishingStatus("-1");
+        }
     }
 
     /**
@@ -313,7 +429,7 @@ public class RequestNotifier {
      *
      * @return number of requests in publishing queue
      */
-    public int getNumberOfRequests() {
+    public synchronized int getNumberOfRequests() {
         return mRequests.size();
     }
 
@@ -326,25 +442,6 @@ public class RequestNotifier {
         return mIsPublishingQueueEnabled;
     }
 
-    /**
-     * Removes a notifier thread from the pool of publishing queue threads.
-     *
-     * @param notifierThread Thread
-     */
-    public void removeNotifierThread(Thread notifierThread) {
-        if (mNotifierThreads.size() > 0) {
-            mNotifierThreads.remove(notifierThread);
-            if (mNotifierThreads.size() == 0) {
-                CMSEngine engine = CMS.getCMSEngine();
-                RequestRepository requestRepository = engine.getRequestRepository();
-                if (requestRepository != null) {
-                    requestRepository.setPublishingStatus("-1");
-                }
-            }
-        }
-        logger.debug("Number of publishing threads: " + mNotifierThreads.size());
-    }
-
     /**
      * Provides notification that a request has been completed.
      * The implementation may use values stored in the Request
@@ -364,63 +461,166 @@ public class RequestNotifier {
 
         } else if (mMaxThreads == 0) {
             logger.info("RequestNotifier: Notifying " + mListeners.size() + " listener(s) synchronously");
-            Enumeration<IRequestListener> listeners = mListeners.elements();
-            if (listeners != null && r != null) {
-                while (listeners.hasMoreElements()) {
-                    IRequestListener l = listeners.nextElement();
-                    logger.info("RequestNotifier: Processing request " + r.getRequestId().toHexString() + " with " + l.getClass().getSimpleName());
-                    l.accept(r);
-                }
-            }
+            new RunListeners(r, mListeners.elements()).run();
 
         } else {
             logger.info("RequestNotifier: Notifying " + mListeners.size() + " listener(s) asynchronously");
             try {
-                new Thread(new RunListeners(r, mListeners.elements()), "RequestNotifier-notify").start();
+                // runs on the calling thread if the backlog is full
+                getExecutor().execute(new RunListeners(r, mListeners.elements()));
             } catch (Throwable e) {
                 logger.warn("Could not run listeners for request " + r.getRequestId().toHexString() + ": " + e.getMessage(), e);
             }
         }
     }
 
+    private synchronized ExecutorService getExecutor() {
+
+        if (mExecutor == null) {
+            int threads = Math.max(1, mMaxThreads);
+            logger.info("RequestNotifier: Creating " + threads + " notifier thread(s)");
+
+            AtomicInteger counter = new AtomicInteger();
+            mExecutor = new ThreadPoolExecutor(
+                    threads,
+                    threads,
+                    0,
+                    TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(mMaxRequests),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "RequestNotifier-" + counter.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+
+        return mExecutor;
+    }
+
     /**
-     * Checks for available publishing connections
-     *
-     * @return true if there are available publishing connections, false otherwise
+     * Starts the publishing threads that process the publishing queue.
      */
-    public boolean checkAvailablePublishingConnections() {
-        return false;
+    private synchronized void startPublishingThreads() {
+
+        int threads = Math.max(1, mMaxThreads);
+
+        while (mNotifierThreads.size() < threads) {
+            Thread notifierThread = new Thread(
+                    this::processPublishingQueue,
+                    "RequestNotifier-publishing-" + (mNotifierThreads.size() + 1));
+            notifierThread.setDaemon(true);
+            if (mPublishingQueuePriority > 0) {
+                notifierThread.setPriority(mPublishingQueuePriority);
+            }
+            mNotifierThreads.add(notifierThread);
+            notifierThread.start();
+        }
+
+        logger.info("RequestNotifier: - publishing threads: " + mNotifierThreads.size());
+    }
+
+    /**
+     * Processes batches of requests from the publishing queue until
+     * the notifier is shut down.
+     */
+    void processPublishingQueue() {
+
+        logger.info("RequestNotifier: Starting " + Thread.currentThread().getName());
+
+        while (true) {
+            List<String> ids;
+            try {
+                ids = getRequests();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            if (ids == null) {
+                break;
+            }
+
+            try {
+                processRequests(ids);
+            } catch (Throwable e) {
+                logger.warn("RequestNotifier: Unable to process requests: " + e.getMessage(), e);
+            } finally {
+                completeRequests(ids);
+            }
+        }
+
+        logger.info("RequestNotifier: Stopping " + Thread.currentThread().getName());
     }
 
     /**
-     * Checks if more publishing threads can be added.
+     * Notifies the listeners about a batch of requests.
      *
-     * @return true if more publishing threads can be added, false otherwise
+     * @param ids request IDs
      */
-    private boolean morePublishingThreads() {
-        boolean moreThreads = false;
-
-        if (mNotifierThreads.size() == 0) {
-            moreThreads = true;
-        } else if (mNotifierThreads.size() < mMaxThreads) {
-            logger.debug("morePublishingThreads  (" + mRequests.size() + ">" +
-                      ((mMaxRequests * mNotifierThreads.size()) / mMaxThreads) +
-                      " " + "(" + mMaxRequests + "*" + mNotifierThreads.size() + "):" + mMaxThreads);
-            // gradually add new publishing threads
-            if (mRequests.size() > ((mMaxRequests * mNotifierThreads.size()) / mMaxThreads)) {
-                // check for available publishing connections
-                if (checkAvailablePublishingConnections()) {
-                    moreThreads = true;
+    void processRequests(List<String> ids) {
+
+        CMSEngine engine = CMS.getCMSEngine();
+        RequestRepository requestRepository = engine.getRequestRepository();
+
+        if (requestRepository == null) {
+            logger.warn("processRequests  has no access to the request queue");
+            return;
+        }
+
+        logger.info("RequestNotifier: Processing " + ids.size() + " request(s)");
+
+        startBatch();
+        try {
+            for (String id : ids) {
+                Request r;
+                try {
+                    r = requestRepository.readRequest(new RequestId(id));
+                } catch (EBaseException e) {
+                    logger.warn("processRequests  Unable to read request " + id + ": " + e.getMessage(), e);
+                    continue;
+                }
+
+                if (r == null) {
+                    logger.debug("processRequests  request " + id + " not found");
+                    continue;
+                }
+
+                try {
+                    new RunListeners(r, mListeners.elements()).run();
+                } catch (RuntimeException e) {
+                    // continue with the rest of the batch
+                    logger.warn("processRequests  Unable to process request " + id + ": " + e.getMessage(), e);
                 }
             }
+
+        } finally {
+            endBatch();
         }
-        logger.debug("morePublishingThreads  moreThreads: " + moreThreads);
 
-        return moreThreads;
+        mProcessedRequests.add(ids.size());
+        mProcessedBatches.increment();
     }
 
     /**
-     * Notifies all registered listeners about request.
+     * Called by a publishing thread before the listeners are notified
+     * about a batch of requests, e.g. to reuse resources for all
+     * requests in the batch.
+     */
+    protected void startBatch() {
+    }
+
+    /**
+     * Called by a publishing thread after the listeners have been
+     * notified about a batch of requests.
+     */
+    protected void endBatch() {
+    }
+
+    /**
+     * Adds request to publishing queue. If the queue is full the request
+     * will be read from the request repository after the queue has been
+     * drained.
      *
      * @param r request
      */
@@ -428,35 +628,35 @@ public class RequestNotifier {
 
         logger.info("RequestNotifier: Notifying all listeners for request " + r.getRequestId().toHexString());
 
-        if (!mSearchForRequests) {
-
-            logger.info("RequestNotifier: - max requests: " + mMaxRequests);
-            logger.info("RequestNotifier: - buffer size: " + mRequests.size());
-
-            if (mRequests.size() < mMaxRequests) {
-                logger.info("RequestNotifier: Extending buffer");
-                mRequests.addElement(r.getRequestId().toString());
-
-                if (morePublishingThreads()) {
-                    try {
-                        Thread notifierThread = new Thread(new RunListeners(this), "RequestNotifier-addToNotify");
-                        if (notifierThread != null) {
-                            mNotifierThreads.addElement(notifierThread);
-                            logger.info("RequestNotifier: - publishing threads: " + mNotifierThreads.size());
-                            if (mPublishingQueuePriority > 0) {
-                                notifierThread.setPriority(mPublishingQueuePriority);
-                            }
-                            notifierThread.start();
-                        }
-
-                    } catch (Throwable e) {
-                        logger.warn("Unable to notify listeners: " + e.getMessage(), e);
-                    }
-                }
+        if (mStopped || mSearchForRequests) {
+            return;
+        }
+
+        logger.info("RequestNotifier: - max requests: " + mMaxRequests);
+        logger.info("RequestNotifier: - buffer size: " + mRequests.size());
 
-            } else {
-                mSearchForRequests = true;
+        String id = r.getRequestId().toString();
+
+        if (mIdle) {
+            // save the position so the queue can be recovered
+            if (mSavePublishingStatus > 0) {
+                CMSEngine engine = CMS.getCMSEngine();
+                RequestRepository requestRepository = engine.getRequestRepository();
+                if (requestRepository != null) {
+                    requestRepository.setPublishingStatus(id);
+                }
             }
+            mIdle = false;
+        }
+
+        if (mRequests.size() < mMaxRequests) {
+            queueRequest(id);
+            mLastRequestId = id;
+            notify();
+
+        } else {
+            logger.info("RequestNotifier: Publishing queue is full");
+            mSearchForRequests = true;
         }
     }
 
@@ -465,36 +665,66 @@ public class RequestNotifier {
      *
      * @param id request request
      */
-    public void recoverPublishingQueue(String id) {
+    public synchronized void recoverPublishingQueue(String id) {
 
         logger.info("RequestNotifier: Recovering publishing queue for request " + id);
         logger.info("RequestNotifier: - requests: " + mRequests.size());
         logger.info("RequestNotifier: - max requests: " + mMaxRequests);
 
-        if (mRequests.size() == 0) {
+        if (mRequests.isEmpty()) {
             logger.info("RequestNotifier: Extending buffer");
-            mRequests.addElement(id);
+            queueRequest(id);
+            mLastRequestId = id;
+            mSearchForRequests = true;
+            mIdle = false;
+            notify();
+        }
+    }
 
-            if (morePublishingThreads()) {
-                synchronized (this) {
-                    mSearchForRequests = true;
-                }
+    public void logStats() {
+        long batches = mProcessedBatches.sum();
+        logger.info("RequestNotifier: " + mProcessedRequests.sum() + " requests published in "
+                + batches + " batches, " + getNumberOfRequests() + " queued");
+    }
 
-                try {
-                    Thread notifierThread = new Thread(new RunListeners(this), "RequestNotifier-recoverPublishingQueue");
-                    if (notifierThread != null) {
-                        mNotifierThreads.addElement(notifierThread);
-                        logger.info("RequestNotifier: - publishing threads: " + mNotifierThreads.size());
-                        if (mPublishingQueuePriority > 0) {
-                            notifierThread.setPriority(mPublishingQueuePriority);
-                        }
-                        notifierThread.start();
-                    }
-
-                } catch (Throwable e) {
-                    logger.warn("Unable to recover publishing queue: " + e.getMessage(), e);
-                }
+    /**
+     * Stops the notifier threads. Requests remaining in the publishing
+     * queue will be recovered on the next startup from the saved
+     * publishing status.
+     */
+    public void shutdown() {
+
+        List<Thread> threads;
+
+        synchronized (this) {
+            mStopped = true;
+            notifyAll();
+            threads = new ArrayList<>(mNotifierThreads);
+            mNotifierThreads.clear();
+        }
+
+        if (mIsPublishingQueueEnabled) {
+            logStats();
+        }
+
+        for (Thread thread : threads) {
+            try {
+                // let the current batch finish
+                thread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
             }
         }
+
+        ExecutorService executor;
+        synchronized (this) {
+            executor = mExecutor;
+            mExecutor = null;
+        }
+
+        if (executor != null) {
+            executor.shutdown();
+        }
     }
 }
@@ -31,7 +31,6 @@ public class RunListeners implements Runnable {
 
     Request mRequest = null;
     Enumeration<IRequestListener> mListeners = null;
-    RequestNotifier mRequestNotifier;
 
     /**
      * RunListeners class constructor.
@@ -44,58 +43,22 @@ public class RunListeners implements Runnable {
         mListeners = listeners;
     }
 
-    /**
-     * RunListeners class constructor.
-     *
-     * @param requestNotifier request
-     */
-    public RunListeners(RequestNotifier requestNotifier) {
-        mRequestNotifier = requestNotifier;
-        mListeners = mRequestNotifier.getListeners();
-    }
-
     /**
      * RunListeners thread implementation.
      */
     @Override
     public void run() {
 
-        logger.info("RunListeners: Running listeners:");
-        logger.info("RunListeners: - queue: " + (mRequestNotifier != null ? mRequestNotifier.getNumberOfRequests() : null));
-        logger.info("RunListeners: - request: " + (mRequest != null ? mRequest.getRequestId().toHexString() : null));
-
-        do {
-            if (mRequestNotifier != null) {
-                mRequest = mRequestNotifier.getRequest();
-            }
-
-            if (mListeners != null && mRequest != null) {
-                logger.info("RunListeners: Processing request " + mRequest.getRequestId().toHexString());
-
-                while (mListeners.hasMoreElements()) {
-                    IRequestListener l = mListeners.nextElement();
-                    logger.info("RunListeners: Processing request " + mRequest.getRequestId().toHexString() + " with " + l.getClass().getSimpleName());
-                    l.accept(mRequest);
-                }
-
-                if (mRequestNotifier != null) {
-                    logger.info("RunListeners: Updating publishing status for request " + mRequest.getRequestId().toHexString());
-                    mRequestNotifier.updatePublishingStatus(mRequest.getRequestId().toString());
-                }
-            }
-
-            logger.info("RunListeners: Running listeners:");
-            logger.info("RunListeners: - queue: " + (mRequestNotifier != null ? mRequestNotifier.getNumberOfRequests() : null));
-            logger.info("RunListeners: - request: " + (mRequest != null ? mRequest.getRequestId().toHexString() : null));
-
-            if (mRequestNotifier != null) {
-                mListeners = mRequestNotifier.getListeners();
-            }
+        if (mListeners == null || mRequest == null) {
+            return;
+        }
 
-        } while (mRequestNotifier != null && mRequestNotifier.getNumberOfRequests() > 0);
+        logger.info("RunListeners: Processing request " + mRequest.getRequestId().toHexString());
 
-        if (mRequestNotifier != null) {
-            mRequestNotifier.removeNotifierThread(Thread.currentThread());
+        while (mListeners.hasMoreElements()) {
+            IRequestListener l = mListeners.nextElement();
+            logger.info("RunListeners: Processing request " + mRequest.getRequestId().toHexString() + " with " + l.getClass().getSimpleName());
+            l.accept(mRequest);
         }
     }
 }
@@ -0,0 +1,186 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.usrgrp;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import netscape.ldap.LDAPEntry;
+
+/**
+ * Cache of user entries, certificate-to-user mappings, and group
+ * memberships used by UGSubsystem for authentication and authorization.
+ *
+ * The cache is only used while UGChangeMonitor is connected to the
+ * database, and it is cleared whenever a user or a group changes.
+ * Values read from the database are only cached if the cache was not
+ * cleared while they were being read, so a concurrent change cannot
+ * leave a stale value in the cache.
+ */
+public class UGCache {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(UGCache.class);
+
+    public static final int DEFAULT_SIZE = 1000;
+    public static final int DEFAULT_TIMEOUT = 300; // seconds
+
+    private final int size;
+    private final long timeout; // milliseconds
+
+    // incremented whenever the cache is cleared
+    private final AtomicLong generation = new AtomicLong();
+
+    private volatile boolean active;
+
+    // user DN -> user entry
+    private Map<String, Entry<LDAPEntry>> users = new ConcurrentHashMap<>();
+
+    // certificate string or filter -> user DN
+    private Map<String, Entry<String>> userDNs = new ConcurrentHashMap<>();
+
+    // group name + user DN -> membership
+    private Map<String, Entry<Boolean>> members = new ConcurrentHashMap<>();
+
+    private LongAdder hits = new LongAdder();
+    private LongAdder misses = new LongAdder();
+
+    /**
+     * @param size maximum number of entries of each type
+     * @param timeout time in seconds an entry is used, 0 to keep
+     *   entries until the cache is cleared
+     */
+    public UGCache(int size, int timeout) {
+        this.size = size;
+        this.timeout = timeout * 1000L;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Enables or disables the cache. The cache is cleared either way
+     * since changes may have been missed while it was inactive.
+     */
+    public void setActive(boolean active) {
+        logger.info("UGCache: " + (active ? "Activating" : "Deactivating") + " cache");
+        clear();
+        this.active = active;
+    }
+
+    /**
+     * Returns the current generation of the cache. The generation
+     * must be obtained before reading from the database and passed
+     * to the put methods.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    public void clear() {
+        generation.incrementAndGet();
+        users.clear();
+        userDNs.clear();
+        members.clear();
+    }
+
+    public LDAPEntry getUser(String userDN) {
+        return get(users, userDN.toLowerCase());
+    }
+
+    public void putUser(long generation, LDAPEntry entry) {
+        put(users, generation, entry.getDN().toLowerCase(), entry);
+    }
+
+    public String getUserDN(String key) {
+        return get(userDNs, key);
+    }
+
+    public void putUserDN(long generation, String key, String userDN) {
+        put(userDNs, generation, key, userDN);
+    }
+
+    public Boolean isMemberOf(String groupName, String userDN) {
+        return get(members, getMemberKey(groupName, userDN));
+    }
+
+    public void putMemberOf(long generation, String groupName, String userDN, boolean member) {
+        put(members, generation, getMemberKey(groupName, userDN), member);
+    }
+
+    private static String getMemberKey(String groupName, String userDN) {
+        return groupName.toLowerCase() + "\0" + userDN.toLowerCase();
+    }
+
+    private <T> T get(Map<String, Entry<T>> map, String key) {
+
+        if (!active) {
+            return null;
+        }
+
+        Entry<T> entry = map.get(key);
+
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+
+        if (timeout > 0 && System.currentTimeMillis() - entry.createTime >= timeout) {
+            map.remove(key, entry);
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        return entry.value;
+    }
+
+    private <T> void put(Map<String, Entry<T>> map, long generation, String key, T value) {
+
+        if (!active || generation != this.generation.get()) {
+            return;
+        }
+
+        if (map.size() >= size) {
+            map.clear();
+        }
+
+        Entry<T> entry = new Entry<>(value);
+        map.put(key, entry);
+
+        // the cache was cleared concurrently
+        if (generation != this.generation.get()) {
+            map.remove(key, entry);
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public void logStats() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        logger.info(String.format("UGCache: %d lookups, %.1f%% hits",
+                total, total == 0 ? 0 : 100.0 * h / total));
+    }
+
+    private static class Entry<T> {
+
+        final T value;
+        final long createTime = System.currentTimeMillis();
+
+        Entry(T value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.usrgrp;
+
+import com.netscape.certsrv.ldap.ELdapException;
+import com.netscape.cmscore.ldapconn.LdapBoundConnFactory;
+import com.netscape.cmsutil.ldap.LDAPUtil;
+
+import netscape.ldap.LDAPConnection;
+import netscape.ldap.LDAPEntry;
+import netscape.ldap.LDAPException;
+import netscape.ldap.LDAPSearchConstraints;
+import netscape.ldap.LDAPSearchResults;
+import netscape.ldap.controls.LDAPEntryChangeControl;
+import netscape.ldap.controls.LDAPPersistSearchControl;
+
+/**
+ * Monitors users and groups in the database with a persistent search
+ * and clears the UGSubsystem cache when they change, including changes
+ * made by other servers or replicas.
+ *
+ * The cache is only active while the persistent search is running.
+ */
+public class UGChangeMonitor implements Runnable {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(UGChangeMonitor.class);
+
+    private UGSubsystem ugSubsystem;
+    private UGCache cache;
+    private LdapBoundConnFactory connFactory;
+    private String baseDN;
+
+    private volatile boolean stopped;
+    private Thread thread;
+
+    public UGChangeMonitor(
+            UGSubsystem ugSubsystem,
+            UGCache cache,
+            LdapBoundConnFactory connFactory,
+            String baseDN) {
+
+        this.ugSubsystem = ugSubsystem;
+        this.cache = cache;
+        this.connFactory = connFactory;
+        this.baseDN = baseDN;
+    }
+
+    public void start() {
+        thread = new Thread(this, "UGChangeMonitor");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+
+        stopped = true;
+        cache.setActive(false);
+
+        try {
+            // close the connection to end the persistent search
+            connFactory.reset();
+        } catch (ELdapException e) {
+            logger.warn("UGChangeMonitor: Unable to close connection: " + e.getMessage(), e);
+        }
+
+        thread = null;
+    }
+
+    @Override
+    public void run() {
+
+        int op = LDAPPersistSearchControl.ADD
+            | LDAPPersistSearchControl.MODIFY
+            | LDAPPersistSearchControl.DELETE
+            | LDAPPersistSearchControl.MODDN;
+
+        // only return changes, the cache is filled on demand
+        LDAPPersistSearchControl persistCtrl =
+            new LDAPPersistSearchControl(op, true, true, true);
+
+        LDAPConnection conn = null;
+
+        logger.info("UGChangeMonitor: Starting");
+
+        while (!stopped) {
+            try {
+                conn = connFactory.getConn();
+                LDAPSearchConstraints cons = conn.getSearchConstraints();
+                cons.setServerControls(persistCtrl);
+                cons.setBatchSize(1);
+                cons.setServerTimeLimit(0 /* seconds */);
+
+                String filter = "(|(objectclass=" + UGSubsystem.GROUP_ATTR_VALUE + ")(objectclass=cmsuser))";
+                String[] attrs = { "cn", "uid" };
+
+                LDAPSearchResults results = conn.search(
+                        baseDN, LDAPConnection.SCOPE_SUB,
+                        filter, attrs, false, cons);
+
+                // changes may have been missed while disconnected
+                ugSubsystem.markChanged();
+                cache.setActive(true);
+
+                while (!stopped && results.hasMoreElements()) {
+                    LDAPEntry entry = results.next();
+
+                    LDAPEntryChangeControl changeControl = (LDAPEntryChangeControl)
+                        LDAPUtil.getControl(
+                            LDAPEntryChangeControl.class, results.getResponseControls());
+
+                    if (changeControl != null) {
+                        logger.debug("UGChangeMonitor: Change type " + changeControl.getChangeType()
+                                + ": " + entry.getDN());
+                    } else {
+                        logger.debug("UGChangeMonitor: Changed: " + entry.getDN());
+                    }
+
+                    ugSubsystem.markChanged();
+                }
+
+            } catch (ELdapException e) {
+                logger.warn("UGChangeMonitor: Unable to get LDAP connection. Retrying in 1 second.");
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+
+            } catch (LDAPException e) {
+                if (!stopped) {
+                    logger.error("UGChangeMonitor: Persistent search failed: " + e.getMessage(), e);
+                }
+
+            } finally {
+                // stop using the cache until the search is restarted
+                cache.setActive(false);
+
+                if (conn != null) {
+                    try {
+                        connFactory.returnConn(conn);
+                        conn = null;
+                    } catch (Exception e) {
+                        logger.error("UGChangeMonitor: Unable to release LDAP connection: " + e.getMessage(), e);
+                    }
+                }
+            }
+        }
+
+        logger.info("UGChangeMonitor: Stopping");
+    }
+}
@@ -25,6 +25,7 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.StringUtils;
 import org.mozilla.jss.netscape.security.x509.X509CertImpl;
@@ -81,6 +82,17 @@ public class UGSubsystem {
     protected transient LdapBoundConnFactory mLdapConnFactory = null;
     protected String mBaseDN = null;
 
+    // incremented when users or group memberships change
+    private final AtomicLong mChangeCount = new AtomicLong();
+
+    private LDAPConfig mLDAPConfig;
+    private PKISocketConfig mSocketConfig;
+    private IPasswordStore mPasswordStore;
+
+    // null if the cache is disabled
+    protected UGCache mCache;
+    private UGChangeMonitor mChangeMonitor;
+
     /**
      * Constructs LDAP based usr/grp management
      */
@@ -94,14 +106,67 @@ public class UGSubsystem {
 
         mBaseDN = ldapConfig.getBaseDN();
 
+        mLDAPConfig = ldapConfig;
+        mSocketConfig = socketConfig;
+        mPasswordStore = passwordStore;
+
         mLdapConnFactory = new LdapBoundConnFactory("UGSubsystem");
         mLdapConnFactory.init(socketConfig, ldapConfig, passwordStore);
     }
 
+    /**
+     * Enables the cache of users, user certificates, and group
+     * memberships. The cache is invalidated with a persistent search
+     * so it should only be enabled in a running server.
+     *
+     * @param size maximum number of cached entries of each type
+     * @param timeout time in seconds a cached entry is used
+     */
+    public void initCache(int size, int timeout) throws Exception {
+
+        logger.info("UGSubsystem: Cache size: " + size + ", timeout: " + timeout + " s");
+
+        LdapBoundConnFactory connFactory = new LdapBoundConnFactory("UGChangeMonitor");
+        connFactory.init(mSocketConfig, mLDAPConfig, mPasswordStore);
+
+        mCache = new UGCache(size, timeout);
+
+        mChangeMonitor = new UGChangeMonitor(this, mCache, connFactory, mBaseDN);
+        mChangeMonitor.start();
+    }
+
+    public UGCache getCache() {
+        return mCache;
+    }
+
+    /**
+     * Returns a counter that changes whenever a user, a group, or
+     * its members change, so cached authorization results can be
+     * discarded.
+     */
+    public long getChangeCount() {
+        return mChangeCount.get();
+    }
+
+    protected void markChanged() {
+        mChangeCount.incrementAndGet();
+
+        if (mCache != null) {
+            mCache.clear();
+        }
+    }
+
     /**
      * Disconnects usr/grp manager from the LDAP
      */
     public void shutdown() {
+
+        if (mChangeMonitor != null) {
+            mChangeMonitor.stop();
+            mChangeMonitor = null;
+            mCache.logStats();
+        }
+
         try {
             if (mLdapConnFactory != null) {
                 mLdapConnFactory.reset();
@@ -140,6 +205,18 @@ public class UGSubsystem {
             userDN = userID;
         }
 
+        UGCache cache = mCache;
+        long generation = 0;
+
+        if (cache != null) {
+            LDAPEntry entry = cache.getUser(userDN);
+            if (entry != null) {
+                logger.debug("UGSubsystem: Using cached user " + userDN);
+                return buildUser(entry);
+            }
+            generation = cache.getGeneration();
+        }
+
         LDAPConnection ldapconn = null;
 
         try {
@@ -155,7 +232,7 @@ public class UGSubsystem {
                     false);
 
             // throw EUsrGrpException if result is empty
-            Enumeration<User> e = buildUsers(res);
+            Enumeration<User> e = buildUsers(res, cache, generation, null);
 
             // user found
             return e.nextElement();
@@ -185,15 +262,27 @@ public class UGSubsystem {
             return null;
         }
 
+        String filter = LDAP_ATTR_USER_CERT_STRING + "=" + LDAPUtil.escapeFilter(getCertificateString(cert));
+
+        UGCache cache = mCache;
+        long generation = 0;
+
+        if (cache != null) {
+            User user = getCachedUser(cache, filter);
+            if (user != null) {
+                return user;
+            }
+            generation = cache.getGeneration();
+        }
+
         LDAPConnection ldapconn = null;
 
         try {
             ldapconn = getConn();
-            String filter = LDAP_ATTR_USER_CERT_STRING + "=" + LDAPUtil.escapeFilter(getCertificateString(cert));
             LDAPSearchResults res =
                     ldapconn.search(getUserBaseDN(),
                             LDAPConnection.SCOPE_SUB, filter, null, false);
-            Enumeration<User> e = buildUsers(res);
+            Enumeration<User> e = buildUsers(res, cache, generation, filter);
 
             return e.nextElement();
 
@@ -237,6 +326,17 @@ public class UGSubsystem {
             filter = stripped.toString() + up;
         }
 
+        UGCache cache = mCache;
+        long generation = 0;
+
+        if (cache != null) {
+            User user = getCachedUser(cache, filter);
+            if (user != null) {
+                return user;
+            }
+            generation = cache.getGeneration();
+        }
+
         LDAPConnection ldapconn = null;
 
         try {
@@ -245,7 +345,7 @@ public class UGSubsystem {
                     LDAPv3.SCOPE_SUB, "(" + filter + ")",
                     null, false);
 
-            Enumeration<User> e = buildUsers(res);
+            Enumeration<User> e = buildUsers(res, cache, generation, filter);
 
             return e.nextElement();
 
@@ -374,6 +474,19 @@ public class UGSubsystem {
 
     protected Enumeration<User> buildUsers(LDAPSearchResults res) throws
             EUsrGrpException {
+        return buildUsers(res, null, 0, null);
+    }
+
+    /**
+     * Builds users from search results and stores the first entry in
+     * the cache, optionally under the given key (e.g. the search filter).
+     */
+    private Enumeration<User> buildUsers(
+            LDAPSearchResults res,
+            UGCache cache,
+            long generation,
+            String key) throws EUsrGrpException {
+
         Vector<User> v = new Vector<>();
 
         if (res != null) {
@@ -381,6 +494,13 @@ public class UGSubsystem {
                 LDAPEntry entry = (LDAPEntry) res.nextElement();
                 User user = buildUser(entry);
 
+                if (cache != null && v.isEmpty()) {
+                    cache.putUser(generation, entry);
+                    if (key != null) {
+                        cache.putUserDN(generation, key, entry.getDN());
+                    }
+                }
+
                 v.addElement(user);
             }
         }
@@ -393,6 +513,25 @@ public class UGSubsystem {
         return v.elements();
     }
 
+    /**
+     * Returns the cached user found with the given search filter.
+     */
+    private User getCachedUser(UGCache cache, String filter) throws EUsrGrpException {
+
+        String userDN = cache.getUserDN(filter);
+        if (userDN == null) {
+            return null;
+        }
+
+        LDAPEntry entry = cache.getUser(userDN);
+        if (entry == null) {
+            return null;
+        }
+
+        logger.debug("UGSubsystem: Using cached user " + userDN);
+        return buildUser(entry);
+    }
+
     /**
      * builds a User instance. Sets only uid for user entry retrieved
      * from LDAP server. for listing efficiency only.
@@ -714,6 +853,7 @@ public class UGSubsystem {
         try {
             ldapconn = getConn();
             ldapconn.add(entry);
+            markChanged();
 
         } catch (LDAPException e) {
             throw LDAPExceptionConverter.toPKIException(e);
@@ -754,6 +894,7 @@ public class UGSubsystem {
 
             ldapconn = getConn();
             ldapconn.modify(dn, mods);
+            markChanged();
 
             SessionContext sessionContext = SessionContext.getContext();
             String adminId = (String) sessionContext.get(SessionContext.USER_ID);
@@ -797,6 +938,7 @@ public class UGSubsystem {
         try {
             ldapconn = getConn();
             ldapconn.modify(dn, mods);
+            markChanged();
 
             SessionContext sessionContext = SessionContext.getContext();
             String adminId = (String) sessionContext.get(SessionContext.USER_ID);
@@ -839,6 +981,7 @@ public class UGSubsystem {
         try {
             ldapconn = getConn();
             ldapconn.modify(dn, mods);
+            markChanged();
 
             SessionContext sessionContext = SessionContext.getContext();
             String adminId = (String) sessionContext.get(SessionContext.USER_ID);
@@ -944,6 +1087,7 @@ public class UGSubsystem {
                 attrs.add(LDAPModification.DELETE, certAttrS);
 
                 ldapconn.modify(dn, attrs);
+                markChanged();
 
                 certCount++;
 
@@ -1002,6 +1146,7 @@ public class UGSubsystem {
             throw new EUsrGrpException("Unable to add user to group: " + e.getMessage(), e);
 
         } finally {
+            markChanged();
             if (ldapconn != null)
                 returnConn(ldapconn);
         }
@@ -1030,6 +1175,7 @@ public class UGSubsystem {
             throw new EUsrGrpException("Unable to remove user from group: " + e.getMessage(), e);
 
         } finally {
+            markChanged();
             if (ldapconn != null)
                 returnConn(ldapconn);
         }
@@ -1065,6 +1211,7 @@ public class UGSubsystem {
             logger.error("Unable to remove user: " + e.getMessage(), e);
 
         } finally {
+            markChanged();
             if (ldapconn != null)
                 returnConn(ldapconn);
         }
@@ -1184,6 +1331,7 @@ public class UGSubsystem {
              **/
             ldapconn.modify("uid=" + LDAPUtil.escapeRDNValue(user.getUserID()) +
                     "," + getUserBaseDN(), attrs);
+            markChanged();
             // for audit log
             SessionContext sessionContext = SessionContext.getContext();
             String adminId = (String) sessionContext.get(SessionContext.USER_ID);
@@ -1551,6 +1699,19 @@ public class UGSubsystem {
      * by running an ldap search for the user in the group
      */
     protected boolean isMemberOfLdapGroup(String userid, String groupname) {
+
+        UGCache cache = mCache;
+        long generation = 0;
+
+        if (cache != null) {
+            Boolean member = cache.isMemberOf(groupname, userid);
+            if (member != null) {
+                logger.trace("cached authorization result: " + member);
+                return member;
+            }
+            generation = cache.getGeneration();
+        }
+
         String basedn = "cn=" + LDAPUtil.escapeRDNValue(groupname) + ",ou=groups," + mBaseDN;
         LDAPConnection ldapconn = null;
         boolean founduser = false;
@@ -1579,6 +1740,10 @@ public class UGSubsystem {
                 founduser = true;
             }
             logger.trace("authorization result: " + founduser);
+
+            if (cache != null) {
+                cache.putMemberOf(generation, groupname, userid, founduser);
+            }
         } catch (LDAPException e) {
             String errMsg =
                     "isMemberOfLdapGroup: could not find group " + groupname + ". Error " + e;
@@ -1658,6 +1823,7 @@ public class UGSubsystem {
             throw new EUsrGrpException("Unable to add group: " + e.getMessage(), e);
 
         } finally {
+            markChanged();
             if (ldapconn != null)
                 returnConn(ldapconn);
         }
@@ -1686,6 +1852,7 @@ public class UGSubsystem {
             throw new EUsrGrpException("Unable to remove group: " + e.getMessage(), e);
 
         } finally {
+            markChanged();
             if (ldapconn != null)
                 returnConn(ldapconn);
         }
@@ -1746,6 +1913,7 @@ public class UGSubsystem {
             throw new EUsrGrpException("Unable to modify group: " + e.getMessage(), e);
 
         } finally {
+            markChanged();
             if (ldapconn != null)
                 returnConn(ldapconn);
         }
@@ -27,4 +27,25 @@ public class UGSubsystemConfig extends ConfigStore {
     public LDAPConfig getLDAPConfig() throws EBaseException {
         return getSubStore("ldap", LDAPConfig.class);
     }
+
+    /**
+     * Returns usrgrp.cache.enable parameter (default: false).
+     */
+    public boolean getCacheEnabled() throws EBaseException {
+        return getBoolean("cache.enable", false);
+    }
+
+    /**
+     * Returns usrgrp.cache.size parameter.
+     */
+    public int getCacheSize() throws EBaseException {
+        return getInteger("cache.size", UGCache.DEFAULT_SIZE);
+    }
+
+    /**
+     * Returns usrgrp.cache.timeout parameter (in seconds).
+     */
+    public int getCacheTimeout() throws EBaseException {
+        return getInteger("cache.timeout", UGCache.DEFAULT_TIMEOUT);
+    }
 }
@@ -17,6 +17,7 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmscore.util;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.Hashtable;
 import java.util.Vector;
@@ -25,6 +26,8 @@ import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.util.IStatsSubsystem;
 import com.netscape.certsrv.util.StatsEvent;
 import com.netscape.cmscore.base.ConfigStore;
+import com.netscape.cmscore.connector.HttpConnFactory;
+import com.netscape.cmscore.ldapconn.LdapConnPool;
 
 /**
  * A class represents a internal subsystem. This subsystem
@@ -147,6 +150,29 @@ public class StatsSubsystem implements IStatsSubsystem {
     public void resetCounters() {
         mStartTime = new Date();
         mAllTrans.resetCounters();
+        for (LdapConnPool pool : getConnPools()) {
+            pool.resetCounters();
+        }
+        for (HttpConnFactory factory : getHttpConnFactories()) {
+            factory.resetCounters();
+        }
+    }
+
+    /**
+     * Returns the active concurrent LDAP connection pools, which provide
+     * acquire time, in-use and wait queue statistics.
+     */
+    public Collection<LdapConnPool> getConnPools() {
+        return LdapConnPool.getPools();
+    }
+
+    /**
+     * Returns the active HTTP connection factories used by connectors,
+     * which provide in-flight, connection and latency statistics for
+     * each target.
+     */
+    public Collection<HttpConnFactory> getHttpConnFactories() {
+        return HttpConnFactory.getFactories();
     }
 
     @Override
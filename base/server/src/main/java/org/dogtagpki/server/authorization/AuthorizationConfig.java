@@ -5,6 +5,7 @@
 //
 package org.dogtagpki.server.authorization;
 
+import com.netscape.certsrv.base.EBaseException;
 import com.netscape.cmscore.base.ConfigStorage;
 import com.netscape.cmscore.base.ConfigStore;
 import com.netscape.cmscore.base.SimpleProperties;
@@ -28,4 +29,18 @@ public class AuthorizationConfig extends ConfigStore {
     public AuthzManagersConfig getAuthzManagersConfig() {
         return getSubStore("instance", AuthzManagersConfig.class);
     }
+
+    /**
+     * Returns authz.decisionCache.size parameter.
+     */
+    public int getDecisionCacheSize() throws EBaseException {
+        return getInteger("decisionCache.size", 0);
+    }
+
+    /**
+     * Returns authz.decisionCache.timeout parameter (in seconds).
+     */
+    public int getDecisionCacheTimeout() throws EBaseException {
+        return getInteger("decisionCache.timeout", 60);
+    }
 }
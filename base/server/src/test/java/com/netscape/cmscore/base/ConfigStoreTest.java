@@ -0,0 +1,80 @@
+package com.netscape.cmscore.base;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class ConfigStoreTest {
+
+    @Test
+    public void testReadAfterWrite() throws Exception {
+
+        ConfigStore config = new ConfigStore();
+        config.putString("ca.name", " test ");
+        config.putInteger("ca.count", 5);
+        config.putBoolean("ca.enable", true);
+
+        ConfigStore ca = config.getSubStore("ca");
+        assertEquals("test", ca.getString("name"));
+        assertEquals(5, ca.getInteger("count"));
+        assertTrue(ca.getBoolean("enable"));
+
+        // changes are visible without commit
+        ca.putInteger("count", 6);
+        ca.putBoolean("enable", false);
+        assertEquals(6, config.getInteger("ca.count"));
+        assertFalse(config.getBoolean("ca.enable"));
+
+        ca.remove("name");
+        assertNull(config.get("ca.name"));
+        assertEquals(2, ca.size());
+    }
+
+    @Test
+    public void testChangeListener() throws Exception {
+
+        ConfigStore config = new ConfigStore();
+        config.putString("ca.name", "test");
+        config.putString("ca.crl.enable", "true");
+        config.putString("kra.name", "test");
+
+        ConfigStore ca = config.getSubStore("ca");
+
+        List<Set<String>> changes = new ArrayList<>();
+        ca.addChangeListener((store, names) -> {
+            assertEquals(ca, store);
+            changes.add(names);
+        });
+
+        // no changes, no notification
+        config.commit(false);
+        assertTrue(changes.isEmpty());
+
+        config.putString("ca.name", "new");
+        config.putString("ca.serial", "1");
+        config.remove("ca.crl.enable");
+        config.putString("kra.name", "new");
+        config.commit(false);
+
+        assertEquals(1, changes.size());
+
+        Set<String> expected = new HashSet<>();
+        expected.add("name");
+        expected.add("serial");
+        expected.add("crl.enable");
+        assertEquals(expected, changes.get(0));
+
+        // changes outside the sub-store are not reported
+        config.putString("kra.name", "other");
+        config.commit(false);
+        assertEquals(1, changes.size());
+    }
+}
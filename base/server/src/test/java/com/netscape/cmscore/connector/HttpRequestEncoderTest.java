@@ -0,0 +1,81 @@
+package com.netscape.cmscore.connector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Hashtable;
+
+import org.junit.Test;
+
+public class HttpRequestEncoderTest {
+
+    private static HttpPKIMessage createMessage() {
+
+        HttpPKIMessage msg = new HttpPKIMessage();
+        msg.reqType = "enrollment";
+        msg.reqId = "12345";
+        msg.reqStatus = "pending";
+        msg.reqRealm = null;
+
+        Hashtable<String, String> table = new Hashtable<>();
+        table.put("cert_request_type", "crmf");
+        table.put("subject", "UID=testuser,O=EXAMPLE");
+
+        msg.mNameVals.addElement("profileId");
+        msg.mNameVals.addElement("caServerKeygen_DirectoryUserCert");
+        msg.mNameVals.addElement("requestInfo");
+        msg.mNameVals.addElement(table);
+        msg.mNameVals.addElement("unicode");
+        msg.mNameVals.addElement("\u00e9l\u00e8ve \u4e2d\u6587");
+
+        return msg;
+    }
+
+    private static void assertMessage(HttpPKIMessage expected, HttpPKIMessage actual) {
+        assertEquals(expected.reqType, actual.reqType);
+        assertEquals(expected.reqId, actual.reqId);
+        assertEquals(expected.reqStatus, actual.reqStatus);
+        assertEquals(expected.reqRealm, actual.reqRealm);
+        assertEquals(expected.mNameVals, actual.mNameVals);
+    }
+
+    @Test
+    public void testBinary() throws Exception {
+
+        HttpRequestEncoder encoder = new HttpRequestEncoder(HttpRequestEncoder.FORMAT_BINARY);
+        HttpPKIMessage msg = createMessage();
+
+        String encoded = encoder.encode(msg);
+        assertEquals(HttpRequestEncoder.FORMAT_BINARY, HttpRequestEncoder.getFormat(encoded));
+
+        HttpPKIMessage result = (HttpPKIMessage) new HttpRequestEncoder().decode(encoded);
+        assertMessage(msg, result);
+        assertNull(result.getReqRealm());
+    }
+
+    @Test
+    public void testLegacy() throws Exception {
+
+        HttpRequestEncoder encoder = new HttpRequestEncoder();
+        HttpPKIMessage msg = createMessage();
+
+        String encoded = encoder.encode(msg);
+        assertEquals(HttpRequestEncoder.FORMAT_LEGACY, HttpRequestEncoder.getFormat(encoded));
+
+        // a binary encoder still decodes legacy messages
+        HttpPKIMessage result = (HttpPKIMessage) new HttpRequestEncoder(HttpRequestEncoder.FORMAT_BINARY).decode(encoded);
+        assertMessage(msg, result);
+    }
+
+    @Test
+    public void testSize() throws Exception {
+
+        HttpPKIMessage msg = createMessage();
+
+        String legacy = new HttpRequestEncoder().encode(msg, HttpRequestEncoder.FORMAT_LEGACY);
+        String binary = new HttpRequestEncoder().encode(msg, HttpRequestEncoder.FORMAT_BINARY);
+
+        assertTrue(binary.length() < legacy.length());
+    }
+}
@@ -0,0 +1,132 @@
+package com.netscape.cmscore.dbs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Hashtable;
+import java.util.Map;
+
+import org.junit.Test;
+import org.mozilla.jss.netscape.security.x509.CRLExtensions;
+import org.mozilla.jss.netscape.security.x509.CRLReasonExtension;
+import org.mozilla.jss.netscape.security.x509.InvalidityDateExtension;
+import org.mozilla.jss.netscape.security.x509.RevocationReason;
+import org.mozilla.jss.netscape.security.x509.RevokedCertImpl;
+import org.mozilla.jss.netscape.security.x509.RevokedCertificate;
+
+public class RevokedCertsMapperTest {
+
+    private static RevokedCertImpl createRevokedCert(long serialNumber, RevocationReason reason, Date invalidityDate)
+            throws Exception {
+
+        CRLExtensions exts = new CRLExtensions();
+        exts.set(CRLReasonExtension.NAME, new CRLReasonExtension(reason));
+
+        if (invalidityDate != null) {
+            exts.set(InvalidityDateExtension.NAME, new InvalidityDateExtension(invalidityDate));
+        }
+
+        return new RevokedCertImpl(BigInteger.valueOf(serialNumber), new Date(1600000000123L + serialNumber), exts);
+    }
+
+    private static void assertRevokedCert(RevokedCertificate expected, RevokedCertificate actual) throws Exception {
+
+        assertEquals(expected.getSerialNumber(), actual.getSerialNumber());
+        assertEquals(expected.getRevocationDate(), actual.getRevocationDate());
+
+        CRLExtensions expectedExts = expected.getExtensions();
+        CRLExtensions actualExts = actual.getExtensions();
+
+        if (expectedExts == null) {
+            assertNull(actualExts);
+            return;
+        }
+
+        assertEquals(expectedExts.size(), actualExts.size());
+
+        CRLReasonExtension reason = (CRLReasonExtension) actualExts.get(CRLReasonExtension.NAME);
+        assertEquals(((CRLReasonExtension) expectedExts.get(CRLReasonExtension.NAME)).getReason(), reason.getReason());
+
+        InvalidityDateExtension invalidityDate = (InvalidityDateExtension) expectedExts.get(InvalidityDateExtension.NAME);
+        if (invalidityDate != null) {
+            assertEquals(invalidityDate.getInvalidityDate(),
+                    ((InvalidityDateExtension) actualExts.get(InvalidityDateExtension.NAME)).getInvalidityDate());
+        }
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+
+        Hashtable<BigInteger, RevokedCertificate> certs = new Hashtable<>();
+        certs.put(BigInteger.valueOf(3), createRevokedCert(3, RevocationReason.KEY_COMPROMISE, new Date(1500000000000L)));
+        certs.put(BigInteger.valueOf(1), createRevokedCert(1, RevocationReason.SUPERSEDED, null));
+        certs.put(BigInteger.valueOf(2), new RevokedCertImpl(BigInteger.valueOf(2), new Date(1600000000000L)));
+
+        byte[] data = RevokedCertsMapper.encode(RevokedCertsMapper.TYPE_SNAPSHOT, 0, certs, Collections.emptyList());
+        Hashtable<BigInteger, RevokedCertificate> result = RevokedCertsMapper.decode(Arrays.asList(data));
+
+        assertEquals(certs.size(), result.size());
+        for (Map.Entry<BigInteger, RevokedCertificate> entry : certs.entrySet()) {
+            assertRevokedCert(entry.getValue(), result.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void testDeltas() throws Exception {
+
+        Hashtable<BigInteger, RevokedCertificate> certs = new Hashtable<>();
+        certs.put(BigInteger.valueOf(1), createRevokedCert(1, RevocationReason.KEY_COMPROMISE, null));
+        certs.put(BigInteger.valueOf(2), createRevokedCert(2, RevocationReason.CERTIFICATE_HOLD, null));
+
+        byte[] snapshot = RevokedCertsMapper.encode(RevokedCertsMapper.TYPE_SNAPSHOT, 0, certs, Collections.emptyList());
+
+        RevokedCertImpl cert3 = createRevokedCert(3, RevocationReason.AFFILIATION_CHANGED, null);
+        byte[] delta1 = RevokedCertsMapper.encode(
+                RevokedCertsMapper.TYPE_DELTA,
+                1,
+                Collections.singletonMap(BigInteger.valueOf(3), cert3),
+                Arrays.asList(BigInteger.valueOf(2)));
+
+        RevokedCertImpl cert2 = createRevokedCert(2, RevocationReason.KEY_COMPROMISE, null);
+        byte[] delta2 = RevokedCertsMapper.encode(
+                RevokedCertsMapper.TYPE_DELTA,
+                2,
+                Collections.singletonMap(BigInteger.valueOf(2), cert2),
+                Arrays.asList(BigInteger.valueOf(3)));
+
+        // deltas are applied in sequence order regardless of value order
+        Hashtable<BigInteger, RevokedCertificate> result =
+                RevokedCertsMapper.decode(Arrays.asList(delta2, snapshot, delta1));
+
+        assertEquals(2, result.size());
+        assertRevokedCert(certs.get(BigInteger.valueOf(1)), result.get(BigInteger.valueOf(1)));
+        assertRevokedCert(cert2, result.get(BigInteger.valueOf(2)));
+        assertFalse(result.containsKey(BigInteger.valueOf(3)));
+    }
+
+    @Test
+    public void testLegacyObjectStream() throws Exception {
+
+        Hashtable<BigInteger, RevokedCertificate> certs = new Hashtable<>();
+        certs.put(BigInteger.valueOf(5), createRevokedCert(5, RevocationReason.CESSATION_OF_OPERATION, null));
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream os = new ObjectOutputStream(bos)) {
+            os.writeObject(certs);
+        }
+
+        Hashtable<BigInteger, RevokedCertificate> result = RevokedCertsMapper.decode(Arrays.asList(bos.toByteArray()));
+
+        assertEquals(1, result.size());
+        assertTrue(result.containsKey(BigInteger.valueOf(5)));
+        assertRevokedCert(certs.get(BigInteger.valueOf(5)), result.get(BigInteger.valueOf(5)));
+    }
+}
@@ -0,0 +1,177 @@
+package com.netscape.cmscore.dbs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class SerialNumberPoolTest {
+
+    /**
+     * Returns a generator that generates the given numbers and then
+     * fails to find available numbers.
+     */
+    private static SerialNumberPool.Generator generator(long... values) {
+        AtomicInteger index = new AtomicInteger();
+        return () -> {
+            int i = index.getAndIncrement();
+            return i < values.length ? BigInteger.valueOf(values[i]) : null;
+        };
+    }
+
+    private static void waitForSize(SerialNumberPool pool, int size) throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000;
+        while (pool.size() < size && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertEquals(size, pool.size());
+    }
+
+    @Test
+    public void testPoll() throws Exception {
+
+        AtomicLong counter = new AtomicLong();
+        SerialNumberPool pool = new SerialNumberPool(() -> BigInteger.valueOf(counter.incrementAndGet()), 5);
+
+        assertNull(pool.poll());
+
+        pool.start();
+        try {
+            waitForSize(pool, 5);
+
+            Set<BigInteger> serialNumbers = new HashSet<>();
+            for (int i = 0; i < 20; i++) {
+                BigInteger serialNumber;
+                long end = System.currentTimeMillis() + 5000;
+                while ((serialNumber = pool.poll()) == null && System.currentTimeMillis() < end) {
+                    Thread.sleep(1);
+                }
+                assertNotNull(serialNumber);
+                assertTrue("Duplicate serial number " + serialNumber, serialNumbers.add(serialNumber));
+            }
+
+            // the pool is refilled
+            waitForSize(pool, 5);
+
+        } finally {
+            pool.stop();
+        }
+    }
+
+    @Test
+    public void testReserve() throws Exception {
+
+        SerialNumberPool pool = new SerialNumberPool(generator(1, 2, 3), 3);
+
+        pool.start();
+        try {
+            waitForSize(pool, 3);
+
+            // numbers in the pool cannot be reserved
+            assertFalse(pool.reserve(BigInteger.valueOf(2)));
+
+            assertTrue(pool.reserve(BigInteger.valueOf(10)));
+            // numbers handed out recently cannot be reserved again
+            assertFalse(pool.reserve(BigInteger.valueOf(10)));
+
+            assertEquals(BigInteger.valueOf(1), pool.poll());
+            assertFalse(pool.reserve(BigInteger.valueOf(1)));
+
+        } finally {
+            pool.stop();
+        }
+    }
+
+    @Test
+    public void testReservationExpires() throws Exception {
+
+        SerialNumberPool pool = new SerialNumberPool(() -> null, 2);
+
+        assertTrue(pool.reserve(BigInteger.valueOf(1)));
+        assertTrue(pool.reserve(BigInteger.valueOf(2)));
+        assertFalse(pool.reserve(BigInteger.valueOf(1)));
+
+        // the oldest number is released after size more numbers
+        assertTrue(pool.reserve(BigInteger.valueOf(3)));
+        assertTrue(pool.reserve(BigInteger.valueOf(1)));
+        assertFalse(pool.reserve(BigInteger.valueOf(3)));
+    }
+
+    @Test
+    public void testClear() throws Exception {
+
+        SerialNumberPool pool = new SerialNumberPool(generator(1, 2, 3, 4), 3);
+
+        pool.start();
+        try {
+            waitForSize(pool, 3);
+            assertEquals(BigInteger.valueOf(1), pool.poll());
+            waitForSize(pool, 3);
+
+            pool.clear();
+
+            assertEquals(0, pool.size());
+            assertNull(pool.poll());
+
+            // discarded numbers can be reserved, handed out numbers cannot
+            assertTrue(pool.reserve(BigInteger.valueOf(4)));
+            assertFalse(pool.reserve(BigInteger.valueOf(1)));
+
+        } finally {
+            pool.stop();
+        }
+    }
+
+    @Test
+    public void testStop() throws Exception {
+
+        AtomicLong counter = new AtomicLong();
+        SerialNumberPool pool = new SerialNumberPool(() -> BigInteger.valueOf(counter.incrementAndGet()), 2);
+
+        pool.start();
+        waitForSize(pool, 2);
+        pool.stop();
+
+        // the number waiting for space in the pool is released
+        long end = System.currentTimeMillis() + 5000;
+        while (!pool.reserve(BigInteger.valueOf(3)) && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(2, pool.size());
+        assertEquals(BigInteger.valueOf(1), pool.poll());
+        assertEquals(BigInteger.valueOf(2), pool.poll());
+        assertNull(pool.poll());
+    }
+
+    @Test
+    public void testGeneratorFailure() throws Exception {
+
+        AtomicLong counter = new AtomicLong();
+        SerialNumberPool pool = new SerialNumberPool(() -> {
+            if (counter.incrementAndGet() == 1) {
+                throw new Exception("Database unavailable");
+            }
+            return BigInteger.valueOf(counter.get());
+        }, 2);
+
+        pool.start();
+        try {
+            // the pool retries after the failure
+            waitForSize(pool, 2);
+            assertEquals(BigInteger.valueOf(2), pool.poll());
+
+        } finally {
+            pool.stop();
+        }
+    }
+}
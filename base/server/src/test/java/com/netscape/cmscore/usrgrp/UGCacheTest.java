@@ -0,0 +1,70 @@
+package com.netscape.cmscore.usrgrp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import netscape.ldap.LDAPAttribute;
+import netscape.ldap.LDAPAttributeSet;
+import netscape.ldap.LDAPEntry;
+
+public class UGCacheTest {
+
+    private static final String USER_DN = "uid=admin,ou=people,dc=ca,dc=pki,dc=example,dc=com";
+
+    private static LDAPEntry createEntry() {
+        LDAPAttributeSet attrs = new LDAPAttributeSet();
+        attrs.add(new LDAPAttribute("uid", "admin"));
+        return new LDAPEntry(USER_DN, attrs);
+    }
+
+    @Test
+    public void testInactive() throws Exception {
+
+        UGCache cache = new UGCache(10, 0);
+        cache.putUser(cache.getGeneration(), createEntry());
+        cache.putMemberOf(cache.getGeneration(), "Administrators", USER_DN, true);
+
+        assertNull(cache.getUser(USER_DN));
+        assertNull(cache.isMemberOf("Administrators", USER_DN));
+    }
+
+    @Test
+    public void testGetAndClear() throws Exception {
+
+        UGCache cache = new UGCache(10, 0);
+        cache.setActive(true);
+
+        long generation = cache.getGeneration();
+        cache.putUser(generation, createEntry());
+        cache.putUserDN(generation, "description=cert", USER_DN);
+        cache.putMemberOf(generation, "Administrators", USER_DN, true);
+
+        // lookups are case-insensitive
+        assertEquals(USER_DN, cache.getUser(USER_DN.toUpperCase()).getDN());
+        assertEquals(USER_DN, cache.getUserDN("description=cert"));
+        assertTrue(cache.isMemberOf("administrators", USER_DN));
+
+        cache.clear();
+
+        assertNull(cache.getUser(USER_DN));
+        assertNull(cache.getUserDN("description=cert"));
+        assertNull(cache.isMemberOf("Administrators", USER_DN));
+    }
+
+    @Test
+    public void testConcurrentChange() throws Exception {
+
+        UGCache cache = new UGCache(10, 0);
+        cache.setActive(true);
+
+        // the user changes while it is being read from the database
+        long generation = cache.getGeneration();
+        cache.clear();
+        cache.putUser(generation, createEntry());
+
+        assertNull(cache.getUser(USER_DN));
+    }
+}
@@ -20,6 +20,7 @@ package com.netscape.tks;
 import org.dogtagpki.server.tks.TKSConfig;
 import org.dogtagpki.server.tks.TKSEngine;
 import org.dogtagpki.server.tks.TKSEngineConfig;
+import org.dogtagpki.server.tks.servlet.SymKeyCache;
 
 import com.netscape.certsrv.authority.IAuthority;
 import com.netscape.certsrv.base.EBaseException;
@@ -75,6 +76,24 @@ public class TKSAuthority implements IAuthority {
 
         mConfig = engineConfig.getTKSConfig();
 
+        SymKeyCache.getInstance().init(
+                mConfig.getSymKeyCacheEnabled(),
+                mConfig.getSymKeyCacheTimeout());
+
+        // apply cache settings changed at runtime
+        mConfig.addChangeListener((store, names) -> {
+            if (names.stream().noneMatch(name -> name.startsWith("symKeyCache."))) {
+                return;
+            }
+            try {
+                SymKeyCache.getInstance().init(
+                        mConfig.getSymKeyCacheEnabled(),
+                        mConfig.getSymKeyCacheTimeout());
+            } catch (EBaseException e) {
+                logger.warn("TKSAuthority: Unable to update symmetric key cache: " + e.getMessage(), e);
+            }
+        });
+
         //mNickname = mConfig.getString(PROP_NICKNAME);
         logger.debug("TKS Authority (" + getId() + "): " + "Initialized Request Processor.");
 
@@ -101,6 +120,7 @@ public class TKSAuthority implements IAuthority {
      */
     @Override
     public void shutdown() {
+        SymKeyCache.getInstance().logStats();
         logger.info("TKSAuthority is stopped");
     }
 
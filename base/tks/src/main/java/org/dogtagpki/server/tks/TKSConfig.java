@@ -5,12 +5,16 @@
 //
 package org.dogtagpki.server.tks;
 
+import com.netscape.certsrv.base.EBaseException;
 import com.netscape.cmscore.base.ConfigStorage;
 import com.netscape.cmscore.base.ConfigStore;
 import com.netscape.cmscore.base.SimpleProperties;
 
 public class TKSConfig extends ConfigStore {
 
+    public static final boolean DEFAULT_SYM_KEY_CACHE_ENABLED = true;
+    public static final int DEFAULT_SYM_KEY_CACHE_TIMEOUT = 300; // seconds
+
     public TKSConfig(ConfigStorage storage) {
         super(storage);
     }
@@ -18,4 +22,18 @@ public class TKSConfig extends ConfigStore {
     public TKSConfig(String name, SimpleProperties source) {
         super(name, source);
     }
+
+    /**
+     * Returns tks.symKeyCache.enable parameter.
+     */
+    public boolean getSymKeyCacheEnabled() throws EBaseException {
+        return getBoolean("symKeyCache.enable", DEFAULT_SYM_KEY_CACHE_ENABLED);
+    }
+
+    /**
+     * Returns tks.symKeyCache.timeout parameter (in seconds).
+     */
+    public int getSymKeyCacheTimeout() throws EBaseException {
+        return getInteger("symKeyCache.timeout", DEFAULT_SYM_KEY_CACHE_TIMEOUT);
+    }
 }
@@ -15,6 +15,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.dogtagpki.server.tks.TKSEngine;
 import org.dogtagpki.server.tks.TKSEngineConfig;
 import org.dogtagpki.server.tks.TPSConnectorConfig;
+import org.dogtagpki.server.tks.servlet.SymKeyCache;
 import org.mozilla.jss.NotInitializedException;
 import org.mozilla.jss.crypto.SymmetricKey;
 import org.mozilla.jss.crypto.TokenException;
@@ -301,6 +302,7 @@ public class TPSConnectorService extends PKIService implements TPSConnectorResou
             }
 
             CryptoUtil.createSharedSecret(nickname);
+            SymKeyCache.getInstance().invalidate(nickname);
 
             TPSConnectorConfig tpsConfig = cs.getTPSConnectorConfig(id);
             tpsConfig.setNickname(nickname);
@@ -376,6 +378,7 @@ public class TPSConnectorService extends PKIService implements TPSConnectorResou
 
             CryptoUtil.deleteSharedSecret(nickname);
             CryptoUtil.createSharedSecret(nickname);
+            SymKeyCache.getInstance().invalidate(nickname);
 
             //Create des3 session sym key to wrap the shared secret.
             SymmetricKey tempKey = CryptoUtil.createDes3SessionKeyOnInternal();
@@ -427,6 +430,7 @@ public class TPSConnectorService extends PKIService implements TPSConnectorResou
                 return createNoContentResponse();
             }
             CryptoUtil.deleteSharedSecret(nickname);
+            SymKeyCache.getInstance().invalidate(nickname);
 
             tpsConfig.setNickname("");
             cs.commit(true);
@@ -1145,23 +1145,18 @@ public class SecureChannelProtocol {
         if (token == null || name == null) {
             throw new EBaseException(method + "Invalid input data!");
         }
-        SymmetricKey[] keys;
+        SymmetricKey key;
 
         logger.debug(method + "Searching for sym key: " + name);
         try {
-            keys = token.getCryptoStore().getSymmetricKeys();
+            key = SymKeyCache.getInstance().getSymKey(token, name);
         } catch (TokenException e) {
             throw new EBaseException(method + "Can't get the list of symmetric keys!");
         }
-        int len = keys.length;
-        for (int i = 0; i < len; i++) {
-            SymmetricKey cur = keys[i];
-            if (cur != null) {
-                if (name.equals(cur.getNickName())) {
-                    logger.debug(method + "Found key: " + name);
-                    return cur;
-                }
-            }
+
+        if (key != null) {
+            logger.debug(method + "Found key: " + name);
+            return key;
         }
 
         logger.debug(method + " Sym Key not found.");
@@ -1174,7 +1169,7 @@ public class SecureChannelProtocol {
         if (name == null || manager == null)
             throw new NoSuchTokenException();
 
-        return CryptoUtil.getKeyStorageToken(name);
+        return SymKeyCache.getInstance().getToken(name);
     }
 
     public static byte[] makeDes3FromDes2(byte[] des2) {
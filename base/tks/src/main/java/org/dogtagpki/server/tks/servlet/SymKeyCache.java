@@ -0,0 +1,254 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.server.tks.servlet;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.dogtagpki.server.tks.TKSConfig;
+
+import org.mozilla.jss.NoSuchTokenException;
+import org.mozilla.jss.crypto.CryptoToken;
+import org.mozilla.jss.crypto.SymmetricKey;
+import org.mozilla.jss.crypto.TokenException;
+
+import com.netscape.cmsutil.crypto.CryptoUtil;
+
+/**
+ * Cache of token and symmetric key handles used by the TKS.
+ *
+ * Looking up a symmetric key by nickname requires listing all keys
+ * on the token, which is slow on HSMs with many key sets. When a key
+ * is not in the cache the token is listed once and all its keys are
+ * cached, so the following lookups for other key sets are hits too.
+ *
+ * Keys that are not found are not cached since developer keys and new
+ * master keys may be added at any time. Cached keys expire after the
+ * configured timeout so keys replaced outside the TKS are picked up,
+ * and the cache is invalidated when the TKS itself replaces a key.
+ * Tokens and keys looked up before an invalidation are not added to
+ * the cache after it.
+ */
+public class SymKeyCache {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(SymKeyCache.class);
+
+    // number of lookups between statistics log messages
+    private static final long STATS_INTERVAL = 10000;
+
+    private static final SymKeyCache INSTANCE = new SymKeyCache();
+
+    private volatile boolean enabled = TKSConfig.DEFAULT_SYM_KEY_CACHE_ENABLED;
+    private volatile long timeout = TKSConfig.DEFAULT_SYM_KEY_CACHE_TIMEOUT * 1000L; // milliseconds
+
+    private Map<String, CryptoToken> tokens = new ConcurrentHashMap<>();
+
+    // token name -> (key nickname -> entry)
+    private Map<String, Map<String, Entry>> keys = new ConcurrentHashMap<>();
+
+    // incremented on each invalidation so that tokens and keys looked
+    // up before the invalidation are not added after it
+    private final AtomicLong generation = new AtomicLong();
+
+    private LongAdder hits = new LongAdder();
+    private LongAdder misses = new LongAdder();
+    private LongAdder scans = new LongAdder();
+
+    public static SymKeyCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param enabled false to look up every key on the token
+     * @param timeout time in seconds a cached key handle is used, 0 to
+     *   keep key handles until the cache is invalidated
+     */
+    public void init(boolean enabled, int timeout) {
+
+        logger.info("SymKeyCache: enabled: " + enabled + ", timeout: " + timeout + " s");
+
+        this.enabled = enabled;
+        this.timeout = timeout * 1000L;
+
+        invalidate();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the key storage token with the given name.
+     */
+    public CryptoToken getToken(String name) throws NoSuchTokenException {
+
+        if (!enabled) {
+            return CryptoUtil.getKeyStorageToken(name);
+        }
+
+        CryptoToken token = tokens.get(name);
+        if (token != null) {
+            return token;
+        }
+
+        long generation = this.generation.get();
+        token = CryptoUtil.getKeyStorageToken(name);
+        put(tokens, generation, name, token);
+
+        return token;
+    }
+
+    /**
+     * Returns the symmetric key with the given nickname on the token.
+     *
+     * @return the key, or null if the token has no such key
+     */
+    public SymmetricKey getSymKey(CryptoToken token, String name) throws TokenException {
+
+        if (!enabled) {
+            scans.increment();
+            return findSymKey(token.getCryptoStore().getSymmetricKeys(), name);
+        }
+
+        String tokenName = token.getName();
+        Map<String, Entry> tokenKeys = keys.get(tokenName);
+
+        long now = System.currentTimeMillis();
+        Entry entry = tokenKeys == null ? null : tokenKeys.get(name);
+
+        if (entry != null && (timeout <= 0 || now - entry.createTime < timeout)) {
+            hits.increment();
+            logPeriodicStats();
+            return entry.key;
+        }
+
+        misses.increment();
+        scans.increment();
+        logPeriodicStats();
+
+        long generation = this.generation.get();
+
+        logger.debug("SymKeyCache: Listing symmetric keys on " + tokenName);
+        SymmetricKey[] tokenSymKeys = token.getCryptoStore().getSymmetricKeys();
+
+        // replace the cached keys so deleted keys are dropped as well
+        tokenKeys = new ConcurrentHashMap<>();
+        for (SymmetricKey key : tokenSymKeys) {
+            if (key == null || key.getNickName() == null) {
+                continue;
+            }
+            tokenKeys.put(key.getNickName(), new Entry(key, now));
+        }
+        put(keys, generation, tokenName, tokenKeys);
+
+        return findSymKey(tokenSymKeys, name);
+    }
+
+    /**
+     * Adds the value to the cache unless the cache has been invalidated
+     * since the given generation was obtained.
+     */
+    private <T> void put(Map<String, T> map, long generation, String key, T value) {
+
+        if (generation != this.generation.get()) {
+            return;
+        }
+
+        map.put(key, value);
+
+        // the cache was invalidated concurrently
+        if (generation != this.generation.get()) {
+            map.remove(key, value);
+        }
+    }
+
+    private static SymmetricKey findSymKey(SymmetricKey[] keys, String name) {
+
+        for (SymmetricKey key : keys) {
+            if (key != null && name.equals(key.getNickName())) {
+                return key;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Removes the key with the given nickname from the cache, for
+     * example after it has been deleted or replaced on a token.
+     */
+    public void invalidate(String name) {
+
+        logger.debug("SymKeyCache: Invalidating " + name);
+
+        generation.incrementAndGet();
+
+        for (Map<String, Entry> tokenKeys : keys.values()) {
+            tokenKeys.remove(name);
+        }
+    }
+
+    /**
+     * Removes all tokens and keys from the cache.
+     */
+    public void invalidate() {
+
+        logger.debug("SymKeyCache: Invalidating all keys");
+
+        generation.incrementAndGet();
+
+        tokens.clear();
+        keys.clear();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of times the keys on a token were listed.
+     */
+    public long getScans() {
+        return scans.sum();
+    }
+
+    /**
+     * Returns the percentage of key lookups served from the cache.
+     */
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : 100.0 * h / total;
+    }
+
+    private void logPeriodicStats() {
+        if ((hits.sum() + misses.sum()) % STATS_INTERVAL == 0) {
+            logStats();
+        }
+    }
+
+    public void logStats() {
+        logger.info(String.format("SymKeyCache: %d lookups, %.1f%% hits, %d token scans",
+                hits.sum() + misses.sum(), getHitRate(), scans.sum()));
+    }
+
+    private static class Entry {
+
+        final SymmetricKey key;
+        final long createTime;
+
+        Entry(SymmetricKey key, long createTime) {
+            this.key = key;
+            this.createTime = createTime;
+        }
+    }
+}
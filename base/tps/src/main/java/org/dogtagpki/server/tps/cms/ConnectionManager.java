@@ -88,6 +88,8 @@ public class ConnectionManager
      *   tps.connector.ca1.port=<port number; unused if for failover case>
      *   tps.connector.ca1.nickName=subsystemCert cert-pki-tomcat TPS
      *   tps.connector.ca1.timeout=30
+     *   tps.connector.ca1.keepAlive=true
+     *   tps.connector.ca1.keepAliveTimeout=15
      *   # In the example below,
      *   #   "enrollment", "getcert", "renewal", "revoke", and "unrevoke"
      *   #   are what's being referred to as "op" in the multi-uri support code
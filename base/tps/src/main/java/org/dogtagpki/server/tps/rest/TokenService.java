@@ -384,8 +384,8 @@ public class TokenService extends SubsystemService implements TokenResource {
 
         String method = "TokenService.retrieveTokensWithoutVLV: ";
 
-        // search without VLV
-        List<TokenRecord> tokens = (List<TokenRecord>) database.findRecords(filter);
+        // search without VLV, let the database match the attributes
+        List<TokenRecord> tokens = (List<TokenRecord>) database.findRecords(filter, attributes);
         int total = tokens.size();
         logger.debug(method + "total: " + total);
 